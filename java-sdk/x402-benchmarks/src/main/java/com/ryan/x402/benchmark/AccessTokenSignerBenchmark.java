@@ -0,0 +1,53 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.token.AccessTokenSigner;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What an access token costs compared to a payment: issuing one after settlement, and checking
+ * one in place of verify and settle.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessTokenSignerBenchmark {
+
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+
+  private AccessTokenSigner signer;
+  private String token;
+  private long expiresAt;
+
+  @Setup
+  public void setup() {
+    signer = new AccessTokenSigner(
+        Map.of(1, "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII)), 1);
+    expiresAt = System.currentTimeMillis() / 1000 + 3600;
+    token = signer.issue(PAYER, "/weather/**", expiresAt);
+  }
+
+  @Benchmark
+  public String issue() {
+    return signer.issue(PAYER, "/weather/**", expiresAt);
+  }
+
+  @Benchmark
+  public String check() {
+    return signer.verify(token).check("/weather/today", System.currentTimeMillis() / 1000);
+  }
+}
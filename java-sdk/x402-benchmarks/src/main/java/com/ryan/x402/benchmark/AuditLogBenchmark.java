@@ -0,0 +1,105 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.audit.AuditEvent;
+import com.ryan.x402.audit.AuditLog;
+import com.ryan.x402.audit.AuditSink;
+import com.ryan.x402.audit.BinaryFileAuditSink;
+import com.ryan.x402.model.PaymentPayload;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * What the audit log adds to a paid request, with eight request threads sharing it. Each operation
+ * stands in for a request by burning some CPU and publishes one event, or none with {@code off}.
+ * The drain thread writes to a sink that discards the events or to the binary file without
+ * forcing it. Events published while the buffer is full are dropped; the {@code dropped} counter
+ * reported next to the score should stay at zero, otherwise the sink is the bottleneck and the
+ * score only shows how cheap dropping is.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class AuditLogBenchmark {
+
+  @Param({"off", "discard", "file"})
+  public String sink;
+
+  /**
+   * CPU burnt per request, in {@link Blackhole#consumeCPU} tokens
+   */
+  @Param({"1000"})
+  public long work;
+
+  private Path file;
+  private AuditLog auditLog;
+  private PaymentPayload payload;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Drops {
+
+    public long dropped;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      dropped = 0;
+    }
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    payload = PaymentPayload.fromHeader(Fixtures.paymentHeader());
+    if (sink.equals("off")) {
+      return;
+    }
+    AuditSink target = event -> {
+    };
+    if (sink.equals("file")) {
+      file = Files.createTempFile("x402-audit-bench", ".bin");
+      Files.delete(file);
+      target = new BinaryFileAuditSink(file, false);
+    }
+    auditLog = new AuditLog(1 << 16, List.of(target));
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    if (auditLog != null) {
+      auditLog.close();
+    }
+    if (file != null) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Benchmark
+  public void request(Drops drops) {
+    Blackhole.consumeCPU(work);
+    if (auditLog != null
+        && !auditLog.publish(AuditEvent.Type.VERIFIED, Fixtures.RESOURCE, payload, null, null)) {
+      drops.dropped++;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Offline ERC-3009 signature verifications per second on a single thread (one core).
+ * {@code publicKeyCacheSize=0} measures full signer recovery, the default cache size measures a
+ * repeat payer whose public key is cached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExactEvmSignatureVerifierBenchmark {
+
+  @Param({"0", "4096"})
+  public int publicKeyCacheSize;
+
+  private ExactEvmSignatureVerifier verifier;
+  private ExactSchemePayload payload;
+
+  @Setup
+  public void setup() {
+    verifier = new ExactEvmSignatureVerifier(publicKeyCacheSize);
+    payload = Fixtures.signedPayload();
+    if (verify() != ExactEvmSignatureVerifier.Result.VALID) {
+      throw new IllegalStateException("benchmark vector does not verify");
+    }
+  }
+
+  @Benchmark
+  public ExactEvmSignatureVerifier.Result verify() {
+    return verifier.verify(payload, Fixtures.NETWORK, Fixtures.ASSET, Fixtures.EXTRA);
+  }
+}
@@ -0,0 +1,95 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.facilitator.FacilitatorWireCodec;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.VerificationResponse;
+import com.ryan.x402.util.Json;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One {@code /verify} round trip through the facilitator wire format, request encoding plus
+ * response decoding, without the network. Compare {@code gc.alloc.rate.norm} of both methods.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FacilitatorWireCodecBenchmark {
+
+  private static final byte[] VERIFY_RESPONSE =
+      "{\"isValid\":true,\"payer\":\"0x2c7536E3605D9C16a7a3D7b1898e529396a65c23\"}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final FacilitatorWireCodec codec = new FacilitatorWireCodec();
+  private final ByteBuffer response = ByteBuffer.wrap(VERIFY_RESPONSE);
+  private final List<ByteBuffer> responseBuffers = List.of(response);
+
+  private PaymentPayload payload;
+  private PaymentRequirements template;
+
+  @Setup
+  public void setup() throws Exception {
+    payload = PaymentPayload.fromHeader(Fixtures.paymentHeader());
+
+    template = new PaymentRequirements();
+    template.scheme = "exact";
+    template.network = Fixtures.NETWORK;
+    template.maxAmountRequired = "10000";
+    template.description = "";
+    template.mimeType = "application/json";
+    template.outputSchema = Map.of();
+    template.payTo = Fixtures.PAY_TO;
+    template.maxTimeoutSeconds = 30;
+    template.asset = Fixtures.ASSET;
+    template.extra = Fixtures.EXTRA;
+  }
+
+  /**
+   * The path {@code HttpFacilitatorClient} used before the codec: an envelope map serialized to a
+   * {@code String}, encoded for {@code BodyPublishers.ofString}, and the reply decoded to a
+   * {@code String} before parsing.
+   */
+  @Benchmark
+  public VerificationResponse stringRoundTrip() throws Exception {
+    PaymentRequirements req = template.withResource(Fixtures.RESOURCE);
+    Map<String, Object> body = Map.of(
+        "x402Version", 1,
+        "paymentPayload", payload,
+        "paymentRequirements", req
+    );
+    byte[] request = Json.MAPPER.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+    if (request.length == 0) {
+      throw new IllegalStateException();
+    }
+    String reply = new String(VERIFY_RESPONSE, StandardCharsets.UTF_8);
+    return Json.MAPPER.readValue(reply, VerificationResponse.class);
+  }
+
+  @Benchmark
+  public VerificationResponse codecRoundTrip() throws Exception {
+    PaymentRequirements req = template.withResource(Fixtures.RESOURCE);
+    ByteBuffer request = codec.encodeRequest(payload, req);
+    if (!request.hasRemaining()) {
+      throw new IllegalStateException();
+    }
+    response.rewind();
+    return codec.decodeResponse(200, responseBuffers, VerificationResponse.class);
+  }
+}
@@ -0,0 +1,144 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.annotation.X402Payment;
+import com.ryan.x402.facilitator.FacilitatorClient;
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Shared inputs for the benchmarks. Everything is built in-process, no network is needed.
+ */
+final class Fixtures {
+
+  static final String NETWORK = "base-sepolia";
+  static final String ASSET = "0x036CbD53842c5426634e7929541eC2318f3dCF7e";
+  static final String PAY_TO = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+  static final Map<String, Object> EXTRA = Map.of("name", "USDC", "version", "2");
+  static final String RESOURCE = "http://localhost:8080/paid";
+
+  private Fixtures() {
+  }
+
+  /**
+   * A TransferWithAuthorization of 0.01 USDC on base-sepolia, signed by a fixed test key.
+   */
+  static ExactSchemePayload signedPayload() {
+    Authorization auth = new Authorization();
+    auth.from = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+    auth.to = PAY_TO;
+    auth.value = "10000";
+    auth.validAfter = "0";
+    auth.validBefore = "4102444800";
+    auth.nonce = "0x" + "ab".repeat(32);
+
+    ExactSchemePayload payload = new ExactSchemePayload();
+    payload.signature = "0x7485710dcbd94692e45f1e013ff7186bffa2049d9aac144a7c9c253ae1c0dcc3"
+        + "0929262dead67a732871815e2c787a1eeaad877de43011037a62e2ced1ee8e6f1b";
+    payload.authorization = auth;
+    return payload;
+  }
+
+  /**
+   * The {@link #signedPayload()} as it arrives in the X-PAYMENT header.
+   */
+  @SuppressWarnings("deprecation")
+  static String paymentHeader() {
+    ExactSchemePayload exact = signedPayload();
+    PaymentPayload payload = new PaymentPayload();
+    payload.x402Version = 1;
+    payload.scheme = "exact";
+    payload.network = NETWORK;
+    payload.payload = Map.of("signature", exact.signature, "authorization", Map.of(
+        "from", exact.authorization.from,
+        "to", exact.authorization.to,
+        "value", exact.authorization.value,
+        "validAfter", exact.authorization.validAfter,
+        "validBefore", exact.authorization.validBefore,
+        "nonce", exact.authorization.nonce));
+    return payload.toHeader();
+  }
+
+  /**
+   * Facilitator that accepts every payment without any I/O.
+   */
+  static final class StubFacilitator implements FacilitatorClient {
+
+    @Override
+    public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req) {
+      VerificationResponse vr = new VerificationResponse();
+      vr.isValid = true;
+      return vr;
+    }
+
+    @Override
+    public SettlementResponse settle(PaymentPayload paymentHeader, PaymentRequirements req) {
+      SettlementResponse sr = new SettlementResponse();
+      sr.success = true;
+      sr.txHash = "0x" + "cd".repeat(32);
+      sr.networkId = NETWORK;
+      return sr;
+    }
+
+    @Override
+    public Set<Kind> supported() {
+      return Set.of(new Kind("exact", NETWORK));
+    }
+  }
+
+  /**
+   * Mock response that discards the body. Capturing output in {@link MockHttpServletResponse}
+   * costs more than the interceptor itself and would drown the measurement.
+   */
+  static final class DiscardingResponse extends MockHttpServletResponse {
+
+    private final ServletOutputStream out = new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+      }
+
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    };
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public void flushBuffer() {
+      setCommitted(true);
+    }
+  }
+
+  /**
+   * Controller shape with one paid handler method.
+   */
+  static final class PaidController {
+
+    @X402Payment(price = "0.01")
+    public String paid() {
+      return "ok";
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequiredResponse;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponseHeader;
+import com.ryan.x402.util.Json;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of the x402 headers and bodies in isolation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PaymentCodecBenchmark {
+
+  private static final String TX_HASH = "0x" + "cd".repeat(32);
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+
+  private String header;
+  private PaymentPayload decoded;
+  private PaymentRequirements requirements;
+
+  @Setup
+  public void setup() throws Exception {
+    header = Fixtures.paymentHeader();
+    decoded = PaymentPayload.fromHeader(header);
+
+    requirements = new PaymentRequirements();
+    requirements.scheme = "exact";
+    requirements.network = Fixtures.NETWORK;
+    requirements.maxAmountRequired = "10000";
+    requirements.resource = Fixtures.RESOURCE;
+    requirements.description = "";
+    requirements.mimeType = "application/json";
+    requirements.outputSchema = Map.of();
+    requirements.payTo = Fixtures.PAY_TO;
+    requirements.maxTimeoutSeconds = 30;
+    requirements.asset = Fixtures.ASSET;
+    requirements.extra = Fixtures.EXTRA;
+  }
+
+  @Benchmark
+  public PaymentPayload fromHeader() throws Exception {
+    return PaymentPayload.fromHeader(header);
+  }
+
+  @Benchmark
+  public String toHeader() {
+    return decoded.toHeader();
+  }
+
+  /**
+   * Object-mapped 402 body, the path the interceptor used before bodies were pre-serialized.
+   */
+  @Benchmark
+  public byte[] paymentRequiredBody() throws Exception {
+    PaymentRequiredResponse prr = new PaymentRequiredResponse();
+    prr.x402Version = 1;
+    prr.accepts.add(requirements);
+    prr.error = "X-PAYMENT header is required";
+    return Json.MAPPER.writeValueAsBytes(prr);
+  }
+
+  @Benchmark
+  public String paymentResponseHeader() {
+    return new SettlementResponseHeader(true, TX_HASH, Fixtures.NETWORK, PAYER).toHeader();
+  }
+}
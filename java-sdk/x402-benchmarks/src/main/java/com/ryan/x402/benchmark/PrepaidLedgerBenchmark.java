@@ -0,0 +1,77 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.prepaid.PrepaidLedger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What the prepaid ledger costs a request served from credit: one debit, with eight request
+ * threads of different payers sharing the ledger. Every debit is followed by a credit so balances
+ * never run out; both append to the write-ahead log.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class PrepaidLedgerBenchmark {
+
+  private Path directory;
+  private PrepaidLedger ledger;
+  private final AtomicInteger payers = new AtomicInteger();
+
+  @State(Scope.Thread)
+  public static class Payer {
+
+    String address;
+
+    @Setup
+    public void setup(PrepaidLedgerBenchmark benchmark) {
+      address = String.format("0x%040x", benchmark.payers.incrementAndGet());
+      benchmark.ledger.credit(address, 1_000_000);
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("x402-ledger-bench");
+    ledger = new PrepaidLedger(directory, 64, Duration.ofMillis(5), 16 << 20);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ledger.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public long debitAndCredit(Payer payer) {
+    long left = ledger.debit(payer.address, 1000);
+    ledger.credit(payer.address, 1000);
+    return left;
+  }
+}
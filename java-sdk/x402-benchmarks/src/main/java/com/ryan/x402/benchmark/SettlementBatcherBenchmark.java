@@ -0,0 +1,181 @@
+package com.ryan.x402.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ryan.x402.facilitator.HttpFacilitatorClient;
+import com.ryan.x402.facilitator.SettlementBatcher;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.util.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Settlement throughput against a local stub facilitator that spends {@value #SETTLE_MILLIS} ms
+ * per request on {@value #FACILITATOR_THREADS} threads, i.e. one whose capacity is bounded by
+ * round trips rather than by payments:
+ * <ul>
+ *   <li>{@code individual}: one {@code /settle} per payment, as without a batcher</li>
+ *   <li>{@code batched}: {@link SettlementBatcher} with {@code /settle/batch} advertised</li>
+ *   <li>{@code pipelined}: {@link SettlementBatcher} against a facilitator without batches, so
+ *   each batch goes out as concurrent {@code /settle} calls</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class SettlementBatcherBenchmark {
+
+  static final int SETTLE_MILLIS = 2;
+  static final int FACILITATOR_THREADS = 16;
+
+  private static final byte[] SETTLED = ("{\"success\":true,\"txHash\":\"0x" + "ab".repeat(32)
+      + "\",\"networkId\":\"" + Fixtures.NETWORK + "\"}").getBytes(StandardCharsets.UTF_8);
+
+  private HttpServer batchingFacilitator;
+  private HttpServer plainFacilitator;
+  private final List<ExecutorService> facilitatorThreads = new ArrayList<>();
+
+  private HttpFacilitatorClient direct;
+  private SettlementBatcher batched;
+  private SettlementBatcher pipelined;
+
+  private PaymentPayload payload;
+  private PaymentRequirements requirements;
+
+  @Setup
+  public void setup() throws Exception {
+    // without it the reply body waits for the client's delayed ACK, ~40 ms per call
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    batchingFacilitator = startFacilitator(true);
+    plainFacilitator = startFacilitator(false);
+
+    direct = new HttpFacilitatorClient(baseUrl(plainFacilitator));
+    HttpFacilitatorClient batching = new HttpFacilitatorClient(baseUrl(batchingFacilitator));
+    batching.supported();
+    if (!batching.isBatchSettleSupported()) {
+      throw new IllegalStateException("stub facilitator did not advertise batch-settle");
+    }
+    batched = new SettlementBatcher(batching, 50, Duration.ofMillis(2), 10_000);
+    pipelined = new SettlementBatcher(new HttpFacilitatorClient(baseUrl(plainFacilitator)), 50,
+        Duration.ofMillis(2), 10_000);
+
+    payload = PaymentPayload.fromHeader(Fixtures.paymentHeader());
+    requirements = new PaymentRequirements();
+    requirements.scheme = "exact";
+    requirements.network = Fixtures.NETWORK;
+    requirements.maxAmountRequired = "10000";
+    requirements.resource = Fixtures.RESOURCE;
+    requirements.description = "";
+    requirements.mimeType = "application/json";
+    requirements.outputSchema = Map.of();
+    requirements.payTo = Fixtures.PAY_TO;
+    requirements.maxTimeoutSeconds = 30;
+    requirements.asset = Fixtures.ASSET;
+    requirements.extra = Fixtures.EXTRA;
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    batched.close();
+    pipelined.close();
+    batchingFacilitator.stop(0);
+    plainFacilitator.stop(0);
+    facilitatorThreads.forEach(ExecutorService::shutdownNow);
+  }
+
+  @Benchmark
+  public SettlementResponse individual() throws Exception {
+    return direct.settle(payload, requirements);
+  }
+
+  @Benchmark
+  public SettlementResponse batched() throws Exception {
+    return batched.settle(payload, requirements);
+  }
+
+  @Benchmark
+  public SettlementResponse pipelined() throws Exception {
+    return pipelined.settle(payload, requirements);
+  }
+
+  /* ======================== stub facilitator ======================== */
+
+  private HttpServer startFacilitator(boolean batchSettle) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    ExecutorService threads = Executors.newFixedThreadPool(FACILITATOR_THREADS, r -> {
+      Thread t = new Thread(r, "stub-facilitator");
+      t.setDaemon(true);
+      return t;
+    });
+    facilitatorThreads.add(threads);
+    server.setExecutor(threads);
+    server.createContext("/supported", exchange -> reply(exchange, ("{\"kinds\":[{\"scheme\":"
+        + "\"exact\",\"network\":\"" + Fixtures.NETWORK + "\"}]"
+        + (batchSettle ? ",\"extensions\":[\"batch-settle\"]" : "") + "}")
+        .getBytes(StandardCharsets.UTF_8)));
+    server.createContext("/settle", exchange -> {
+      byte[] request = exchange.getRequestBody().readAllBytes();
+      pause();
+      if (!exchange.getRequestURI().getPath().endsWith("/batch")) {
+        reply(exchange, SETTLED);
+        return;
+      }
+      JsonNode settlements = Json.MAPPER.readTree(request).get("settlements");
+      StringBuilder body = new StringBuilder("{\"results\":[");
+      for (int i = 0; i < settlements.size(); i++) {
+        body.append(i > 0 ? "," : "").append(new String(SETTLED, StandardCharsets.UTF_8));
+      }
+      reply(exchange, body.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+    });
+    server.start();
+    return server;
+  }
+
+  private static void pause() {
+    try {
+      Thread.sleep(SETTLE_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void reply(HttpExchange exchange, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String baseUrl(HttpServer server) {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+}
@@ -0,0 +1,81 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.settlement.SettlementJournal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What the settlement journal adds to a paid request: one append before settlement and one mark
+ * after it, with eight request threads sharing the journal.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SettlementJournalBenchmark {
+
+  private Path directory;
+  private SettlementJournal journal;
+  private PaymentPayload payload;
+  private PaymentRequirements requirements;
+
+  @Setup
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("x402-journal-bench");
+    journal = new SettlementJournal(directory, 64 << 20, Duration.ofMillis(5));
+    payload = PaymentPayload.fromHeader(Fixtures.paymentHeader());
+
+    requirements = new PaymentRequirements();
+    requirements.scheme = "exact";
+    requirements.network = Fixtures.NETWORK;
+    requirements.maxAmountRequired = "10000";
+    requirements.resource = Fixtures.RESOURCE;
+    requirements.description = "";
+    requirements.mimeType = "application/json";
+    requirements.outputSchema = Map.of();
+    requirements.payTo = Fixtures.PAY_TO;
+    requirements.maxTimeoutSeconds = 30;
+    requirements.asset = Fixtures.ASSET;
+    requirements.extra = Fixtures.EXTRA;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    journal.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public long appendAndMark() throws IOException {
+    long id = journal.append(payload, requirements);
+    journal.markSettled(id);
+    return id;
+  }
+}
@@ -0,0 +1,108 @@
+package com.ryan.x402.benchmark;
+
+import com.ryan.x402.intereptor.PaymentEndpoint;
+import com.ryan.x402.intereptor.PaymentEndpointRegistry;
+import com.ryan.x402.intereptor.X402Interceptor;
+import com.ryan.x402.model.PaymentRequirements;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+/**
+ * Request-thread cost of {@link X402Interceptor} against a stub facilitator, so only the SDK's
+ * own work is measured: header decoding, local checks, requirements and 402 bodies.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class X402InterceptorBenchmark {
+
+  private X402Interceptor interceptor;
+  private PaymentEndpointRegistry registry;
+  private HandlerMethod handler;
+
+  private MockHttpServletRequest unpaidRequest;
+  private MockHttpServletRequest paidRequest;
+  private Fixtures.DiscardingResponse response;
+
+  @Setup
+  public void setup() throws Exception {
+    registry = new PaymentEndpointRegistry(Fixtures.PAY_TO, Fixtures.NETWORK, Fixtures.ASSET, 30);
+    handler = new HandlerMethod(new Fixtures.PaidController(),
+        Fixtures.PaidController.class.getMethod("paid"));
+    interceptor = new X402Interceptor(registry, new Fixtures.StubFacilitator());
+
+    unpaidRequest = request();
+    paidRequest = request();
+    paidRequest.addHeader("X-PAYMENT", Fixtures.paymentHeader());
+    response = new Fixtures.DiscardingResponse();
+
+    if (!preHandlePaid()) {
+      throw new IllegalStateException("benchmark payment is rejected");
+    }
+  }
+
+  /**
+   * Request without X-PAYMENT, answered with a 402 body.
+   */
+  @Benchmark
+  public boolean preHandleUnpaid() throws Exception {
+    reset();
+    return interceptor.preHandle(unpaidRequest, response, handler);
+  }
+
+  /**
+   * Request with a valid X-PAYMENT header, verified by the stub facilitator.
+   */
+  @Benchmark
+  public boolean preHandlePaid() throws Exception {
+    reset();
+    return interceptor.preHandle(paidRequest, response, handler);
+  }
+
+  /**
+   * Paid request including settlement and the X-PAYMENT-RESPONSE header.
+   */
+  @Benchmark
+  public MockHttpServletResponse paidRoundTrip() throws Exception {
+    reset();
+    interceptor.preHandle(paidRequest, response, handler);
+    interceptor.afterCompletion(paidRequest, response, handler, null);
+    return response;
+  }
+
+  /**
+   * Endpoint lookup and per-request requirements.
+   */
+  @Benchmark
+  public PaymentRequirements buildRequirements() {
+    PaymentEndpoint endpoint = registry.resolve(handler);
+    return endpoint.requirementsFor(Fixtures.RESOURCE);
+  }
+
+  private void reset() {
+    // a 402 flushes and commits the mock response
+    response.setCommitted(false);
+    response.reset();
+  }
+
+  private static MockHttpServletRequest request() {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/paid");
+    request.setServerPort(8080);
+    return request;
+  }
+}
@@ -1,7 +1,10 @@
 package com.ryan.x402.model;
 
+import java.util.Objects;
+
 /**
- * Identifies a payment scheme+network pair that a facilitator supports.
+ * Identifies a payment scheme+network pair that a facilitator supports. Kinds are compared by
+ * value, so sets of them can be queried.
  */
 public class Kind {
 
@@ -33,4 +36,25 @@ public class Kind {
     this.scheme = scheme;
     this.network = network;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Kind other)) {
+      return false;
+    }
+    return Objects.equals(scheme, other.scheme) && Objects.equals(network, other.network);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(scheme, network);
+  }
+
+  @Override
+  public String toString() {
+    return scheme + "/" + network;
+  }
 }
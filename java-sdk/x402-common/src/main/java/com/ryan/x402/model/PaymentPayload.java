@@ -1,38 +1,183 @@
 package com.ryan.x402.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.ryan.x402.util.Json;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Base header object encoded into X-PAYMENT.
+ * <p>
+ * Decoding binds the "exact" scheme straight to {@link ExactSchemePayload} in a single pass. For
+ * compatibility {@link #payload} is still filled in that case, with a read-only view whose map is
+ * only built when it is first read.
  */
+@JsonSerialize(using = PaymentPayloadSerializer.class)
+@JsonDeserialize(using = PaymentPayloadDeserializer.class)
 public class PaymentPayload {
 
+  /**
+   * Default upper bound for the X-PAYMENT header length, in characters.
+   */
+  public static final int DEFAULT_MAX_HEADER_LENGTH = 8192;
+
+  private static final ObjectReader READER = Json.MAPPER.readerFor(PaymentPayload.class);
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+  };
+
+  private static final int SCRATCH_SIZE = DEFAULT_MAX_HEADER_LENGTH / 4 * 3 + 3;
+  private static final ThreadLocal<byte[]> SCRATCH =
+      ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
   public int x402Version;
   public String scheme;
   public String network;
-  public Map<String, Object> payload; // scheme‑specific map
+
+  /**
+   * Scheme-specific payload as a map. When set by the caller, it is what {@link #toHeader()}
+   * encodes.
+   *
+   * @deprecated for reading: for headers decoded with the "exact" scheme this is a read-only view
+   * of the {@link ExactSchemePayload} the decoder bound, converted to a map on first access.
+   * Read {@link #exactPayload()} instead, or {@link #payloadMap()} for other schemes.
+   */
+  @Deprecated
+  public Map<String, Object> payload;
+
+  @JsonIgnore
+  private ExactSchemePayload exactPayload;
+
+  /**
+   * The view assigned to {@link #payload} when the exact payload was decoded.
+   */
+  @JsonIgnore
+  private Map<String, Object> exactView;
+
+  /**
+   * The caller-set map {@link #exactPayload} was converted from.
+   */
+  @JsonIgnore
+  private Map<String, Object> convertedFrom;
+
+  /**
+   * Returns the payload as the "exact" scheme structure. Decoded headers carry it already;
+   * for a payload set as {@link #payload} map the conversion runs once per map and is cached.
+   *
+   * @return the typed payload, or {@code null} if there is no payload
+   * @throws IllegalArgumentException if the payload does not match the "exact" scheme structure
+   */
+  @SuppressWarnings("deprecation")
+  public ExactSchemePayload exactPayload() {
+    Map<String, Object> map = payload;
+    if (map != null && map != exactView && map != convertedFrom) {
+      exactPayload = Json.MAPPER.convertValue(map, ExactSchemePayload.class);
+      convertedFrom = map;
+    }
+    return exactPayload;
+  }
+
+  /**
+   * Returns the scheme-specific payload as a map, whichever way it was decoded or set. For a
+   * decoded "exact" payload this is a read-only view, built on first use.
+   *
+   * @return the payload map, or {@code null} if there is no payload
+   */
+  @SuppressWarnings("deprecation")
+  public Map<String, Object> payloadMap() {
+    return payload;
+  }
+
+  /**
+   * Whether the payload is held as the {@link ExactSchemePayload} the decoder bound, i.e.
+   * {@link #payload} has not been replaced since decoding. Encoders can then write the typed
+   * payload without building its map.
+   */
+  @SuppressWarnings("deprecation")
+  public boolean isExactPayloadBound() {
+    return exactView != null && (payload == null || payload == exactView);
+  }
+
+  @SuppressWarnings("deprecation")
+  void setExactPayload(ExactSchemePayload exactPayload) {
+    this.exactPayload = exactPayload;
+    this.exactView = new ExactPayloadView(exactPayload);
+    this.payload = exactView;
+  }
 
   /**
    * Serialise and base64‑encode for the X‑PAYMENT header.
    */
   public String toHeader() {
     try {
-      String json = Json.MAPPER.writeValueAsString(this);
-      return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(Json.MAPPER.writeValueAsBytes(this));
     } catch (IOException e) {
       throw new IllegalStateException("Unable to encode payment header", e);
     }
   }
 
   /**
-   * Decode from the header.
+   * Decode from the header, allowing at most {@link #DEFAULT_MAX_HEADER_LENGTH} characters.
    */
   public static PaymentPayload fromHeader(String header) throws IOException {
-    byte[] decoded = Base64.getDecoder().decode(header);
-    return Json.MAPPER.readValue(decoded, PaymentPayload.class);
+    return fromHeader(header, DEFAULT_MAX_HEADER_LENGTH);
+  }
+
+  /**
+   * Decode from the header. The length limit is checked before any decoding; base64 is then
+   * decoded into a per-thread buffer that the JSON parser reads from directly.
+   *
+   * @param header          the X-PAYMENT header value
+   * @param maxHeaderLength maximum accepted header length in characters
+   * @return the decoded payload
+   * @throws IllegalArgumentException if the header is too long, not base64 or not a valid payload
+   */
+  public static PaymentPayload fromHeader(String header, int maxHeaderLength) throws IOException {
+    if (header.length() > maxHeaderLength) {
+      throw new IllegalArgumentException(
+          "X-PAYMENT header exceeds " + maxHeaderLength + " characters");
+    }
+    byte[] src = header.getBytes(StandardCharsets.ISO_8859_1);
+    int max = src.length / 4 * 3 + 3;
+    byte[] dst = max <= SCRATCH_SIZE ? SCRATCH.get() : new byte[max];
+    int len = Base64.getDecoder().decode(src, dst);
+    try {
+      return READER.readValue(dst, 0, len);
+    } catch (IOException e) {
+      // invalid JSON is a client error, not an I/O failure
+      throw new IllegalArgumentException("Malformed X-PAYMENT header", e);
+    }
+  }
+
+  /**
+   * Read-only map view of a decoded "exact" payload, converted on first access.
+   */
+  private static final class ExactPayloadView extends AbstractMap<String, Object> {
+
+    private final ExactSchemePayload exact;
+    private volatile Map<String, Object> map;
+
+    ExactPayloadView(ExactSchemePayload exact) {
+      this.exact = exact;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      Map<String, Object> m = map;
+      if (m == null) {
+        m = Collections.unmodifiableMap(Json.MAPPER.convertValue(exact, MAP_TYPE));
+        map = m;
+      }
+      return m.entrySet();
+    }
   }
 }
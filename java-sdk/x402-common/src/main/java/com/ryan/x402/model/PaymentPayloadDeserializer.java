@@ -0,0 +1,72 @@
+package com.ryan.x402.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Single-pass deserializer for {@link PaymentPayload}. The "exact" scheme payload is bound
+ * directly to {@link ExactSchemePayload}; other schemes keep the generic map. If {@code payload}
+ * precedes {@code scheme} in the JSON, its tokens are buffered until the scheme is known.
+ */
+class PaymentPayloadDeserializer extends StdDeserializer<PaymentPayload> {
+
+  private static final JavaType MAP_TYPE = TypeFactory.defaultInstance()
+      .constructMapType(Map.class, String.class, Object.class);
+
+  PaymentPayloadDeserializer() {
+    super(PaymentPayload.class);
+  }
+
+  @Override
+  public PaymentPayload deserialize(JsonParser p, DeserializationContext ctxt)
+      throws IOException {
+    if (!p.isExpectedStartObjectToken()) {
+      return (PaymentPayload) ctxt.handleUnexpectedToken(PaymentPayload.class, p);
+    }
+    PaymentPayload out = new PaymentPayload();
+    TokenBuffer deferred = null;
+    for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+      p.nextToken();
+      switch (name) {
+        case "x402Version" -> out.x402Version = p.getValueAsInt();
+        case "scheme" -> out.scheme = p.getValueAsString();
+        case "network" -> out.network = p.getValueAsString();
+        case "payload" -> {
+          if (out.scheme != null) {
+            readPayload(p, ctxt, out);
+          } else {
+            deferred = ctxt.bufferAsCopyOfValue(p);
+          }
+        }
+        default -> p.skipChildren();
+      }
+    }
+    if (deferred != null) {
+      try (JsonParser buffered = deferred.asParser(p.getCodec())) {
+        buffered.nextToken();
+        readPayload(buffered, ctxt, out);
+      }
+    }
+    return out;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void readPayload(JsonParser p, DeserializationContext ctxt, PaymentPayload out)
+      throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_NULL) {
+      return;
+    }
+    if ("exact".equals(out.scheme)) {
+      out.setExactPayload(ctxt.readValue(p, ExactSchemePayload.class));
+    } else {
+      out.payload = ctxt.readValue(p, MAP_TYPE);
+    }
+  }
+}
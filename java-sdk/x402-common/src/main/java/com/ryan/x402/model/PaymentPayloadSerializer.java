@@ -0,0 +1,36 @@
+package com.ryan.x402.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+
+/**
+ * Serializer for {@link PaymentPayload} writing either the caller-set {@code payload} map or the
+ * decoded "exact" payload under {@code payload}.
+ */
+class PaymentPayloadSerializer extends StdSerializer<PaymentPayload> {
+
+  PaymentPayloadSerializer() {
+    super(PaymentPayload.class);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void serialize(PaymentPayload value, JsonGenerator gen, SerializerProvider provider)
+      throws IOException {
+    gen.writeStartObject(value);
+    gen.writeNumberField("x402Version", value.x402Version);
+    if (value.scheme != null) {
+      gen.writeStringField("scheme", value.scheme);
+    }
+    if (value.network != null) {
+      gen.writeStringField("network", value.network);
+    }
+    Object payload = value.isExactPayloadBound() ? value.exactPayload() : value.payload;
+    if (payload != null) {
+      provider.defaultSerializeField("payload", payload, gen);
+    }
+    gen.writeEndObject();
+  }
+}
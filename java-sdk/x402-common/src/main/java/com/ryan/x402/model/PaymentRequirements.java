@@ -18,5 +18,28 @@ public class PaymentRequirements {
   public int maxTimeoutSeconds;
   public String asset;               // token contract address / symbol
   public Map<String, Object> extra;  // scheme‑specific
-}
 
+  /**
+   * Returns a shallow copy of these requirements with {@link #resource} replaced. The
+   * {@link #outputSchema} and {@link #extra} maps are shared with this instance, so templates
+   * should hold unmodifiable maps.
+   *
+   * @param resource the resource URL for the copy
+   * @return a new requirements instance
+   */
+  public PaymentRequirements withResource(String resource) {
+    PaymentRequirements pr = new PaymentRequirements();
+    pr.scheme = scheme;
+    pr.network = network;
+    pr.maxAmountRequired = maxAmountRequired;
+    pr.resource = resource;
+    pr.description = description;
+    pr.mimeType = mimeType;
+    pr.outputSchema = outputSchema;
+    pr.payTo = payTo;
+    pr.maxTimeoutSeconds = maxTimeoutSeconds;
+    pr.asset = asset;
+    pr.extra = extra;
+    return pr;
+  }
+}
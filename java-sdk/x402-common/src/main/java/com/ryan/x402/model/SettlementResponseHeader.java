@@ -1,6 +1,9 @@
 package com.ryan.x402.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.ryan.x402.util.Json;
+import java.io.IOException;
+import java.util.Base64;
 
 /**
  * Settlement response header that gets base64-encoded into X-PAYMENT-RESPONSE. Matches the
@@ -45,4 +48,15 @@ public class SettlementResponseHeader {
     this.network = network;
     this.payer = payer;
   }
+
+  /**
+   * Serialise and base64‑encode for the X‑PAYMENT‑RESPONSE header.
+   */
+  public String toHeader() {
+    try {
+      return Base64.getEncoder().encodeToString(Json.MAPPER.writeValueAsBytes(this));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to encode payment response header", e);
+    }
+  }
 }
@@ -0,0 +1,42 @@
+package com.ryan.x402.replay;
+
+import com.ryan.x402.replay.NonceReplayGuard.Result;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link PaymentDeduplicationStore} of a single instance, backed by a {@link NonceReplayGuard}.
+ * Futures are returned completed.
+ */
+public class LocalPaymentDeduplicationStore implements PaymentDeduplicationStore {
+
+  private final NonceReplayGuard guard;
+
+  /**
+   * Creates a store; the caller owns the guard's lifecycle.
+   *
+   * @param guard the guard recording the nonces
+   */
+  public LocalPaymentDeduplicationStore(NonceReplayGuard guard) {
+    this.guard = Objects.requireNonNull(guard);
+  }
+
+  @Override
+  public CompletableFuture<Result> claim(String payer, String nonce, long validBefore) {
+    return CompletableFuture.completedFuture(guard.claim(payer, nonce, validBefore));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> release(String payer, String nonce) {
+    return CompletableFuture.completedFuture(guard.release(payer, nonce));
+  }
+
+  @Override
+  public long getMaxRetentionSeconds() {
+    return guard.getMaxRetentionSeconds();
+  }
+
+  public NonceReplayGuard getGuard() {
+    return guard;
+  }
+}
@@ -0,0 +1,450 @@
+package com.ryan.x402.replay;
+
+import com.ryan.x402.util.Hex;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory guard against replaying the same ERC-3009 authorization nonce before settlement
+ * lands.
+ * <p>
+ * A nonce is recorded per payer ({@code authorization.from}) until the authorization's
+ * {@code validBefore}, after which it is unusable on-chain anyway. The store is split into
+ * independently locked stripes. Each stripe is a fixed-capacity chained hash table held in
+ * primitive arrays: a 20 byte payer and a 32 byte nonce are encoded into seven {@code long}s, so
+ * there is no per-entry object and memory is bounded by the configured capacity.
+ * <p>
+ * Expiry uses a hashed timing wheel with one-second slots instead of per-entry timers. Every
+ * entry is linked into the slot of its expiry second; a single sweeper thread walks the slots that
+ * became due and frees expired entries. Lookups treat entries at or past {@code validBefore} as
+ * absent, so expiry is exact even between sweeps.
+ */
+public class NonceReplayGuard implements AutoCloseable {
+
+  /**
+   * Outcome of {@link #claim}.
+   */
+  public enum Result {
+    /**
+     * The nonce was not in use and is now recorded.
+     */
+    ACCEPTED,
+    /**
+     * The nonce is already recorded for this payer.
+     */
+    REPLAYED,
+    /**
+     * The stripe for this nonce is full; nothing was recorded.
+     */
+    FULL,
+    /**
+     * Payer or nonce are malformed, or the authorization has already expired.
+     */
+    INVALID
+  }
+
+  /**
+   * Invalid reason reported for a replayed nonce.
+   */
+  public static final String REPLAYED_REASON = "invalid_exact_evm_payload_nonce_replayed";
+
+  private static final int KEY_LONGS = 7;
+  private static final int WHEEL_SLOTS = 256; // seconds, power of two
+  private static final int NIL = -1;
+
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final int capacity;
+  private final long maxRetentionSeconds;
+
+  private final AtomicInteger occupancy = new AtomicInteger();
+  private final LongAdder replays = new LongAdder();
+  private final LongAdder capacityRejections = new LongAdder();
+  private final LongAdder expirations = new LongAdder();
+
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Creates a guard with two stripes per available processor (rounded to a power of two) and a
+   * background sweeper.
+   *
+   * @param capacity            maximum number of recorded nonces
+   * @param maxRetentionSeconds upper bound on how long a nonce is kept, even if its
+   *                            {@code validBefore} is further out
+   */
+  public NonceReplayGuard(int capacity, long maxRetentionSeconds) {
+    this(capacity, maxRetentionSeconds, 2 * Runtime.getRuntime().availableProcessors(), true);
+  }
+
+  /**
+   * Creates a guard.
+   *
+   * @param capacity            maximum number of recorded nonces
+   * @param maxRetentionSeconds upper bound on how long a nonce is kept
+   * @param stripes             number of lock stripes, rounded up to a power of two
+   * @param startSweeper        whether to start the background sweeper; without it
+   *                            {@link #sweep(long)} must be called periodically
+   */
+  public NonceReplayGuard(int capacity, long maxRetentionSeconds, int stripes,
+      boolean startSweeper) {
+    if (capacity < 1 || stripes < 1 || maxRetentionSeconds < 1) {
+      throw new IllegalArgumentException(
+          "capacity, stripes and maxRetentionSeconds must be positive");
+    }
+    int n = Integer.highestOneBit(Math.max(1, Math.min(stripes, capacity)) * 2 - 1);
+    this.stripes = new Stripe[n];
+    this.stripeMask = n - 1;
+    int perStripe = (capacity + n - 1) / n;
+    long now = nowSeconds();
+    for (int i = 0; i < n; i++) {
+      this.stripes[i] = new Stripe(perStripe, now);
+    }
+    this.capacity = perStripe * n;
+    this.maxRetentionSeconds = maxRetentionSeconds;
+
+    if (startSweeper) {
+      this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "x402-replay-sweeper");
+        t.setDaemon(true);
+        return t;
+      });
+      this.sweeper.scheduleAtFixedRate(() -> sweep(nowSeconds()), 1, 1, TimeUnit.SECONDS);
+    } else {
+      this.sweeper = null;
+    }
+  }
+
+  /* ======================== API ======================== */
+
+  /**
+   * Records a nonce for a payer unless it is already recorded.
+   *
+   * @param payer       {@code 0x}-prefixed 20 byte payer address
+   * @param nonce       {@code 0x}-prefixed 32 byte nonce
+   * @param validBefore unix seconds from which the authorization is no longer valid
+   * @return the claim result
+   */
+  public Result claim(String payer, String nonce, long validBefore) {
+    return claim(payer, nonce, validBefore, nowSeconds());
+  }
+
+  Result claim(String payer, String nonce, long validBefore, long now) {
+    if (!isHex(payer, 20) || !isHex(nonce, 32)) {
+      return Result.INVALID;
+    }
+    if (validBefore <= now) {
+      return Result.INVALID;
+    }
+    long expiry = Math.min(validBefore, now + maxRetentionSeconds);
+
+    long p0 = hexLong(payer, 0, 16);
+    long p1 = hexLong(payer, 16, 16);
+    long p2 = hexLong(payer, 32, 8);
+    long n0 = hexLong(nonce, 0, 16);
+    long n1 = hexLong(nonce, 16, 16);
+    long n2 = hexLong(nonce, 32, 16);
+    long n3 = hexLong(nonce, 48, 16);
+    long hash = hash(p0, p1, p2, n0, n1, n2, n3);
+
+    Stripe stripe = stripes[(int) hash & stripeMask];
+    synchronized (stripe) {
+      return stripe.claim((int) (hash >>> 32), p0, p1, p2, n0, n1, n2, n3, expiry, now);
+    }
+  }
+
+  /**
+   * Forgets a recorded nonce, e.g. when the paid request failed and will not be settled.
+   *
+   * @param payer {@code 0x}-prefixed 20 byte payer address
+   * @param nonce {@code 0x}-prefixed 32 byte nonce
+   * @return whether the nonce was recorded
+   */
+  public boolean release(String payer, String nonce) {
+    if (!isHex(payer, 20) || !isHex(nonce, 32)) {
+      return false;
+    }
+    long p0 = hexLong(payer, 0, 16);
+    long p1 = hexLong(payer, 16, 16);
+    long p2 = hexLong(payer, 32, 8);
+    long n0 = hexLong(nonce, 0, 16);
+    long n1 = hexLong(nonce, 16, 16);
+    long n2 = hexLong(nonce, 32, 16);
+    long n3 = hexLong(nonce, 48, 16);
+    long hash = hash(p0, p1, p2, n0, n1, n2, n3);
+
+    Stripe stripe = stripes[(int) hash & stripeMask];
+    synchronized (stripe) {
+      int idx = stripe.find((int) (hash >>> 32), p0, p1, p2, n0, n1, n2, n3);
+      if (idx == NIL) {
+        return false;
+      }
+      stripe.remove(idx);
+      return true;
+    }
+  }
+
+  /**
+   * Frees all entries whose slot is due. Called every second by the sweeper thread.
+   *
+   * @param now current unix time in seconds
+   */
+  public void sweep(long now) {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.sweep(now);
+      }
+    }
+  }
+
+  /**
+   * Number of recorded nonces, including expired ones not swept yet.
+   */
+  public int size() {
+    return occupancy.get();
+  }
+
+  /**
+   * Maximum number of recorded nonces.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Upper bound on how long a nonce is kept, in seconds.
+   */
+  public long getMaxRetentionSeconds() {
+    return maxRetentionSeconds;
+  }
+
+  /**
+   * Number of claims rejected as replays.
+   */
+  public long getReplays() {
+    return replays.sum();
+  }
+
+  /**
+   * Number of claims that could not be recorded because a stripe was full.
+   */
+  public long getCapacityRejections() {
+    return capacityRejections.sum();
+  }
+
+  /**
+   * Number of entries freed by expiry.
+   */
+  public long getExpirations() {
+    return expirations.sum();
+  }
+
+  @Override
+  public void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  /* ======================== stripe ======================== */
+
+  /**
+   * Fixed-capacity chained hash table in primitive arrays. Entry indexes are stable for the
+   * lifetime of an entry, which lets the timing wheel link entries intrusively.
+   */
+  private final class Stripe {
+
+    private final int[] buckets;
+    private final int bucketMask;
+    private final long[] keys;
+    private final long[] expiry;
+    private final int[] next;       // hash chain, or free list for unused entries
+    private final int[] wheelNext;
+    private final int[] wheelPrev;
+    private final int[] wheel = new int[WHEEL_SLOTS];
+    private int free;
+    private long lastSwept;
+
+    Stripe(int capacity, long now) {
+      int bucketCount = Integer.highestOneBit(Math.max(2, capacity * 2) - 1) << 1;
+      this.buckets = new int[bucketCount];
+      this.bucketMask = bucketCount - 1;
+      this.keys = new long[capacity * KEY_LONGS];
+      this.expiry = new long[capacity];
+      this.next = new int[capacity];
+      this.wheelNext = new int[capacity];
+      this.wheelPrev = new int[capacity];
+      Arrays.fill(buckets, NIL);
+      Arrays.fill(wheel, NIL);
+      for (int i = 0; i < capacity; i++) {
+        next[i] = i + 1 < capacity ? i + 1 : NIL;
+      }
+      this.free = 0;
+      this.lastSwept = now;
+    }
+
+    Result claim(int hash, long p0, long p1, long p2, long n0, long n1, long n2, long n3,
+        long exp, long now) {
+      int idx = find(hash, p0, p1, p2, n0, n1, n2, n3);
+      if (idx != NIL) {
+        if (expiry[idx] > now) {
+          replays.increment();
+          return Result.REPLAYED;
+        }
+        // expired but not swept yet: reuse the entry
+        unlinkWheel(idx);
+        expiry[idx] = exp;
+        linkWheel(idx);
+        return Result.ACCEPTED;
+      }
+
+      if (free == NIL) {
+        capacityRejections.increment();
+        return Result.FULL;
+      }
+      idx = free;
+      free = next[idx];
+
+      int base = idx * KEY_LONGS;
+      keys[base] = p0;
+      keys[base + 1] = p1;
+      keys[base + 2] = p2;
+      keys[base + 3] = n0;
+      keys[base + 4] = n1;
+      keys[base + 5] = n2;
+      keys[base + 6] = n3;
+      expiry[idx] = exp;
+
+      int bucket = hash & bucketMask;
+      next[idx] = buckets[bucket];
+      buckets[bucket] = idx;
+      linkWheel(idx);
+      occupancy.incrementAndGet();
+      return Result.ACCEPTED;
+    }
+
+    int find(int hash, long p0, long p1, long p2, long n0, long n1, long n2, long n3) {
+      for (int idx = buckets[hash & bucketMask]; idx != NIL; idx = next[idx]) {
+        int base = idx * KEY_LONGS;
+        if (keys[base + 3] == n0 && keys[base + 4] == n1 && keys[base + 5] == n2
+            && keys[base + 6] == n3 && keys[base] == p0 && keys[base + 1] == p1
+            && keys[base + 2] == p2) {
+          return idx;
+        }
+      }
+      return NIL;
+    }
+
+    void remove(int idx) {
+      int base = idx * KEY_LONGS;
+      long hash = hash(keys[base], keys[base + 1], keys[base + 2], keys[base + 3],
+          keys[base + 4], keys[base + 5], keys[base + 6]);
+      int bucket = (int) (hash >>> 32) & bucketMask;
+      int prev = NIL;
+      for (int cur = buckets[bucket]; cur != NIL; prev = cur, cur = next[cur]) {
+        if (cur == idx) {
+          if (prev == NIL) {
+            buckets[bucket] = next[cur];
+          } else {
+            next[prev] = next[cur];
+          }
+          break;
+        }
+      }
+      unlinkWheel(idx);
+      next[idx] = free;
+      free = idx;
+      occupancy.decrementAndGet();
+    }
+
+    void sweep(long now) {
+      long from = Math.max(lastSwept + 1, now - WHEEL_SLOTS + 1);
+      for (long second = from; second <= now; second++) {
+        int slot = (int) (second & (WHEEL_SLOTS - 1));
+        int idx = wheel[slot];
+        while (idx != NIL) {
+          int following = wheelNext[idx];
+          // entries further out than one wheel turn stay for a later round
+          if (expiry[idx] <= now) {
+            remove(idx);
+            expirations.increment();
+          }
+          idx = following;
+        }
+      }
+      lastSwept = Math.max(lastSwept, now);
+    }
+
+    private void linkWheel(int idx) {
+      int slot = (int) (expiry[idx] & (WHEEL_SLOTS - 1));
+      int head = wheel[slot];
+      wheelPrev[idx] = NIL;
+      wheelNext[idx] = head;
+      if (head != NIL) {
+        wheelPrev[head] = idx;
+      }
+      wheel[slot] = idx;
+    }
+
+    private void unlinkWheel(int idx) {
+      int prev = wheelPrev[idx];
+      int following = wheelNext[idx];
+      if (prev == NIL) {
+        wheel[(int) (expiry[idx] & (WHEEL_SLOTS - 1))] = following;
+      } else {
+        wheelNext[prev] = following;
+      }
+      if (following != NIL) {
+        wheelPrev[following] = prev;
+      }
+    }
+  }
+
+  /* ======================== helpers ======================== */
+
+  private static long nowSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  static boolean isHex(String s, int bytes) {
+    if (s == null || s.length() != 2 + 2 * bytes || s.charAt(0) != '0'
+        || (s.charAt(1) != 'x' && s.charAt(1) != 'X')) {
+      return false;
+    }
+    for (int i = 2; i < s.length(); i++) {
+      if (Hex.digit(s.charAt(i)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses {@code digits} hex digits after the {@code 0x} prefix, starting at digit
+   * {@code start}. Input must have been validated with {@link #isHex}.
+   */
+  private static long hexLong(String s, int start, int digits) {
+    long v = 0;
+    for (int i = 0; i < digits; i++) {
+      v = (v << 4) | Hex.digit(s.charAt(2 + start + i));
+    }
+    return v;
+  }
+
+  /**
+   * 64 bit hash of a key; the low half selects the stripe, the high half the bucket.
+   */
+  private static long hash(long p0, long p1, long p2, long n0, long n1, long n2, long n3) {
+    long h = n0 * 0x9E3779B97F4A7C15L;
+    h = (h ^ n1) * 0x9E3779B97F4A7C15L;
+    h = (h ^ n2) * 0x9E3779B97F4A7C15L;
+    h = (h ^ n3) * 0x9E3779B97F4A7C15L;
+    h = (h ^ p0) * 0x9E3779B97F4A7C15L;
+    h = (h ^ p1) * 0x9E3779B97F4A7C15L;
+    h = (h ^ p2) * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+}
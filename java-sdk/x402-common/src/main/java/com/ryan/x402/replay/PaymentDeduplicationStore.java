@@ -0,0 +1,45 @@
+package com.ryan.x402.replay;
+
+import com.ryan.x402.replay.NonceReplayGuard.Result;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Claims ERC-3009 authorization nonces, so the same payment is served at most once before its
+ * settlement lands. {@link LocalPaymentDeduplicationStore} covers one instance; a shared store
+ * such as {@link RedisPaymentDeduplicationStore} covers all replicas behind a load balancer.
+ * <p>
+ * Methods are called on request threads, including event loops, and must not block; remote
+ * stores complete the returned future once they answered, possibly on their I/O thread, so
+ * callers should not run request work in dependent stages.
+ */
+public interface PaymentDeduplicationStore {
+
+  /**
+   * Records a nonce for a payer unless it is already recorded.
+   *
+   * @param payer       {@code 0x}-prefixed 20 byte payer address
+   * @param nonce       {@code 0x}-prefixed 32 byte nonce
+   * @param validBefore unix seconds from which the authorization is no longer valid
+   * @return the claim result; fails if the store cannot be reached
+   */
+  CompletableFuture<Result> claim(String payer, String nonce, long validBefore);
+
+  /**
+   * Forgets a recorded nonce, e.g. when the paid request failed and will not be settled.
+   *
+   * @param payer {@code 0x}-prefixed 20 byte payer address
+   * @param nonce {@code 0x}-prefixed 32 byte nonce
+   * @return whether the nonce was recorded
+   */
+  CompletableFuture<Boolean> release(String payer, String nonce);
+
+  /**
+   * Upper bound on how long a claimed nonce is kept, in seconds. An authorization valid for
+   * longer can be replayed once its nonce is forgotten.
+   *
+   * @return the retention, {@link Long#MAX_VALUE} if nonces are kept until {@code validBefore}
+   */
+  default long getMaxRetentionSeconds() {
+    return Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,430 @@
+package com.ryan.x402.replay;
+
+import com.ryan.x402.replay.NonceReplayGuard.Result;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link PaymentDeduplicationStore} shared by all instances through a Redis server, or any server
+ * speaking its protocol (RESP2).
+ * <p>
+ * A claim is {@code SET <prefix><payer>:<nonce> 1 EX <seconds> NX}, expiring at the
+ * authorization's {@code validBefore} (capped by the maximum retention); a release is
+ * {@code DEL}. Commands of all request threads share one connection and are pipelined: a writer
+ * thread drains everything queued since its last flush into a single write, a reader thread
+ * completes the futures in reply order. A broken connection fails the commands in flight and is
+ * reopened for the next batch.
+ * <p>
+ * Configure the connection before the first command.
+ */
+public class RedisPaymentDeduplicationStore implements PaymentDeduplicationStore, AutoCloseable {
+
+  /**
+   * Upper bound of commands written in one batch.
+   */
+  private static final int MAX_BATCH = 512;
+
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private final String host;
+  private final int port;
+  private final long maxRetentionSeconds;
+
+  private String keyPrefix = "x402:nonce:";
+  private String password;
+  private int database;
+  private Duration connectTimeout = Duration.ofSeconds(2);
+  private Duration commandTimeout = Duration.ofSeconds(1);
+
+  private final BlockingQueue<Command<?>> queue;
+  private final Thread writer;
+  private volatile boolean closed;
+
+  /**
+   * Only touched by the writer thread.
+   */
+  private Connection connection;
+
+  /**
+   * Creates a store and starts its writer thread; the connection is opened on the first command.
+   *
+   * @param host                server host
+   * @param port                server port
+   * @param maxRetentionSeconds upper bound on how long a nonce is kept, even if its
+   *                            {@code validBefore} is further out
+   * @param queueCapacity       commands waiting to be written; further commands fail at once
+   */
+  public RedisPaymentDeduplicationStore(String host, int port, long maxRetentionSeconds,
+      int queueCapacity) {
+    if (maxRetentionSeconds < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("maxRetentionSeconds and queueCapacity must be positive");
+    }
+    this.host = Objects.requireNonNull(host);
+    this.port = port;
+    this.maxRetentionSeconds = maxRetentionSeconds;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.writer = new Thread(this::writeLoop, "x402-dedup-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Prefix of the nonce keys, {@code x402:nonce:} by default.
+   */
+  public void setKeyPrefix(String keyPrefix) {
+    this.keyPrefix = Objects.requireNonNull(keyPrefix);
+  }
+
+  /**
+   * Password sent with {@code AUTH} after connecting, or {@code null} for none.
+   */
+  public void setPassword(String password) {
+    this.password = password;
+  }
+
+  /**
+   * Database selected after connecting, 0 by default.
+   */
+  public void setDatabase(int database) {
+    this.database = database;
+  }
+
+  /**
+   * Sets the connect timeout, 2s by default, and how long a command may wait for its reply, 1s by
+   * default. An expired command fails with a {@link java.util.concurrent.TimeoutException}.
+   */
+  public void setTimeouts(Duration connectTimeout, Duration commandTimeout) {
+    this.connectTimeout = Objects.requireNonNull(connectTimeout);
+    this.commandTimeout = Objects.requireNonNull(commandTimeout);
+  }
+
+  /* ======================== API ======================== */
+
+  @Override
+  public CompletableFuture<Result> claim(String payer, String nonce, long validBefore) {
+    if (!NonceReplayGuard.isHex(payer, 20) || !NonceReplayGuard.isHex(nonce, 32)) {
+      return CompletableFuture.completedFuture(Result.INVALID);
+    }
+    long ttl = Math.min(validBefore - System.currentTimeMillis() / 1000, maxRetentionSeconds);
+    if (ttl < 1) {
+      return CompletableFuture.completedFuture(Result.INVALID);
+    }
+    // OK if the key was set, a nil bulk reply if it already existed
+    return submit(reply -> reply == null ? Result.REPLAYED : Result.ACCEPTED,
+        "SET", key(payer, nonce), "1", "EX", Long.toString(ttl), "NX");
+  }
+
+  @Override
+  public CompletableFuture<Boolean> release(String payer, String nonce) {
+    if (!NonceReplayGuard.isHex(payer, 20) || !NonceReplayGuard.isHex(nonce, 32)) {
+      return CompletableFuture.completedFuture(false);
+    }
+    return submit(reply -> reply instanceof Long deleted && deleted > 0, "DEL", key(payer, nonce));
+  }
+
+  @Override
+  public long getMaxRetentionSeconds() {
+    return maxRetentionSeconds;
+  }
+
+  /**
+   * Stops the writer thread, closes the connection and fails all pending commands.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    writer.interrupt();
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<Command<?>> pending = new ArrayList<>();
+    queue.drainTo(pending);
+    IOException closedException = new IOException("Deduplication store closed");
+    pending.forEach(cmd -> cmd.fail(closedException));
+  }
+
+  /* ======================== pipeline ======================== */
+
+  private String key(String payer, String nonce) {
+    return keyPrefix + payer.toLowerCase(Locale.ROOT) + ':' + nonce.toLowerCase(Locale.ROOT);
+  }
+
+  private <T> CompletableFuture<T> submit(Function<Object, T> mapper, String... args) {
+    Command<T> cmd = new Command<>(args, mapper);
+    if (closed) {
+      cmd.fail(new IOException("Deduplication store closed"));
+    } else if (!queue.offer(cmd)) {
+      cmd.fail(new IOException("Deduplication store queue is full"));
+    }
+    return cmd.future.orTimeout(commandTimeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void writeLoop() {
+    List<Command<?>> batch = new ArrayList<>();
+    while (!closed) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      try {
+        if (connection == null || connection.broken) {
+          connection = connect();
+        }
+        connection.send(batch);
+      } catch (IOException e) {
+        if (connection != null) {
+          connection.fail(e);
+          connection = null;
+        }
+        batch.forEach(cmd -> cmd.fail(e));
+      }
+      batch.clear();
+    }
+    if (connection != null) {
+      connection.fail(new IOException("Deduplication store closed"));
+    }
+  }
+
+  private Connection connect() throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.connect(new InetSocketAddress(host, port), (int) connectTimeout.toMillis());
+      socket.setSoTimeout((int) connectTimeout.toMillis());
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+      InputStream in = new BufferedInputStream(socket.getInputStream(), 8192);
+      // handshake before the reader thread owns the input
+      int expected = 0;
+      if (password != null) {
+        writeCommand(out, "AUTH", password);
+        expected++;
+      }
+      if (database != 0) {
+        writeCommand(out, "SELECT", Integer.toString(database));
+        expected++;
+      }
+      out.flush();
+      for (int i = 0; i < expected; i++) {
+        readReply(in);
+      }
+      socket.setSoTimeout(0);
+      return new Connection(socket, out, in);
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * One server connection. The writer thread sends, the connection's reader thread completes the
+   * commands in the order they were sent.
+   */
+  private static final class Connection {
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private final Queue<Command<?>> inflight = new ConcurrentLinkedQueue<>();
+    private volatile boolean broken;
+
+    Connection(Socket socket, OutputStream out, InputStream in) {
+      this.socket = socket;
+      this.out = out;
+      this.in = in;
+      Thread reader = new Thread(this::readLoop, "x402-dedup-reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    void send(List<Command<?>> batch) throws IOException {
+      // registered before writing, a reply can arrive before flush returns
+      inflight.addAll(batch);
+      for (Command<?> cmd : batch) {
+        writeCommand(out, cmd.args);
+      }
+      out.flush();
+    }
+
+    private void readLoop() {
+      try {
+        while (!broken) {
+          Object reply;
+          IOException error = null;
+          try {
+            reply = readReply(in);
+          } catch (ServerError e) {
+            reply = null;
+            error = e;
+          }
+          Command<?> cmd = inflight.poll();
+          if (cmd == null) {
+            throw new IOException("Unexpected reply from deduplication store");
+          }
+          if (error != null) {
+            cmd.fail(error);
+          } else {
+            cmd.complete(reply);
+          }
+        }
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    /**
+     * Closes the connection and fails every command still waiting for a reply.
+     */
+    void fail(IOException cause) {
+      broken = true;
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+        // already failing
+      }
+      for (Command<?> cmd = inflight.poll(); cmd != null; cmd = inflight.poll()) {
+        cmd.fail(cause);
+      }
+    }
+  }
+
+  private static final class Command<T> {
+
+    final String[] args;
+    final Function<Object, T> mapper;
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    Command(String[] args, Function<Object, T> mapper) {
+      this.args = args;
+      this.mapper = mapper;
+    }
+
+    void complete(Object reply) {
+      try {
+        future.complete(mapper.apply(reply));
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    void fail(Throwable cause) {
+      future.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Error reply of the server.
+   */
+  private static final class ServerError extends IOException {
+
+    ServerError(String message) {
+      super(message);
+    }
+  }
+
+  /* ======================== RESP ======================== */
+
+  private static void writeCommand(OutputStream out, String... args) throws IOException {
+    writeHeader(out, '*', args.length);
+    for (String arg : args) {
+      byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+      writeHeader(out, '$', bytes.length);
+      out.write(bytes);
+      out.write(CRLF);
+    }
+  }
+
+  private static void writeHeader(OutputStream out, char type, int n) throws IOException {
+    out.write(type);
+    out.write(Integer.toString(n).getBytes(StandardCharsets.US_ASCII));
+    out.write(CRLF);
+  }
+
+  /**
+   * Reads one reply: a {@code String} for simple strings and bulk strings, a {@code Long} for
+   * integers, {@code null} for nil and a {@code List} for arrays.
+   *
+   * @throws ServerError for an error reply
+   */
+  private static Object readReply(InputStream in) throws IOException {
+    int type = in.read();
+    String line = readLine(in);
+    switch (type) {
+      case '+':
+        return line;
+      case '-':
+        throw new ServerError(line);
+      case ':':
+        return parseLong(line);
+      case '$': {
+        int length = (int) parseLong(line);
+        if (length < 0) {
+          return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length || in.read() != '\r' || in.read() != '\n') {
+          throw new IOException("Truncated reply from deduplication store");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+      case '*': {
+        int length = (int) parseLong(line);
+        if (length < 0) {
+          return null;
+        }
+        List<Object> items = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+          items.add(readReply(in));
+        }
+        return items;
+      }
+      case -1:
+        throw new IOException("Deduplication store closed the connection");
+      default:
+        throw new IOException("Malformed reply from deduplication store");
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int c = in.read(); c != '\r'; c = in.read()) {
+      if (c == -1) {
+        throw new IOException("Deduplication store closed the connection");
+      }
+      sb.append((char) c);
+    }
+    if (in.read() != '\n') {
+      throw new IOException("Malformed reply from deduplication store");
+    }
+    return sb.toString();
+  }
+
+  private static long parseLong(String line) throws IOException {
+    try {
+      return Long.parseLong(line);
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed reply from deduplication store", e);
+    }
+  }
+}
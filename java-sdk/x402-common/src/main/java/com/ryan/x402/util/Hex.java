@@ -0,0 +1,52 @@
+package com.ryan.x402.util;
+
+/**
+ * Allocation-free helpers for {@code 0x}-prefixed hex strings as used for EVM addresses, nonces
+ * and signatures.
+ */
+public final class Hex {
+
+  private Hex() {
+  }
+
+  /**
+   * Decodes a {@code 0x}-prefixed hex string of exactly {@code len} bytes into {@code dst}.
+   *
+   * @param hex the hex string, e.g. an address or a nonce
+   * @param dst destination array
+   * @param off offset in {@code dst}
+   * @param len expected number of decoded bytes
+   * @return {@code false} if the string is not {@code 0x} followed by {@code 2 * len} hex digits
+   */
+  public static boolean decode(String hex, byte[] dst, int off, int len) {
+    if (hex == null || hex.length() != 2 + 2 * len || hex.charAt(0) != '0'
+        || (hex.charAt(1) != 'x' && hex.charAt(1) != 'X')) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      int hi = digit(hex.charAt(2 + 2 * i));
+      int lo = digit(hex.charAt(3 + 2 * i));
+      if (hi < 0 || lo < 0) {
+        return false;
+      }
+      dst[off + i] = (byte) ((hi << 4) | lo);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of a hex digit, or -1 if the character is not a hex digit.
+   */
+  public static int digit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+}
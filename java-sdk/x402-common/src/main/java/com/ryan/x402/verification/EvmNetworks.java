@@ -0,0 +1,36 @@
+package com.ryan.x402.verification;
+
+import java.util.Map;
+
+/**
+ * Chain ids of the EVM networks known to x402, keyed by x402 network name.
+ */
+public final class EvmNetworks {
+
+  private static final Map<String, Long> CHAIN_IDS = Map.ofEntries(
+      Map.entry("base", 8453L),
+      Map.entry("base-sepolia", 84532L),
+      Map.entry("avalanche", 43114L),
+      Map.entry("avalanche-fuji", 43113L),
+      Map.entry("iotex", 4689L),
+      Map.entry("sei", 1329L),
+      Map.entry("sei-testnet", 1328L),
+      Map.entry("polygon", 137L),
+      Map.entry("polygon-amoy", 80002L),
+      Map.entry("peaq", 3338L)
+  );
+
+  private EvmNetworks() {
+  }
+
+  /**
+   * Returns the chain id of a network.
+   *
+   * @param network x402 network name, e.g. "base-sepolia"
+   * @return the chain id, or -1 if the network is unknown
+   */
+  public static long chainId(String network) {
+    Long id = network != null ? CHAIN_IDS.get(network) : null;
+    return id != null ? id : -1;
+  }
+}
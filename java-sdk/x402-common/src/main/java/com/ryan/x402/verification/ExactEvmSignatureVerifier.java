@@ -0,0 +1,402 @@
+package com.ryan.x402.verification;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.util.Hex;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+
+/**
+ * In-process verifier for "exact" EVM payments signed as ERC-3009
+ * {@code TransferWithAuthorization} EIP-712 typed data.
+ * <p>
+ * The EIP-712 domain is built from {@code extra.name}/{@code extra.version} of the requirements,
+ * the chain id of the network and the asset contract address. Domain separators are computed once
+ * per domain. The signer is recovered from the secp256k1 signature and compared with
+ * {@code authorization.from}; high-s signatures are rejected like OpenZeppelin's ECDSA does.
+ * <p>
+ * Recovered public keys are cached per payer address. Repeat payers are then checked with a plain
+ * ECDSA verification against the cached point, which skips point decompression and reuses the
+ * point's precomputed multiples. That check also requires the y parity of the signature point to
+ * match {@code v}, so it accepts exactly the signatures that recovery and {@code ecrecover}
+ * accept. Only {@code v} of 27 or 28 is accepted, as by the token contracts.
+ * <p>
+ * This only proves who signed the authorization. Balance and nonce state are on-chain and still
+ * need the facilitator (or settlement) to be checked. Instances are thread-safe.
+ */
+public class ExactEvmSignatureVerifier {
+
+  /**
+   * Outcome of a signature check.
+   */
+  public enum Result {
+    /**
+     * The signature recovers to {@code authorization.from}.
+     */
+    VALID,
+    /**
+     * The signature is malformed or recovers to another address.
+     */
+    INVALID,
+    /**
+     * The payment cannot be checked offline, e.g. a smart wallet signature, an unknown network or
+     * an asset given as a symbol instead of a contract address.
+     */
+    UNVERIFIABLE
+  }
+
+  public static final String INVALID_SIGNATURE = "invalid_exact_evm_payload_signature";
+
+  private static final X9ECParameters SECP256K1 = CustomNamedCurves.getByName("secp256k1");
+  private static final ECCurve CURVE = SECP256K1.getCurve();
+  private static final ECPoint G = SECP256K1.getG();
+  private static final BigInteger N = SECP256K1.getN();
+  private static final BigInteger HALF_N = N.shiftRight(1);
+
+  private static final byte[] DOMAIN_TYPEHASH = keccak(
+      "EIP712Domain(string name,string version,uint256 chainId,address verifyingContract)");
+  private static final byte[] TRANSFER_TYPEHASH = keccak(
+      "TransferWithAuthorization(address from,address to,uint256 value,uint256 validAfter,"
+          + "uint256 validBefore,bytes32 nonce)");
+
+  private static final int WORD = 32;
+  private static final int ADDRESS = 20;
+  private static final int SIGNATURE = 65;
+
+  private final ConcurrentHashMap<DomainKey, byte[]> domainSeparators = new ConcurrentHashMap<>();
+
+  private final int publicKeyCacheSize;
+  private final ConcurrentHashMap<String, ECPoint> publicKeys = new ConcurrentHashMap<>();
+
+  private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  /**
+   * Creates a verifier caching up to 4096 payer public keys.
+   */
+  public ExactEvmSignatureVerifier() {
+    this(4096);
+  }
+
+  /**
+   * Creates a verifier.
+   *
+   * @param publicKeyCacheSize number of payer public keys to cache, 0 to always recover
+   */
+  public ExactEvmSignatureVerifier(int publicKeyCacheSize) {
+    this.publicKeyCacheSize = publicKeyCacheSize;
+  }
+
+  /**
+   * Verifies the signature of a decoded X-PAYMENT header.
+   *
+   * @param payload      the decoded payment
+   * @param requirements the requirements providing the EIP-712 domain
+   * @return the verification result
+   */
+  public Result verify(PaymentPayload payload, PaymentRequirements requirements) {
+    ExactSchemePayload exact;
+    try {
+      exact = payload.exactPayload();
+    } catch (IllegalArgumentException e) {
+      return Result.INVALID;
+    }
+    if (exact == null) {
+      return Result.INVALID;
+    }
+    return verify(exact, requirements.network, requirements.asset, requirements.extra);
+  }
+
+  /**
+   * Verifies an ERC-3009 authorization signature.
+   *
+   * @param exact   the "exact" scheme payload
+   * @param network x402 network name
+   * @param asset   token contract address, the EIP-712 verifying contract
+   * @param extra   requirements extra, providing the EIP-712 domain {@code name} and
+   *                {@code version}
+   * @return the verification result
+   */
+  public Result verify(ExactSchemePayload exact, String network, String asset,
+      Map<String, Object> extra) {
+    Authorization auth = exact.authorization;
+    if (auth == null || exact.signature == null) {
+      return Result.INVALID;
+    }
+    if (exact.signature.length() != 2 + 2 * SIGNATURE) {
+      // ERC-1271 / ERC-6492 smart wallet signatures need on-chain state
+      return Result.UNVERIFIABLE;
+    }
+    byte[] domainSeparator = domainSeparator(network, asset, extra);
+    if (domainSeparator == null) {
+      return Result.UNVERIFIABLE;
+    }
+
+    Scratch s = scratch.get();
+    if (!Hex.decode(exact.signature, s.signature, 0, SIGNATURE)
+        || !Hex.decode(auth.from, s.from, 0, ADDRESS)
+        || !encodeStruct(auth, s.struct)) {
+      return Result.INVALID;
+    }
+
+    // digest = keccak256(0x1901 || domainSeparator || hashStruct(message))
+    s.message[0] = 0x19;
+    s.message[1] = 0x01;
+    System.arraycopy(domainSeparator, 0, s.message, 2, WORD);
+    keccak(s.digest, s.struct, 0, s.struct.length, s.message, 2 + WORD);
+    keccak(s.digest, s.message, 0, s.message.length, s.hash, 0);
+
+    ECPoint publicKey = publicKeyCacheSize > 0 ? publicKeys.get(auth.from) : null;
+    if (publicKey != null) {
+      // the address is a hash of the key, so the cached key is the only one that can match
+      return verifies(s, publicKey) ? Result.VALID : Result.INVALID;
+    }
+    publicKey = recover(s);
+    if (publicKey == null) {
+      return Result.INVALID;
+    }
+    if (publicKeyCacheSize > 0) {
+      if (publicKeys.size() >= publicKeyCacheSize) {
+        evictOne();
+      }
+      publicKeys.put(auth.from, publicKey);
+    }
+    return Result.VALID;
+  }
+
+  /**
+   * Returns the EIP-712 domain separator for an asset, computing it on first use.
+   *
+   * @return the separator, or {@code null} if the domain cannot be determined
+   */
+  byte[] domainSeparator(String network, String asset, Map<String, Object> extra) {
+    if (extra == null || !(extra.get("name") instanceof String name)
+        || !(extra.get("version") instanceof String version)) {
+      return null;
+    }
+    long chainId = EvmNetworks.chainId(network);
+    if (chainId < 0 || asset == null) {
+      return null;
+    }
+    DomainKey key = new DomainKey(name, version, chainId, asset);
+    byte[] separator = domainSeparators.get(key);
+    if (separator == null) {
+      separator = computeDomainSeparator(key);
+      if (separator == null) {
+        return null;
+      }
+      domainSeparators.putIfAbsent(key, separator);
+    }
+    return separator;
+  }
+
+  /**
+   * Removes one cached public key to make room for a new one. The map's iteration order is
+   * effectively arbitrary, so this approximates random eviction without any bookkeeping on hits.
+   */
+  private void evictOne() {
+    Iterator<String> payers = publicKeys.keySet().iterator();
+    if (payers.hasNext()) {
+      payers.next();
+      payers.remove();
+    }
+  }
+
+  /* ======================== encoding ======================== */
+
+  private static byte[] computeDomainSeparator(DomainKey key) {
+    byte[] encoded = new byte[5 * WORD];
+    System.arraycopy(DOMAIN_TYPEHASH, 0, encoded, 0, WORD);
+    System.arraycopy(keccak(key.name()), 0, encoded, WORD, WORD);
+    System.arraycopy(keccak(key.version()), 0, encoded, 2 * WORD, WORD);
+    writeLong(key.chainId(), encoded, 3 * WORD);
+    if (!Hex.decode(key.verifyingContract(), encoded, 5 * WORD - ADDRESS, ADDRESS)) {
+      return null;
+    }
+    byte[] out = new byte[WORD];
+    keccak(new KeccakDigest(256), encoded, 0, encoded.length, out, 0);
+    return out;
+  }
+
+  /**
+   * abi.encode(TYPEHASH, from, to, value, validAfter, validBefore, nonce)
+   */
+  private static boolean encodeStruct(Authorization auth, byte[] out) {
+    System.arraycopy(TRANSFER_TYPEHASH, 0, out, 0, WORD);
+    // addresses are left-padded with zeros, the padding is never written
+    return Hex.decode(auth.from, out, 2 * WORD - ADDRESS, ADDRESS)
+        && Hex.decode(auth.to, out, 3 * WORD - ADDRESS, ADDRESS)
+        && writeUint256(auth.value, out, 3 * WORD)
+        && writeUint256(auth.validAfter, out, 4 * WORD)
+        && writeUint256(auth.validBefore, out, 5 * WORD)
+        && Hex.decode(auth.nonce, out, 6 * WORD, WORD);
+  }
+
+  /**
+   * Writes a decimal string as a big-endian 32 byte word.
+   */
+  private static boolean writeUint256(String decimal, byte[] out, int off) {
+    if (decimal == null || decimal.isEmpty()) {
+      return false;
+    }
+    int len = decimal.length();
+    for (int i = 0; i < len; i++) {
+      char c = decimal.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    if (len <= 18) {
+      writeLong(Long.parseLong(decimal), out, off);
+      return true;
+    }
+    byte[] magnitude = new BigInteger(decimal).toByteArray();
+    int start = magnitude[0] == 0 ? 1 : 0;
+    int size = magnitude.length - start;
+    if (size > WORD) {
+      return false;
+    }
+    for (int i = 0; i < WORD - size; i++) {
+      out[off + i] = 0;
+    }
+    System.arraycopy(magnitude, start, out, off + WORD - size, size);
+    return true;
+  }
+
+  private static void writeLong(long value, byte[] out, int off) {
+    for (int i = 0; i < WORD - 8; i++) {
+      out[off + i] = 0;
+    }
+    for (int i = 0; i < 8; i++) {
+      out[off + WORD - 1 - i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  /* ======================== secp256k1 ======================== */
+
+  /**
+   * Recovers the public key from {@code s.signature} over {@code s.hash}.
+   *
+   * @return the public key if its address is {@code s.from}, otherwise {@code null}
+   */
+  private static ECPoint recover(Scratch s) {
+    byte[] sig = s.signature;
+    int recId = recoveryId(sig);
+    BigInteger r = new BigInteger(1, sig, 0, WORD);
+    BigInteger sv = new BigInteger(1, sig, WORD, WORD);
+    if (recId < 0 || !inRange(r, sv)) {
+      return null;
+    }
+
+    // R = point with x = r and the y parity given by recId (r < n < p, so no overflow case)
+    ECPoint rPoint;
+    try {
+      s.compressed[0] = (byte) (recId == 1 ? 0x03 : 0x02);
+      System.arraycopy(sig, 0, s.compressed, 1, WORD);
+      rPoint = CURVE.decodePoint(s.compressed);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+
+    // Q = r^-1 (s * R - e * G)
+    BigInteger e = new BigInteger(1, s.hash);
+    BigInteger rInv = r.modInverse(N);
+    BigInteger u1 = N.subtract(e).multiply(rInv).mod(N);
+    BigInteger u2 = sv.multiply(rInv).mod(N);
+    ECPoint q = ECAlgorithms.sumOfTwoMultiplies(G, u1, rPoint, u2).normalize();
+    if (q.isInfinity()) {
+      return null;
+    }
+
+    // address = keccak256(x || y)[12:]
+    byte[] publicKey = q.getEncoded(false); // 0x04 || x || y
+    keccak(s.digest, publicKey, 1, 2 * WORD, s.hash, 0);
+    for (int i = 0; i < ADDRESS; i++) {
+      if (s.hash[WORD - ADDRESS + i] != s.from[i]) {
+        return null;
+      }
+    }
+    return q;
+  }
+
+  /**
+   * ECDSA verification of {@code s.signature} over {@code s.hash} against a known key, with the
+   * additional checks recovery implies: {@code R'} must have x equal to r (not only modulo n) and
+   * the y parity given by {@code v}. Otherwise a signature with a flipped {@code v}, which recovers
+   * to another address on-chain, would pass here.
+   */
+  private static boolean verifies(Scratch s, ECPoint publicKey) {
+    byte[] sig = s.signature;
+    int recId = recoveryId(sig);
+    BigInteger r = new BigInteger(1, sig, 0, WORD);
+    BigInteger sv = new BigInteger(1, sig, WORD, WORD);
+    if (recId < 0 || !inRange(r, sv)) {
+      return false;
+    }
+    // R' = (e * s^-1) G + (r * s^-1) Q
+    BigInteger e = new BigInteger(1, s.hash);
+    BigInteger sInv = sv.modInverse(N);
+    BigInteger u1 = e.multiply(sInv).mod(N);
+    BigInteger u2 = r.multiply(sInv).mod(N);
+    ECPoint point = ECAlgorithms.sumOfTwoMultiplies(G, u1, publicKey, u2).normalize();
+    return !point.isInfinity()
+        && point.getAffineXCoord().toBigInteger().equals(r)
+        && point.getAffineYCoord().testBitZero() == (recId == 1);
+  }
+
+  /**
+   * Returns the recovery id of a signature, or -1 unless {@code v} is 27 or 28.
+   */
+  private static int recoveryId(byte[] sig) {
+    int v = sig[64] & 0xff;
+    return v == 27 || v == 28 ? v - 27 : -1;
+  }
+
+  private static boolean inRange(BigInteger r, BigInteger s) {
+    return r.signum() > 0 && r.compareTo(N) < 0 && s.signum() > 0 && s.compareTo(HALF_N) <= 0;
+  }
+
+  /* ======================== keccak ======================== */
+
+  private static byte[] keccak(String text) {
+    byte[] in = text.getBytes(StandardCharsets.UTF_8);
+    byte[] out = new byte[WORD];
+    keccak(new KeccakDigest(256), in, 0, in.length, out, 0);
+    return out;
+  }
+
+  private static void keccak(KeccakDigest digest, byte[] in, int off, int len, byte[] out,
+      int outOff) {
+    digest.reset();
+    digest.update(in, off, len);
+    digest.doFinal(out, outOff);
+  }
+
+  /**
+   * Per-thread buffers, so a verification allocates only inside the EC arithmetic.
+   */
+  private static final class Scratch {
+
+    final KeccakDigest digest = new KeccakDigest(256);
+    final byte[] signature = new byte[SIGNATURE];
+    final byte[] from = new byte[ADDRESS];
+    final byte[] struct = new byte[7 * WORD];
+    final byte[] message = new byte[2 + 2 * WORD];
+    final byte[] hash = new byte[WORD];
+    final byte[] compressed = new byte[1 + WORD];
+  }
+
+  private record DomainKey(String name, String version, long chainId, String verifyingContract) {
+
+  }
+}
@@ -0,0 +1,152 @@
+package com.ryan.x402.verification;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+
+/**
+ * Local checks that reject obviously invalid "exact" payments before any facilitator call.
+ * <p>
+ * Only fields that can be compared against the requirements are checked here; signature, balance
+ * and nonce state are left to the facilitator. Rejection reasons use the invalid reason codes of
+ * the x402 facilitator API.
+ */
+public final class PaymentPreVerifier {
+
+  public static final String INVALID_X402_VERSION = "invalid_x402_version";
+  public static final String INVALID_SCHEME = "invalid_scheme";
+  public static final String INVALID_NETWORK = "invalid_network";
+  public static final String INVALID_PAYLOAD = "invalid_payload";
+  public static final String RECIPIENT_MISMATCH = "invalid_exact_evm_payload_recipient_mismatch";
+  public static final String INVALID_VALUE = "invalid_exact_evm_payload_authorization_value";
+  public static final String INVALID_VALID_AFTER =
+      "invalid_exact_evm_payload_authorization_valid_after";
+  public static final String INVALID_VALID_BEFORE =
+      "invalid_exact_evm_payload_authorization_valid_before";
+
+  private PaymentPreVerifier() {
+  }
+
+  /**
+   * Checks a decoded payment against the requirements.
+   *
+   * @param payload      the decoded X-PAYMENT header
+   * @param requirements the requirements of the endpoint
+   * @param nowSeconds   current unix time in seconds
+   * @return the invalid reason, or {@code null} if the payment passes the local checks
+   */
+  public static String check(PaymentPayload payload, PaymentRequirements requirements,
+      long nowSeconds) {
+    if (payload.x402Version != 1) {
+      return INVALID_X402_VERSION;
+    }
+    if (!requirements.scheme.equals(payload.scheme)) {
+      return INVALID_SCHEME;
+    }
+    if (!requirements.network.equals(payload.network)) {
+      return INVALID_NETWORK;
+    }
+
+    ExactSchemePayload exact;
+    try {
+      exact = payload.exactPayload();
+    } catch (IllegalArgumentException e) {
+      return INVALID_PAYLOAD;
+    }
+    if (exact == null || exact.signature == null || exact.authorization == null) {
+      return INVALID_PAYLOAD;
+    }
+    Authorization auth = exact.authorization;
+    if (auth.from == null || auth.nonce == null) {
+      return INVALID_PAYLOAD;
+    }
+
+    if (auth.to == null || !auth.to.equalsIgnoreCase(requirements.payTo)) {
+      return RECIPIENT_MISMATCH;
+    }
+
+    int cmp = compareUnsigned(auth.value, requirements.maxAmountRequired);
+    if (cmp == Integer.MIN_VALUE) {
+      return INVALID_PAYLOAD;
+    }
+    if (cmp < 0) {
+      return INVALID_VALUE;
+    }
+
+    long validAfter = parseSeconds(auth.validAfter);
+    long validBefore = parseSeconds(auth.validBefore);
+    if (validAfter < 0 || validBefore < 0) {
+      return INVALID_PAYLOAD;
+    }
+    if (validAfter > nowSeconds) {
+      return INVALID_VALID_AFTER;
+    }
+    // settlement must still be possible after the client's maximum timeout
+    if (validBefore < nowSeconds + requirements.maxTimeoutSeconds) {
+      return INVALID_VALID_BEFORE;
+    }
+    return null;
+  }
+
+  /**
+   * Compares two non-negative decimal integers without allocating.
+   *
+   * @return negative, zero or positive like {@link Comparable#compareTo}, or
+   * {@link Integer#MIN_VALUE} if either value is not a decimal integer
+   */
+  static int compareUnsigned(String a, String b) {
+    if (a == null || b == null) {
+      return Integer.MIN_VALUE;
+    }
+    int ai = skipLeadingZeros(a);
+    int bi = skipLeadingZeros(b);
+    if (ai < 0 || bi < 0) {
+      return Integer.MIN_VALUE;
+    }
+    int alen = a.length() - ai;
+    int blen = b.length() - bi;
+    if (alen != blen) {
+      return alen < blen ? -1 : 1;
+    }
+    for (int i = 0; i < alen; i++) {
+      int d = a.charAt(ai + i) - b.charAt(bi + i);
+      if (d != 0) {
+        return d;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the index of the first significant digit, or -1 if the string is not all digits.
+   */
+  private static int skipLeadingZeros(String s) {
+    int len = s.length();
+    if (len == 0) {
+      return -1;
+    }
+    int start = -1;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      if (start < 0 && c != '0') {
+        start = i;
+      }
+    }
+    return start < 0 ? len : start;
+  }
+
+  private static long parseSeconds(String s) {
+    if (s == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(s);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.ryan.x402.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("deprecation")
+class PaymentPayloadTest {
+
+  private static final String EXACT_JSON = "{\"x402Version\":1,\"scheme\":\"exact\","
+      + "\"network\":\"base-sepolia\",\"payload\":{\"signature\":\"0xsig\",\"authorization\":{"
+      + "\"from\":\"0xfrom\",\"to\":\"0xto\",\"value\":\"10000\",\"validAfter\":\"0\","
+      + "\"validBefore\":\"4102444800\",\"nonce\":\"0xnonce\"}}}";
+
+  @Test
+  void exactHeaderBindsTheTypedPayload() throws Exception {
+    PaymentPayload decoded = PaymentPayload.fromHeader(header(EXACT_JSON));
+
+    assertThat(decoded.isExactPayloadBound()).isTrue();
+    assertThat(decoded.exactPayload().signature).isEqualTo("0xsig");
+    assertThat(decoded.exactPayload().authorization.nonce).isEqualTo("0xnonce");
+  }
+
+  @Test
+  void exactHeaderStillFillsThePayloadMap() throws Exception {
+    PaymentPayload decoded = PaymentPayload.fromHeader(header(EXACT_JSON));
+
+    assertThat(decoded.payload).isNotNull().containsEntry("signature", "0xsig");
+    assertThat(decoded.payload.get("authorization"))
+        .isEqualTo(Map.of("from", "0xfrom", "to", "0xto", "value", "10000", "validAfter", "0",
+            "validBefore", "4102444800", "nonce", "0xnonce"));
+    assertThat(decoded.payloadMap()).isSameAs(decoded.payload);
+    assertThatThrownBy(() -> decoded.payload.put("signature", "0xother"))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  void payloadFieldOrderDoesNotMatter() throws Exception {
+    String json = "{\"payload\":{\"signature\":\"0xsig\"},\"scheme\":\"exact\",\"x402Version\":1}";
+
+    PaymentPayload decoded = PaymentPayload.fromHeader(header(json));
+
+    assertThat(decoded.isExactPayloadBound()).isTrue();
+    assertThat(decoded.exactPayload().signature).isEqualTo("0xsig");
+  }
+
+  @Test
+  void otherSchemesKeepTheGenericMap() throws Exception {
+    String json = "{\"x402Version\":1,\"scheme\":\"upto\",\"payload\":{\"amount\":\"5\"}}";
+
+    PaymentPayload decoded = PaymentPayload.fromHeader(header(json));
+
+    assertThat(decoded.isExactPayloadBound()).isFalse();
+    assertThat(decoded.payload).containsEntry("amount", "5");
+  }
+
+  @Test
+  void replacedPayloadWins() throws Exception {
+    PaymentPayload decoded = PaymentPayload.fromHeader(header(EXACT_JSON));
+
+    decoded.payload = Map.of("signature", "0xreplaced");
+
+    assertThat(decoded.isExactPayloadBound()).isFalse();
+    assertThat(decoded.exactPayload().signature).isEqualTo("0xreplaced");
+  }
+
+  @Test
+  void oversizedHeaderIsRejectedBeforeDecoding() {
+    assertThatThrownBy(() -> PaymentPayload.fromHeader("x".repeat(101), 100))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void malformedHeaderIsRejected() {
+    assertThatThrownBy(() -> PaymentPayload.fromHeader(header("{\"scheme\":")))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static String header(String json) {
+    return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
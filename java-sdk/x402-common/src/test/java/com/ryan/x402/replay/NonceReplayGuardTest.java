@@ -0,0 +1,142 @@
+package com.ryan.x402.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ryan.x402.replay.NonceReplayGuard.Result;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class NonceReplayGuardTest {
+
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+  private static final String OTHER_PAYER = "0x857b06519E91e3A54538791bDbb0E22373e36b66";
+  // the guard starts its wheel at the wall clock, the test clock runs ahead of it
+  private final NonceReplayGuard guard = new NonceReplayGuard(64, 600, 4, false);
+  private final long start = System.currentTimeMillis() / 1000 + 1;
+
+  @AfterEach
+  void close() {
+    guard.close();
+  }
+
+  @Test
+  void replayWithinValidityIsRejected() {
+    assertThat(guard.claim(PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+
+    assertThat(guard.claim(PAYER, nonce(1), start + 60, start + 59)).isEqualTo(Result.REPLAYED);
+    assertThat(guard.getReplays()).isEqualTo(1);
+  }
+
+  @Test
+  void nonceIsUsableAgainAfterValidBeforeEvenBeforeSweep() {
+    assertThat(guard.claim(PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+
+    assertThat(guard.claim(PAYER, nonce(1), start + 120, start + 60)).isEqualTo(Result.ACCEPTED);
+    assertThat(guard.size()).isEqualTo(1);
+  }
+
+  @Test
+  void retentionIsCappedAtMaxRetention() {
+    long validBefore = start + 86_400;
+    assertThat(guard.claim(PAYER, nonce(1), validBefore, start)).isEqualTo(Result.ACCEPTED);
+
+    assertThat(guard.claim(PAYER, nonce(1), validBefore, start + 599)).isEqualTo(Result.REPLAYED);
+    assertThat(guard.claim(PAYER, nonce(1), validBefore, start + 600)).isEqualTo(Result.ACCEPTED);
+  }
+
+  @Test
+  void sweepFreesExpiredEntriesOnly() {
+    guard.sweep(start);
+    guard.claim(PAYER, nonce(1), start + 10, start);
+    guard.claim(PAYER, nonce(2), start + 20, start);
+
+    guard.sweep(start + 10);
+
+    assertThat(guard.size()).isEqualTo(1);
+    assertThat(guard.getExpirations()).isEqualTo(1);
+    assertThat(guard.claim(PAYER, nonce(2), start + 20, start + 10)).isEqualTo(Result.REPLAYED);
+  }
+
+  @Test
+  void entriesBeyondOneWheelTurnSurviveEarlierSweeps() {
+    NonceReplayGuard longGuard = new NonceReplayGuard(8, 3600, 1, false);
+    longGuard.sweep(start);
+    longGuard.claim(PAYER, nonce(1), start + 300, start);
+
+    // the expiry is one wheel turn past start + 44 and shares its slot
+    longGuard.sweep(start + 44);
+    assertThat(longGuard.size()).isEqualTo(1);
+
+    longGuard.sweep(start + 300);
+    assertThat(longGuard.size()).isZero();
+  }
+
+  @Test
+  void noncesArePerPayer() {
+    assertThat(guard.claim(PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+
+    assertThat(guard.claim(OTHER_PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+  }
+
+  @Test
+  void releasedNonceCanBeClaimedAgain() {
+    guard.claim(PAYER, nonce(1), start + 60, start);
+
+    assertThat(guard.release(PAYER, nonce(1))).isTrue();
+    assertThat(guard.release(PAYER, nonce(1))).isFalse();
+    assertThat(guard.claim(PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+  }
+
+  @Test
+  void expiredOrMalformedClaimsAreInvalid() {
+    assertThat(guard.claim(PAYER, nonce(1), start, start)).isEqualTo(Result.INVALID);
+    assertThat(guard.claim("0x1234", nonce(1), start + 60, start)).isEqualTo(Result.INVALID);
+    assertThat(guard.claim(PAYER, "0x" + "zz".repeat(32), start + 60, start))
+        .isEqualTo(Result.INVALID);
+    assertThat(guard.size()).isZero();
+  }
+
+  @Test
+  void fullStripeRejectsWithoutRecording() {
+    NonceReplayGuard small = new NonceReplayGuard(2, 600, 1, false);
+
+    assertThat(small.claim(PAYER, nonce(1), start + 60, start)).isEqualTo(Result.ACCEPTED);
+    assertThat(small.claim(PAYER, nonce(2), start + 60, start)).isEqualTo(Result.ACCEPTED);
+    assertThat(small.claim(PAYER, nonce(3), start + 60, start)).isEqualTo(Result.FULL);
+    assertThat(small.getCapacityRejections()).isEqualTo(1);
+
+    small.sweep(start + 60);
+    assertThat(small.claim(PAYER, nonce(3), start + 120, start + 60)).isEqualTo(Result.ACCEPTED);
+  }
+
+  @Test
+  void concurrentClaimsOfOneNonceAcceptExactlyOne() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int n = 0; n < 16; n++) {
+        String nonce = nonce(n);
+        List<Future<Result>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+          results.add(executor.submit(() -> guard.claim(PAYER, nonce, start + 60, start)));
+        }
+        int accepted = 0;
+        for (Future<Result> result : results) {
+          accepted += result.get() == Result.ACCEPTED ? 1 : 0;
+        }
+        assertThat(accepted).isEqualTo(1);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String nonce(int n) {
+    return "0x" + "00".repeat(28) + String.format("%08x", n);
+  }
+}
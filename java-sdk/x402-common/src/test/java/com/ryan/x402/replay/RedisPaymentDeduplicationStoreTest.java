@@ -0,0 +1,278 @@
+package com.ryan.x402.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ryan.x402.replay.NonceReplayGuard.Result;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RedisPaymentDeduplicationStoreTest {
+
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+
+  private final StandInServer server = new StandInServer();
+  private final long validBefore = System.currentTimeMillis() / 1000 + 3600;
+  private RedisPaymentDeduplicationStore store = newStore(256);
+
+  @AfterEach
+  void close() throws IOException {
+    store.close();
+    server.close();
+  }
+
+  @Test
+  void claimSetsTheKeyOnceAndReportsTheReplay() throws Exception {
+    assertThat(await(store.claim(PAYER, nonce(1), validBefore))).isEqualTo(Result.ACCEPTED);
+    assertThat(await(store.claim(PAYER, nonce(1), validBefore))).isEqualTo(Result.REPLAYED);
+
+    // key is lower-cased, the expiry capped by the maximum retention
+    assertThat(server.received.poll(5, TimeUnit.SECONDS)).containsExactly("SET",
+        "x402:nonce:" + PAYER.toLowerCase() + ":" + nonce(1), "1", "EX", "600", "NX");
+  }
+
+  @Test
+  void releaseDeletesTheKey() throws Exception {
+    await(store.claim(PAYER, nonce(1), validBefore));
+
+    assertThat(await(store.release(PAYER, nonce(1)))).isTrue();
+    assertThat(await(store.release(PAYER, nonce(1)))).isFalse();
+    assertThat(await(store.claim(PAYER, nonce(1), validBefore))).isEqualTo(Result.ACCEPTED);
+  }
+
+  @Test
+  void concurrentCommandsShareOneConnectionAndGetTheirOwnReplies() throws Exception {
+    List<CompletableFuture<Result>> claims = new ArrayList<>();
+    for (int n = 0; n < 200; n++) {
+      claims.add(store.claim(PAYER, nonce(n % 100), validBefore));
+    }
+
+    for (int n = 0; n < 200; n++) {
+      assertThat(await(claims.get(n))).isEqualTo(n < 100 ? Result.ACCEPTED : Result.REPLAYED);
+    }
+    assertThat(server.connections).hasSize(1);
+  }
+
+  @Test
+  void invalidInputIsRejectedWithoutACommand() throws Exception {
+    assertThat(await(store.claim("0x1234", nonce(1), validBefore))).isEqualTo(Result.INVALID);
+    assertThat(await(store.claim(PAYER, nonce(1), 0))).isEqualTo(Result.INVALID);
+    assertThat(await(store.release(PAYER, "0x1234"))).isFalse();
+
+    assertThat(server.received).isEmpty();
+  }
+
+  @Test
+  void brokenConnectionFailsCommandsInFlightAndIsReopened() throws Exception {
+    server.silent = true;
+    CompletableFuture<Result> first = store.claim(PAYER, nonce(1), validBefore);
+    CompletableFuture<Result> second = store.claim(PAYER, nonce(2), validBefore);
+    server.awaitReceived(2);
+
+    server.dropConnections();
+
+    assertFailsWith(first, IOException.class);
+    assertFailsWith(second, IOException.class);
+    server.silent = false;
+    assertThat(await(store.claim(PAYER, nonce(1), validBefore))).isEqualTo(Result.ACCEPTED);
+    assertThat(server.connections).hasSize(2);
+  }
+
+  @Test
+  void unansweredCommandTimesOut() {
+    server.silent = true;
+
+    assertFailsWith(store.claim(PAYER, nonce(1), validBefore), TimeoutException.class);
+  }
+
+  @Test
+  void commandsBeyondTheQueueCapacityFailAtOnce() throws Exception {
+    store.close();
+    store = newStore(1);
+    store.setPassword("secret");
+    server.gate = new CountDownLatch(1);
+
+    // the writer is blocked in the handshake with the first command, the second fills the queue
+    CompletableFuture<Result> first = store.claim(PAYER, nonce(1), validBefore);
+    server.awaitReceived(1);
+    CompletableFuture<Result> second = store.claim(PAYER, nonce(2), validBefore);
+    CompletableFuture<Result> third = store.claim(PAYER, nonce(3), validBefore);
+
+    assertFailsWith(third, IOException.class);
+    server.gate.countDown();
+    assertThat(await(first)).isEqualTo(Result.ACCEPTED);
+    assertThat(await(second)).isEqualTo(Result.ACCEPTED);
+    assertThat(server.received.poll()).containsExactly("AUTH", "secret");
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private RedisPaymentDeduplicationStore newStore(int queueCapacity) {
+    RedisPaymentDeduplicationStore created =
+        new RedisPaymentDeduplicationStore("127.0.0.1", server.port(), 600, queueCapacity);
+    created.setTimeouts(Duration.ofSeconds(2), Duration.ofMillis(500));
+    return created;
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws Exception {
+    return future.get(5, TimeUnit.SECONDS);
+  }
+
+  private static void assertFailsWith(CompletableFuture<?> future,
+      Class<? extends Throwable> cause) {
+    assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+        .isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(cause);
+  }
+
+  private static String nonce(int n) {
+    return "0x" + "00".repeat(28) + String.format("%08x", n);
+  }
+
+  /**
+   * Speaks just enough RESP2 for the store: AUTH, SELECT, SET ... NX and DEL, without expiry.
+   */
+  private static final class StandInServer implements AutoCloseable {
+
+    final ServerSocket socket;
+    final Map<String, String> keys = new ConcurrentHashMap<>();
+    final BlockingQueue<List<String>> received = new LinkedBlockingQueue<>();
+    final List<Socket> connections = new CopyOnWriteArrayList<>();
+    /**
+     * Commands are read but never answered.
+     */
+    volatile boolean silent;
+    /**
+     * Replies wait until it is open.
+     */
+    volatile CountDownLatch gate = new CountDownLatch(0);
+
+    StandInServer() {
+      try {
+        socket = new ServerSocket(0);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      Thread acceptor = new Thread(this::acceptLoop, "stand-in-acceptor");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int port() {
+      return socket.getLocalPort();
+    }
+
+    void awaitReceived(int commands) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (received.size() < commands && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(received).hasSizeGreaterThanOrEqualTo(commands);
+    }
+
+    void dropConnections() throws IOException {
+      for (Socket connection : connections) {
+        connection.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+      dropConnections();
+    }
+
+    private void acceptLoop() {
+      try {
+        while (true) {
+          Socket connection = socket.accept();
+          connections.add(connection);
+          Thread handler = new Thread(() -> serve(connection), "stand-in-connection");
+          handler.setDaemon(true);
+          handler.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(Socket connection) {
+      try (connection) {
+        InputStream in = new BufferedInputStream(connection.getInputStream());
+        OutputStream out = connection.getOutputStream();
+        for (List<String> command = readCommand(in); command != null; command = readCommand(in)) {
+          received.add(command);
+          if (silent) {
+            continue;
+          }
+          gate.await();
+          out.write(reply(command).getBytes(StandardCharsets.UTF_8));
+          out.flush();
+        }
+      } catch (IOException | InterruptedException e) {
+        // dropped
+      }
+    }
+
+    private String reply(List<String> command) {
+      switch (command.get(0)) {
+        case "AUTH":
+        case "SELECT":
+          return "+OK\r\n";
+        case "SET":
+          return keys.putIfAbsent(command.get(1), command.get(2)) == null ? "+OK\r\n" : "$-1\r\n";
+        case "DEL":
+          return ":" + (keys.remove(command.get(1)) != null ? 1 : 0) + "\r\n";
+        default:
+          return "-ERR unknown command\r\n";
+      }
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+      String header = readLine(in);
+      if (header == null) {
+        return null;
+      }
+      int count = Integer.parseInt(header.substring(1));
+      List<String> args = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        int length = Integer.parseInt(readLine(in).substring(1));
+        args.add(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+        in.readNBytes(2);
+      }
+      return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      for (int c = in.read(); c != '\r'; c = in.read()) {
+        if (c == -1) {
+          return null;
+        }
+        sb.append((char) c);
+      }
+      in.read();
+      return sb.toString();
+    }
+  }
+}
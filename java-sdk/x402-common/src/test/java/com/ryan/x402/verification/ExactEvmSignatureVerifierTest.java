@@ -0,0 +1,133 @@
+package com.ryan.x402.verification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier.Result;
+import java.math.BigInteger;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ExactEvmSignatureVerifierTest {
+
+  private static final String NETWORK = "base-sepolia";
+  private static final String ASSET = "0x036CbD53842c5426634e7929541eC2318f3dCF7e";
+  private static final Map<String, Object> EXTRA = Map.of("name", "USDC", "version", "2");
+
+  /**
+   * r || s of a TransferWithAuthorization signed by a fixed test key, recovery id 0.
+   */
+  private static final String RS =
+      "0x7485710dcbd94692e45f1e013ff7186bffa2049d9aac144a7c9c253ae1c0dcc3"
+          + "0929262dead67a732871815e2c787a1eeaad877de43011037a62e2ced1ee8e6f";
+
+  private final ExactEvmSignatureVerifier verifier = new ExactEvmSignatureVerifier();
+
+  @Test
+  void validSignatureIsValidWithAndWithoutCachedKey() {
+    assertThat(verify(verifier, signed("1b"))).isEqualTo(Result.VALID);
+    assertThat(verify(verifier, signed("1b"))).isEqualTo(Result.VALID);
+    assertThat(verify(new ExactEvmSignatureVerifier(0), signed("1b"))).isEqualTo(Result.VALID);
+  }
+
+  @Test
+  void flippedParityIsInvalidWithoutCachedKey() {
+    assertThat(verify(verifier, signed("1c"))).isEqualTo(Result.INVALID);
+  }
+
+  @Test
+  void flippedParityIsInvalidWithCachedKey() {
+    assertThat(verify(verifier, signed("1b"))).isEqualTo(Result.VALID);
+
+    assertThat(verify(verifier, signed("1c"))).isEqualTo(Result.INVALID);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"00", "01", "1d", "25", "ff"})
+  void recoveryIdOutsideTwentySevenAndTwentyEightIsInvalid(String v) {
+    assertThat(verify(verifier, signed(v))).isEqualTo(Result.INVALID);
+    assertThat(verify(verifier, signed("1b"))).isEqualTo(Result.VALID);
+    assertThat(verify(verifier, signed(v))).isEqualTo(Result.INVALID);
+  }
+
+  @Test
+  void tamperedAuthorizationIsInvalidWithCachedKey() {
+    assertThat(verify(verifier, signed("1b"))).isEqualTo(Result.VALID);
+
+    ExactSchemePayload tampered = signed("1b");
+    tampered.authorization.value = "10001";
+    assertThat(verify(verifier, tampered)).isEqualTo(Result.INVALID);
+  }
+
+  @Test
+  void otherPayerIsInvalid() {
+    ExactSchemePayload payload = signed("1b");
+    payload.authorization.from = "0x857b06519E91e3A54538791bDbb0E22373e36b66";
+
+    assertThat(verify(verifier, payload)).isEqualTo(Result.INVALID);
+  }
+
+  @Test
+  void highSIsInvalid() {
+    ExactSchemePayload payload = signed("1b");
+    // s' = n - s recovers the same key on a bare ecrecover but is rejected by the token
+    BigInteger n = new BigInteger(
+        "fffffffffffffffffffffffffffffffebaaedce6af48a03bbfd25e8cd0364141", 16);
+    BigInteger s = new BigInteger(RS.substring(66), 16);
+    payload.signature = RS.substring(0, 66) + String.format("%064x", n.subtract(s)) + "1c";
+
+    assertThat(verify(verifier, payload)).isEqualTo(Result.INVALID);
+  }
+
+  @Test
+  void smartWalletSignatureIsUnverifiable() {
+    ExactSchemePayload payload = signed("1b");
+    payload.signature = payload.signature + "00";
+
+    assertThat(verify(verifier, payload)).isEqualTo(Result.UNVERIFIABLE);
+  }
+
+  @Test
+  void missingDomainIsUnverifiable() {
+    assertThat(verifier.verify(signed("1b"), NETWORK, ASSET, Map.of()))
+        .isEqualTo(Result.UNVERIFIABLE);
+    assertThat(verifier.verify(signed("1b"), "unknown-network", ASSET, EXTRA))
+        .isEqualTo(Result.UNVERIFIABLE);
+  }
+
+  @Test
+  void fullKeyCacheKeepsVerifying() {
+    ExactEvmSignatureVerifier small = new ExactEvmSignatureVerifier(1);
+    ExactSchemePayload other = signed("1b");
+    other.authorization.from = "0x857b06519E91e3A54538791bDbb0E22373e36b66";
+
+    assertThat(verify(small, signed("1b"))).isEqualTo(Result.VALID);
+    assertThat(verify(small, other)).isEqualTo(Result.INVALID);
+    assertThat(verify(small, signed("1c"))).isEqualTo(Result.INVALID);
+    assertThat(verify(small, signed("1b"))).isEqualTo(Result.VALID);
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private static Result verify(ExactEvmSignatureVerifier verifier, ExactSchemePayload payload) {
+    return verifier.verify(payload, NETWORK, ASSET, EXTRA);
+  }
+
+  private static ExactSchemePayload signed(String v) {
+    Authorization auth = new Authorization();
+    auth.from = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+    auth.to = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+    auth.value = "10000";
+    auth.validAfter = "0";
+    auth.validBefore = "4102444800";
+    auth.nonce = "0x" + "ab".repeat(32);
+
+    ExactSchemePayload payload = new ExactSchemePayload();
+    payload.signature = RS + v;
+    payload.authorization = auth;
+    return payload;
+  }
+}
@@ -0,0 +1,106 @@
+package com.ryan.x402.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Latency injected by the {@link StubFacilitator}, written as one of:
+ * <ul>
+ *   <li>{@code 0}: none</li>
+ *   <li>{@code fixed:20ms}</li>
+ *   <li>{@code uniform:5ms:50ms}: uniform between the two bounds</li>
+ *   <li>{@code lognormal:20ms:200ms}: log-normal with the given median and 99th percentile, the
+ *   long-tailed shape of most remote services</li>
+ * </ul>
+ * Durations use the Spring Boot format, e.g. {@code 500us}, {@code 20ms} or {@code 1s}.
+ */
+public final class LatencyDistribution {
+
+  public static final LatencyDistribution NONE = new LatencyDistribution("0", Shape.NONE, 0, 0);
+
+  private static final double Z_99 = 2.3263478740408408; // standard normal 99th percentile
+
+  private enum Shape { NONE, FIXED, UNIFORM, LOGNORMAL }
+
+  private final String spec;
+  private final Shape shape;
+  private final double a;
+  private final double b;
+
+  private LatencyDistribution(String spec, Shape shape, double a, double b) {
+    this.spec = spec;
+    this.shape = shape;
+    this.a = a;
+    this.b = b;
+  }
+
+  /**
+   * Parses a distribution. Named {@code of} so that Spring binds options of this type directly.
+   *
+   * @throws IllegalArgumentException if the spec is not one of the forms above
+   */
+  public static LatencyDistribution of(String spec) {
+    String[] parts = spec.trim().split(":");
+    try {
+      switch (parts[0]) {
+        case "0", "none":
+          if (parts.length == 1) {
+            return NONE;
+          }
+          break;
+        case "fixed":
+          if (parts.length == 2) {
+            return new LatencyDistribution(spec, Shape.FIXED, nanos(parts[1]), 0);
+          }
+          break;
+        case "uniform":
+          if (parts.length == 3 && nanos(parts[1]) <= nanos(parts[2])) {
+            return new LatencyDistribution(spec, Shape.UNIFORM, nanos(parts[1]), nanos(parts[2]));
+          }
+          break;
+        case "lognormal":
+          if (parts.length == 3 && 0 < nanos(parts[1]) && nanos(parts[1]) <= nanos(parts[2])) {
+            double mu = Math.log(nanos(parts[1]));
+            double sigma = (Math.log(nanos(parts[2])) - mu) / Z_99;
+            return new LatencyDistribution(spec, Shape.LOGNORMAL, mu, sigma);
+          }
+          break;
+        default:
+          break;
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("invalid latency distribution: " + spec, e);
+    }
+    throw new IllegalArgumentException("invalid latency distribution: " + spec
+        + ", expected 0, fixed:<d>, uniform:<min>:<max> or lognormal:<median>:<p99>");
+  }
+
+  /**
+   * Draws a latency.
+   *
+   * @return the latency in nanoseconds
+   */
+  public long sample() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return switch (shape) {
+      case NONE -> 0;
+      case FIXED -> (long) a;
+      case UNIFORM -> (long) (a + random.nextDouble() * (b - a));
+      case LOGNORMAL -> (long) Math.exp(a + b * random.nextGaussian());
+    };
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+
+  private static long nanos(String duration) {
+    Duration d = DurationStyle.SIMPLE.parse(duration);
+    if (d.isNegative()) {
+      throw new IllegalArgumentException("negative latency: " + duration);
+    }
+    return d.toNanos();
+  }
+}
@@ -0,0 +1,348 @@
+package com.ryan.x402.loadtest;
+
+import com.ryan.x402.configuration.X402Configuration;
+import com.ryan.x402.settlement.AsyncSettlementService;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * End-to-end load test: boots {@link LoadTestApplication} against a {@link StubFacilitator}, runs
+ * concurrent paid and unpaid requests at it over loopback, and prints throughput, latency
+ * percentiles and thread pool saturation. Nothing leaves the machine.
+ * <p>
+ * Arguments are Spring Boot command line arguments: {@code --loadtest.*} options are described
+ * in {@link LoadTestProperties}, all others configure the app, e.g.
+ * {@code --x402.settlement.async=true}.
+ */
+public final class LoadTest {
+
+  /**
+   * A TransferWithAuthorization of 0.01 USDC to the default pay-to, signed by a fixed test key
+   * with {@link #SIGNED_NONCE}.
+   */
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+  private static final String SIGNED_NONCE = "0x" + "ab".repeat(32);
+  private static final String SIGNATURE = "0x7485710dcbd94692e45f1e013ff7186bffa2049d9aac144a7"
+      + "c9c253ae1c0dcc30929262dead67a732871815e2c787a1eeaad877de43011037a62e2ced1ee8e6f1b";
+
+  private final LoadTestProperties options;
+  private final StubFacilitator facilitator;
+  private final URI paidUri;
+  private final String headerPrefix;
+  private final String headerSuffix;
+  private final List<PoolGauge> pools;
+
+  private final HttpClient http = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .build();
+  private final Outcomes paid = new Outcomes("paid");
+  private final Outcomes unpaid = new Outcomes("unpaid");
+
+  private volatile boolean measuring;
+  private volatile boolean stopped;
+
+  private LoadTest(LoadTestProperties options, StubFacilitator facilitator,
+      ConfigurableApplicationContext app) {
+    this.options = options;
+    this.facilitator = facilitator;
+    this.pools = pools(app);
+    Environment env = app.getEnvironment();
+    this.paidUri = URI.create("http://127.0.0.1:" + env.getProperty("local.server.port")
+        + LoadTestApplication.PAID_PATH);
+
+    String json = "{\"x402Version\":1,\"scheme\":\"exact\",\"network\":\""
+        + env.getProperty("x402.network") + "\",\"payload\":{\"signature\":\"" + SIGNATURE
+        + "\",\"authorization\":{\"from\":\"" + PAYER + "\",\"to\":\""
+        + env.getProperty("x402.default-pay-to") + "\",\"value\":\"10000\",\"validAfter\":\"0\","
+        + "\"validBefore\":\"4102444800\",\"nonce\":\"" + SIGNED_NONCE + "\"}}}";
+    this.headerPrefix = json.substring(0, json.indexOf(SIGNED_NONCE));
+    this.headerSuffix = json.substring(json.indexOf(SIGNED_NONCE) + SIGNED_NONCE.length());
+  }
+
+  public static void main(String[] args) throws Exception {
+    StandardEnvironment arguments = new StandardEnvironment();
+    arguments.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+    LoadTestProperties options = Binder.get(arguments)
+        .bindOrCreate("loadtest", LoadTestProperties.class);
+    LoadTestProperties.Facilitator stub = options.getFacilitator();
+
+    try (StubFacilitator facilitator = new StubFacilitator(
+        arguments.getProperty("x402.network", "base-sepolia"), stub.getVerify(), stub.getSettle(),
+        stub.isBatchSettle(), stub.getThreads())) {
+      try (ConfigurableApplicationContext app = new SpringApplicationBuilder(
+          LoadTestApplication.class)
+          .properties("x402.facilitator-base-url=" + facilitator.getBaseUrl())
+          .run(args)) {
+        new LoadTest(options, facilitator, app).run(System.out);
+      }
+    }
+  }
+
+  /* ======================== load ======================== */
+
+  private void run(PrintStream out) throws InterruptedException {
+    int clients = options.getClients();
+    long interval = options.getRate() > 0 ? TimeUnit.SECONDS.toNanos(clients) / options.getRate()
+        : 0;
+    long start = System.nanoTime();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < clients; i++) {
+      long first = start + interval * i / clients;
+      Thread t = new Thread(() -> runClient(first, interval), "loadtest-client-" + i);
+      t.setDaemon(true);
+      t.start();
+      threads.add(t);
+    }
+
+    ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "loadtest-sampler");
+      t.setDaemon(true);
+      return t;
+    });
+    long sampleNanos = options.getSampleInterval().toNanos();
+    sampler.scheduleAtFixedRate(() -> {
+      if (measuring) {
+        pools.forEach(PoolGauge::sample);
+      }
+    }, sampleNanos, sampleNanos, TimeUnit.NANOSECONDS);
+
+    Thread.sleep(options.getWarmup().toMillis());
+    facilitator.getVerifyCounters().reset();
+    facilitator.getSettleCounters().reset();
+    long measured = System.nanoTime();
+    measuring = true;
+    Thread.sleep(options.getDuration().toMillis());
+    measuring = false;
+    double seconds = (System.nanoTime() - measured) / 1e9;
+    StubFacilitator.Counters verify = facilitator.getVerifyCounters().snapshot();
+    StubFacilitator.Counters settle = facilitator.getSettleCounters().snapshot();
+    stopped = true;
+
+    sampler.shutdown();
+    sampler.awaitTermination(1, TimeUnit.SECONDS);
+    for (Thread t : threads) {
+      t.join(options.getRequestTimeout().toMillis());
+    }
+    report(out, seconds, verify, settle);
+  }
+
+  /**
+   * Sends requests until stopped. With a rate each request has an intended send time and its
+   * latency counts from then, so time spent queued behind a slow response is not lost.
+   */
+  private void runClient(long first, long interval) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    HttpResponse.BodyHandler<Void> discard = HttpResponse.BodyHandlers.discarding();
+    long next = first;
+    while (!stopped) {
+      long sent = System.nanoTime();
+      if (interval > 0) {
+        if (next > sent) {
+          LockSupport.parkNanos(next - sent);
+        }
+        sent = next;
+        next += interval;
+      }
+      boolean pay = random.nextDouble() < options.getPaidRatio();
+      HttpRequest.Builder request = HttpRequest.newBuilder(paidUri)
+          .timeout(options.getRequestTimeout())
+          .GET();
+      if (pay) {
+        request.header("X-PAYMENT", paymentHeader(random));
+      }
+
+      int status;
+      try {
+        status = http.send(request.build(), discard).statusCode();
+      } catch (IOException e) {
+        status = 0;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (measuring) {
+        (pay ? paid : unpaid).record(status, System.nanoTime() - sent);
+      }
+    }
+  }
+
+  private String paymentHeader(ThreadLocalRandom random) {
+    String nonce = SIGNED_NONCE;
+    if (options.isUniqueNonces()) {
+      nonce = String.format("0x%016x%016x%016x%016x", random.nextLong(), random.nextLong(),
+          random.nextLong(), random.nextLong());
+    }
+    return Base64.getEncoder().encodeToString(
+        (headerPrefix + nonce + headerSuffix).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /* ======================== report ======================== */
+
+  private void report(PrintStream out, double seconds, StubFacilitator.Counters verify,
+      StubFacilitator.Counters settle) {
+    out.printf("%nx402 load test: %d clients, %s, %.0f%% paid, %.1f s measured after %d s "
+            + "warm-up%n", options.getClients(),
+        options.getRate() > 0 ? options.getRate() + " req/s" : "closed loop",
+        options.getPaidRatio() * 100, seconds, options.getWarmup().toSeconds());
+    out.println("stub verify: " + options.getFacilitator().getVerify());
+    out.println("stub settle: " + options.getFacilitator().getSettle());
+
+    out.printf("%n%-8s %9s %9s %9s %9s %9s %9s %8s %8s %8s %8s%n", "request", "count", "req/s",
+        "p50 ms", "p99 ms", "p999 ms", "max ms", "2xx", "402", "other", "failed");
+    long total = 0;
+    for (Outcomes outcomes : List.of(paid, unpaid)) {
+      Histogram h = outcomes.latency.getIntervalHistogram();
+      total += h.getTotalCount();
+      out.printf("%-8s %9d %9.0f %9.2f %9.2f %9.2f %9.2f %8d %8d %8d %8d%n", outcomes.name,
+          h.getTotalCount(), h.getTotalCount() / seconds, millis(h.getValueAtPercentile(50)),
+          millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)),
+          millis(h.getMaxValue()), outcomes.ok.sum(), outcomes.paymentRequired.sum(),
+          outcomes.other.sum(), outcomes.failed.sum());
+    }
+    out.printf("%-8s %9d %9.0f%n", "total", total, total / seconds);
+
+    out.printf("%n%-11s %9s %9s %9s %9s %9s%n", "facilitator", "calls", "payments", "errors",
+        "rejected", "slow");
+    counters(out, "verify", verify);
+    counters(out, "settle", settle);
+
+    out.printf("%n%-16s %8s %12s %12s %10s %11s%n", "thread pool", "max", "mean active",
+        "peak active", "saturated", "peak queue");
+    for (PoolGauge pool : pools) {
+      out.printf("%-16s %8d %12.1f %12d %9.1f%% %11d%n", pool.name, pool.max,
+          pool.samples > 0 ? (double) pool.activeSum / pool.samples : 0, pool.peakActive,
+          pool.samples > 0 ? 100.0 * pool.saturatedSamples / pool.samples : 0, pool.peakQueued);
+    }
+  }
+
+  private static void counters(PrintStream out, String operation, StubFacilitator.Counters c) {
+    out.printf("%-11s %9d %9d %9d %9d %9d%n", operation, c.calls(), c.payments(), c.errors(),
+        c.rejected(), c.slow());
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+
+  /* ======================== pools ======================== */
+
+  /**
+   * Thread pools of the app whose saturation is reported: the servlet container's request
+   * threads and, where configured, the SDK's settlement workers and facilitator executor.
+   */
+  private static List<PoolGauge> pools(ConfigurableApplicationContext app) {
+    List<PoolGauge> pools = new ArrayList<>();
+    if (app instanceof WebServerApplicationContext web
+        && web.getWebServer() instanceof TomcatWebServer tomcat
+        && tomcat.getTomcat().getConnector().getProtocolHandler().getExecutor()
+        instanceof org.apache.tomcat.util.threads.ThreadPoolExecutor pool) {
+      pools.add(new PoolGauge("tomcat", pool.getMaximumPoolSize(), pool::getActiveCount,
+          () -> pool.getQueue().size()));
+    }
+    app.getBeanProvider(AsyncSettlementService.class).ifAvailable(settlement ->
+        pools.add(new PoolGauge("x402-settlement",
+            app.getBean(X402Configuration.class).getSettlement().getParallelism(),
+            settlement::getActiveCount, settlement::getQueueSize)));
+    if (app.containsBean("x402FacilitatorExecutor")
+        && app.getBean("x402FacilitatorExecutor") instanceof ThreadPoolExecutor pool) {
+      pools.add(new PoolGauge("x402-facilitator", pool.getMaximumPoolSize(),
+          pool::getActiveCount, () -> pool.getQueue().size()));
+    }
+    return pools;
+  }
+
+  /**
+   * Samples of one thread pool, only touched by the sampler thread until it has terminated.
+   */
+  private static final class PoolGauge {
+
+    private final String name;
+    private final int max;
+    private final IntSupplier active;
+    private final IntSupplier queued;
+
+    private long samples;
+    private long activeSum;
+    private long saturatedSamples;
+    private int peakActive;
+    private int peakQueued;
+
+    PoolGauge(String name, int max, IntSupplier active, IntSupplier queued) {
+      this.name = name;
+      this.max = max;
+      this.active = active;
+      this.queued = queued;
+    }
+
+    void sample() {
+      int a = active.getAsInt();
+      int q = queued.getAsInt();
+      samples++;
+      activeSum += a;
+      if (a >= max) {
+        saturatedSamples++;
+      }
+      peakActive = Math.max(peakActive, a);
+      peakQueued = Math.max(peakQueued, q);
+    }
+  }
+
+  /**
+   * Latencies in microseconds and status counts of one kind of request.
+   */
+  private static final class Outcomes {
+
+    private final String name;
+    private final Recorder latency = new Recorder(3);
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder paymentRequired = new LongAdder();
+    private final LongAdder other = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    Outcomes(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param status the HTTP status, 0 if the request failed or timed out
+     */
+    void record(int status, long nanos) {
+      latency.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+      if (status == 0) {
+        failed.increment();
+      } else if (status / 100 == 2) {
+        ok.increment();
+      } else if (status == 402) {
+        paymentRequired.increment();
+      } else {
+        other.increment();
+      }
+    }
+  }
+}
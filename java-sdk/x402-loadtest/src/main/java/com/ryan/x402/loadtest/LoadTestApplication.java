@@ -0,0 +1,27 @@
+package com.ryan.x402.loadtest;
+
+import com.ryan.x402.annotation.X402Payment;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Sample app under load: one paid endpoint, wired by the x402 starter like any other app. Its
+ * defaults are in {@code application.properties}; {@link LoadTest} points it at the stub
+ * facilitator.
+ */
+@SpringBootApplication(proxyBeanMethods = false)
+public class LoadTestApplication {
+
+  public static final String PAID_PATH = "/paid";
+
+  @RestController
+  static class PaidController {
+
+    @X402Payment(price = "0.01")
+    @GetMapping(PAID_PATH)
+    public String paid() {
+      return "ok";
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.ryan.x402.loadtest;
+
+import java.time.Duration;
+
+/**
+ * Options of the load test, given as {@code --loadtest.*} command line arguments, e.g.
+ * {@code --loadtest.clients=128 --loadtest.facilitator.verify.latency=lognormal:20ms:200ms}.
+ */
+public class LoadTestProperties {
+
+  /**
+   * Concurrent clients
+   */
+  private int clients = 64;
+
+  /**
+   * Total request rate (requests per second) spread over the clients; 0 runs them in a closed
+   * loop, each sending its next request as soon as the previous one completes. With a rate,
+   * latency is measured from the intended send time, so a stalled server is not under-reported
+   */
+  private int rate = 0;
+
+  /**
+   * Share of requests that carry an X-PAYMENT header; the others are sent without one and
+   * expect a 402
+   */
+  private double paidRatio = 0.5;
+
+  /**
+   * Whether every payment gets a fresh nonce, as needed with x402.replay-guard.enabled. The
+   * signature then no longer matches, so turn this off for x402.verification.mode=local
+   */
+  private boolean uniqueNonces = true;
+
+  /**
+   * Load before measuring, to warm up the JIT and the connection pools
+   */
+  private Duration warmup = Duration.ofSeconds(10);
+
+  /**
+   * Measured load
+   */
+  private Duration duration = Duration.ofSeconds(30);
+
+  /**
+   * Client timeout per request
+   */
+  private Duration requestTimeout = Duration.ofSeconds(60);
+
+  /**
+   * How often thread pool usage is sampled
+   */
+  private Duration sampleInterval = Duration.ofMillis(10);
+
+  /**
+   * Stub facilitator options
+   */
+  private final Facilitator facilitator = new Facilitator();
+
+  public int getClients() {
+    return clients;
+  }
+
+  public void setClients(int clients) {
+    this.clients = clients;
+  }
+
+  public int getRate() {
+    return rate;
+  }
+
+  public void setRate(int rate) {
+    this.rate = rate;
+  }
+
+  public double getPaidRatio() {
+    return paidRatio;
+  }
+
+  public void setPaidRatio(double paidRatio) {
+    this.paidRatio = paidRatio;
+  }
+
+  public boolean isUniqueNonces() {
+    return uniqueNonces;
+  }
+
+  public void setUniqueNonces(boolean uniqueNonces) {
+    this.uniqueNonces = uniqueNonces;
+  }
+
+  public Duration getWarmup() {
+    return warmup;
+  }
+
+  public void setWarmup(Duration warmup) {
+    this.warmup = warmup;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public void setDuration(Duration duration) {
+    this.duration = duration;
+  }
+
+  public Duration getRequestTimeout() {
+    return requestTimeout;
+  }
+
+  public void setRequestTimeout(Duration requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  public Duration getSampleInterval() {
+    return sampleInterval;
+  }
+
+  public void setSampleInterval(Duration sampleInterval) {
+    this.sampleInterval = sampleInterval;
+  }
+
+  public Facilitator getFacilitator() {
+    return facilitator;
+  }
+
+  public static class Facilitator {
+
+    /**
+     * Threads of the stub facilitator; replies are delayed without holding them
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether /supported lists the batch-settle extension, for
+     * x402.facilitator.settle-batch.enabled
+     */
+    private boolean batchSettle = false;
+
+    /**
+     * Behaviour of /verify
+     */
+    private final StubFacilitator.Behaviour verify = new StubFacilitator.Behaviour();
+
+    /**
+     * Behaviour of /settle and /settle/batch
+     */
+    private final StubFacilitator.Behaviour settle = new StubFacilitator.Behaviour();
+
+    public int getThreads() {
+      return threads;
+    }
+
+    public void setThreads(int threads) {
+      this.threads = threads;
+    }
+
+    public boolean isBatchSettle() {
+      return batchSettle;
+    }
+
+    public void setBatchSettle(boolean batchSettle) {
+      this.batchSettle = batchSettle;
+    }
+
+    public StubFacilitator.Behaviour getVerify() {
+      return verify;
+    }
+
+    public StubFacilitator.Behaviour getSettle() {
+      return settle;
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package com.ryan.x402.loadtest;
+
+import com.ryan.x402.util.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Facilitator on the loopback interface that approves every payment after an injected latency,
+ * unless a fault is drawn for the call:
+ * <ul>
+ *   <li>error: HTTP 500</li>
+ *   <li>reject: HTTP 200 with {@code isValid} or {@code success} false</li>
+ *   <li>slow: the reply is held back for {@link Behaviour#getSlowLatency()}, typically longer
+ *   than the SDK's request timeout</li>
+ * </ul>
+ * Replies are delayed on a scheduler rather than by sleeping handler threads, so the stub's own
+ * capacity does not depend on the latency and does not distort the measurement.
+ */
+public class StubFacilitator implements AutoCloseable {
+
+  private static final String TX_HASH = "0x" + "cd".repeat(32);
+
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final ScheduledExecutorService replies;
+  private final String network;
+
+  private final Counters verifyCounters = new Counters();
+  private final Counters settleCounters = new Counters();
+
+  /**
+   * Starts a stub facilitator on an ephemeral port.
+   *
+   * @param network     the network listed by {@code /supported} and returned by {@code /settle}
+   * @param verify      behaviour of {@code /verify}
+   * @param settle      behaviour of {@code /settle} and {@code /settle/batch}
+   * @param batchSettle whether {@code /supported} lists the {@code batch-settle} extension
+   * @param threads     threads that accept requests and send replies
+   */
+  public StubFacilitator(String network, Behaviour verify, Behaviour settle, boolean batchSettle,
+      int threads) throws IOException {
+    this.network = network;
+    // headers and body go out in separate writes; with Nagle's algorithm the body would wait for
+    // the client's delayed ACK, adding ~40 ms to every call. Read once, before the first server
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+    this.handlers = Executors.newFixedThreadPool(threads, daemon("stub-facilitator"));
+    this.replies = Executors.newScheduledThreadPool(threads, daemon("stub-facilitator-reply"));
+    server.setExecutor(handlers);
+
+    byte[] supported = ("{\"kinds\":[{\"scheme\":\"exact\",\"network\":\"" + network + "\"}]"
+        + (batchSettle ? ",\"extensions\":[\"batch-settle\"]" : "") + "}")
+        .getBytes(StandardCharsets.UTF_8);
+    server.createContext("/supported", exchange -> reply(exchange, 200, supported));
+    server.createContext("/verify", exchange -> handle(exchange, verify, verifyCounters, false));
+    server.createContext("/settle", exchange -> handle(exchange, settle, settleCounters, true));
+    server.start();
+  }
+
+  public String getBaseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public Counters getVerifyCounters() {
+    return verifyCounters;
+  }
+
+  public Counters getSettleCounters() {
+    return settleCounters;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    replies.shutdownNow();
+    handlers.shutdownNow();
+  }
+
+  /* ======================== requests ======================== */
+
+  private void handle(HttpExchange exchange, Behaviour behaviour, Counters counters,
+      boolean settle) throws IOException {
+    byte[] request = exchange.getRequestBody().readAllBytes();
+    boolean batch = settle && exchange.getRequestURI().getPath().endsWith("/batch");
+    int payments = batch ? Json.MAPPER.readTree(request).path("settlements").size() : 1;
+    counters.calls.increment();
+    counters.payments.add(payments);
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int status;
+    byte[] body;
+    if (random.nextDouble() < behaviour.errorRate) {
+      counters.errors.increment();
+      status = 500;
+      body = "{\"error\":\"injected\"}".getBytes(StandardCharsets.UTF_8);
+    } else {
+      status = 200;
+      StringBuilder json = new StringBuilder(batch ? "{\"results\":[" : "");
+      for (int i = 0; i < payments; i++) {
+        boolean rejected = random.nextDouble() < behaviour.rejectRate;
+        if (rejected) {
+          counters.rejected.increment();
+        }
+        String result = settle ? settlement(!rejected) : verification(!rejected);
+        json.append(i > 0 ? "," : "").append(result);
+      }
+      body = (batch ? json.append("]}") : json).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    long delay;
+    if (random.nextDouble() < behaviour.slowRate) {
+      counters.slow.increment();
+      delay = behaviour.slowLatency.toNanos();
+    } else {
+      delay = behaviour.latency.sample();
+    }
+    if (delay <= 0) {
+      reply(exchange, status, body);
+    } else {
+      replies.schedule(() -> reply(exchange, status, body), delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static String verification(boolean valid) {
+    return valid ? "{\"isValid\":true}"
+        : "{\"isValid\":false,\"invalidReason\":\"insufficient_funds\"}";
+  }
+
+  private String settlement(boolean success) {
+    return success
+        ? "{\"success\":true,\"txHash\":\"" + TX_HASH + "\",\"networkId\":\"" + network + "\"}"
+        : "{\"success\":false,\"error\":\"insufficient_funds\",\"networkId\":\"" + network + "\"}";
+  }
+
+  private static void reply(HttpExchange exchange, int status, byte[] body) {
+    try (OutputStream out = exchange.getResponseBody()) {
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      out.write(body);
+    } catch (IOException e) {
+      // the client gave up on a slow reply and closed the connection
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    AtomicInteger seq = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  /* ======================== behaviour ======================== */
+
+  /**
+   * Latency and faults of one facilitator operation.
+   */
+  public static class Behaviour {
+
+    /**
+     * Latency of a normal reply, e.g. fixed:20ms or lognormal:20ms:200ms
+     */
+    private LatencyDistribution latency = LatencyDistribution.NONE;
+
+    /**
+     * Share of calls answered with HTTP 500
+     */
+    private double errorRate = 0;
+
+    /**
+     * Share of payments rejected with isValid or success false
+     */
+    private double rejectRate = 0;
+
+    /**
+     * Share of calls answered only after slow-latency
+     */
+    private double slowRate = 0;
+
+    /**
+     * Reply latency of slow calls
+     */
+    private Duration slowLatency = Duration.ofSeconds(30);
+
+    public LatencyDistribution getLatency() {
+      return latency;
+    }
+
+    public void setLatency(LatencyDistribution latency) {
+      this.latency = latency;
+    }
+
+    public double getErrorRate() {
+      return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+      this.errorRate = errorRate;
+    }
+
+    public double getRejectRate() {
+      return rejectRate;
+    }
+
+    public void setRejectRate(double rejectRate) {
+      this.rejectRate = rejectRate;
+    }
+
+    public double getSlowRate() {
+      return slowRate;
+    }
+
+    public void setSlowRate(double slowRate) {
+      this.slowRate = slowRate;
+    }
+
+    public Duration getSlowLatency() {
+      return slowLatency;
+    }
+
+    public void setSlowLatency(Duration slowLatency) {
+      this.slowLatency = slowLatency;
+    }
+
+    @Override
+    public String toString() {
+      return "latency " + latency + ", errors " + percent(errorRate) + ", rejects "
+          + percent(rejectRate) + ", slow " + percent(slowRate) + " (" + slowLatency.toMillis()
+          + " ms)";
+    }
+
+    private static String percent(double rate) {
+      return String.format("%.1f%%", rate * 100);
+    }
+  }
+
+  /**
+   * What the stub has seen of one operation.
+   */
+  public static final class Counters {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder payments = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+
+    /**
+     * HTTP calls, a batch counting once.
+     */
+    public long calls() {
+      return calls.sum();
+    }
+
+    /**
+     * Payments, each payment of a batch counting once.
+     */
+    public long payments() {
+      return payments.sum();
+    }
+
+    public long errors() {
+      return errors.sum();
+    }
+
+    public long rejected() {
+      return rejected.sum();
+    }
+
+    public long slow() {
+      return slow.sum();
+    }
+
+    /**
+     * Copies the current counts.
+     */
+    Counters snapshot() {
+      Counters copy = new Counters();
+      copy.calls.add(calls());
+      copy.payments.add(payments());
+      copy.errors.add(errors());
+      copy.rejected.add(rejected());
+      copy.slow.add(slow());
+      return copy;
+    }
+
+    void reset() {
+      calls.reset();
+      payments.reset();
+      errors.reset();
+      rejected.reset();
+      slow.reset();
+    }
+  }
+}
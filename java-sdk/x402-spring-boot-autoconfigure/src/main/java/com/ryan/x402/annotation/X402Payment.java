@@ -17,4 +17,26 @@ public @interface X402Payment {
   String price();
 
   String payTo() default "";
+
+  /**
+   * Runs the handler while the facilitator verifies the payment. The response is buffered and
+   * only released once the payment is verified; otherwise it is replaced with a 402. Only for
+   * idempotent, side-effect-free handlers that write their response synchronously. Requires
+   * {@code x402.verification.speculative}; without it the payment is verified first.
+   */
+  boolean speculative() default false;
+
+  /**
+   * How long a settled payment grants access without paying again, e.g. {@code "1h"} or
+   * {@code "PT30M"}. The access is carried by a signed token returned in the
+   * {@code X-PAYMENT-TOKEN} response header, which the client sends back in the request header of
+   * the same name. Empty for no access window. Requires {@code x402.access-token.enabled}.
+   */
+  String accessWindow() default "";
+
+  /**
+   * Ant-style pattern of the request paths an access token grants, e.g. {@code /weather/**}.
+   * Empty to grant only the path that was paid for.
+   */
+  String accessPattern() default "";
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package com.ryan.x402.audit;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * One step in the life of a payment, as handed to an {@link AuditSink}.
+ * <p>
+ * Events are slots of the {@link AuditLog} ring buffer and are reused once every sink has seen
+ * them: a sink must copy what it keeps beyond {@link AuditSink#write}.
+ */
+public final class AuditEvent {
+
+  public enum Type {
+
+    /**
+     * The payment passed the local checks and is about to be verified.
+     */
+    VERIFY_REQUESTED("verify-requested"),
+
+    /**
+     * The payment was verified, locally or by the facilitator.
+     */
+    VERIFIED("verified"),
+
+    /**
+     * The payment was refused before the handler ran; {@link #getReason()} says why.
+     */
+    REJECTED("rejected"),
+
+    /**
+     * The facilitator settled the payment.
+     */
+    SETTLED("settled"),
+
+    /**
+     * Settlement failed for good; {@link #getReason()} says why.
+     */
+    SETTLE_FAILED("settle-failed");
+
+    private static final Type[] VALUES = values();
+
+    private final String label;
+
+    Type(String label) {
+      this.label = label;
+    }
+
+    public String label() {
+      return label;
+    }
+
+    @Nullable
+    static Type of(int ordinal) {
+      return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+  }
+
+  private long timestamp;
+  private Type type;
+  private String resource;
+  private String payer;
+  private String nonce;
+  private String amount;
+  private String reason;
+  private String txHash;
+
+  AuditEvent() {
+  }
+
+  void set(long timestamp, Type type, @Nullable String resource, @Nullable String payer,
+      @Nullable String nonce, @Nullable String amount, @Nullable String reason,
+      @Nullable String txHash) {
+    this.timestamp = timestamp;
+    this.type = type;
+    this.resource = resource;
+    this.payer = payer;
+    this.nonce = nonce;
+    this.amount = amount;
+    this.reason = reason;
+    this.txHash = txHash;
+  }
+
+  /**
+   * Drops the references, so a published slot does not keep request data reachable.
+   */
+  void clear() {
+    set(0, null, null, null, null, null, null, null);
+  }
+
+  /**
+   * Unix time in milliseconds when the event was published.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * The resource URL the payment is for.
+   */
+  @Nullable
+  public String getResource() {
+    return resource;
+  }
+
+  /**
+   * The payer address from the authorization.
+   */
+  @Nullable
+  public String getPayer() {
+    return payer;
+  }
+
+  /**
+   * The authorization nonce.
+   */
+  @Nullable
+  public String getNonce() {
+    return nonce;
+  }
+
+  /**
+   * The authorized amount in atomic units.
+   */
+  @Nullable
+  public String getAmount() {
+    return amount;
+  }
+
+  /**
+   * Why the payment was rejected or its settlement failed.
+   */
+  @Nullable
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * Transaction hash of a settled payment.
+   */
+  @Nullable
+  public String getTxHash() {
+    return txHash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(type != null ? type.label() : "empty");
+    append(sb, "resource", resource);
+    append(sb, "payer", payer);
+    append(sb, "nonce", nonce);
+    append(sb, "amount", amount);
+    append(sb, "reason", reason);
+    append(sb, "tx", txHash);
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, String name, @Nullable String value) {
+    if (value != null) {
+      sb.append(' ').append(name).append(": ").append(value);
+    }
+  }
+}
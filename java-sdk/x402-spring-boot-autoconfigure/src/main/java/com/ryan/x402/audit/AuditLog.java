@@ -0,0 +1,243 @@
+package com.ryan.x402.audit;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.settlement.SettlementListener;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Payment audit trail that keeps its cost off request threads.
+ * <p>
+ * {@link #publish} claims a slot of a preallocated ring buffer with one compare-and-set, copies
+ * a few references into it and returns; nothing is formatted, allocated or written on the request
+ * thread. A single drain thread hands the events to the {@link AuditSink}s in publication order
+ * and flushes them whenever it catches up. If the sinks fall so far behind that the buffer is
+ * full, new events are dropped and counted rather than blocking the request.
+ * <p>
+ * Settlements done by {@link com.ryan.x402.settlement.AsyncSettlementService} are recorded
+ * through {@link SettlementListener}.
+ */
+@Slf4j
+public class AuditLog implements SettlementListener, AutoCloseable {
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AuditSink[] sinks;
+  private final boolean[] failing;
+  private final AuditEvent[] events;
+  private final int mask;
+
+  /**
+   * Per slot: sequence + 1 of the event it holds once that event is fully written.
+   */
+  private final AtomicLongArray published;
+
+  /**
+   * Next sequence to claim.
+   */
+  private final AtomicLong claimed = new AtomicLong();
+
+  /**
+   * Next sequence to drain; slots below it are free. Only written by the drain thread.
+   */
+  private volatile long drained;
+
+  private final LongAdder dropped = new LongAdder();
+  private final Thread drainer;
+  private volatile boolean closed;
+
+  /**
+   * Creates the log and starts the drain thread.
+   *
+   * @param capacity events the buffer holds, rounded up to a power of two
+   * @param sinks    where events are written, in this order
+   */
+  public AuditLog(int capacity, List<? extends AuditSink> sinks) {
+    if (capacity < 1 || capacity > 1 << 24) {
+      throw new IllegalArgumentException("capacity must be between 1 and 16777216");
+    }
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.sinks = sinks.toArray(new AuditSink[0]);
+    this.failing = new boolean[this.sinks.length];
+    this.events = new AuditEvent[size];
+    for (int i = 0; i < size; i++) {
+      events[i] = new AuditEvent();
+    }
+    this.mask = size - 1;
+    this.published = new AtomicLongArray(size);
+
+    this.drainer = new Thread(this::drainLoop, "x402-audit");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  /* ======================== publishing ======================== */
+
+  /**
+   * Publishes an event without blocking.
+   *
+   * @param type     what happened
+   * @param resource the resource URL
+   * @param payload  the payment; payer, nonce and amount are taken from its authorization
+   * @param reason   why the payment was rejected or its settlement failed
+   * @param txHash   transaction hash of a settled payment
+   * @return {@code false} if the event was dropped because the buffer is full or the log closed
+   */
+  public boolean publish(AuditEvent.Type type, @Nullable String resource,
+      @Nullable PaymentPayload payload, @Nullable String reason, @Nullable String txHash) {
+    if (closed) {
+      dropped.increment();
+      return false;
+    }
+    long seq;
+    do {
+      seq = claimed.get();
+      if (seq - drained >= events.length) {
+        dropped.increment();
+        return false;
+      }
+    } while (!claimed.compareAndSet(seq, seq + 1));
+
+    Authorization auth = authorization(payload);
+    int slot = (int) seq & mask;
+    events[slot].set(System.currentTimeMillis(), type, resource,
+        auth != null ? auth.from : null, auth != null ? auth.nonce : null,
+        auth != null ? auth.value : null, reason, txHash);
+    published.lazySet(slot, seq + 1);
+    return true;
+  }
+
+  /**
+   * Events dropped because the buffer was full.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void onSettled(PaymentPayload payload, PaymentRequirements requirements,
+      SettlementResponse response) {
+    publish(AuditEvent.Type.SETTLED, requirements.resource, payload, null, response.txHash);
+  }
+
+  @Override
+  public void onFailed(PaymentPayload payload, PaymentRequirements requirements,
+      @Nullable SettlementResponse response, @Nullable Exception error) {
+    String reason = error != null ? error.toString()
+        : response != null && response.error != null ? response.error : "settlement failed";
+    publish(AuditEvent.Type.SETTLE_FAILED, requirements.resource, payload, reason, null);
+  }
+
+  /**
+   * Drains the events published so far, then flushes and closes the sinks. Events published
+   * concurrently with closing may be lost.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(drainer);
+    drainer.join();
+    long lost = dropped.sum();
+    if (lost > 0) {
+      log.warn("x402 audit log dropped {} events, the sinks did not keep up", lost);
+    }
+  }
+
+  /* ======================== draining ======================== */
+
+  private void drainLoop() {
+    long next = drained;
+    boolean unflushed = false;
+    while (true) {
+      int slot = (int) next & mask;
+      if (published.get(slot) == next + 1) {
+        AuditEvent event = events[slot];
+        for (int i = 0; i < sinks.length; i++) {
+          try {
+            sinks[i].write(event);
+            recovered(i);
+          } catch (Exception e) {
+            failed(i, e);
+          }
+        }
+        event.clear();
+        drained = ++next;
+        unflushed = true;
+        continue;
+      }
+      if (unflushed) {
+        flushSinks();
+        unflushed = false;
+      }
+      if (closed && claimed.get() == next) {
+        break;
+      }
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+
+    for (int i = 0; i < sinks.length; i++) {
+      try {
+        sinks[i].close();
+      } catch (Exception e) {
+        log.warn("x402 audit sink {} failed to close: {}", sinks[i], e.toString());
+      }
+    }
+  }
+
+  private void flushSinks() {
+    for (int i = 0; i < sinks.length; i++) {
+      try {
+        sinks[i].flush();
+        recovered(i);
+      } catch (Exception e) {
+        failed(i, e);
+      }
+    }
+  }
+
+  /**
+   * Logs a sink's first failure only, a broken sink would otherwise log once per event.
+   */
+  private void failed(int sink, Exception e) {
+    if (!failing[sink]) {
+      failing[sink] = true;
+      log.error("x402 audit sink {} failed, events are lost until it recovers", sinks[sink], e);
+    }
+  }
+
+  private void recovered(int sink) {
+    if (failing[sink]) {
+      failing[sink] = false;
+      log.info("x402 audit sink {} recovered", sinks[sink]);
+    }
+  }
+
+  @Nullable
+  private static Authorization authorization(@Nullable PaymentPayload payload) {
+    if (payload == null) {
+      return null;
+    }
+    try {
+      ExactSchemePayload exact = payload.exactPayload();
+      return exact != null ? exact.authorization : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.ryan.x402.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of payment audit events. Sinks are only called from the {@link AuditLog} drain
+ * thread, one event at a time, so they need no synchronization of their own.
+ */
+public interface AuditSink extends Closeable {
+
+  /**
+   * Writes one event. The event is reused afterwards, see {@link AuditEvent}.
+   *
+   * @throws IOException if the event could not be written; the event is then lost for this sink
+   */
+  void write(AuditEvent event) throws IOException;
+
+  /**
+   * Called when the drain thread has caught up, to push out what {@link #write} buffered.
+   */
+  default void flush() throws IOException {
+  }
+
+  /**
+   * Called once all events are drained, when the {@link AuditLog} is closed.
+   */
+  @Override
+  default void close() throws IOException {
+  }
+}
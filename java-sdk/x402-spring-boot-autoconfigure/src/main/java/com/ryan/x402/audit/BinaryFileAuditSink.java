@@ -0,0 +1,282 @@
+package com.ryan.x402.audit;
+
+import com.ryan.x402.util.Hex;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Appends events to a compact binary file.
+ * <p>
+ * The file starts with a magic number and a version (two ints). Each record is a length (int), a
+ * body and the CRC32C of the body (int). The body holds the event type (byte), the timestamp
+ * (long) and the resource, payer, nonce, amount, reason and transaction hash. Each of the six is
+ * tagged: 0 for absent, 1 for a {@code 0x}-prefixed hex string stored as its bytes (length byte,
+ * then the bytes), 2 for UTF-8 text (unsigned short length, then the bytes). Addresses, nonces
+ * and hashes thus take half their text size and are {@linkplain #read read} back in lower case.
+ * <p>
+ * Records are buffered and written when the {@link AuditLog} catches up. With {@code force} the
+ * file is also forced to disk then. Opening an existing file truncates a torn last record, so new
+ * records follow the last complete one.
+ */
+@Slf4j
+public class BinaryFileAuditSink implements AuditSink {
+
+  private static final int MAGIC = 0x78344175; // "x4Au"
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 8;
+  private static final int FIELDS = 6;
+  private static final int MAX_TEXT_CHARS = 16383; // at most 65535 bytes of UTF-8
+  private static final int MAX_BODY_LENGTH = 1 + 8 + FIELDS * (3 + 65535);
+  private static final byte ABSENT = 0;
+  private static final byte HEX = 1;
+  private static final byte TEXT = 2;
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  private final Path file;
+  private final FileChannel channel;
+  private final boolean force;
+  private final CRC32C crc = new CRC32C();
+  private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+  /**
+   * Opens the file for appending, creating it and its directory if missing.
+   *
+   * @param file  the audit file
+   * @param force whether every flush forces the file to disk
+   * @throws IOException if the file cannot be opened or is not an audit file
+   */
+  public BinaryFileAuditSink(Path file, boolean force) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    this.file = file;
+    this.force = force;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      long end;
+      if (channel.size() == 0) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+        writeFully(header.flip());
+        end = HEADER_LENGTH;
+      } else {
+        end = scan(Channels.newInputStream(channel.position(0)), null);
+      }
+      if (end < channel.size()) {
+        log.warn("x402 audit file {} ends in a torn record, truncating {} bytes", file,
+            channel.size() - end);
+        channel.truncate(end);
+      }
+      channel.position(end);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the complete records of an audit file, stopping at a torn or corrupt record.
+   *
+   * @param file     the audit file
+   * @param consumer receives each event; the instance is reused for the next record
+   * @return the number of events read
+   * @throws IOException if the file cannot be read or is not an audit file
+   */
+  public static long read(Path file, Consumer<AuditEvent> consumer) throws IOException {
+    long[] count = new long[1];
+    try (InputStream in = Files.newInputStream(file)) {
+      scan(in, event -> {
+        count[0]++;
+        consumer.accept(event);
+      });
+    }
+    return count[0];
+  }
+
+  /* ======================== writing ======================== */
+
+  @Override
+  public void write(AuditEvent event) throws IOException {
+    String[] fields = {event.getResource(), event.getPayer(), event.getNonce(),
+        event.getAmount(), event.getReason(), event.getTxHash()};
+    int bound = 4 + 1 + 8 + 4;
+    for (String field : fields) {
+      bound += 3 + (field != null ? 3 * Math.min(field.length(), MAX_TEXT_CHARS) : 0);
+    }
+    if (buffer.remaining() < bound) {
+      writeBuffer();
+      if (buffer.capacity() < bound) {
+        buffer = ByteBuffer.allocate(bound);
+      }
+    }
+
+    int start = buffer.position();
+    buffer.position(start + 4);
+    buffer.put((byte) event.getType().ordinal()).putLong(event.getTimestamp());
+    for (String field : fields) {
+      putField(field);
+    }
+    int length = buffer.position() - start - 4;
+    buffer.putInt(start, length);
+    crc.reset();
+    crc.update(buffer.array(), start + 4, length);
+    buffer.putInt((int) crc.getValue());
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writeBuffer();
+    if (force) {
+      channel.force(false);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "file:" + file;
+  }
+
+  private void putField(@Nullable String value) {
+    if (value == null) {
+      buffer.put(ABSENT);
+      return;
+    }
+    int pos = buffer.position();
+    int bytes = (value.length() - 2) / 2;
+    if (value.length() % 2 == 0 && bytes > 0 && bytes <= 255
+        && Hex.decode(value, buffer.array(), pos + 2, bytes)) {
+      buffer.put(HEX).put((byte) bytes).position(pos + 2 + bytes);
+      return;
+    }
+    String text = value.length() > MAX_TEXT_CHARS ? value.substring(0, MAX_TEXT_CHARS) : value;
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    buffer.put(TEXT).putShort((short) utf8.length).put(utf8);
+  }
+
+  private void writeBuffer() throws IOException {
+    try {
+      writeFully(buffer.flip());
+    } finally {
+      // on failure the buffered events are lost rather than written twice
+      buffer.clear();
+    }
+  }
+
+  private void writeFully(ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+  }
+
+  /* ======================== reading ======================== */
+
+  /**
+   * Reads records until the end of the stream or the first incomplete or corrupt one.
+   *
+   * @return the offset just after the last complete record
+   */
+  private static long scan(InputStream in, @Nullable Consumer<AuditEvent> consumer)
+      throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    try {
+      if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+        throw new IOException("not an x402 audit file");
+      }
+    } catch (EOFException e) {
+      throw new IOException("not an x402 audit file", e);
+    }
+
+    long offset = HEADER_LENGTH;
+    AuditEvent event = new AuditEvent();
+    CRC32C crc = new CRC32C();
+    byte[] body = new byte[512];
+    while (true) {
+      int length;
+      int checksum;
+      try {
+        length = data.readInt();
+        if (length < 1 + 8 + FIELDS || length > MAX_BODY_LENGTH) {
+          return offset;
+        }
+        if (body.length < length) {
+          body = new byte[length];
+        }
+        data.readFully(body, 0, length);
+        checksum = data.readInt();
+      } catch (EOFException e) {
+        return offset;
+      }
+      crc.reset();
+      crc.update(body, 0, length);
+      if ((int) crc.getValue() != checksum || !decode(ByteBuffer.wrap(body, 0, length), event)) {
+        return offset;
+      }
+      if (consumer != null) {
+        consumer.accept(event);
+      }
+      offset += 4 + length + 4;
+    }
+  }
+
+  private static boolean decode(ByteBuffer body, AuditEvent event) {
+    try {
+      AuditEvent.Type type = AuditEvent.Type.of(body.get() & 0xff);
+      long timestamp = body.getLong();
+      String[] fields = new String[FIELDS];
+      for (int i = 0; i < FIELDS; i++) {
+        byte tag = body.get();
+        if (tag == HEX) {
+          int length = body.get() & 0xff;
+          char[] hex = new char[2 + 2 * length];
+          hex[0] = '0';
+          hex[1] = 'x';
+          for (int j = 0; j < length; j++) {
+            int b = body.get() & 0xff;
+            hex[2 + 2 * j] = DIGITS[b >>> 4];
+            hex[3 + 2 * j] = DIGITS[b & 0xf];
+          }
+          fields[i] = new String(hex);
+        } else if (tag == TEXT) {
+          int length = body.getShort() & 0xffff;
+          fields[i] = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+          body.position(body.position() + length);
+        } else if (tag != ABSENT) {
+          return false;
+        }
+      }
+      if (type == null || body.hasRemaining()) {
+        return false;
+      }
+      event.set(timestamp, type, fields[0], fields[1], fields[2], fields[3], fields[4],
+          fields[5]);
+      return true;
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.ryan.x402.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes each event as one INFO line to a dedicated logger, {@code x402.audit} by default, so the
+ * audit trail can be routed and retained apart from the application log.
+ */
+public class Slf4jAuditSink implements AuditSink {
+
+  public static final String DEFAULT_LOGGER = "x402.audit";
+
+  private final Logger logger;
+
+  public Slf4jAuditSink() {
+    this(DEFAULT_LOGGER);
+  }
+
+  /**
+   * @param loggerName name of the logger events are written to
+   */
+  public Slf4jAuditSink(String loggerName) {
+    this.logger = LoggerFactory.getLogger(loggerName);
+  }
+
+  @Override
+  public void write(AuditEvent event) {
+    if (logger.isInfoEnabled()) {
+      // formatted now, an async appender would otherwise see the slot after it was reused
+      logger.info("x402 payment {}", event.toString());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "slf4j:" + logger.getName();
+  }
+}
@@ -1,6 +1,12 @@
 package com.ryan.x402.configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 @ConfigurationProperties(prefix = "x402")
 public class X402Configuration {
@@ -25,16 +31,77 @@ public class X402Configuration {
    */
   private String asset = "USDC";
 
+  /**
+   * EIP-712 domain name of the asset contract, sent as extra.name
+   */
+  private String assetName = "USDC";
+
+  /**
+   * EIP-712 domain version of the asset contract, sent as extra.version
+   */
+  private String assetVersion = "2";
+
   /**
    * Maximum payment waiting time (seconds)
    */
   private int maxTimeoutSeconds = 30;
 
+  /**
+   * Maximum accepted X-PAYMENT header length (characters), checked before decoding
+   */
+  private int maxPaymentHeaderLength = 8192;
+
   /**
    * Facilitator base URL. e.g. https://facilitator.example.com
    */
   private String facilitatorBaseUrl;
 
+  /**
+   * Several facilitator base URLs; calls are routed by latency. Takes precedence over
+   * facilitator-base-url
+   */
+  private List<String> facilitatorBaseUrls = new ArrayList<>();
+
+  /**
+   * Facilitator client options
+   */
+  private final Facilitator facilitator = new Facilitator();
+
+  /**
+   * Settlement options
+   */
+  private final Settlement settlement = new Settlement();
+
+  /**
+   * Payment verification options
+   */
+  private final Verification verification = new Verification();
+
+  /**
+   * Verification result cache options
+   */
+  private final VerificationCache verificationCache = new VerificationCache();
+
+  /**
+   * In-process nonce replay guard options
+   */
+  private final ReplayGuard replayGuard = new ReplayGuard();
+
+  /**
+   * Prepaid credit options
+   */
+  private final Prepaid prepaid = new Prepaid();
+
+  /**
+   * Signed access token options
+   */
+  private final AccessToken accessToken = new AccessToken();
+
+  /**
+   * Payment audit event options
+   */
+  private final Audit audit = new Audit();
+
   // getter / setter
 
   public boolean isEnabled() {
@@ -69,6 +136,22 @@ public class X402Configuration {
     this.asset = asset;
   }
 
+  public String getAssetName() {
+    return assetName;
+  }
+
+  public void setAssetName(String assetName) {
+    this.assetName = assetName;
+  }
+
+  public String getAssetVersion() {
+    return assetVersion;
+  }
+
+  public void setAssetVersion(String assetVersion) {
+    this.assetVersion = assetVersion;
+  }
+
   public int getMaxTimeoutSeconds() {
     return maxTimeoutSeconds;
   }
@@ -77,6 +160,14 @@ public class X402Configuration {
     this.maxTimeoutSeconds = maxTimeoutSeconds;
   }
 
+  public int getMaxPaymentHeaderLength() {
+    return maxPaymentHeaderLength;
+  }
+
+  public void setMaxPaymentHeaderLength(int maxPaymentHeaderLength) {
+    this.maxPaymentHeaderLength = maxPaymentHeaderLength;
+  }
+
   public String getFacilitatorBaseUrl() {
     return facilitatorBaseUrl;
   }
@@ -84,4 +175,1226 @@ public class X402Configuration {
   public void setFacilitatorBaseUrl(String facilitatorBaseUrl) {
     this.facilitatorBaseUrl = facilitatorBaseUrl;
   }
+
+  public List<String> getFacilitatorBaseUrls() {
+    return facilitatorBaseUrls;
+  }
+
+  public void setFacilitatorBaseUrls(List<String> facilitatorBaseUrls) {
+    this.facilitatorBaseUrls = facilitatorBaseUrls;
+  }
+
+  public Facilitator getFacilitator() {
+    return facilitator;
+  }
+
+  public Settlement getSettlement() {
+    return settlement;
+  }
+
+  public Verification getVerification() {
+    return verification;
+  }
+
+  public VerificationCache getVerificationCache() {
+    return verificationCache;
+  }
+
+  public ReplayGuard getReplayGuard() {
+    return replayGuard;
+  }
+
+  public Prepaid getPrepaid() {
+    return prepaid;
+  }
+
+  public AccessToken getAccessToken() {
+    return accessToken;
+  }
+
+  public Audit getAudit() {
+    return audit;
+  }
+
+  public static class Facilitator {
+
+    /**
+     * Executor for async facilitator calls: default (HttpClient built-in pool), fixed or virtual
+     * (virtual thread per task, Java 21+)
+     */
+    private ExecutorType executor = ExecutorType.DEFAULT;
+
+    /**
+     * Number of threads when executor is fixed
+     */
+    private int executorThreads = 8;
+
+    /**
+     * Connect timeout of the facilitator HTTP client
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Request timeout of /verify calls
+     */
+    private Duration verifyTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Request timeout of /settle calls, which wait for the on-chain transfer
+     */
+    private Duration settleTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Request timeout of /supported calls
+     */
+    private Duration supportedTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Circuit breaker options
+     */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Bulkhead options
+     */
+    private final Bulkhead bulkhead = new Bulkhead();
+
+    /**
+     * Routing options, used with facilitator-base-urls
+     */
+    private final Routing routing = new Routing();
+
+    /**
+     * Cached /supported options
+     */
+    private final Capabilities capabilities = new Capabilities();
+
+    /**
+     * Settlement batching options
+     */
+    private final SettleBatch settleBatch = new SettleBatch();
+
+    public ExecutorType getExecutor() {
+      return executor;
+    }
+
+    public void setExecutor(ExecutorType executor) {
+      this.executor = executor;
+    }
+
+    public int getExecutorThreads() {
+      return executorThreads;
+    }
+
+    public void setExecutorThreads(int executorThreads) {
+      this.executorThreads = executorThreads;
+    }
+
+    public Duration getConnectTimeout() {
+      return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getVerifyTimeout() {
+      return verifyTimeout;
+    }
+
+    public void setVerifyTimeout(Duration verifyTimeout) {
+      this.verifyTimeout = verifyTimeout;
+    }
+
+    public Duration getSettleTimeout() {
+      return settleTimeout;
+    }
+
+    public void setSettleTimeout(Duration settleTimeout) {
+      this.settleTimeout = settleTimeout;
+    }
+
+    public Duration getSupportedTimeout() {
+      return supportedTimeout;
+    }
+
+    public void setSupportedTimeout(Duration supportedTimeout) {
+      this.supportedTimeout = supportedTimeout;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+      return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+      return bulkhead;
+    }
+
+    public Routing getRouting() {
+      return routing;
+    }
+
+    public Capabilities getCapabilities() {
+      return capabilities;
+    }
+
+    public SettleBatch getSettleBatch() {
+      return settleBatch;
+    }
+
+    public static class CircuitBreaker {
+
+      /**
+       * Whether calls go through a circuit breaker that fails fast while the facilitator is down
+       */
+      private boolean enabled = false;
+
+      /**
+       * Failure rate in percent at which the breaker opens
+       */
+      private float failureRateThreshold = 50;
+
+      /**
+       * Rate of slow calls in percent at which the breaker opens
+       */
+      private float slowCallRateThreshold = 100;
+
+      /**
+       * Calls taking longer than this count as slow
+       */
+      private Duration slowCallDuration = Duration.ofSeconds(5);
+
+      /**
+       * Number of most recent calls the rates are computed over
+       */
+      private int slidingWindowSize = 50;
+
+      /**
+       * Minimum number of recorded calls before the rates are evaluated
+       */
+      private int minimumCalls = 20;
+
+      /**
+       * How long the breaker stays open before letting trial calls through
+       */
+      private Duration openDuration = Duration.ofSeconds(30);
+
+      /**
+       * Number of trial calls in the half-open state
+       */
+      private int halfOpenCalls = 5;
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public float getFailureRateThreshold() {
+        return failureRateThreshold;
+      }
+
+      public void setFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+      }
+
+      public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+      }
+
+      public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+      }
+
+      public Duration getSlowCallDuration() {
+        return slowCallDuration;
+      }
+
+      public void setSlowCallDuration(Duration slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+      }
+
+      public int getSlidingWindowSize() {
+        return slidingWindowSize;
+      }
+
+      public void setSlidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+      }
+
+      public int getMinimumCalls() {
+        return minimumCalls;
+      }
+
+      public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+      }
+
+      public Duration getOpenDuration() {
+        return openDuration;
+      }
+
+      public void setOpenDuration(Duration openDuration) {
+        this.openDuration = openDuration;
+      }
+
+      public int getHalfOpenCalls() {
+        return halfOpenCalls;
+      }
+
+      public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+      }
+    }
+
+    public static class Capabilities {
+
+      /**
+       * Whether supported kinds are fetched in the background and payments for unsupported kinds
+       * are rejected without calling the facilitator
+       */
+      private boolean enabled = false;
+
+      /**
+       * Whether startup blocks on the first fetch and fails if the configured network is not
+       * supported; otherwise the first fetch runs in the background
+       */
+      private boolean failOnUnsupported = false;
+
+      /**
+       * How often the supported kinds are fetched again
+       */
+      private Duration refreshInterval = Duration.ofMinutes(10);
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public boolean isFailOnUnsupported() {
+        return failOnUnsupported;
+      }
+
+      public void setFailOnUnsupported(boolean failOnUnsupported) {
+        this.failOnUnsupported = failOnUnsupported;
+      }
+
+      public Duration getRefreshInterval() {
+        return refreshInterval;
+      }
+
+      public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+      }
+    }
+
+    public static class SettleBatch {
+
+      /**
+       * Whether concurrent settlements are coalesced per facilitator endpoint; batches go to
+       * /settle/batch if /supported lists the batch-settle extension, as concurrent /settle calls
+       * otherwise
+       */
+      private boolean enabled = false;
+
+      /**
+       * Payments per batch
+       */
+      private int maxSize = 50;
+
+      /**
+       * How long a batch waits for more payments after its first one
+       */
+      private Duration window = Duration.ofMillis(5);
+
+      /**
+       * Settlements that may wait for a batch before they are sent on their own
+       */
+      private int queueCapacity = 10_000;
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public int getMaxSize() {
+        return maxSize;
+      }
+
+      public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+      }
+
+      public Duration getWindow() {
+        return window;
+      }
+
+      public void setWindow(Duration window) {
+        this.window = window;
+      }
+
+      public int getQueueCapacity() {
+        return queueCapacity;
+      }
+
+      public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+      }
+    }
+
+    public static class Routing {
+
+      /**
+       * Consecutive failures after which an endpoint is ejected
+       */
+      private int failureThreshold = 3;
+
+      /**
+       * How often ejected endpoints are probed via /supported
+       */
+      private Duration probeInterval = Duration.ofSeconds(5);
+
+      /**
+       * Whether verify calls are hedged with a second request to another endpoint. Settle is never
+       * hedged
+       */
+      private boolean hedgeVerify = false;
+
+      /**
+       * Percentile of recent verify latencies after which the hedge request is sent
+       */
+      private double hedgePercentile = 95;
+
+      /**
+       * Lower bound of the hedge delay
+       */
+      private Duration minHedgeDelay = Duration.ofMillis(50);
+
+      public int getFailureThreshold() {
+        return failureThreshold;
+      }
+
+      public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+      }
+
+      public Duration getProbeInterval() {
+        return probeInterval;
+      }
+
+      public void setProbeInterval(Duration probeInterval) {
+        this.probeInterval = probeInterval;
+      }
+
+      public boolean isHedgeVerify() {
+        return hedgeVerify;
+      }
+
+      public void setHedgeVerify(boolean hedgeVerify) {
+        this.hedgeVerify = hedgeVerify;
+      }
+
+      public double getHedgePercentile() {
+        return hedgePercentile;
+      }
+
+      public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+      }
+
+      public Duration getMinHedgeDelay() {
+        return minHedgeDelay;
+      }
+
+      public void setMinHedgeDelay(Duration minHedgeDelay) {
+        this.minHedgeDelay = minHedgeDelay;
+      }
+    }
+
+    public static class Bulkhead {
+
+      /**
+       * Whether verify and settle calls are limited by separate concurrency bulkheads
+       */
+      private boolean enabled = false;
+
+      /**
+       * Maximum concurrent verify calls
+       */
+      private int verifyMaxConcurrent = 64;
+
+      /**
+       * Maximum concurrent settle calls
+       */
+      private int settleMaxConcurrent = 32;
+
+      /**
+       * How long a blocking call waits for a free slot before failing
+       */
+      private Duration maxWait = Duration.ZERO;
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public int getVerifyMaxConcurrent() {
+        return verifyMaxConcurrent;
+      }
+
+      public void setVerifyMaxConcurrent(int verifyMaxConcurrent) {
+        this.verifyMaxConcurrent = verifyMaxConcurrent;
+      }
+
+      public int getSettleMaxConcurrent() {
+        return settleMaxConcurrent;
+      }
+
+      public void setSettleMaxConcurrent(int settleMaxConcurrent) {
+        this.settleMaxConcurrent = settleMaxConcurrent;
+      }
+
+      public Duration getMaxWait() {
+        return maxWait;
+      }
+
+      public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+      }
+    }
+  }
+
+  public enum ExecutorType {
+    DEFAULT, FIXED, VIRTUAL
+  }
+
+  public enum VerificationMode {
+    REMOTE, LOCAL
+  }
+
+  public enum DeduplicationStoreType {
+    LOCAL, REDIS
+  }
+
+  public static class Settlement {
+
+    /**
+     * Whether to settle payments on a background pool instead of the request thread. The
+     * X-PAYMENT-RESPONSE header is not sent in this mode.
+     */
+    private boolean async = false;
+
+    /**
+     * Number of concurrent background settlements
+     */
+    private int parallelism = 4;
+
+    /**
+     * Number of settlements that may wait for a worker before the request thread settles itself
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * Attempts per settlement on facilitator I/O errors, including the first one
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * Delay before the first retry, doubled for every further retry
+     */
+    private Duration initialBackoff = Duration.ofMillis(200);
+
+    /**
+     * Upper bound for the retry delay
+     */
+    private Duration maxBackoff = Duration.ofSeconds(5);
+
+    /**
+     * How long shutdown waits for queued and in-flight settlements
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+    private final Journal journal = new Journal();
+
+    public boolean isAsync() {
+      return async;
+    }
+
+    public void setAsync(boolean async) {
+      this.async = async;
+    }
+
+    public int getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxAttempts() {
+      return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+      return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+      this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+      return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+      this.maxBackoff = maxBackoff;
+    }
+
+    public Duration getShutdownTimeout() {
+      return shutdownTimeout;
+    }
+
+    public void setShutdownTimeout(Duration shutdownTimeout) {
+      this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public Journal getJournal() {
+      return journal;
+    }
+
+    /**
+     * Local outbox that keeps served but unsettled payments across restarts
+     */
+    public static class Journal {
+
+      /**
+       * Whether to journal each payment before settling it and settle leftovers on startup
+       */
+      private boolean enabled = false;
+
+      /**
+       * Directory of the segment files; should be on a volume that outlives the process
+       */
+      private String directory = "x402-journal";
+
+      /**
+       * Size of one memory-mapped segment file
+       */
+      private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+      /**
+       * How often appended records are forced to disk, bounding what a host crash loses
+       */
+      private Duration flushInterval = Duration.ofMillis(5);
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public String getDirectory() {
+        return directory;
+      }
+
+      public void setDirectory(String directory) {
+        this.directory = directory;
+      }
+
+      public DataSize getSegmentSize() {
+        return segmentSize;
+      }
+
+      public void setSegmentSize(DataSize segmentSize) {
+        this.segmentSize = segmentSize;
+      }
+
+      public Duration getFlushInterval() {
+        return flushInterval;
+      }
+
+      public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+      }
+    }
+  }
+
+  public static class Verification {
+
+    /**
+     * Whether to reject payments whose scheme, network, recipient, amount or validity window
+     * do not match the requirements locally, without calling the facilitator
+     */
+    private boolean preCheck = true;
+
+    /**
+     * Where signatures are verified: remote (facilitator /verify) or local (in-process EIP-712
+     * signature check, facilitator only for payments that cannot be checked offline)
+     */
+    private VerificationMode mode = VerificationMode.REMOTE;
+
+    /**
+     * Fraction of locally verified payments that are also sent to the facilitator, 0.0 to 1.0
+     */
+    private double remoteSampleRate = 0.0;
+
+    /**
+     * Whether facilitator /verify calls run with Servlet async processing, releasing the
+     * container thread until the result arrives (Spring MVC only)
+     */
+    private boolean async = false;
+
+    /**
+     * How long an async verification may take before the request fails with 503
+     */
+    private Duration asyncTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Whether responses of @X402Payment(speculative = true) endpoints are buffered so their
+     * handlers run while the payment is verified; otherwise they are verified first (Spring MVC
+     * only)
+     */
+    private boolean speculative = false;
+
+    public boolean isPreCheck() {
+      return preCheck;
+    }
+
+    public void setPreCheck(boolean preCheck) {
+      this.preCheck = preCheck;
+    }
+
+    public VerificationMode getMode() {
+      return mode;
+    }
+
+    public void setMode(VerificationMode mode) {
+      this.mode = mode;
+    }
+
+    public double getRemoteSampleRate() {
+      return remoteSampleRate;
+    }
+
+    public void setRemoteSampleRate(double remoteSampleRate) {
+      this.remoteSampleRate = remoteSampleRate;
+    }
+
+    public boolean isAsync() {
+      return async;
+    }
+
+    public void setAsync(boolean async) {
+      this.async = async;
+    }
+
+    public Duration getAsyncTimeout() {
+      return asyncTimeout;
+    }
+
+    public void setAsyncTimeout(Duration asyncTimeout) {
+      this.asyncTimeout = asyncTimeout;
+    }
+
+    public boolean isSpeculative() {
+      return speculative;
+    }
+
+    public void setSpeculative(boolean speculative) {
+      this.speculative = speculative;
+    }
+  }
+
+  public static class VerificationCache {
+
+    /**
+     * Whether to cache verification results and collapse identical concurrent verifications
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of cached verification results
+     */
+    private int maxSize = 10_000;
+
+    /**
+     * Maximum lifetime of a cached result; never longer than the authorization's validBefore
+     */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+      return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+      this.ttl = ttl;
+    }
+  }
+
+  public static class ReplayGuard {
+
+    /**
+     * Whether to reject payments whose authorization nonce was already used, on this instance or,
+     * with a shared store, on any instance
+     */
+    private boolean enabled = false;
+
+    /**
+     * Where nonces are claimed: local (in-memory, this instance only) or redis (shared by all
+     * instances)
+     */
+    private DeduplicationStoreType store = DeduplicationStoreType.LOCAL;
+
+    /**
+     * Maximum number of recorded nonces; when full, new nonces are not recorded
+     */
+    private int capacity = 100_000;
+
+    /**
+     * Upper bound on how long a nonce is kept, even if its validBefore is further out
+     */
+    private Duration maxRetention = Duration.ofHours(24);
+
+    /**
+     * Whether a payment is served when its nonce cannot be recorded because the store is
+     * unreachable or full; the facilitator still rejects the nonce once it is settled. When
+     * false such payments are answered with 503
+     */
+    private boolean failOpen = true;
+
+    private final Redis redis = new Redis();
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public DeduplicationStoreType getStore() {
+      return store;
+    }
+
+    public void setStore(DeduplicationStoreType store) {
+      this.store = store;
+    }
+
+    public Redis getRedis() {
+      return redis;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+      this.capacity = capacity;
+    }
+
+    public Duration getMaxRetention() {
+      return maxRetention;
+    }
+
+    public void setMaxRetention(Duration maxRetention) {
+      this.maxRetention = maxRetention;
+    }
+
+    public boolean isFailOpen() {
+      return failOpen;
+    }
+
+    public void setFailOpen(boolean failOpen) {
+      this.failOpen = failOpen;
+    }
+
+    /**
+     * Shared nonce store speaking the Redis protocol, used with store=redis
+     */
+    public static class Redis {
+
+      private String host = "localhost";
+
+      private int port = 6379;
+
+      /**
+       * Password sent with AUTH after connecting
+       */
+      private String password;
+
+      private int database = 0;
+
+      /**
+       * Prefix of the nonce keys
+       */
+      private String keyPrefix = "x402:nonce:";
+
+      private Duration connectTimeout = Duration.ofSeconds(2);
+
+      /**
+       * How long a claim may wait for the server; afterwards the payment proceeds unclaimed
+       */
+      private Duration commandTimeout = Duration.ofSeconds(1);
+
+      /**
+       * Commands waiting to be pipelined; further claims proceed unclaimed
+       */
+      private int queueCapacity = 10_000;
+
+      public String getHost() {
+        return host;
+      }
+
+      public void setHost(String host) {
+        this.host = host;
+      }
+
+      public int getPort() {
+        return port;
+      }
+
+      public void setPort(int port) {
+        this.port = port;
+      }
+
+      public String getPassword() {
+        return password;
+      }
+
+      public void setPassword(String password) {
+        this.password = password;
+      }
+
+      public int getDatabase() {
+        return database;
+      }
+
+      public void setDatabase(int database) {
+        this.database = database;
+      }
+
+      public String getKeyPrefix() {
+        return keyPrefix;
+      }
+
+      public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+      }
+
+      public Duration getConnectTimeout() {
+        return connectTimeout;
+      }
+
+      public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+      }
+
+      public Duration getCommandTimeout() {
+        return commandTimeout;
+      }
+
+      public void setCommandTimeout(Duration commandTimeout) {
+        this.commandTimeout = commandTimeout;
+      }
+
+      public int getQueueCapacity() {
+        return queueCapacity;
+      }
+
+      public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+      }
+    }
+  }
+
+  public static class Prepaid {
+
+    /**
+     * Whether a payment may buy credit for later requests, which are then debited in-process
+     * without a facilitator call; servlet stack only, requires the replay guard
+     */
+    private boolean enabled = false;
+
+    /**
+     * Amount a payer is asked for when its credit runs out, in the same unit as
+     * {@code @X402Payment.price}; endpoints priced higher ask for their price
+     */
+    private String topUp = "1";
+
+    /**
+     * Directory of the balance snapshot and write-ahead logs; should be on a volume that outlives
+     * the process
+     */
+    private String directory = "x402-ledger";
+
+    /**
+     * Number of lock stripes the balances are split into
+     */
+    private int stripes = 64;
+
+    /**
+     * How often the write-ahead log is forced to disk, bounding what a host crash loses
+     */
+    private Duration flushInterval = Duration.ofMillis(5);
+
+    /**
+     * Write-ahead log size after which the balances are snapshotted and the log restarted
+     */
+    private DataSize snapshotThreshold = DataSize.ofMegabytes(16);
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public String getTopUp() {
+      return topUp;
+    }
+
+    public void setTopUp(String topUp) {
+      this.topUp = topUp;
+    }
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public int getStripes() {
+      return stripes;
+    }
+
+    public void setStripes(int stripes) {
+      this.stripes = stripes;
+    }
+
+    public Duration getFlushInterval() {
+      return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+      this.flushInterval = flushInterval;
+    }
+
+    public DataSize getSnapshotThreshold() {
+      return snapshotThreshold;
+    }
+
+    public void setSnapshotThreshold(DataSize snapshotThreshold) {
+      this.snapshotThreshold = snapshotThreshold;
+    }
+  }
+
+  public static class AccessToken {
+
+    /**
+     * Whether endpoints with an access window return a signed token after settlement and accept
+     * it instead of a payment until it expires
+     */
+    private boolean enabled = false;
+
+    /**
+     * Base64 HMAC-SHA256 secrets of at least 32 bytes by key id (0-255); tokens signed with any of
+     * them are accepted
+     */
+    private Map<String, String> keys = new LinkedHashMap<>();
+
+    /**
+     * Id of the key new tokens are signed with
+     */
+    private int activeKey = 0;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Map<String, String> getKeys() {
+      return keys;
+    }
+
+    public void setKeys(Map<String, String> keys) {
+      this.keys = keys;
+    }
+
+    public int getActiveKey() {
+      return activeKey;
+    }
+
+    public void setActiveKey(int activeKey) {
+      this.activeKey = activeKey;
+    }
+  }
+
+  public static class Audit {
+
+    /**
+     * Whether to publish verify-requested, verified, rejected, settled and settle-failed events
+     * to the audit sinks
+     */
+    private boolean enabled = false;
+
+    /**
+     * Events buffered for the sinks, rounded up to a power of two; further events are dropped
+     * while the buffer is full
+     */
+    private int bufferSize = 8192;
+
+    private final Log log = new Log();
+
+    private final File file = new File();
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+
+    public Log getLog() {
+      return log;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Sink that writes each event as an INFO line
+     */
+    public static class Log {
+
+      /**
+       * Whether to log the events
+       */
+      private boolean enabled = true;
+
+      /**
+       * Logger the events are written to
+       */
+      private String logger = "x402.audit";
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public String getLogger() {
+        return logger;
+      }
+
+      public void setLogger(String logger) {
+        this.logger = logger;
+      }
+    }
+
+    /**
+     * Sink that appends the events to a compact binary file
+     */
+    public static class File {
+
+      /**
+       * Whether to write the file
+       */
+      private boolean enabled = false;
+
+      /**
+       * Path of the file, appended to across restarts
+       */
+      private String path = "x402-audit.bin";
+
+      /**
+       * Whether the file is forced to disk whenever the sink catches up
+       */
+      private boolean force = true;
+
+      public boolean isEnabled() {
+        return enabled;
+      }
+
+      public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+      }
+
+      public String getPath() {
+        return path;
+      }
+
+      public void setPath(String path) {
+        this.path = path;
+      }
+
+      public boolean isForce() {
+        return force;
+      }
+
+      public void setForce(boolean force) {
+        this.force = force;
+      }
+    }
+  }
 }
@@ -1,51 +1,528 @@
 package com.ryan.x402.configuration;
 
+import com.ryan.x402.audit.AuditLog;
+import com.ryan.x402.audit.AuditSink;
+import com.ryan.x402.audit.BinaryFileAuditSink;
+import com.ryan.x402.audit.Slf4jAuditSink;
+import com.ryan.x402.facilitator.Bulkhead;
+import com.ryan.x402.facilitator.CircuitBreaker;
+import com.ryan.x402.facilitator.FacilitatorCapabilities;
 import com.ryan.x402.facilitator.FacilitatorClient;
+import com.ryan.x402.facilitator.FacilitatorExecutors;
 import com.ryan.x402.facilitator.HttpFacilitatorClient;
+import com.ryan.x402.facilitator.ResilientFacilitatorClient;
+import com.ryan.x402.facilitator.RoutingFacilitatorClient;
+import com.ryan.x402.facilitator.SettlementBatcher;
+import com.ryan.x402.facilitator.VerificationCache;
+import com.ryan.x402.intereptor.PaymentEndpointRegistry;
+import com.ryan.x402.intereptor.X402AsyncVerificationFilter;
 import com.ryan.x402.intereptor.X402Interceptor;
+import com.ryan.x402.intereptor.X402SpeculativeFilter;
+import com.ryan.x402.metrics.EndpointMetrics;
+import com.ryan.x402.metrics.MicrometerX402Metrics;
+import com.ryan.x402.metrics.X402Metrics;
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.prepaid.PrepaidLedger;
+import com.ryan.x402.replay.LocalPaymentDeduplicationStore;
+import com.ryan.x402.replay.NonceReplayGuard;
+import com.ryan.x402.replay.PaymentDeduplicationStore;
+import com.ryan.x402.replay.RedisPaymentDeduplicationStore;
+import com.ryan.x402.settlement.AsyncSettlementService;
+import com.ryan.x402.settlement.SettlementJournal;
+import com.ryan.x402.settlement.SettlementListener;
+import com.ryan.x402.token.AccessTokenSigner;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
-@AutoConfiguration
-@ConditionalOnClass(WebMvcConfigurer.class)
+@Slf4j
+@AutoConfiguration(afterName = {
+    "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+    "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"
+})
+@ConditionalOnWebApplication
 @EnableConfigurationProperties(X402Configuration.class)
 @ConditionalOnProperty(prefix = "x402", name = "enabled", havingValue = "true")
 public class X402InterceptorAutoConfiguration {
 
   @ConditionalOnMissingBean
   @Bean
-  public FacilitatorClient x402FacilitatorClient(X402Configuration props) {
-    if (props.getFacilitatorBaseUrl() == null) {
-      throw new IllegalStateException(
-          "x402.facilitator-base-url must be configured when x402 is enabled");
+  public FacilitatorClient x402FacilitatorClient(
+      X402Configuration props,
+      @Qualifier("x402FacilitatorExecutor") ObjectProvider<ExecutorService> executor,
+      ObjectProvider<X402Metrics> metrics
+  ) {
+    List<String> baseUrls = props.getFacilitatorBaseUrls();
+    if (baseUrls.isEmpty() && props.getFacilitatorBaseUrl() != null) {
+      baseUrls = List.of(props.getFacilitatorBaseUrl());
+    }
+    if (baseUrls.isEmpty()) {
+      throw new IllegalStateException("x402.facilitator-base-url or x402.facilitator-base-urls "
+          + "must be configured when x402 is enabled");
+    }
+    X402Configuration.Facilitator facilitator = props.getFacilitator();
+    Map<String, FacilitatorClient> endpoints = new LinkedHashMap<>();
+    for (String baseUrl : baseUrls) {
+      HttpFacilitatorClient http = new HttpFacilitatorClient(baseUrl, executor.getIfAvailable(),
+          facilitator.getConnectTimeout());
+      http.setRequestTimeouts(facilitator.getVerifyTimeout(), facilitator.getSettleTimeout(),
+          facilitator.getSupportedTimeout());
+      http.setMetrics(metrics.getIfAvailable(() -> X402Metrics.NOOP));
+      X402Configuration.Facilitator.SettleBatch batch = facilitator.getSettleBatch();
+      endpoints.put(baseUrl, batch.isEnabled() ? new SettlementBatcher(http, batch.getMaxSize(),
+          batch.getWindow(), batch.getQueueCapacity()) : http);
+    }
+
+    FacilitatorClient client;
+    if (endpoints.size() == 1) {
+      client = endpoints.values().iterator().next();
+    } else {
+      X402Configuration.Facilitator.Routing routing = facilitator.getRouting();
+      client = new RoutingFacilitatorClient(endpoints, routing.getFailureThreshold(),
+          routing.getProbeInterval(), routing.isHedgeVerify(), routing.getHedgePercentile(),
+          routing.getMinHedgeDelay());
     }
-    return new HttpFacilitatorClient(props.getFacilitatorBaseUrl());
+
+    X402Configuration.Facilitator.CircuitBreaker cb = facilitator.getCircuitBreaker();
+    X402Configuration.Facilitator.Bulkhead bh = facilitator.getBulkhead();
+    if (!cb.isEnabled() && !bh.isEnabled()) {
+      return client;
+    }
+    return new ResilientFacilitatorClient(
+        client,
+        cb.isEnabled() ? new CircuitBreaker("facilitator", cb.getFailureRateThreshold(),
+            cb.getSlowCallRateThreshold(), cb.getSlowCallDuration(), cb.getSlidingWindowSize(),
+            cb.getMinimumCalls(), cb.getOpenDuration(), cb.getHalfOpenCalls()) : null,
+        bh.isEnabled()
+            ? new Bulkhead("verify", bh.getVerifyMaxConcurrent(), bh.getMaxWait()) : null,
+        bh.isEnabled()
+            ? new Bulkhead("settle", bh.getSettleMaxConcurrent(), bh.getMaxWait()) : null
+    );
   }
 
+  /**
+   * Fetches the supported kinds in the background. With {@code fail-on-unsupported} the first
+   * fetch runs at startup instead and fails the boot if the configured network is not among the
+   * kinds; an unreachable facilitator does not fail the boot even then.
+   */
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "x402.facilitator.capabilities", name = "enabled",
+      havingValue = "true")
+  @Bean(destroyMethod = "close")
+  public FacilitatorCapabilities x402FacilitatorCapabilities(X402Configuration props,
+      FacilitatorClient facilitatorClient) throws InterruptedException {
+    X402Configuration.Facilitator.Capabilities options =
+        props.getFacilitator().getCapabilities();
+    FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitatorClient);
+    if (options.isFailOnUnsupported()) {
+      try {
+        Set<Kind> kinds = capabilities.refresh();
+        if (!capabilities.supports("exact", props.getNetwork())) {
+          throw new IllegalStateException("x402 facilitator does not support exact/"
+              + props.getNetwork() + ", supported: " + kinds);
+        }
+      } catch (IOException e) {
+        log.warn("x402 facilitator capabilities unavailable at startup: {}", e.toString());
+      }
+    }
+    capabilities.start(options.getRefreshInterval());
+    return capabilities;
+  }
+
+  @ConditionalOnExpression("'${x402.facilitator.executor:default}'.toLowerCase() != 'default'")
+  @Bean(name = "x402FacilitatorExecutor", destroyMethod = "shutdown")
+  public ExecutorService x402FacilitatorExecutor(X402Configuration props) {
+    X402Configuration.Facilitator facilitator = props.getFacilitator();
+    return switch (facilitator.getExecutor()) {
+      case FIXED -> FacilitatorExecutors.fixed(facilitator.getExecutorThreads());
+      case VIRTUAL -> FacilitatorExecutors.virtual();
+      case DEFAULT -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  @ConditionalOnMissingBean
   @Bean
-  public WebMvcConfigurer x402WebMvcConfigurer(
-      X402Configuration properties,
-      FacilitatorClient facilitatorClient
+  public PaymentEndpointRegistry x402PaymentEndpointRegistry(X402Configuration props,
+      ObjectProvider<X402Metrics> metrics) {
+    PaymentEndpointRegistry registry = new PaymentEndpointRegistry(
+        props.getDefaultPayTo(),
+        props.getNetwork(),
+        props.getAsset(),
+        props.getMaxTimeoutSeconds(),
+        metrics.getIfAvailable(() -> X402Metrics.NOOP)
+    );
+    registry.setAssetDomain(props.getAssetName(), props.getAssetVersion());
+    return registry;
+  }
+
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "x402.settlement", name = "async", havingValue = "true")
+  @Bean(destroyMethod = "close")
+  public AsyncSettlementService x402AsyncSettlementService(
+      X402Configuration props,
+      FacilitatorClient facilitatorClient,
+      ObjectProvider<SettlementListener> listeners,
+      ObjectProvider<SettlementJournal> journal
   ) {
-    return new WebMvcConfigurer() {
-      @Override
-      public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new X402Interceptor(
-            properties.getDefaultPayTo(),
-            properties.getNetwork(),
-            properties.getAsset(),
-            properties.getMaxTimeoutSeconds(),
-            facilitatorClient
-        ));
+    AsyncSettlementService service = newSettlementService(props, facilitatorClient,
+        props.getSettlement().getParallelism(), props.getSettlement().getQueueCapacity(),
+        listeners.orderedStream().toList());
+    service.setJournal(journal.getIfAvailable());
+    return service;
+  }
+
+  private static AsyncSettlementService newSettlementService(X402Configuration props,
+      FacilitatorClient facilitatorClient, int parallelism, int queueCapacity,
+      List<SettlementListener> listeners) {
+    X402Configuration.Settlement settlement = props.getSettlement();
+    return new AsyncSettlementService(
+        facilitatorClient,
+        parallelism,
+        queueCapacity,
+        settlement.getMaxAttempts(),
+        settlement.getInitialBackoff(),
+        settlement.getMaxBackoff(),
+        settlement.getShutdownTimeout(),
+        listeners
+    );
+  }
+
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "x402.verification-cache", name = "enabled",
+      havingValue = "true")
+  @Bean
+  public VerificationCache x402VerificationCache(X402Configuration props) {
+    return new VerificationCache(
+        props.getVerificationCache().getMaxSize(),
+        props.getVerificationCache().getTtl()
+    );
+  }
+
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "x402.verification", name = "mode", havingValue = "local")
+  @Bean
+  public ExactEvmSignatureVerifier x402SignatureVerifier() {
+    return new ExactEvmSignatureVerifier();
+  }
+
+  /**
+   * Signs access tokens with the active key and accepts tokens signed with any configured key.
+   */
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "x402.access-token", name = "enabled", havingValue = "true")
+  @Bean
+  public AccessTokenSigner x402AccessTokenSigner(X402Configuration props) {
+    X402Configuration.AccessToken accessToken = props.getAccessToken();
+    Map<Integer, byte[]> keys = new LinkedHashMap<>();
+    accessToken.getKeys().forEach((id, secret) ->
+        keys.put(Integer.parseInt(id), Base64.getDecoder().decode(secret)));
+    return new AccessTokenSigner(keys, accessToken.getActiveKey());
+  }
+
+  /**
+   * Settlement outbox; payments left over from the previous run are settled once the context is
+   * up.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnProperty(prefix = "x402.settlement.journal", name = "enabled",
+      havingValue = "true")
+  static class X402SettlementJournalConfiguration {
+
+    @ConditionalOnMissingBean
+    @Bean(destroyMethod = "close")
+    public SettlementJournal x402SettlementJournal(X402Configuration props) throws IOException {
+      X402Configuration.Settlement.Journal journal = props.getSettlement().getJournal();
+      return new SettlementJournal(
+          Path.of(journal.getDirectory()),
+          Math.toIntExact(journal.getSegmentSize().toBytes()),
+          journal.getFlushInterval()
+      );
+    }
+
+    @Bean
+    public SmartInitializingSingleton x402SettlementJournalRecovery(
+        X402Configuration props,
+        SettlementJournal journal,
+        FacilitatorClient facilitatorClient,
+        ObjectProvider<AsyncSettlementService> settlementService,
+        ObjectProvider<SettlementListener> listeners
+    ) {
+      return () -> {
+        List<SettlementJournal.Entry> entries = journal.unsettled();
+        if (entries.isEmpty()) {
+          return;
+        }
+        log.info("x402 settling {} journaled payments from the previous run", entries.size());
+        AsyncSettlementService service = settlementService.getIfAvailable();
+        if (service != null) {
+          entries.forEach(entry -> service.submit(entry.payload(), entry.requirements(),
+              EndpointMetrics.NOOP, entry.id()));
+          return;
+        }
+        // inline settlement has no background workers, use a one-off service that retires
+        // once the backlog is settled
+        AsyncSettlementService recovery = newSettlementService(props, facilitatorClient, 1,
+            entries.size(), listeners.orderedStream().toList());
+        recovery.setJournal(journal);
+        entries.forEach(entry -> recovery.submit(entry.payload(), entry.requirements(),
+            EndpointMetrics.NOOP, entry.id()));
+        Thread retire = new Thread(recovery::close, "x402-journal-recovery");
+        retire.setDaemon(true);
+        retire.start();
+      };
+    }
+  }
+
+  /**
+   * Payment audit trail. The log is also a {@link SettlementListener}, so background settlements
+   * are recorded as well.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnProperty(prefix = "x402.audit", name = "enabled", havingValue = "true")
+  static class X402AuditConfiguration {
+
+    @ConditionalOnProperty(prefix = "x402.audit.log", name = "enabled", havingValue = "true",
+        matchIfMissing = true)
+    @Bean
+    public Slf4jAuditSink x402Slf4jAuditSink(X402Configuration props) {
+      return new Slf4jAuditSink(props.getAudit().getLog().getLogger());
+    }
+
+    /**
+     * Not closed by the context but by the audit log, once it has drained into it.
+     */
+    @ConditionalOnProperty(prefix = "x402.audit.file", name = "enabled", havingValue = "true")
+    @Bean(destroyMethod = "")
+    public BinaryFileAuditSink x402BinaryFileAuditSink(X402Configuration props)
+        throws IOException {
+      X402Configuration.Audit.File file = props.getAudit().getFile();
+      return new BinaryFileAuditSink(Path.of(file.getPath()), file.isForce());
+    }
+
+    @ConditionalOnMissingBean
+    @Bean(destroyMethod = "close")
+    public AuditLog x402AuditLog(X402Configuration props, ObjectProvider<AuditSink> sinks) {
+      return new AuditLog(props.getAudit().getBufferSize(), sinks.orderedStream().toList());
+    }
+  }
+
+  /**
+   * Nonce deduplication, in memory by default or shared through a Redis-protocol server.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnProperty(prefix = "x402.replay-guard", name = "enabled", havingValue = "true")
+  static class X402DeduplicationConfiguration {
+
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "x402.replay-guard", name = "store", havingValue = "local",
+        matchIfMissing = true)
+    @Bean(destroyMethod = "close")
+    public NonceReplayGuard x402NonceReplayGuard(X402Configuration props,
+        ObjectProvider<X402Metrics> metrics) {
+      NonceReplayGuard guard = new NonceReplayGuard(
+          props.getReplayGuard().getCapacity(),
+          props.getReplayGuard().getMaxRetention().toSeconds()
+      );
+      metrics.getIfAvailable(() -> X402Metrics.NOOP).replayGuard(guard);
+      return guard;
+    }
+
+    @ConditionalOnMissingBean(PaymentDeduplicationStore.class)
+    @ConditionalOnProperty(prefix = "x402.replay-guard", name = "store", havingValue = "local",
+        matchIfMissing = true)
+    @Bean
+    public LocalPaymentDeduplicationStore x402LocalDeduplicationStore(NonceReplayGuard guard) {
+      return new LocalPaymentDeduplicationStore(guard);
+    }
+
+    @ConditionalOnMissingBean(PaymentDeduplicationStore.class)
+    @ConditionalOnProperty(prefix = "x402.replay-guard", name = "store", havingValue = "redis")
+    @Bean(destroyMethod = "close")
+    public RedisPaymentDeduplicationStore x402RedisDeduplicationStore(X402Configuration props) {
+      X402Configuration.ReplayGuard.Redis redis = props.getReplayGuard().getRedis();
+      RedisPaymentDeduplicationStore store = new RedisPaymentDeduplicationStore(
+          redis.getHost(),
+          redis.getPort(),
+          props.getReplayGuard().getMaxRetention().toSeconds(),
+          redis.getQueueCapacity()
+      );
+      store.setKeyPrefix(redis.getKeyPrefix());
+      store.setPassword(redis.getPassword());
+      store.setDatabase(redis.getDatabase());
+      store.setTimeouts(redis.getConnectTimeout(), redis.getCommandTimeout());
+      return store;
+    }
+  }
+
+  /**
+   * Per-payer prepaid credit. Only the servlet interceptor debits it.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @ConditionalOnProperty(prefix = "x402.prepaid", name = "enabled", havingValue = "true")
+  static class X402PrepaidConfiguration {
+
+    @ConditionalOnMissingBean
+    @Bean(destroyMethod = "close")
+    public PrepaidLedger x402PrepaidLedger(X402Configuration props) throws IOException {
+      if (!props.getReplayGuard().isEnabled()) {
+        // without it a captured X-PAYMENT header could be replayed against the payer's credit
+        throw new IllegalStateException("x402.prepaid requires x402.replay-guard.enabled");
       }
-    };
+      X402Configuration.Prepaid prepaid = props.getPrepaid();
+      return new PrepaidLedger(
+          Path.of(prepaid.getDirectory()),
+          prepaid.getStripes(),
+          prepaid.getFlushInterval(),
+          prepaid.getSnapshotThreshold().toBytes()
+      );
+    }
+  }
+
+  /**
+   * Registers the {@link X402Interceptor} with Spring MVC.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @ConditionalOnClass(WebMvcConfigurer.class)
+  static class X402WebMvcConfiguration {
+
+    /**
+     * Scans all request mappings once the context is up, so an invalid {@code @X402Payment} fails
+     * the boot.
+     */
+    @Bean
+    public SmartInitializingSingleton x402PaymentEndpointScanner(
+        PaymentEndpointRegistry registry,
+        ObjectProvider<RequestMappingHandlerMapping> handlerMappings
+    ) {
+      return () -> handlerMappings.orderedStream()
+          .forEach(mapping -> registry.registerAll(mapping.getHandlerMethods().values()));
+    }
+
+    @ConditionalOnMissingBean
+    @Bean
+    public X402Interceptor x402Interceptor(
+        X402Configuration props,
+        PaymentEndpointRegistry endpointRegistry,
+        FacilitatorClient facilitatorClient,
+        ObjectProvider<AsyncSettlementService> settlementService,
+        ObjectProvider<SettlementJournal> journal,
+        ObjectProvider<VerificationCache> verificationCache,
+        ObjectProvider<ExactEvmSignatureVerifier> signatureVerifier,
+        ObjectProvider<PaymentDeduplicationStore> deduplicationStore,
+        ObjectProvider<FacilitatorCapabilities> capabilities,
+        ObjectProvider<PrepaidLedger> prepaidLedger,
+        ObjectProvider<AccessTokenSigner> accessTokenSigner,
+        ObjectProvider<AuditLog> auditLog
+    ) {
+      X402Interceptor interceptor = new X402Interceptor(endpointRegistry, facilitatorClient);
+      PrepaidLedger ledger = prepaidLedger.getIfAvailable();
+      if (ledger != null) {
+        endpointRegistry.setPrepaidTopUp(props.getPrepaid().getTopUp());
+      }
+      interceptor.setMaxPaymentHeaderLength(props.getMaxPaymentHeaderLength());
+      interceptor.setSettlementService(settlementService.getIfAvailable());
+      interceptor.setJournal(journal.getIfAvailable());
+      interceptor.setVerificationCache(verificationCache.getIfAvailable());
+      interceptor.setPreCheck(props.getVerification().isPreCheck());
+      interceptor.setSignatureVerifier(signatureVerifier.getIfAvailable());
+      interceptor.setRemoteSampleRate(props.getVerification().getRemoteSampleRate());
+      interceptor.setDeduplicationStore(deduplicationStore.getIfAvailable());
+      interceptor.setDeduplicationFailOpen(props.getReplayGuard().isFailOpen());
+      interceptor.setCapabilities(capabilities.getIfAvailable());
+      interceptor.setPrepaidLedger(ledger);
+      interceptor.setAccessTokenSigner(accessTokenSigner.getIfAvailable());
+      interceptor.setAuditLog(auditLog.getIfAvailable());
+      return interceptor;
+    }
+
+    @Bean
+    public WebMvcConfigurer x402WebMvcConfigurer(X402Interceptor interceptor) {
+      return new WebMvcConfigurer() {
+        @Override
+        public void addInterceptors(InterceptorRegistry registry) {
+          registry.addInterceptor(interceptor);
+        }
+      };
+    }
+
+    /**
+     * Releases container threads while the facilitator verifies a payment.
+     */
+    @ConditionalOnProperty(prefix = "x402.verification", name = "async", havingValue = "true")
+    @Bean
+    public FilterRegistrationBean<X402AsyncVerificationFilter> x402AsyncVerificationFilter(
+        X402Configuration props,
+        X402Interceptor interceptor,
+        PaymentEndpointRegistry endpointRegistry,
+        ObjectProvider<RequestMappingHandlerMapping> handlerMappings
+    ) {
+      X402AsyncVerificationFilter filter = new X402AsyncVerificationFilter(interceptor,
+          endpointRegistry, handlerMappings.orderedStream().toList(),
+          props.getVerification().getAsyncTimeout());
+      FilterRegistrationBean<X402AsyncVerificationFilter> registration =
+          new FilterRegistrationBean<>(filter);
+      registration.setAsyncSupported(true);
+      return registration;
+    }
+
+    /**
+     * Buffers responses of speculative endpoints, and of access-window endpoints so the token
+     * header can be added after settlement; requests to other endpoints skip it. Without it the
+     * interceptor verifies speculative payments before running the handler.
+     */
+    @ConditionalOnExpression(
+        "${x402.verification.speculative:false} or ${x402.access-token.enabled:false}")
+    @Bean
+    public FilterRegistrationBean<X402SpeculativeFilter> x402SpeculativeFilter(
+        PaymentEndpointRegistry endpointRegistry,
+        ObjectProvider<RequestMappingHandlerMapping> handlerMappings
+    ) {
+      FilterRegistrationBean<X402SpeculativeFilter> registration = new FilterRegistrationBean<>(
+          new X402SpeculativeFilter(endpointRegistry, handlerMappings.orderedStream().toList()));
+      registration.setAsyncSupported(true);
+      return registration;
+    }
   }
 
+  /**
+   * Publishes x402 metrics to Micrometer when a {@link MeterRegistry} is present.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+  static class X402MetricsConfiguration {
 
-}
\ No newline at end of file
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(MeterRegistry.class)
+    @Bean
+    public X402Metrics x402Metrics(MeterRegistry meterRegistry) {
+      return new MicrometerX402Metrics(meterRegistry);
+    }
+  }
+}
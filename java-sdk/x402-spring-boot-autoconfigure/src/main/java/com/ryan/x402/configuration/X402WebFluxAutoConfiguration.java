@@ -0,0 +1,92 @@
+package com.ryan.x402.configuration;
+
+import com.ryan.x402.audit.AuditLog;
+import com.ryan.x402.facilitator.FacilitatorCapabilities;
+import com.ryan.x402.facilitator.FacilitatorClient;
+import com.ryan.x402.facilitator.ReactiveFacilitatorClient;
+import com.ryan.x402.facilitator.VerificationCache;
+import com.ryan.x402.intereptor.PaymentEndpointRegistry;
+import com.ryan.x402.intereptor.X402WebFilter;
+import com.ryan.x402.replay.PaymentDeduplicationStore;
+import com.ryan.x402.settlement.AsyncSettlementService;
+import com.ryan.x402.settlement.SettlementJournal;
+import com.ryan.x402.token.AccessTokenSigner;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.WebFilter;
+
+/**
+ * WebFlux counterpart of the Spring MVC wiring in {@link X402InterceptorAutoConfiguration}, which
+ * provides the shared beans (facilitator client, endpoint registry, caches, ...).
+ */
+@AutoConfiguration(after = X402InterceptorAutoConfiguration.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnClass(WebFilter.class)
+@ConditionalOnProperty(prefix = "x402", name = "enabled", havingValue = "true")
+public class X402WebFluxAutoConfiguration {
+
+  /**
+   * Non-blocking view of the facilitator client, so routing, timeouts, circuit breaking and
+   * metrics configured for it apply here as well.
+   */
+  @ConditionalOnMissingBean
+  @Bean
+  public ReactiveFacilitatorClient x402ReactiveFacilitatorClient(
+      FacilitatorClient facilitatorClient) {
+    return ReactiveFacilitatorClient.from(facilitatorClient);
+  }
+
+  /**
+   * Scans all request mappings once the context is up, so an invalid {@code @X402Payment} fails
+   * the boot.
+   */
+  @Bean
+  public SmartInitializingSingleton x402ReactivePaymentEndpointScanner(
+      PaymentEndpointRegistry registry,
+      ObjectProvider<RequestMappingHandlerMapping> handlerMappings
+  ) {
+    return () -> handlerMappings.orderedStream()
+        .forEach(mapping -> registry.registerAll(mapping.getHandlerMethods().values()));
+  }
+
+  @ConditionalOnMissingBean
+  @Bean
+  public X402WebFilter x402WebFilter(
+      X402Configuration props,
+      PaymentEndpointRegistry endpointRegistry,
+      ReactiveFacilitatorClient facilitatorClient,
+      ObjectProvider<RequestMappingHandlerMapping> handlerMappings,
+      ObjectProvider<AsyncSettlementService> settlementService,
+      ObjectProvider<SettlementJournal> journal,
+      ObjectProvider<VerificationCache> verificationCache,
+      ObjectProvider<ExactEvmSignatureVerifier> signatureVerifier,
+      ObjectProvider<PaymentDeduplicationStore> deduplicationStore,
+      ObjectProvider<FacilitatorCapabilities> capabilities,
+      ObjectProvider<AccessTokenSigner> accessTokenSigner,
+      ObjectProvider<AuditLog> auditLog
+  ) {
+    X402WebFilter filter = new X402WebFilter(endpointRegistry, facilitatorClient,
+        handlerMappings.orderedStream().toList());
+    filter.setMaxPaymentHeaderLength(props.getMaxPaymentHeaderLength());
+    filter.setSettlementService(settlementService.getIfAvailable());
+    filter.setJournal(journal.getIfAvailable());
+    filter.setVerificationCache(verificationCache.getIfAvailable());
+    filter.setPreCheck(props.getVerification().isPreCheck());
+    filter.setSignatureVerifier(signatureVerifier.getIfAvailable());
+    filter.setRemoteSampleRate(props.getVerification().getRemoteSampleRate());
+    filter.setDeduplicationStore(deduplicationStore.getIfAvailable());
+    filter.setDeduplicationFailOpen(props.getReplayGuard().isFailOpen());
+    filter.setCapabilities(capabilities.getIfAvailable());
+    filter.setAccessTokenSigner(accessTokenSigner.getIfAvailable());
+    filter.setAuditLog(auditLog.getIfAvailable());
+    return filter;
+  }
+}
@@ -0,0 +1,72 @@
+package com.ryan.x402.facilitator;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent calls of one kind, so a backlog of one operation cannot use up
+ * all threads and connections of another.
+ */
+public class Bulkhead {
+
+  private final String name;
+  private final Semaphore permits;
+  private final long maxWaitNanos;
+
+  /**
+   * @param name          name used in error messages
+   * @param maxConcurrent maximum number of concurrent calls
+   * @param maxWait       how long {@link #acquire()} waits for a free slot
+   */
+  public Bulkhead(String name, int maxConcurrent, Duration maxWait) {
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("maxConcurrent must be positive");
+    }
+    this.name = Objects.requireNonNull(name);
+    this.permits = new Semaphore(maxConcurrent);
+    this.maxWaitNanos = maxWait.toNanos();
+  }
+
+  /**
+   * Takes a slot, waiting at most the configured time. Blocking callers use this.
+   *
+   * @throws FacilitatorUnavailableException if no slot became free in time
+   * @throws InterruptedException            if interrupted while waiting
+   */
+  public void acquire() throws FacilitatorUnavailableException, InterruptedException {
+    boolean acquired = maxWaitNanos > 0
+        ? permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)
+        : permits.tryAcquire();
+    if (!acquired) {
+      throw full();
+    }
+  }
+
+  /**
+   * Takes a slot without waiting. Async callers use this.
+   *
+   * @throws FacilitatorUnavailableException if all slots are taken
+   */
+  public void tryAcquire() throws FacilitatorUnavailableException {
+    if (!permits.tryAcquire()) {
+      throw full();
+    }
+  }
+
+  public void release() {
+    permits.release();
+  }
+
+  /**
+   * Number of free slots.
+   */
+  public int getAvailable() {
+    return permits.availablePermits();
+  }
+
+  private FacilitatorUnavailableException full() {
+    return new FacilitatorUnavailableException("facilitator " + name + " bulkhead is full", 0);
+  }
+}
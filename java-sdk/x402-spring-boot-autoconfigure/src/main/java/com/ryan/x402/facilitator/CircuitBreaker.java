@@ -0,0 +1,193 @@
+package com.ryan.x402.facilitator;
+
+import java.time.Duration;
+import java.util.Objects;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Count-based circuit breaker for facilitator calls.
+ * <p>
+ * The outcomes of the last {@code slidingWindowSize} calls are kept in a ring buffer. Once at
+ * least {@code minimumCalls} are recorded, the breaker opens when the failure rate or the rate of
+ * calls slower than {@code slowCallDuration} reaches its threshold. While open, calls are
+ * rejected without reaching the facilitator. After {@code openDuration} the breaker lets
+ * {@code halfOpenCalls} trial calls through and closes or opens again depending on their rates.
+ * <p>
+ * The closed state is checked without locking; recording an outcome takes a short lock.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final float failureRateThreshold;
+  private final float slowCallRateThreshold;
+  private final long slowCallNanos;
+  private final int minimumCalls;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  // ring buffer of the closed state: bit 0 = failed, bit 1 = slow
+  private final byte[] window;
+  private int windowPos;
+  private int windowCount;
+  private int failures;
+  private int slowCalls;
+
+  private volatile State state = State.CLOSED;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenRecorded;
+  private int halfOpenFailures;
+  private int halfOpenSlow;
+
+  /**
+   * Creates a closed circuit breaker.
+   *
+   * @param name                  name used in log messages
+   * @param failureRateThreshold  failure rate in percent at which the breaker opens
+   * @param slowCallRateThreshold slow call rate in percent at which the breaker opens
+   * @param slowCallDuration      calls taking longer count as slow
+   * @param slidingWindowSize     number of recent calls the rates are computed over
+   * @param minimumCalls          calls needed before the rates are evaluated
+   * @param openDuration          time the breaker stays open before trial calls
+   * @param halfOpenCalls         number of trial calls in the half-open state
+   */
+  public CircuitBreaker(String name, float failureRateThreshold, float slowCallRateThreshold,
+      Duration slowCallDuration, int slidingWindowSize, int minimumCalls, Duration openDuration,
+      int halfOpenCalls) {
+    if (slidingWindowSize < 1 || halfOpenCalls < 1) {
+      throw new IllegalArgumentException("slidingWindowSize and halfOpenCalls must be positive");
+    }
+    this.name = Objects.requireNonNull(name);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.slowCallNanos = slowCallDuration.toNanos();
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, slidingWindowSize));
+    this.openNanos = openDuration.toNanos();
+    this.halfOpenCalls = halfOpenCalls;
+    this.window = new byte[slidingWindowSize];
+  }
+
+  /**
+   * Asks for permission to call the facilitator. Every granted permission must be followed by
+   * {@link #onSuccess(long)} or {@link #onError(long)}.
+   *
+   * @throws FacilitatorUnavailableException if the breaker is open
+   */
+  public void acquirePermission() throws FacilitatorUnavailableException {
+    if (state == State.CLOSED) {
+      return;
+    }
+    synchronized (this) {
+      if (state == State.OPEN) {
+        long elapsed = System.nanoTime() - openedAt;
+        if (elapsed < openNanos) {
+          throw new FacilitatorUnavailableException("facilitator circuit breaker '" + name
+              + "' is open", Math.max(1, (openNanos - elapsed) / 1_000_000_000L));
+        }
+        transition(State.HALF_OPEN);
+      }
+      if (state == State.HALF_OPEN) {
+        if (halfOpenPermits >= halfOpenCalls) {
+          throw new FacilitatorUnavailableException("facilitator circuit breaker '" + name
+              + "' is half-open and waiting for trial calls", 1);
+        }
+        halfOpenPermits++;
+      }
+    }
+  }
+
+  /**
+   * Records a call that returned a response.
+   *
+   * @param nanos duration of the call
+   */
+  public void onSuccess(long nanos) {
+    record(false, nanos >= slowCallNanos);
+  }
+
+  /**
+   * Records a call that failed.
+   *
+   * @param nanos duration of the call
+   */
+  public void onError(long nanos) {
+    record(true, nanos >= slowCallNanos);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /* ======================== internals ======================== */
+
+  private synchronized void record(boolean failed, boolean slow) {
+    switch (state) {
+      case CLOSED -> {
+        if (windowCount == window.length) {
+          byte evicted = window[windowPos];
+          failures -= evicted & 1;
+          slowCalls -= (evicted >> 1) & 1;
+        } else {
+          windowCount++;
+        }
+        window[windowPos] = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        windowPos = (windowPos + 1) % window.length;
+        if (failed) {
+          failures++;
+        }
+        if (slow) {
+          slowCalls++;
+        }
+        if (windowCount >= minimumCalls && exceeded(failures, slowCalls, windowCount)) {
+          transition(State.OPEN);
+        }
+      }
+      case HALF_OPEN -> {
+        halfOpenRecorded++;
+        if (failed) {
+          halfOpenFailures++;
+        }
+        if (slow) {
+          halfOpenSlow++;
+        }
+        if (halfOpenRecorded >= halfOpenCalls) {
+          transition(exceeded(halfOpenFailures, halfOpenSlow, halfOpenRecorded)
+              ? State.OPEN : State.CLOSED);
+        }
+      }
+      case OPEN -> {
+        // late result of a call started before the breaker opened
+      }
+    }
+  }
+
+  private boolean exceeded(int failed, int slow, int total) {
+    return failed * 100f >= failureRateThreshold * total
+        || slow * 100f >= slowCallRateThreshold * total;
+  }
+
+  private void transition(State next) {
+    log.warn("x402 facilitator circuit breaker '{}' {} -> {}", name, state, next);
+    switch (next) {
+      case OPEN -> openedAt = System.nanoTime();
+      case HALF_OPEN -> {
+        halfOpenPermits = 0;
+        halfOpenRecorded = 0;
+        halfOpenFailures = 0;
+        halfOpenSlow = 0;
+      }
+      case CLOSED -> {
+        windowPos = 0;
+        windowCount = 0;
+        failures = 0;
+        slowCalls = 0;
+      }
+    }
+    state = next;
+  }
+}
@@ -0,0 +1,116 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Kind;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Cached result of {@link FacilitatorClient#supported()}.
+ * <p>
+ * The kinds are held as an immutable set that is swapped on every successful refresh, so lookups
+ * never block and never reach the network. Until the first refresh succeeds every kind is assumed
+ * to be supported and the decision is left to the facilitator. A failed or empty refresh keeps the
+ * previous set.
+ */
+@Slf4j
+public class FacilitatorCapabilities implements AutoCloseable {
+
+  /**
+   * Error reported for payments whose scheme/network pair the facilitator does not support.
+   */
+  public static final String UNSUPPORTED_SCHEME = "unsupported_scheme";
+
+  private final FacilitatorClient client;
+
+  @Nullable
+  private volatile Set<Kind> kinds;
+
+  @Nullable
+  private ScheduledExecutorService scheduler;
+
+  public FacilitatorCapabilities(FacilitatorClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Fetches the supported kinds and replaces the cached set.
+   *
+   * @return the supported kinds as currently cached
+   * @throws IOException          if the facilitator call fails
+   * @throws InterruptedException if interrupted while calling the facilitator
+   */
+  public Set<Kind> refresh() throws IOException, InterruptedException {
+    Set<Kind> fetched = Set.copyOf(client.supported());
+    Set<Kind> previous = kinds;
+    if (fetched.isEmpty() && previous != null) {
+      log.warn("x402 facilitator reported no supported kinds, keeping {}", previous);
+      return previous;
+    }
+    if (!fetched.equals(previous)) {
+      log.info("x402 facilitator supports {}", fetched);
+    }
+    kinds = fetched;
+    return fetched;
+  }
+
+  /**
+   * Refreshes the cached kinds in the background. The first refresh runs right away if no
+   * refresh has succeeded yet, after {@code interval} otherwise.
+   *
+   * @param interval time between two refreshes
+   */
+  public synchronized void start(Duration interval) {
+    if (scheduler != null) {
+      throw new IllegalStateException("already started");
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "x402-facilitator-capabilities");
+      t.setDaemon(true);
+      return t;
+    });
+    long millis = interval.toMillis();
+    long initialDelay = kinds == null ? 0 : millis;
+    scheduler.scheduleWithFixedDelay(this::refreshQuietly, initialDelay, millis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Whether the facilitator supports the given pair. Returns {@code true} while nothing has been
+   * fetched yet.
+   */
+  public boolean supports(String scheme, String network) {
+    Set<Kind> current = kinds;
+    return current == null || current.contains(new Kind(scheme, network));
+  }
+
+  /**
+   * The cached kinds, or {@code null} if no refresh has succeeded yet.
+   */
+  @Nullable
+  public Set<Kind> getKinds() {
+    return kinds;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn("x402 facilitator capabilities refresh failed: {}", e.toString());
+    }
+  }
+}
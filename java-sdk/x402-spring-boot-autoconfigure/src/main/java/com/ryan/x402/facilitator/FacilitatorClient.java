@@ -6,10 +6,18 @@ import com.ryan.x402.model.PaymentRequirements;
 import com.ryan.x402.model.SettlementResponse;
 import com.ryan.x402.model.VerificationResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Contract for calling an x402 facilitator (HTTP, gRPC, mock, etc.).
+ * <p>
+ * The {@code *Async} variants complete exceptionally with a {@link CompletionException} wrapping
+ * the {@link IOException} of the blocking variant. Their default implementations simply run the
+ * blocking call on the caller thread; implementations backed by non-blocking I/O override them.
  */
 public interface FacilitatorClient {
 
@@ -47,4 +55,73 @@ public interface FacilitatorClient {
    * @throws InterruptedException if the request is interrupted
    */
   Set<Kind> supported() throws IOException, InterruptedException;
+
+  /**
+   * Asynchronous variant of {@link #verify(PaymentPayload, PaymentRequirements)}.
+   *
+   * @param paymentPayload the X-402 payment header to verify
+   * @param req            the payment requirements to validate against
+   * @return future completed with the verification response
+   */
+  default CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    try {
+      return CompletableFuture.completedFuture(verify(paymentPayload, req));
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  /**
+   * Asynchronous variant of {@link #settle(PaymentPayload, PaymentRequirements)}.
+   *
+   * @param paymentPayload the X-402 payment header to settle
+   * @param req            the payment requirements for settlement
+   * @return future completed with the settlement response
+   */
+  default CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    try {
+      return CompletableFuture.completedFuture(settle(paymentPayload, req));
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  /**
+   * Settles several payments, completing one future per payment in the order of {@code batch}.
+   * The default implementation issues {@link #settleAsync} for every payment at once;
+   * implementations whose facilitator accepts batches send them in a single request.
+   *
+   * @param batch the payments to settle
+   * @return futures completed with the settlement response of the payment at the same index
+   */
+  default List<CompletableFuture<SettlementResponse>> settleBatchAsync(
+      List<SettlementRequest> batch) {
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>(batch.size());
+    for (SettlementRequest request : batch) {
+      results.add(settleAsync(request.payload(), request.requirements()));
+    }
+    return results;
+  }
+
+  /**
+   * Asynchronous variant of {@link #supported()}.
+   *
+   * @return future completed with the supported payment kinds
+   */
+  default CompletableFuture<Set<Kind>> supportedAsync() {
+    try {
+      return CompletableFuture.completedFuture(supported());
+    } catch (Exception e) {
+      return failed(e);
+    }
+  }
+
+  private static <T> CompletableFuture<T> failed(Exception e) {
+    if (e instanceof InterruptedException) {
+      Thread.currentThread().interrupt();
+    }
+    return CompletableFuture.failedFuture(new CompletionException(e));
+  }
 }
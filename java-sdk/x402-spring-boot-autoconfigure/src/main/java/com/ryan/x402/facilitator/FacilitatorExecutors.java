@@ -0,0 +1,51 @@
+package com.ryan.x402.facilitator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for executors used by {@link HttpFacilitatorClient} for async requests.
+ */
+public final class FacilitatorExecutors {
+
+  private FacilitatorExecutors() {
+  }
+
+  /**
+   * Creates a fixed pool of daemon platform threads.
+   *
+   * @param threads number of threads
+   * @return a new executor, owned by the caller
+   */
+  public static ExecutorService fixed(int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      Thread t = new Thread(r, "x402-facilitator-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+    return Executors.newFixedThreadPool(threads, factory);
+  }
+
+  /**
+   * Creates a virtual-thread-per-task executor. The SDK is compiled for Java 17, so the executor
+   * is looked up reflectively.
+   *
+   * @return a new executor, owned by the caller
+   * @throws IllegalStateException if the running JVM has no virtual threads (Java 21+)
+   */
+  public static ExecutorService virtual() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Virtual threads require Java 21 or newer, running on "
+          + Runtime.version(), e);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create virtual thread executor", e);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.ryan.x402.facilitator;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling the facilitator when its circuit breaker is open or a bulkhead is
+ * full. It is an {@link IOException}, so existing retry and error handling still applies; the
+ * interceptor answers it with 503 Service Unavailable.
+ */
+public class FacilitatorUnavailableException extends IOException {
+
+  private final long retryAfterSeconds;
+
+  /**
+   * @param message           description of why the call was rejected
+   * @param retryAfterSeconds seconds until a retry may succeed, or 0 if unknown
+   */
+  public FacilitatorUnavailableException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Seconds until a retry may succeed, or 0 if unknown.
+   */
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
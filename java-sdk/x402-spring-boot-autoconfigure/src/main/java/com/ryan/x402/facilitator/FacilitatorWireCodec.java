@@ -0,0 +1,751 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import com.ryan.x402.util.Json;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import org.springframework.lang.Nullable;
+
+/**
+ * Encodes {@code /verify} and {@code /settle} requests and decodes their responses without
+ * {@code String} intermediates.
+ * <p>
+ * The request envelope is written straight into one byte array sized up front. The requirements
+ * are serialized once per endpoint template and split around the resource URL, so a request only
+ * writes the payment payload and splices in the escaped URL. Responses are read from the received
+ * {@link ByteBuffer}s; verification and settlement responses with a small reader for their flat
+ * JSON objects, other types through Jackson.
+ * <p>
+ * Payloads set as a generic {@link PaymentPayload#payload} map and requirements without a resource
+ * are serialized through Jackson.
+ */
+public final class FacilitatorWireCodec {
+
+  private static final byte[] ENVELOPE_START = ascii("{\"x402Version\":1,\"paymentPayload\":");
+  private static final byte[] ENVELOPE_REQUIREMENTS = ascii(",\"paymentRequirements\":");
+  private static final byte[] PAYLOAD_START = ascii("{\"x402Version\":");
+  private static final byte[] EXACT_START = ascii(",\"payload\":{");
+  private static final byte[] AUTHORIZATION_START = ascii("\"authorization\":{");
+  private static final byte[] BATCH_START = ascii("{\"x402Version\":1,\"settlements\":[");
+
+  private static final String RESOURCE_MARK = "x402:resource:7c1f3a";
+
+  /**
+   * Upper bound of distinct requirements templates with cached bytes.
+   */
+  private static final int MAX_CACHED_TEMPLATES = 256;
+
+  private static final byte[] IS_VALID = ascii("isValid");
+  private static final byte[] INVALID_REASON = ascii("invalidReason");
+  private static final byte[] SUCCESS = ascii("success");
+  private static final byte[] ERROR = ascii("error");
+  private static final byte[] TX_HASH = ascii("txHash");
+  private static final byte[] NETWORK_ID = ascii("networkId");
+
+  private static final byte[] HEX = ascii("0123456789abcdef");
+
+  private final ConcurrentMap<Template, SplitRequirements> requirements =
+      new ConcurrentHashMap<>();
+
+  /* ======================== request ======================== */
+
+  /**
+   * Encodes the request body of {@code /verify} and {@code /settle}.
+   *
+   * @param payload the payment payload
+   * @param req     the requirements the payment is checked against
+   * @return the body, backed by the encoding buffer without a copy
+   */
+  public ByteBuffer encodeRequest(PaymentPayload payload, PaymentRequirements req)
+      throws IOException {
+    SplitRequirements split = req.resource != null ? split(req) : null;
+    Buffer out = new Buffer(requestSize(payload, req, split));
+    writeRequest(out, payload, req, split);
+    return out.toByteBuffer();
+  }
+
+  /**
+   * Encodes the request body of {@code /settle/batch}: the {@code /settle} body of every payment,
+   * in order, under {@code settlements}.
+   *
+   * @param batch the payments to settle
+   * @return the body, backed by the encoding buffer without a copy
+   */
+  public ByteBuffer encodeBatchRequest(List<SettlementRequest> batch) throws IOException {
+    List<SplitRequirements> splits = new ArrayList<>(batch.size());
+    int size = BATCH_START.length + 2;
+    for (SettlementRequest request : batch) {
+      PaymentRequirements req = request.requirements();
+      SplitRequirements split = req.resource != null ? split(req) : null;
+      splits.add(split);
+      size += requestSize(request.payload(), req, split) + 1;
+    }
+    Buffer out = new Buffer(size);
+    out.put(BATCH_START);
+    for (int i = 0; i < batch.size(); i++) {
+      if (i > 0) {
+        out.put(',');
+      }
+      SettlementRequest request = batch.get(i);
+      writeRequest(out, request.payload(), request.requirements(), splits.get(i));
+    }
+    out.put(']');
+    out.put('}');
+    return out.toByteBuffer();
+  }
+
+  private static int requestSize(PaymentPayload payload, PaymentRequirements req,
+      @Nullable SplitRequirements split) {
+    return ENVELOPE_START.length + estimateSize(payload) + ENVELOPE_REQUIREMENTS.length
+        + (split != null ? split.head.length + split.tail.length + req.resource.length() : 512)
+        + 1;
+  }
+
+  private static void writeRequest(Buffer out, PaymentPayload payload, PaymentRequirements req,
+      @Nullable SplitRequirements split) throws IOException {
+    out.put(ENVELOPE_START);
+    writePayload(out, payload);
+    out.put(ENVELOPE_REQUIREMENTS);
+    if (split != null) {
+      out.put(split.head);
+      out.writeString(req.resource);
+      out.put(split.tail);
+    } else {
+      Json.MAPPER.writeValue(out, req);
+    }
+    out.put('}');
+  }
+
+  @Nullable
+  private SplitRequirements split(PaymentRequirements req) throws IOException {
+    Template key = Template.of(req);
+    SplitRequirements split = requirements.get(key);
+    if (split == null) {
+      split = SplitRequirements.of(req);
+      if (split != null && requirements.size() < MAX_CACHED_TEMPLATES) {
+        requirements.putIfAbsent(key, split);
+      }
+    }
+    return split;
+  }
+
+  /**
+   * Same JSON as {@code PaymentPayloadSerializer}, written directly for decoded "exact" payloads.
+   */
+  private static void writePayload(Buffer out, PaymentPayload payload) throws IOException {
+    if (!payload.isExactPayloadBound()) {
+      Json.MAPPER.writeValue(out, payload);
+      return;
+    }
+    out.put(PAYLOAD_START);
+    out.writeInt(payload.x402Version);
+    out.writeField("scheme", payload.scheme, false);
+    out.writeField("network", payload.network, false);
+    ExactSchemePayload exact = payload.exactPayload();
+    if (exact != null) {
+      out.put(EXACT_START);
+      boolean empty = !out.writeField("signature", exact.signature, true);
+      Authorization auth = exact.authorization;
+      if (auth != null) {
+        if (!empty) {
+          out.put(',');
+        }
+        out.put(AUTHORIZATION_START);
+        empty = !out.writeField("from", auth.from, true);
+        empty &= !out.writeField("to", auth.to, empty);
+        empty &= !out.writeField("value", auth.value, empty);
+        empty &= !out.writeField("validAfter", auth.validAfter, empty);
+        empty &= !out.writeField("validBefore", auth.validBefore, empty);
+        out.writeField("nonce", auth.nonce, empty);
+        out.put('}');
+      }
+      out.put('}');
+    }
+    out.put('}');
+  }
+
+  private static int estimateSize(PaymentPayload payload) {
+    ExactSchemePayload exact = payload.isExactPayloadBound() ? payload.exactPayload() : null;
+    if (exact == null) {
+      return 512;
+    }
+    int size = 192 + length(payload.scheme) + length(payload.network) + length(exact.signature);
+    Authorization auth = exact.authorization;
+    if (auth != null) {
+      size += length(auth.from) + length(auth.to) + length(auth.value) + length(auth.validAfter)
+          + length(auth.validBefore) + length(auth.nonce);
+    }
+    return size;
+  }
+
+  private static int length(@Nullable String s) {
+    return s != null ? s.length() : 0;
+  }
+
+  /* ======================== response ======================== */
+
+  /**
+   * Returns a subscriber that collects the body and decodes it into {@code type} once complete.
+   * A status other than 200 fails the body with an {@link IOException} carrying the response
+   * text.
+   *
+   * @param status the response status
+   * @param type   the JSON type of a successful response
+   */
+  public <T> HttpResponse.BodySubscriber<T> subscriber(int status, Class<T> type) {
+    return new DecodingSubscriber<>(this, status, type);
+  }
+
+  /**
+   * Decodes a complete response body. The buffers are consumed.
+   *
+   * @param status the response status
+   * @param body   the body as received
+   * @param type   the JSON type of a successful response
+   */
+  public <T> T decodeResponse(int status, List<ByteBuffer> body, Class<T> type)
+      throws IOException {
+    ResponseReader in = new ResponseReader(body);
+    if (status != 200) {
+      throw new IOException("HTTP " + status + ": "
+          + new String(in.remainingBytes(), StandardCharsets.UTF_8));
+    }
+    if (type == VerificationResponse.class) {
+      return type.cast(readVerification(in));
+    }
+    if (type == SettlementResponse.class) {
+      return type.cast(readSettlement(in));
+    }
+    return Json.MAPPER.readValue(in.remainingBytes(), type);
+  }
+
+  private static VerificationResponse readVerification(ResponseReader in) throws IOException {
+    VerificationResponse vr = new VerificationResponse();
+    in.beginObject();
+    while (in.nextField()) {
+      if (in.nameIs(IS_VALID)) {
+        vr.isValid = in.booleanValue();
+      } else if (in.nameIs(INVALID_REASON)) {
+        vr.invalidReason = in.stringValue();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endDocument();
+    return vr;
+  }
+
+  private static SettlementResponse readSettlement(ResponseReader in) throws IOException {
+    SettlementResponse sr = new SettlementResponse();
+    in.beginObject();
+    while (in.nextField()) {
+      if (in.nameIs(SUCCESS)) {
+        sr.success = in.booleanValue();
+      } else if (in.nameIs(ERROR)) {
+        sr.error = in.stringValue();
+      } else if (in.nameIs(TX_HASH)) {
+        sr.txHash = in.stringValue();
+      } else if (in.nameIs(NETWORK_ID)) {
+        sr.networkId = in.stringValue();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endDocument();
+    return sr;
+  }
+
+  /* ======================== internals ======================== */
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Requirements JSON split around the quoted resource URL.
+   */
+  private record SplitRequirements(byte[] head, byte[] tail) {
+
+    @Nullable
+    static SplitRequirements of(PaymentRequirements req) throws IOException {
+      byte[] json = Json.MAPPER.writeValueAsBytes(req.withResource(RESOURCE_MARK));
+      byte[] mark = ascii('"' + RESOURCE_MARK + '"');
+      for (int i = 0; i <= json.length - mark.length; i++) {
+        if (Arrays.equals(json, i, i + mark.length, mark, 0, mark.length)) {
+          return new SplitRequirements(Arrays.copyOfRange(json, 0, i),
+              Arrays.copyOfRange(json, i + mark.length, json.length));
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Every requirements field except the resource URL.
+   */
+  private record Template(String scheme, String network, String maxAmountRequired,
+                          String description, String mimeType, Map<String, Object> outputSchema,
+                          String payTo, int maxTimeoutSeconds, String asset,
+                          Map<String, Object> extra) {
+
+    static Template of(PaymentRequirements req) {
+      return new Template(req.scheme, req.network, req.maxAmountRequired, req.description,
+          req.mimeType, req.outputSchema, req.payTo, req.maxTimeoutSeconds, req.asset, req.extra);
+    }
+  }
+
+  /**
+   * Output buffer with JSON string escaping. It exposes its array, so the encoded request is
+   * handed to the HTTP client without a copy.
+   */
+  private static final class Buffer extends ByteArrayOutputStream {
+
+    Buffer(int size) {
+      super(size);
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    // unlike write(int), put is not synchronized; it runs once per byte of the envelope
+
+    void put(int b) {
+      if (count == buf.length) {
+        grow(1);
+      }
+      buf[count++] = (byte) b;
+    }
+
+    void put(byte[] b) {
+      if (count + b.length > buf.length) {
+        grow(b.length);
+      }
+      System.arraycopy(b, 0, buf, count, b.length);
+      count += b.length;
+    }
+
+    private void grow(int needed) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + needed));
+    }
+
+    void writeInt(int value) {
+      if (value >= 0 && value < 10) {
+        put('0' + value);
+      } else {
+        put(ascii(Integer.toString(value)));
+      }
+    }
+
+    /**
+     * Writes {@code "name":"value"} unless the value is {@code null}.
+     *
+     * @param first whether this is the first field of the object, i.e. needs no comma
+     * @return whether the field was written
+     */
+    boolean writeField(String name, @Nullable String value, boolean first) {
+      if (value == null) {
+        return false;
+      }
+      if (!first) {
+        put(',');
+      }
+      writeString(name);
+      put(':');
+      writeString(value);
+      return true;
+    }
+
+    /**
+     * Writes a quoted JSON string in UTF-8, escaping like Jackson's default generator.
+     */
+    void writeString(String s) {
+      put('"');
+      for (int i = 0, n = s.length(); i < n; i++) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          if (c == '"' || c == '\\') {
+            put('\\');
+            put(c);
+          } else if (c < 0x20) {
+            writeEscaped(c);
+          } else {
+            put(c);
+          }
+        } else if (c < 0x800) {
+          put(0xc0 | (c >> 6));
+          put(0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && i + 1 < n
+            && Character.isLowSurrogate(s.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, s.charAt(++i));
+          put(0xf0 | (cp >> 18));
+          put(0x80 | ((cp >> 12) & 0x3f));
+          put(0x80 | ((cp >> 6) & 0x3f));
+          put(0x80 | (cp & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+          writeEscaped(c);
+        } else {
+          put(0xe0 | (c >> 12));
+          put(0x80 | ((c >> 6) & 0x3f));
+          put(0x80 | (c & 0x3f));
+        }
+      }
+      put('"');
+    }
+
+    private void writeEscaped(char c) {
+      put('\\');
+      switch (c) {
+        case '\n' -> put('n');
+        case '\r' -> put('r');
+        case '\t' -> put('t');
+        case '\b' -> put('b');
+        case '\f' -> put('f');
+        default -> {
+          put('u');
+          put(HEX[c >> 12]);
+          put(HEX[(c >> 8) & 0xf]);
+          put(HEX[(c >> 4) & 0xf]);
+          put(HEX[c & 0xf]);
+        }
+      }
+    }
+  }
+
+  private static final class DecodingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private final FacilitatorWireCodec codec;
+    private final int status;
+    private final Class<T> type;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final CompletableFuture<T> body = new CompletableFuture<>();
+
+    DecodingSubscriber(FacilitatorWireCodec codec, int status, Class<T> type) {
+      this.codec = codec;
+      this.status = status;
+      this.type = type;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      buffers.addAll(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      buffers.clear();
+      body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      try {
+        body.complete(codec.decodeResponse(status, buffers, type));
+      } catch (IOException | RuntimeException e) {
+        body.completeExceptionally(e);
+      } finally {
+        buffers.clear();
+      }
+    }
+  }
+
+  /**
+   * Reads the flat JSON objects of facilitator responses from a list of buffers, in order and
+   * without joining them. Strings, booleans and {@code null} are read; other values and unknown
+   * fields are skipped.
+   */
+  private static final class ResponseReader {
+
+    private final List<ByteBuffer> buffers;
+    private int index;
+    private boolean first;
+
+    /**
+     * UTF-8 bytes of the last string read, unescaped.
+     */
+    private byte[] text = new byte[64];
+    private int length;
+
+    ResponseReader(List<ByteBuffer> buffers) {
+      this.buffers = buffers;
+    }
+
+    void beginObject() throws IOException {
+      expect('{', nextToken());
+      first = true;
+    }
+
+    /**
+     * Advances to the next field of the object.
+     *
+     * @return {@code false} at the end of the object
+     */
+    boolean nextField() throws IOException {
+      int c = nextToken();
+      if (c == '}') {
+        return false;
+      }
+      if (!first) {
+        expect(',', c);
+        c = nextToken();
+      }
+      first = false;
+      expect('"', c);
+      readString();
+      expect(':', nextToken());
+      return true;
+    }
+
+    boolean nameIs(byte[] name) {
+      return Arrays.equals(text, 0, length, name, 0, name.length);
+    }
+
+    void endDocument() throws IOException {
+      int c = nextToken();
+      if (c != -1) {
+        throw unexpected(c);
+      }
+    }
+
+    boolean booleanValue() throws IOException {
+      int c = nextToken();
+      switch (c) {
+        case 't' -> {
+          literal("rue");
+          return true;
+        }
+        case 'f' -> {
+          literal("alse");
+          return false;
+        }
+        case 'n' -> {
+          literal("ull");
+          return false;
+        }
+        default -> throw unexpected(c);
+      }
+    }
+
+    @Nullable
+    String stringValue() throws IOException {
+      int c = nextToken();
+      if (c == '"') {
+        readString();
+        return new String(text, 0, length, StandardCharsets.UTF_8);
+      }
+      if (c == 'n') {
+        literal("ull");
+        return null;
+      }
+      throw unexpected(c);
+    }
+
+    void skipValue() throws IOException {
+      int c = nextToken();
+      if (c == '"') {
+        readString();
+      } else if (c == '{' || c == '[') {
+        skipStructure();
+      } else if (c == -1 || c == ',' || c == '}' || c == ']' || c == ':') {
+        throw unexpected(c);
+      } else {
+        while (!isDelimiter(peek())) {
+          next();
+        }
+      }
+    }
+
+    byte[] remainingBytes() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (; index < buffers.size(); index++) {
+        ByteBuffer buffer = buffers.get(index);
+        while (buffer.hasRemaining()) {
+          out.write(buffer.get());
+        }
+      }
+      return out.toByteArray();
+    }
+
+    /* ---- tokens ---- */
+
+    private void skipStructure() throws IOException {
+      int depth = 1;
+      while (depth > 0) {
+        int c = next();
+        switch (c) {
+          case -1 -> throw unexpected(c);
+          case '"' -> readString();
+          case '{', '[' -> depth++;
+          case '}', ']' -> depth--;
+          default -> {
+          }
+        }
+      }
+    }
+
+    /**
+     * Reads the string after an opening quote into {@link #text}.
+     */
+    private void readString() throws IOException {
+      length = 0;
+      for (int c = next(); c != '"'; c = next()) {
+        if (c == -1) {
+          throw unexpected(c);
+        }
+        if (c != '\\') {
+          append(c);
+          continue;
+        }
+        int e = next();
+        switch (e) {
+          case '"', '\\', '/' -> append(e);
+          case 'b' -> append('\b');
+          case 'f' -> append('\f');
+          case 'n' -> append('\n');
+          case 'r' -> append('\r');
+          case 't' -> append('\t');
+          case 'u' -> appendCodePoint(readEscapedChar());
+          default -> throw unexpected(e);
+        }
+      }
+    }
+
+    /**
+     * Reads the four hex digits of a unicode escape, combining a surrogate pair into one code
+     * point.
+     */
+    private int readEscapedChar() throws IOException {
+      char c = readHex();
+      if (Character.isHighSurrogate(c) && peek() == '\\') {
+        next();
+        expect('u', next());
+        char low = readHex();
+        if (Character.isLowSurrogate(low)) {
+          return Character.toCodePoint(c, low);
+        }
+        appendCodePoint(c);
+        return low;
+      }
+      return c;
+    }
+
+    private char readHex() throws IOException {
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        int digit = Character.digit(next(), 16);
+        if (digit < 0) {
+          throw new IOException("Invalid \\u escape in facilitator response");
+        }
+        value = value << 4 | digit;
+      }
+      return (char) value;
+    }
+
+    private void appendCodePoint(int cp) {
+      if (cp < 0x80) {
+        append(cp);
+      } else if (cp < 0x800) {
+        append(0xc0 | (cp >> 6));
+        append(0x80 | (cp & 0x3f));
+      } else if (cp < 0x10000) {
+        append(0xe0 | (cp >> 12));
+        append(0x80 | ((cp >> 6) & 0x3f));
+        append(0x80 | (cp & 0x3f));
+      } else {
+        append(0xf0 | (cp >> 18));
+        append(0x80 | ((cp >> 12) & 0x3f));
+        append(0x80 | ((cp >> 6) & 0x3f));
+        append(0x80 | (cp & 0x3f));
+      }
+    }
+
+    private void append(int b) {
+      if (length == text.length) {
+        text = Arrays.copyOf(text, length * 2);
+      }
+      text[length++] = (byte) b;
+    }
+
+    private void literal(String rest) throws IOException {
+      for (int i = 0; i < rest.length(); i++) {
+        expect(rest.charAt(i), next());
+      }
+    }
+
+    private int nextToken() {
+      int c = next();
+      while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+        c = next();
+      }
+      return c;
+    }
+
+    private static boolean isDelimiter(int c) {
+      return c == -1 || c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r'
+          || c == '\t';
+    }
+
+    private static void expect(int expected, int c) throws IOException {
+      if (c != expected) {
+        throw unexpected(c);
+      }
+    }
+
+    private static IOException unexpected(int c) {
+      return new IOException(c == -1
+          ? "Unexpected end of facilitator response"
+          : "Unexpected character '" + (char) c + "' in facilitator response");
+    }
+
+    /* ---- bytes ---- */
+
+    private int next() {
+      ByteBuffer buffer = current();
+      return buffer != null ? buffer.get() & 0xff : -1;
+    }
+
+    private int peek() {
+      ByteBuffer buffer = current();
+      return buffer != null ? buffer.get(buffer.position()) & 0xff : -1;
+    }
+
+    @Nullable
+    private ByteBuffer current() {
+      while (index < buffers.size()) {
+        ByteBuffer buffer = buffers.get(index);
+        if (buffer.hasRemaining()) {
+          return buffer;
+        }
+        index++;
+      }
+      return null;
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package com.ryan.x402.facilitator;
 
 
+import com.ryan.x402.metrics.X402Metrics;
+import com.ryan.x402.metrics.X402Metrics.Operation;
 import com.ryan.x402.model.Kind;
 import com.ryan.x402.model.PaymentPayload;
 import com.ryan.x402.model.PaymentRequirements;
@@ -12,33 +14,113 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import org.springframework.lang.Nullable;
 
 /**
- * Synchronous facilitator client using Java 17 HttpClient.
+ * Facilitator client using Java 17 HttpClient. The blocking methods use {@code send}, the
+ * {@code *Async} methods use {@code sendAsync} and complete on the configured executor.
+ * <p>
+ * Every request has a per-operation timeout; an expired one fails with
+ * {@link java.net.http.HttpTimeoutException}, an {@link IOException}.
+ * <p>
+ * Verify and settle bodies go through a {@link FacilitatorWireCodec}, without intermediate
+ * strings.
+ * <p>
+ * A facilitator that lists {@code "batch-settle"} under {@code extensions} in its
+ * {@code /supported} response accepts {@code POST /settle/batch}: a list of {@code /settle}
+ * bodies under {@code settlements}, answered by the settlement responses in the same order under
+ * {@code results}. Batches are only sent once a {@link #supported()} call has seen the extension.
  */
 public class HttpFacilitatorClient implements FacilitatorClient {
 
-  private final HttpClient http =
-      HttpClient.newBuilder()
-          .connectTimeout(Duration.ofSeconds(5))
-          .build();
+  private final HttpClient http;
 
   private final String baseUrl;   // without trailing “/”
 
+  private final FacilitatorWireCodec codec = new FacilitatorWireCodec();
+
+  private X402Metrics metrics = X402Metrics.NOOP;
+
+  private Duration verifyTimeout = Duration.ofSeconds(10);
+  private Duration settleTimeout = Duration.ofSeconds(30);
+  private Duration supportedTimeout = Duration.ofSeconds(10);
+
+  private volatile boolean batchSettle;
+
   /**
    * Creates a new HTTP facilitator client.
    *
    * @param baseUrl the base URL of the facilitator service (trailing slash will be removed)
    */
   public HttpFacilitatorClient(String baseUrl) {
+    this(baseUrl, null);
+  }
+
+  /**
+   * Creates a new HTTP facilitator client running async work on the given executor.
+   *
+   * @param baseUrl  the base URL of the facilitator service (trailing slash will be removed)
+   * @param executor executor for async requests and their callbacks, or {@code null} for the
+   *                 HttpClient default; the caller owns its lifecycle
+   */
+  public HttpFacilitatorClient(String baseUrl, @Nullable Executor executor) {
+    this(baseUrl, executor, Duration.ofSeconds(5));
+  }
+
+  /**
+   * Creates a new HTTP facilitator client with the given connect timeout.
+   *
+   * @param baseUrl        the base URL of the facilitator service (trailing slash will be
+   *                       removed)
+   * @param executor       executor for async requests and their callbacks, or {@code null} for
+   *                       the HttpClient default; the caller owns its lifecycle
+   * @param connectTimeout timeout for establishing a connection
+   */
+  public HttpFacilitatorClient(String baseUrl, @Nullable Executor executor,
+      Duration connectTimeout) {
     this.baseUrl = baseUrl.endsWith("/")
         ? baseUrl.substring(0, baseUrl.length() - 1)
         : baseUrl;
+    HttpClient.Builder builder = HttpClient.newBuilder()
+        .connectTimeout(connectTimeout);
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    this.http = builder.build();
+  }
+
+  /**
+   * Records the status code of every facilitator response.
+   *
+   * @param metrics the metrics sink
+   */
+  public void setMetrics(X402Metrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  /**
+   * Sets the request timeouts per operation, 10s for verify and supported and 30s for settle by
+   * default.
+   *
+   * @param verify    timeout of /verify
+   * @param settle    timeout of /settle
+   * @param supported timeout of /supported
+   */
+  public void setRequestTimeouts(Duration verify, Duration settle, Duration supported) {
+    this.verifyTimeout = Objects.requireNonNull(verify);
+    this.settleTimeout = Objects.requireNonNull(settle);
+    this.supportedTimeout = Objects.requireNonNull(supported);
   }
 
   /* ------------------------------------------------ verify ------------- */
@@ -48,24 +130,15 @@ public class HttpFacilitatorClient implements FacilitatorClient {
       PaymentRequirements req)
       throws IOException, InterruptedException {
 
-    Map<String, Object> body = Map.of(
-        "x402Version", 1,
-        "paymentPayload", paymentPayload,
-        "paymentRequirements", req
-    );
-
-    HttpRequest request = HttpRequest.newBuilder()
-        .uri(URI.create(baseUrl + "/verify"))
-        .header("Content-Type", "application/json")
-        .POST(HttpRequest.BodyPublishers.ofString(
-            Json.MAPPER.writeValueAsString(body)))
-        .build();
+    HttpRequest request = post("/verify", paymentPayload, req, verifyTimeout);
+    return http.send(request, bodyHandler(Operation.VERIFY, VerificationResponse.class)).body();
+  }
 
-    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
-    if (response.statusCode() != 200) {
-      throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
-    }
-    return Json.MAPPER.readValue(response.body(), VerificationResponse.class);
+  @Override
+  public CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    return sendAsync(() -> post("/verify", paymentPayload, req, verifyTimeout), Operation.VERIFY,
+        VerificationResponse.class);
   }
 
   /* ------------------------------------------------ settle ------------- */
@@ -75,36 +148,125 @@ public class HttpFacilitatorClient implements FacilitatorClient {
       PaymentRequirements req)
       throws IOException, InterruptedException {
 
-    Map<String, Object> body = Map.of(
-        "x402Version", 1,
-        "paymentPayload", paymentPayload,
-        "paymentRequirements", req
-    );
+    HttpRequest request = post("/settle", paymentPayload, req, settleTimeout);
+    return http.send(request, bodyHandler(Operation.SETTLE, SettlementResponse.class)).body();
+  }
 
-    HttpRequest request = HttpRequest.newBuilder()
-        .uri(URI.create(baseUrl + "/settle"))
-        .header("Content-Type", "application/json")
-        .POST(HttpRequest.BodyPublishers.ofString(
-            Json.MAPPER.writeValueAsString(body)))
-        .build();
+  @Override
+  public CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    return sendAsync(() -> post("/settle", paymentPayload, req, settleTimeout), Operation.SETTLE,
+        SettlementResponse.class);
+  }
 
-    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
-    if (response.statusCode() != 200) {
-      throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+  /**
+   * Sends the batch as one {@code /settle/batch} request if the facilitator advertised it, and
+   * as concurrent {@code /settle} requests otherwise, which share one connection over HTTP/2.
+   */
+  @Override
+  public List<CompletableFuture<SettlementResponse>> settleBatchAsync(
+      List<SettlementRequest> batch) {
+    if (!batchSettle || batch.size() < 2) {
+      return FacilitatorClient.super.settleBatchAsync(batch);
     }
-    return Json.MAPPER.readValue(response.body(), SettlementResponse.class);
+    CompletableFuture<List<SettlementResponse>> responses = sendAsync(
+        () -> post("/settle/batch", codec.encodeBatchRequest(batch), settleTimeout),
+        Operation.SETTLE, BatchSettlementResponse.class)
+        .thenApply(response -> {
+          if (response.results == null || response.results.size() != batch.size()) {
+            throw new CompletionException(new IOException("batch settlement returned "
+                + (response.results == null ? 0 : response.results.size()) + " results for "
+                + batch.size() + " payments"));
+          }
+          return response.results;
+        });
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      int index = i;
+      results.add(responses.thenApply(list -> list.get(index)));
+    }
+    return results;
+  }
+
+  /**
+   * Whether the last {@code /supported} response advertised {@code /settle/batch}.
+   */
+  public boolean isBatchSettleSupported() {
+    return batchSettle;
   }
 
   /* ------------------------------------------------ supported ---------- */
 
   @Override
   public Set<Kind> supported() throws IOException, InterruptedException {
-    HttpRequest request = HttpRequest.newBuilder()
+    HttpResponse<String> response = http.send(supportedRequest(),
+        HttpResponse.BodyHandlers.ofString());
+    metrics.facilitatorResponse(Operation.SUPPORTED, response.statusCode());
+    return readKinds(response);
+  }
+
+  @Override
+  public CompletableFuture<Set<Kind>> supportedAsync() {
+    return http.sendAsync(supportedRequest(), HttpResponse.BodyHandlers.ofString())
+        .thenApply(response -> {
+          metrics.facilitatorResponse(Operation.SUPPORTED, response.statusCode());
+          try {
+            return readKinds(response);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        });
+  }
+
+  /* ------------------------------------------------ helpers ------------ */
+
+  private HttpRequest post(String path, PaymentPayload paymentPayload, PaymentRequirements req,
+      Duration timeout) throws IOException {
+    return post(path, codec.encodeRequest(paymentPayload, req), timeout);
+  }
+
+  private HttpRequest post(String path, ByteBuffer body, Duration timeout) {
+    return HttpRequest.newBuilder()
+        .uri(URI.create(baseUrl + path))
+        .timeout(timeout)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body.array(), body.arrayOffset(),
+            body.remaining()))
+        .build();
+  }
+
+  private HttpRequest supportedRequest() {
+    return HttpRequest.newBuilder()
         .uri(URI.create(baseUrl + "/supported"))
+        .timeout(supportedTimeout)
         .GET()
         .build();
+  }
+
+  private <T> CompletableFuture<T> sendAsync(RequestSupplier request, Operation operation,
+      Class<T> type) {
+    HttpRequest httpRequest;
+    try {
+      httpRequest = request.get();
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(new CompletionException(e));
+    }
+    return http.sendAsync(httpRequest, bodyHandler(operation, type))
+        .thenApply(HttpResponse::body);
+  }
 
-    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+  /**
+   * Records the status and decodes the body with the codec; a status other than 200 fails with
+   * an {@link IOException}.
+   */
+  private <T> HttpResponse.BodyHandler<T> bodyHandler(Operation operation, Class<T> type) {
+    return info -> {
+      metrics.facilitatorResponse(operation, info.statusCode());
+      return codec.subscriber(info.statusCode(), type);
+    };
+  }
+
+  private Set<Kind> readKinds(HttpResponse<String> response) throws IOException {
     if (response.statusCode() != 200) {
       throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
     }
@@ -112,6 +274,8 @@ public class HttpFacilitatorClient implements FacilitatorClient {
     @SuppressWarnings("unchecked")
     Map<String, Object> map = Json.MAPPER.readValue(response.body(), Map.class);
     List<?> kinds = (List<?>) map.getOrDefault("kinds", List.of());
+    batchSettle = map.get("extensions") instanceof List<?> extensions
+        && extensions.contains("batch-settle");
 
     Set<Kind> out = new HashSet<>();
     for (Object k : kinds) {
@@ -119,4 +283,18 @@ public class HttpFacilitatorClient implements FacilitatorClient {
     }
     return out;
   }
+
+  /**
+   * Body of a {@code /settle/batch} response.
+   */
+  static final class BatchSettlementResponse {
+
+    public List<SettlementResponse> results;
+  }
+
+  @FunctionalInterface
+  private interface RequestSupplier {
+
+    HttpRequest get() throws IOException;
+  }
 }
@@ -0,0 +1,74 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.util.Objects;
+import java.util.Set;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link FacilitatorClient} for reactive applications. Nothing happens
+ * until the returned {@link Mono} is subscribed.
+ */
+public interface ReactiveFacilitatorClient {
+
+  /**
+   * Verifies a payment header against the given requirements.
+   *
+   * @param paymentPayload the X-402 payment header to verify
+   * @param req            the payment requirements to validate against
+   * @return mono emitting the verification response
+   */
+  Mono<VerificationResponse> verify(PaymentPayload paymentPayload, PaymentRequirements req);
+
+  /**
+   * Executes an on-chain settlement for a verified payment.
+   *
+   * @param paymentPayload the X-402 payment header to settle
+   * @param req            the payment requirements for settlement
+   * @return mono emitting the settlement response
+   */
+  Mono<SettlementResponse> settle(PaymentPayload paymentPayload, PaymentRequirements req);
+
+  /**
+   * Retrieves the set of payment kinds supported by this facilitator.
+   *
+   * @return mono emitting the supported payment kinds
+   */
+  Mono<Set<Kind>> supported();
+
+  /**
+   * Adapts the asynchronous methods of a {@link FacilitatorClient}. The adapter is only
+   * non-blocking if the client overrides {@code verifyAsync}, {@code settleAsync} and
+   * {@code supportedAsync}, as {@link HttpFacilitatorClient}, {@link RoutingFacilitatorClient} and
+   * {@link ResilientFacilitatorClient} do; the default implementations call the blocking methods.
+   *
+   * @param client the client to adapt
+   * @return a reactive view of the client
+   */
+  static ReactiveFacilitatorClient from(FacilitatorClient client) {
+    Objects.requireNonNull(client);
+    return new ReactiveFacilitatorClient() {
+      @Override
+      public Mono<VerificationResponse> verify(PaymentPayload paymentPayload,
+          PaymentRequirements req) {
+        return Mono.fromFuture(() -> client.verifyAsync(paymentPayload, req));
+      }
+
+      @Override
+      public Mono<SettlementResponse> settle(PaymentPayload paymentPayload,
+          PaymentRequirements req) {
+        // a settlement that was sent must run to completion even if the subscriber goes away
+        return Mono.fromFuture(() -> client.settleAsync(paymentPayload, req), true);
+      }
+
+      @Override
+      public Mono<Set<Kind>> supported() {
+        return Mono.fromFuture(client::supportedAsync);
+      }
+    };
+  }
+}
@@ -0,0 +1,179 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import org.springframework.lang.Nullable;
+
+/**
+ * Decorator that guards a {@link FacilitatorClient} with an optional {@link CircuitBreaker} and
+ * separate {@link Bulkhead}s for verify and settle.
+ * <p>
+ * Rejected calls fail with {@link FacilitatorUnavailableException} without reaching the
+ * facilitator. Responses count as successes for the breaker, including a payment the facilitator
+ * rejects; exceptions count as failures. {@code supported} calls pass through unguarded.
+ */
+public class ResilientFacilitatorClient implements FacilitatorClient, AutoCloseable {
+
+  private final FacilitatorClient delegate;
+
+  @Nullable
+  private final CircuitBreaker circuitBreaker;
+
+  @Nullable
+  private final Bulkhead verifyBulkhead;
+
+  @Nullable
+  private final Bulkhead settleBulkhead;
+
+  /**
+   * @param delegate       the client doing the actual calls
+   * @param circuitBreaker breaker shared by verify and settle, or {@code null} for none
+   * @param verifyBulkhead concurrency limit of verify calls, or {@code null} for none
+   * @param settleBulkhead concurrency limit of settle calls, or {@code null} for none
+   */
+  public ResilientFacilitatorClient(FacilitatorClient delegate,
+      @Nullable CircuitBreaker circuitBreaker, @Nullable Bulkhead verifyBulkhead,
+      @Nullable Bulkhead settleBulkhead) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.circuitBreaker = circuitBreaker;
+    this.verifyBulkhead = verifyBulkhead;
+    this.settleBulkhead = settleBulkhead;
+  }
+
+  @Nullable
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /* ======================== blocking ======================== */
+
+  @Override
+  public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    return call(verifyBulkhead, () -> delegate.verify(paymentPayload, req));
+  }
+
+  @Override
+  public SettlementResponse settle(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    return call(settleBulkhead, () -> delegate.settle(paymentPayload, req));
+  }
+
+  @Override
+  public Set<Kind> supported() throws IOException, InterruptedException {
+    return delegate.supported();
+  }
+
+  /* ======================== async ======================== */
+
+  @Override
+  public CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    return callAsync(verifyBulkhead, () -> delegate.verifyAsync(paymentPayload, req));
+  }
+
+  @Override
+  public CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    return callAsync(settleBulkhead, () -> delegate.settleAsync(paymentPayload, req));
+  }
+
+  @Override
+  public CompletableFuture<Set<Kind>> supportedAsync() {
+    return delegate.supportedAsync();
+  }
+
+  /**
+   * Closes the delegate if it holds resources, e.g. a {@link RoutingFacilitatorClient}.
+   */
+  @Override
+  public void close() throws Exception {
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  /* ======================== helpers ======================== */
+
+  private <T> T call(@Nullable Bulkhead bulkhead, Call<T> call)
+      throws IOException, InterruptedException {
+    if (bulkhead != null) {
+      bulkhead.acquire();
+    }
+    try {
+      if (circuitBreaker == null) {
+        return call.run();
+      }
+      circuitBreaker.acquirePermission();
+      long start = System.nanoTime();
+      try {
+        T result = call.run();
+        circuitBreaker.onSuccess(System.nanoTime() - start);
+        return result;
+      } catch (Exception e) {
+        circuitBreaker.onError(System.nanoTime() - start);
+        throw e;
+      }
+    } finally {
+      if (bulkhead != null) {
+        bulkhead.release();
+      }
+    }
+  }
+
+  private <T> CompletableFuture<T> callAsync(@Nullable Bulkhead bulkhead,
+      Supplier<CompletableFuture<T>> call) {
+    try {
+      if (bulkhead != null) {
+        bulkhead.tryAcquire();
+      }
+    } catch (FacilitatorUnavailableException e) {
+      return CompletableFuture.failedFuture(new CompletionException(e));
+    }
+    CircuitBreaker breaker = circuitBreaker;
+    try {
+      if (breaker != null) {
+        breaker.acquirePermission();
+      }
+    } catch (FacilitatorUnavailableException e) {
+      if (bulkhead != null) {
+        bulkhead.release();
+      }
+      return CompletableFuture.failedFuture(new CompletionException(e));
+    }
+    long start = System.nanoTime();
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    return future.whenComplete((result, error) -> {
+      if (breaker != null) {
+        if (error == null) {
+          breaker.onSuccess(System.nanoTime() - start);
+        } else {
+          breaker.onError(System.nanoTime() - start);
+        }
+      }
+      if (bulkhead != null) {
+        bulkhead.release();
+      }
+    });
+  }
+
+  @FunctionalInterface
+  private interface Call<T> {
+
+    T run() throws IOException, InterruptedException;
+  }
+}
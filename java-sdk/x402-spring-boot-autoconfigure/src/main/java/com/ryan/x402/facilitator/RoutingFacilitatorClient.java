@@ -0,0 +1,538 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Facilitator client spreading calls over several facilitator endpoints.
+ * <p>
+ * Each call goes to the healthy endpoint with the lowest latency score: an exponentially weighted
+ * moving average (EWMA) of its response times, kept separately for verify and settle, multiplied
+ * by its number of in-flight calls plus one. An endpoint failing {@code failureThreshold} calls
+ * in a row is ejected and probed via {@code /supported} every {@code probeInterval} until it
+ * answers again. If every endpoint is ejected, calls are routed over all of them.
+ * <p>
+ * Only idempotent calls ({@code verify} and {@code supported}) may be repeated on another
+ * endpoint: they fail over once, and {@code verify} can be hedged by sending a second request
+ * when the first has not answered within the configured percentile of recent verify latencies.
+ * Repeating is only possible through {@link IdempotentCall}, which settle never creates; a
+ * settlement goes to exactly one endpoint, so the same authorization is never submitted twice.
+ * <p>
+ * Hedging uses the delegates' {@code verifyAsync}, so they should implement it without blocking,
+ * as {@link HttpFacilitatorClient} does.
+ */
+@Slf4j
+public class RoutingFacilitatorClient implements FacilitatorClient, AutoCloseable {
+
+  private static final double EWMA_ALPHA = 0.2;
+
+  /**
+   * Verify samples needed before hedging starts.
+   */
+  private static final int MIN_HEDGE_SAMPLES = 20;
+
+  private final List<Endpoint> endpoints;
+  private final int failureThreshold;
+  private final boolean hedgeVerify;
+  private final long minHedgeDelayNanos;
+  private final LatencyWindow verifyLatencies;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Creates a routing client and starts probing ejected endpoints.
+   *
+   * @param endpoints        clients by endpoint name (usually the base URL), in preference order
+   * @param failureThreshold consecutive failures after which an endpoint is ejected
+   * @param probeInterval    how often ejected endpoints are probed
+   * @param hedgeVerify      whether verify calls are hedged
+   * @param hedgePercentile  percentile of recent verify latencies after which the hedge is sent,
+   *                         between 0 and 100
+   * @param minHedgeDelay    lower bound of the hedge delay
+   */
+  public RoutingFacilitatorClient(Map<String, FacilitatorClient> endpoints, int failureThreshold,
+      Duration probeInterval, boolean hedgeVerify, double hedgePercentile,
+      Duration minHedgeDelay) {
+    if (endpoints.isEmpty()) {
+      throw new IllegalArgumentException("at least one facilitator endpoint is required");
+    }
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("failureThreshold must be positive");
+    }
+    List<Endpoint> list = new ArrayList<>();
+    endpoints.forEach((name, client) -> list.add(new Endpoint(name, client)));
+    this.endpoints = List.copyOf(list);
+    this.failureThreshold = failureThreshold;
+    this.hedgeVerify = hedgeVerify && list.size() > 1;
+    this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+    this.verifyLatencies = new LatencyWindow(256, hedgePercentile);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "x402-facilitator-router");
+      t.setDaemon(true);
+      return t;
+    });
+    long probeMillis = probeInterval.toMillis();
+    scheduler.scheduleWithFixedDelay(this::probe, probeMillis, probeMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /* ======================== verify ======================== */
+
+  @Override
+  public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    if (!hedgeVerify) {
+      return callWithFailover(LatencyClass.VERIFY,
+          new IdempotentCall<>(c -> c.verify(paymentPayload, req)));
+    }
+    try {
+      return verifyAsync(paymentPayload, req).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    IdempotentAsyncCall<VerificationResponse> call =
+        new IdempotentAsyncCall<>(c -> c.verifyAsync(paymentPayload, req));
+    return hedgeVerify ? hedged(call) : asyncWithFailover(LatencyClass.VERIFY, call);
+  }
+
+  /* ======================== settle ======================== */
+
+  @Override
+  public SettlementResponse settle(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    Endpoint endpoint = choose(LatencyClass.SETTLE);
+    endpoint.inFlight.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      SettlementResponse sr = endpoint.client.settle(paymentPayload, req);
+      onSuccess(endpoint, LatencyClass.SETTLE, System.nanoTime() - start);
+      return sr;
+    } catch (IOException | RuntimeException e) {
+      onFailure(endpoint, e);
+      throw e;
+    } finally {
+      endpoint.inFlight.decrementAndGet();
+    }
+  }
+
+  @Override
+  public CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    Endpoint endpoint = choose(LatencyClass.SETTLE);
+    return track(endpoint, LatencyClass.SETTLE,
+        () -> endpoint.client.settleAsync(paymentPayload, req));
+  }
+
+  /* ======================== supported ======================== */
+
+  @Override
+  public Set<Kind> supported() throws IOException, InterruptedException {
+    return callWithFailover(LatencyClass.VERIFY,
+        new IdempotentCall<>(FacilitatorClient::supported));
+  }
+
+  @Override
+  public CompletableFuture<Set<Kind>> supportedAsync() {
+    return asyncWithFailover(LatencyClass.VERIFY,
+        new IdempotentAsyncCall<>(FacilitatorClient::supportedAsync));
+  }
+
+  /**
+   * Names of the endpoints that are currently not ejected.
+   */
+  public List<String> getHealthyEndpoints() {
+    return endpoints.stream().filter(e -> e.healthy).map(e -> e.name).toList();
+  }
+
+  /**
+   * Stops probing ejected endpoints and closes endpoint clients that hold resources, e.g. a
+   * {@link SettlementBatcher}.
+   */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.client instanceof AutoCloseable closeable) {
+        try {
+          closeable.close();
+        } catch (Exception e) {
+          log.warn("x402 failed to close facilitator endpoint {}: {}", endpoint.name,
+              e.toString());
+        }
+      }
+    }
+  }
+
+  /* ======================== routing ======================== */
+
+  /**
+   * Picks the endpoint with the lowest score, skipping {@code exclude}. Ejected endpoints are
+   * only used when no healthy one is left.
+   */
+  @Nullable
+  private Endpoint select(LatencyClass kind, @Nullable Endpoint exclude) {
+    Endpoint best = null;
+    double bestScore = Double.MAX_VALUE;
+    for (int pass = 0; pass < 2 && best == null; pass++) {
+      for (Endpoint e : endpoints) {
+        if (e == exclude || (pass == 0 && !e.healthy)) {
+          continue;
+        }
+        double score = e.ewma(kind) * (e.inFlight.get() + 1);
+        if (score < bestScore) {
+          best = e;
+          bestScore = score;
+        }
+      }
+    }
+    return best;
+  }
+
+  private Endpoint choose(LatencyClass kind) {
+    // without exclusion there is always a candidate
+    return select(kind, null);
+  }
+
+  private <T> T callWithFailover(LatencyClass kind, IdempotentCall<T> call)
+      throws IOException, InterruptedException {
+    Endpoint first = choose(kind);
+    try {
+      return callOnce(first, kind, call);
+    } catch (IOException | RuntimeException e) {
+      Endpoint second = select(kind, first);
+      if (second == null) {
+        throw e;
+      }
+      log.debug("x402 facilitator {} failed, retrying on {}", first.name, second.name);
+      return callOnce(second, kind, call);
+    }
+  }
+
+  private <T> T callOnce(Endpoint endpoint, LatencyClass kind, IdempotentCall<T> call)
+      throws IOException, InterruptedException {
+    endpoint.inFlight.incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      T result = call.call.apply(endpoint.client);
+      onSuccess(endpoint, kind, System.nanoTime() - start);
+      return result;
+    } catch (IOException | RuntimeException e) {
+      onFailure(endpoint, e);
+      throw e;
+    } finally {
+      endpoint.inFlight.decrementAndGet();
+    }
+  }
+
+  private <T> CompletableFuture<T> asyncWithFailover(LatencyClass kind,
+      IdempotentAsyncCall<T> call) {
+    Endpoint first = choose(kind);
+    return track(first, kind, () -> call.call.apply(first.client))
+        .exceptionallyCompose(e -> {
+          Endpoint second = select(kind, first);
+          return second != null
+              ? track(second, kind, () -> call.call.apply(second.client))
+              : CompletableFuture.failedFuture(e);
+        });
+  }
+
+  /**
+   * Sends the call to the best endpoint and, if it has not answered after the hedge delay or has
+   * failed, once more to the next best. The first successful answer wins.
+   */
+  private <T> CompletableFuture<T> hedged(IdempotentAsyncCall<T> call) {
+    Hedge<T> hedge = new Hedge<>(call, choose(LatencyClass.VERIFY));
+    hedge.send(hedge.primary);
+    long delay = hedgeDelayNanos();
+    if (delay > 0 && !hedge.result.isDone()) {
+      scheduler.schedule(hedge::onDelay, delay, TimeUnit.NANOSECONDS);
+    }
+    return hedge.result;
+  }
+
+  private long hedgeDelayNanos() {
+    long percentile = verifyLatencies.percentile(MIN_HEDGE_SAMPLES);
+    return percentile < 0 ? -1 : Math.max(percentile, minHedgeDelayNanos);
+  }
+
+  private <T> CompletableFuture<T> track(Endpoint endpoint, LatencyClass kind,
+      Supplier<CompletableFuture<T>> call) {
+    endpoint.inFlight.incrementAndGet();
+    long start = System.nanoTime();
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    return future.whenComplete((result, error) -> {
+      endpoint.inFlight.decrementAndGet();
+      if (error == null) {
+        onSuccess(endpoint, kind, System.nanoTime() - start);
+      } else {
+        onFailure(endpoint, error);
+      }
+    });
+  }
+
+  private void onSuccess(Endpoint endpoint, LatencyClass kind, long nanos) {
+    endpoint.record(kind, nanos);
+    endpoint.failures.set(0);
+    if (kind == LatencyClass.VERIFY) {
+      verifyLatencies.add(nanos);
+    }
+  }
+
+  private void onFailure(Endpoint endpoint, Throwable error) {
+    if (endpoint.failures.incrementAndGet() >= failureThreshold && endpoint.healthy) {
+      endpoint.healthy = false;
+      log.warn("x402 facilitator {} ejected after {} consecutive failures: {}", endpoint.name,
+          failureThreshold, error.toString());
+    }
+  }
+
+  private void probe() {
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.healthy) {
+        continue;
+      }
+      try {
+        endpoint.client.supported();
+        endpoint.failures.set(0);
+        endpoint.healthy = true;
+        log.info("x402 facilitator {} is healthy again", endpoint.name);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.debug("x402 facilitator {} probe failed: {}", endpoint.name, e.toString());
+      }
+    }
+  }
+
+  /* ======================== types ======================== */
+
+  /**
+   * Latency class an EWMA is kept for. Verify and supported are fast lookups, settle waits for
+   * the chain.
+   */
+  private enum LatencyClass {
+    VERIFY, SETTLE
+  }
+
+  /**
+   * A call that may be sent to more than one endpoint. Only verify and supported create these.
+   */
+  private static final class IdempotentCall<T> {
+
+    final BlockingCall<T> call;
+
+    IdempotentCall(BlockingCall<T> call) {
+      this.call = call;
+    }
+  }
+
+  /**
+   * Async counterpart of {@link IdempotentCall}.
+   */
+  private static final class IdempotentAsyncCall<T> {
+
+    final Function<FacilitatorClient, CompletableFuture<T>> call;
+
+    IdempotentAsyncCall(Function<FacilitatorClient, CompletableFuture<T>> call) {
+      this.call = call;
+    }
+  }
+
+  @FunctionalInterface
+  private interface BlockingCall<T> {
+
+    T apply(FacilitatorClient client) throws IOException, InterruptedException;
+  }
+
+  private static final class Endpoint {
+
+    final String name;
+    final FacilitatorClient client;
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicLong verifyEwma = new AtomicLong(Double.doubleToRawLongBits(0));
+    final AtomicLong settleEwma = new AtomicLong(Double.doubleToRawLongBits(0));
+    volatile boolean healthy = true;
+
+    Endpoint(String name, FacilitatorClient client) {
+      this.name = name;
+      this.client = client;
+    }
+
+    double ewma(LatencyClass kind) {
+      return Double.longBitsToDouble((kind == LatencyClass.VERIFY ? verifyEwma : settleEwma).get());
+    }
+
+    void record(LatencyClass kind, long nanos) {
+      AtomicLong ewma = kind == LatencyClass.VERIFY ? verifyEwma : settleEwma;
+      long prev;
+      long next;
+      do {
+        prev = ewma.get();
+        double old = Double.longBitsToDouble(prev);
+        next = Double.doubleToRawLongBits(old == 0 ? nanos : old + EWMA_ALPHA * (nanos - old));
+      } while (!ewma.compareAndSet(prev, next));
+    }
+  }
+
+  /**
+   * State of one hedged call: the primary request, at most one more, and the shared result.
+   */
+  private final class Hedge<T> {
+
+    final IdempotentAsyncCall<T> call;
+    final Endpoint primary;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    private int outstanding;
+    private boolean secondSent;
+
+    Hedge(IdempotentAsyncCall<T> call, Endpoint primary) {
+      this.call = call;
+      this.primary = primary;
+    }
+
+    void send(Endpoint endpoint) {
+      synchronized (this) {
+        outstanding++;
+      }
+      track(endpoint, LatencyClass.VERIFY, () -> call.call.apply(endpoint.client))
+          .whenComplete(this::onComplete);
+    }
+
+    void onDelay() {
+      if (claimSecond()) {
+        sendSecond(null);
+      }
+    }
+
+    private void onComplete(T value, Throwable error) {
+      if (error == null) {
+        result.complete(value);
+        return;
+      }
+      boolean retry;
+      synchronized (this) {
+        if (--outstanding > 0) {
+          return;
+        }
+        retry = !secondSent && !result.isDone();
+        secondSent = true;
+      }
+      if (retry) {
+        sendSecond(error);
+      } else {
+        result.completeExceptionally(error);
+      }
+    }
+
+    private synchronized boolean claimSecond() {
+      if (secondSent || result.isDone()) {
+        return false;
+      }
+      secondSent = true;
+      return true;
+    }
+
+    private void sendSecond(@Nullable Throwable primaryError) {
+      Endpoint second = select(LatencyClass.VERIFY, primary);
+      if (second == null) {
+        if (primaryError != null) {
+          result.completeExceptionally(primaryError);
+        }
+        return;
+      }
+      log.debug("x402 facilitator {} hedging verify on {}", primary.name, second.name);
+      send(second);
+    }
+  }
+
+  /**
+   * Ring buffer of recent latencies with a cached percentile.
+   */
+  private static final class LatencyWindow {
+
+    private final long[] samples;
+    private final double percentile;
+    private int pos;
+    private int count;
+    private int sinceComputed;
+    private long cached = -1;
+
+    LatencyWindow(int size, double percentile) {
+      if (percentile <= 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile must be in (0, 100]");
+      }
+      this.samples = new long[size];
+      this.percentile = percentile;
+    }
+
+    synchronized void add(long nanos) {
+      samples[pos] = nanos;
+      pos = (pos + 1) % samples.length;
+      if (count < samples.length) {
+        count++;
+      }
+      sinceComputed++;
+    }
+
+    /**
+     * @return the percentile, or -1 while fewer than {@code minSamples} are recorded
+     */
+    synchronized long percentile(int minSamples) {
+      if (count < minSamples) {
+        return -1;
+      }
+      // recompute after every 16 new samples
+      if (cached < 0 || sinceComputed >= 16) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        cached = sorted[Math.max(0, Math.min(index, count - 1))];
+        sinceComputed = 0;
+      }
+      return cached;
+    }
+  }
+}
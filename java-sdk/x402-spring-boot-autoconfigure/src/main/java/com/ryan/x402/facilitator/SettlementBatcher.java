@@ -0,0 +1,234 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decorator that coalesces concurrent settlements into batches for
+ * {@link FacilitatorClient#settleBatchAsync}, so one facilitator round trip serves many payments.
+ * <p>
+ * A batch is sent once it holds {@code maxBatchSize} payments or {@code window} after its first
+ * payment arrived, whichever comes first; a lone settlement waits at most {@code window}. Every
+ * caller receives the response for its own payment. Settlements bypass the batcher when its queue
+ * is full. Verify and supported calls pass through.
+ * <p>
+ * Batches are sent from a single dispatcher thread, so the delegate's batch call must not block;
+ * {@link HttpFacilitatorClient} does not.
+ */
+@Slf4j
+public class SettlementBatcher implements FacilitatorClient, AutoCloseable {
+
+  private final FacilitatorClient delegate;
+  private final int maxBatchSize;
+  private final long windowNanos;
+  private final BlockingQueue<Pending> queue;
+  private final Thread dispatcher;
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a batcher and starts its dispatcher thread.
+   *
+   * @param delegate      the client batches are sent through
+   * @param maxBatchSize  payments per batch
+   * @param window        how long a batch waits for more payments after its first one
+   * @param queueCapacity settlements that may wait for a batch before callers bypass it
+   */
+  public SettlementBatcher(FacilitatorClient delegate, int maxBatchSize, Duration window,
+      int queueCapacity) {
+    if (maxBatchSize < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("maxBatchSize and queueCapacity must be positive");
+    }
+    this.delegate = Objects.requireNonNull(delegate);
+    this.maxBatchSize = maxBatchSize;
+    this.windowNanos = window.toNanos();
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.dispatcher = new Thread(this::dispatchLoop, "x402-settle-batcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  @Override
+  public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    return delegate.verify(paymentPayload, req);
+  }
+
+  @Override
+  public CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    return delegate.verifyAsync(paymentPayload, req);
+  }
+
+  /**
+   * Waits for the batch containing this payment.
+   */
+  @Override
+  public SettlementResponse settle(PaymentPayload paymentPayload, PaymentRequirements req)
+      throws IOException, InterruptedException {
+    try {
+      return settleAsync(paymentPayload, req).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause()
+          != null ? e.getCause().getCause() : e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req) {
+    Pending pending = new Pending(new SettlementRequest(paymentPayload, req));
+    if (closed || !queue.offer(pending)) {
+      return delegate.settleAsync(paymentPayload, req);
+    }
+    // the dispatcher may have drained its last batch before the offer
+    if (closed && queue.remove(pending)) {
+      return delegate.settleAsync(paymentPayload, req);
+    }
+    return pending.future;
+  }
+
+  @Override
+  public List<CompletableFuture<SettlementResponse>> settleBatchAsync(
+      List<SettlementRequest> batch) {
+    return delegate.settleBatchAsync(batch);
+  }
+
+  @Override
+  public Set<Kind> supported() throws IOException, InterruptedException {
+    return delegate.supported();
+  }
+
+  @Override
+  public CompletableFuture<Set<Kind>> supportedAsync() {
+    return delegate.supportedAsync();
+  }
+
+  /**
+   * Number of settlements waiting for a batch.
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /**
+   * Sends the queued settlements without waiting for their window, stops the dispatcher and
+   * closes the delegate if it holds resources.
+   */
+  @Override
+  public void close() throws Exception {
+    closed = true;
+    dispatcher.interrupt();
+    dispatcher.join(TimeUnit.NANOSECONDS.toMillis(windowNanos) + 1000);
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  /* ======================== dispatcher ======================== */
+
+  private void dispatchLoop() {
+    while (!closed) {
+      try {
+        dispatch(nextBatch());
+      } catch (InterruptedException e) {
+        break;
+      } catch (RuntimeException e) {
+        log.error("x402 settlement batcher failed", e);
+      }
+    }
+    List<Pending> rest = new ArrayList<>();
+    queue.drainTo(rest);
+    for (int i = 0; i < rest.size(); i += maxBatchSize) {
+      dispatch(rest.subList(i, Math.min(i + maxBatchSize, rest.size())));
+    }
+  }
+
+  /**
+   * Waits for a first payment, then collects more until the batch is full or its window ends.
+   * An interrupt during the window ends the batch early; the next call then fails.
+   */
+  private List<Pending> nextBatch() throws InterruptedException {
+    List<Pending> batch = new ArrayList<>(maxBatchSize);
+    batch.add(queue.take());
+    long deadline = System.nanoTime() + windowNanos;
+    while (batch.size() < maxBatchSize) {
+      if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      Pending next;
+      try {
+        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+    return batch;
+  }
+
+  private void dispatch(List<Pending> batch) {
+    List<SettlementRequest> requests = new ArrayList<>(batch.size());
+    for (Pending pending : batch) {
+      requests.add(pending.request);
+    }
+    List<CompletableFuture<SettlementResponse>> results;
+    try {
+      results = delegate.settleBatchAsync(requests);
+    } catch (RuntimeException e) {
+      batch.forEach(pending -> pending.future.completeExceptionally(e));
+      return;
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      CompletableFuture<SettlementResponse> future = batch.get(i).future;
+      results.get(i).whenComplete((response, ex) -> {
+        if (ex != null) {
+          future.completeExceptionally(ex);
+        } else {
+          future.complete(response);
+        }
+      });
+    }
+  }
+
+  private static final class Pending {
+
+    final SettlementRequest request;
+    final CompletableFuture<SettlementResponse> future = new CompletableFuture<>();
+
+    Pending(SettlementRequest request) {
+      this.request = request;
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+
+/**
+ * One payment of a settlement batch.
+ *
+ * @param payload      the verified payment payload
+ * @param requirements the requirements to settle against
+ */
+public record SettlementRequest(PaymentPayload payload, PaymentRequirements requirements) {
+}
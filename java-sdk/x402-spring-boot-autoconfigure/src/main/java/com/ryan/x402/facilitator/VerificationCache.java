@@ -0,0 +1,280 @@
+package com.ryan.x402.facilitator;
+
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.lang.Nullable;
+
+/**
+ * Bounded, TTL-evicting cache in front of {@link FacilitatorClient#verify}.
+ * <p>
+ * Entries are keyed by the authorization nonce together with a fingerprint of the remaining signed
+ * fields and of the payment requirements, so a header that reuses a nonce with different contents
+ * never hits another header's result. Concurrent verifications of the same key collapse into one
+ * facilitator call. Negative results are cached as well; failed calls are not.
+ * <p>
+ * An entry lives for at most the configured TTL and never beyond the authorization's
+ * {@code validBefore}. Callers must {@link #invalidate} an entry before settling the payment, since
+ * a successful settlement consumes the nonce.
+ */
+public class VerificationCache {
+
+  private static final long PURGE_INTERVAL_MILLIS = 1000;
+
+  private final int maxSize;
+  private final long ttlMillis;
+  private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong nextPurge = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a new verification cache.
+   *
+   * @param maxSize maximum number of cached results
+   * @param ttl     maximum lifetime of a cached result
+   */
+  public VerificationCache(int maxSize, Duration ttl) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+    this.ttlMillis = ttl.toMillis();
+  }
+
+  /**
+   * Verifies through the cache, calling the facilitator only if no result or in-flight call exists.
+   *
+   * @param facilitator    the facilitator to call on a miss
+   * @param paymentPayload the payment to verify
+   * @param req            the requirements to verify against
+   * @return the (possibly cached) verification response
+   * @throws IOException          if the facilitator call fails
+   * @throws InterruptedException if interrupted while calling or waiting
+   */
+  public VerificationResponse verify(FacilitatorClient facilitator, PaymentPayload paymentPayload,
+      PaymentRequirements req) throws IOException, InterruptedException {
+    long now = System.currentTimeMillis();
+    Key key = keyOf(paymentPayload, req);
+    long expiresAt = key == null ? 0 : expiry(key, now);
+    if (expiresAt <= now) {
+      return facilitator.verify(paymentPayload, req);
+    }
+
+    Entry owned = new Entry(new CompletableFuture<>(), expiresAt);
+    Entry entry = acquire(key, owned, now);
+    if (entry == null) {
+      return facilitator.verify(paymentPayload, req);
+    }
+    if (entry != owned) {
+      return await(entry.future);
+    }
+
+    try {
+      VerificationResponse vr = facilitator.verify(paymentPayload, req);
+      owned.future.complete(vr);
+      return vr;
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      entries.remove(key, owned);
+      owned.future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Asynchronous variant of {@link #verify}, using {@link FacilitatorClient#verifyAsync}.
+   *
+   * @param facilitator    the facilitator to call on a miss
+   * @param paymentPayload the payment to verify
+   * @param req            the requirements to verify against
+   * @return future completed with the (possibly cached) verification response
+   */
+  public CompletableFuture<VerificationResponse> verifyAsync(FacilitatorClient facilitator,
+      PaymentPayload paymentPayload, PaymentRequirements req) {
+    return verifyAsync(paymentPayload, req, () -> facilitator.verifyAsync(paymentPayload, req));
+  }
+
+  /**
+   * Asynchronous variant of {@link #verify} for any non-blocking verify call, e.g. one of a
+   * {@link ReactiveFacilitatorClient}.
+   *
+   * @param paymentPayload the payment to verify
+   * @param req            the requirements to verify against
+   * @param call           starts the verification on a miss
+   * @return future completed with the (possibly cached) verification response
+   */
+  public CompletableFuture<VerificationResponse> verifyAsync(PaymentPayload paymentPayload,
+      PaymentRequirements req, Supplier<CompletableFuture<VerificationResponse>> call) {
+    long now = System.currentTimeMillis();
+    Key key;
+    try {
+      key = keyOf(paymentPayload, req);
+    } catch (IllegalArgumentException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    long expiresAt = key == null ? 0 : expiry(key, now);
+    if (expiresAt <= now) {
+      return call.get();
+    }
+
+    Entry owned = new Entry(new CompletableFuture<>(), expiresAt);
+    Entry entry = acquire(key, owned, now);
+    if (entry == null) {
+      return call.get();
+    }
+    if (entry != owned) {
+      return entry.future;
+    }
+
+    call.get().whenComplete((vr, e) -> {
+      if (e != null) {
+        entries.remove(key, owned);
+        owned.future.completeExceptionally(e);
+      } else {
+        owned.future.complete(vr);
+      }
+    });
+    return owned.future;
+  }
+
+  /**
+   * Drops the cached result for a payment, e.g. before it is settled.
+   *
+   * @param paymentPayload the payment
+   * @param req            the requirements it was verified against
+   */
+  public void invalidate(PaymentPayload paymentPayload, PaymentRequirements req) {
+    Key key;
+    try {
+      key = keyOf(paymentPayload, req);
+    } catch (IllegalArgumentException e) {
+      return;
+    }
+    if (key != null) {
+      entries.remove(key);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /* ======================== helpers ======================== */
+
+  /**
+   * Returns the live entry for the key, installs {@code owned} if there is none, or returns
+   * {@code null} if the cache is full.
+   */
+  @Nullable
+  private Entry acquire(Key key, Entry owned, long now) {
+    while (true) {
+      Entry existing = entries.get(key);
+      if (existing != null && existing.expiresAt > now) {
+        hits.increment();
+        return existing;
+      }
+      if (existing != null) {
+        if (entries.replace(key, existing, owned)) {
+          misses.increment();
+          return owned;
+        }
+        continue;
+      }
+      if (entries.size() >= maxSize && !purge(now)) {
+        misses.increment();
+        return null;
+      }
+      if (entries.putIfAbsent(key, owned) == null) {
+        misses.increment();
+        return owned;
+      }
+    }
+  }
+
+  /**
+   * Removes expired entries, at most once per {@link #PURGE_INTERVAL_MILLIS}.
+   *
+   * @return whether there is room for a new entry afterwards
+   */
+  private boolean purge(long now) {
+    long next = nextPurge.get();
+    if (now >= next && nextPurge.compareAndSet(next, now + PURGE_INTERVAL_MILLIS)) {
+      entries.values().removeIf(e -> e.expiresAt <= now);
+    }
+    return entries.size() < maxSize;
+  }
+
+  private long expiry(Key key, long now) {
+    long expiresAt = now + ttlMillis;
+    try {
+      long validBefore = Long.parseLong(key.validBefore) * 1000;
+      return Math.min(expiresAt, validBefore);
+    } catch (NumberFormatException e) {
+      return 0; // malformed, let the facilitator decide without caching
+    }
+  }
+
+  @Nullable
+  private static Key keyOf(PaymentPayload paymentPayload, PaymentRequirements req) {
+    ExactSchemePayload exact = paymentPayload.exactPayload();
+    if (exact == null || exact.authorization == null || exact.authorization.nonce == null
+        || exact.authorization.validBefore == null) {
+      return null;
+    }
+    Authorization auth = exact.authorization;
+    return new Key(auth.nonce, auth.from, auth.to, auth.value, auth.validAfter, auth.validBefore,
+        exact.signature, paymentPayload.scheme, paymentPayload.network, req.scheme, req.network,
+        req.maxAmountRequired, req.payTo, req.asset, req.resource, req.maxTimeoutSeconds);
+  }
+
+  private static VerificationResponse await(CompletableFuture<VerificationResponse> future)
+      throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException | CancellationException e) {
+      Throwable cause = e.getCause();
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException("Verification failed", cause != null ? cause : e);
+    }
+  }
+
+  private record Key(String nonce, String from, String to, String value, String validAfter,
+                     String validBefore, String signature, String scheme, String network,
+                     String reqScheme, String reqNetwork, String maxAmountRequired, String payTo,
+                     String asset, String resource, int maxTimeoutSeconds) {
+
+  }
+
+  private record Entry(CompletableFuture<VerificationResponse> future, long expiresAt) {
+
+  }
+}
@@ -0,0 +1,139 @@
+package com.ryan.x402.intereptor;
+
+import com.ryan.x402.annotation.X402Payment;
+import com.ryan.x402.metrics.EndpointMetrics;
+import com.ryan.x402.metrics.X402Metrics;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.prepaid.PrepaidLedger;
+import java.lang.reflect.Method;
+import java.util.StringJoiner;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+
+/**
+ * Immutable view of one {@link X402Payment} handler method with its precomputed payment
+ * requirements. Only {@link PaymentRequirements#resource} varies per request.
+ */
+public final class PaymentEndpoint {
+
+  private final Method method;
+  private final X402Payment annotation;
+  private final PaymentRequirements template;
+  private final long price;
+  private final long accessWindowSeconds;
+  private final PaymentRequiredBody paymentRequiredBody;
+  private final String id;
+  private final EndpointMetrics metrics;
+
+  PaymentEndpoint(Class<?> beanType, Method method, X402Payment annotation,
+      PaymentRequirements template, long price, long accessWindowSeconds, X402Metrics metrics) {
+    this.method = method;
+    this.annotation = annotation;
+    this.template = template;
+    this.price = price;
+    this.accessWindowSeconds = accessWindowSeconds;
+    this.paymentRequiredBody = new PaymentRequiredBody(template);
+    this.id = id(beanType, method);
+    this.metrics = metrics.endpoint(id, template.network);
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public X402Payment getAnnotation() {
+    return annotation;
+  }
+
+  /**
+   * Identifier of the endpoint, unique across classes and overloads, e.g.
+   * {@code com.example.WeatherController#forecast(String)}.
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Meters of this endpoint, registered when the endpoint was created.
+   */
+  public EndpointMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Whether the handler runs while the payment is verified.
+   *
+   * @see X402Payment#speculative()
+   */
+  public boolean isSpeculative() {
+    return annotation.speculative();
+  }
+
+  /**
+   * Atomic amount required by this endpoint. For prepaid endpoints this is the top-up amount.
+   */
+  public String getMaxAmountRequired() {
+    return template.maxAmountRequired;
+  }
+
+  /**
+   * Atomic price of one request.
+   */
+  public long getPrice() {
+    return price;
+  }
+
+  /**
+   * Whether requests are debited from the payer's prepaid credit.
+   *
+   * @see PaymentEndpointRegistry#setPrepaidTopUp(String)
+   */
+  public boolean isPrepaid() {
+    return template.extra.containsKey(PrepaidLedger.PRICE_KEY);
+  }
+
+  /**
+   * Seconds of access a settled payment grants, 0 if the endpoint issues no access token.
+   *
+   * @see X402Payment#accessWindow()
+   */
+  public long getAccessWindowSeconds() {
+    return accessWindowSeconds;
+  }
+
+  /**
+   * Pattern of the request paths an access token of this endpoint grants.
+   *
+   * @return the pattern, or {@code null} to grant only the path that was paid for
+   * @see X402Payment#accessPattern()
+   */
+  @Nullable
+  public String getAccessPattern() {
+    return StringUtils.hasText(annotation.accessPattern()) ? annotation.accessPattern() : null;
+  }
+
+  /**
+   * Builds the requirements for one request from the precomputed template.
+   *
+   * @param resource the URL the client is paying for
+   * @return a fresh requirements instance sharing the template's immutable maps
+   */
+  public PaymentRequirements requirementsFor(String resource) {
+    return template.withResource(resource);
+  }
+
+  /**
+   * Pre-serialized 402 body for this endpoint.
+   */
+  PaymentRequiredBody paymentRequiredBody() {
+    return paymentRequiredBody;
+  }
+
+  private static String id(Class<?> beanType, Method method) {
+    StringJoiner parameters = new StringJoiner(",", "(", ")");
+    for (Class<?> type : method.getParameterTypes()) {
+      parameters.add(type.getSimpleName());
+    }
+    return beanType.getName() + "#" + method.getName() + parameters;
+  }
+}
@@ -0,0 +1,293 @@
+package com.ryan.x402.intereptor;
+
+import static java.math.BigDecimal.TEN;
+import static java.math.RoundingMode.DOWN;
+
+import com.ryan.x402.annotation.X402Payment;
+import com.ryan.x402.metrics.X402Metrics;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.prepaid.PrepaidLedger;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+
+/**
+ * Registry of {@link X402Payment} endpoints built once at startup.
+ * <p>
+ * Prices are parsed and validated when a handler is registered, so a bad price fails the boot
+ * instead of a request. Lookups go through {@link ConcurrentHashMap}s keyed by the handler bean
+ * type and then by the handler {@link Method}; the bean type is part of the key because a method
+ * inherited by several controllers takes its class-level {@link X402Payment} from each of them.
+ * {@link HandlerMethod} itself is not used as the key because the mapping hands out a new instance
+ * with the resolved bean on every request.
+ */
+@Slf4j
+public class PaymentEndpointRegistry {
+
+  private static final BigDecimal ATOMIC_UNITS = TEN.pow(6); // USDC has 6 decimals
+
+  private final String defaultPayTo;
+  private final String network;            // e.g. "base-sepolia"
+  private final String asset;              // e.g.  "0x..."
+  private final int maxTimeoutSeconds;     // e.g. 30
+  private final X402Metrics metrics;
+
+  /**
+   * Endpoint per handler bean type and method; {@link Optional#empty()} marks handlers without
+   * payment.
+   */
+  private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, Optional<PaymentEndpoint>>>
+      endpoints = new ConcurrentHashMap<>();
+
+  private volatile boolean speculative;
+  private volatile boolean accessWindows;
+
+  /**
+   * Atomic prepaid top-up amount, 0 if endpoints are paid per request.
+   */
+  private volatile long prepaidTopUp;
+
+  /**
+   * EIP-712 domain of the asset contract, sent as {@code extra.name}/{@code extra.version}.
+   */
+  private volatile Map<String, Object> assetDomain = domain("USDC", "2");
+
+  public PaymentEndpointRegistry(String defaultPayTo, String network, String asset,
+      int maxTimeoutSeconds) {
+    this(defaultPayTo, network, asset, maxTimeoutSeconds, X402Metrics.NOOP);
+  }
+
+  /**
+   * Creates a registry that registers the meters of each endpoint along with the endpoint.
+   */
+  public PaymentEndpointRegistry(String defaultPayTo, String network, String asset,
+      int maxTimeoutSeconds, X402Metrics metrics) {
+    this.defaultPayTo = Objects.requireNonNull(defaultPayTo);
+    this.network = Objects.requireNonNull(network);
+    this.asset = Objects.requireNonNull(asset);
+    this.maxTimeoutSeconds = maxTimeoutSeconds;
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  /**
+   * Sells all endpoints by prepaid credit: their requirements ask for the top-up amount, or for
+   * the price where that is higher, and carry the price under {@link PrepaidLedger#PRICE_KEY}.
+   * Must be called before any endpoint is registered.
+   *
+   * @param topUp the top-up amount in the same unit as {@link X402Payment#price()}, or
+   *              {@code null} to charge per request
+   * @throws IllegalStateException if the amount is invalid or endpoints are already registered
+   */
+  public void setPrepaidTopUp(@Nullable String topUp) {
+    if (!endpoints.isEmpty()) {
+      throw new IllegalStateException("prepaid top-up must be set before endpoints are registered");
+    }
+    this.prepaidTopUp = topUp != null ? toAtomic(topUp, "x402.prepaid.top-up") : 0;
+  }
+
+  /**
+   * Sets the EIP-712 domain name and version of the asset contract, which the payer signs
+   * against. Defaults to USDC's {@code "USDC"}/{@code "2"}. Must be called before any endpoint is
+   * registered.
+   *
+   * @throws IllegalStateException if endpoints are already registered
+   */
+  public void setAssetDomain(String name, String version) {
+    if (!endpoints.isEmpty()) {
+      throw new IllegalStateException("asset domain must be set before endpoints are registered");
+    }
+    this.assetDomain = domain(name, version);
+  }
+
+  /* ======================== registration ======================== */
+
+  /**
+   * Registers every handler method of a handler mapping.
+   *
+   * @param handlerMethods handler methods, e.g. from
+   *                       {@code RequestMappingHandlerMapping#getHandlerMethods()}
+   * @throws IllegalStateException if an {@link X402Payment} declares an invalid price
+   */
+  public void registerAll(Collection<HandlerMethod> handlerMethods) {
+    for (HandlerMethod hm : handlerMethods) {
+      register(hm);
+    }
+  }
+
+  /**
+   * Registers a single handler method.
+   *
+   * @param handlerMethod the handler method to inspect
+   * @return the payment endpoint, or {@code null} if the handler is not annotated
+   * @throws IllegalStateException if an {@link X402Payment} declares an invalid price
+   */
+  @Nullable
+  public PaymentEndpoint register(HandlerMethod handlerMethod) {
+    return endpoints.computeIfAbsent(handlerMethod.getBeanType(), t -> new ConcurrentHashMap<>())
+        .computeIfAbsent(handlerMethod.getMethod(),
+            m -> Optional.ofNullable(createEndpoint(handlerMethod))).orElse(null);
+  }
+
+  /**
+   * Returns all registered payment endpoints.
+   */
+  public Collection<PaymentEndpoint> getEndpoints() {
+    return endpoints.values().stream()
+        .flatMap(methods -> methods.values().stream())
+        .flatMap(Optional::stream)
+        .toList();
+  }
+
+  /**
+   * Whether any registered endpoint is {@linkplain PaymentEndpoint#isSpeculative() speculative}.
+   */
+  public boolean hasSpeculativeEndpoints() {
+    return speculative;
+  }
+
+  /**
+   * Whether any registered endpoint has an
+   * {@linkplain PaymentEndpoint#getAccessWindowSeconds() access window}.
+   */
+  public boolean hasAccessWindowEndpoints() {
+    return accessWindows;
+  }
+
+  /* ======================== lookup ======================== */
+
+  /**
+   * Resolves the payment endpoint for a handler.
+   * <p>
+   * Handlers that were not seen at startup (e.g. from a custom handler mapping) are registered
+   * lazily on first use.
+   *
+   * @param handler the handler passed to the interceptor
+   * @return the payment endpoint, or {@code null} for non-payment handlers
+   */
+  @Nullable
+  public PaymentEndpoint resolve(Object handler) {
+    if (!(handler instanceof HandlerMethod hm)) {
+      return null;
+    }
+    Map<Method, Optional<PaymentEndpoint>> methods = endpoints.get(hm.getBeanType());
+    Optional<PaymentEndpoint> endpoint = methods != null ? methods.get(hm.getMethod()) : null;
+    if (endpoint != null) {
+      return endpoint.orElse(null);
+    }
+    return register(hm);
+  }
+
+  /* ======================== helpers ======================== */
+
+  @Nullable
+  private PaymentEndpoint createEndpoint(HandlerMethod hm) {
+    X402Payment annotation = resolveAnnotation(hm);
+    if (annotation == null) {
+      return null;
+    }
+    try {
+      long price = toAtomic(annotation.price(), "@X402Payment.price");
+      PaymentEndpoint endpoint = new PaymentEndpoint(hm.getBeanType(), hm.getMethod(), annotation,
+          buildTemplate(annotation, price), price, accessWindowSeconds(annotation), metrics);
+      log.debug("x402 registered payment endpoint {} price: {}", endpoint.getId(),
+          endpoint.getMaxAmountRequired());
+      if (endpoint.isSpeculative()) {
+        speculative = true;
+      }
+      if (endpoint.getAccessWindowSeconds() > 0) {
+        accessWindows = true;
+      }
+      return endpoint;
+    } catch (RuntimeException ex) {
+      throw new IllegalStateException(
+          "Invalid @X402Payment on " + hm.getShortLogMessage() + ": " + ex.getMessage(), ex);
+    }
+  }
+
+  @Nullable
+  private static X402Payment resolveAnnotation(HandlerMethod hm) {
+    X402Payment methodAnn = hm.getMethodAnnotation(X402Payment.class);
+    if (methodAnn != null) {
+      return methodAnn;
+    }
+
+    return hm.getBeanType().getAnnotation(X402Payment.class);
+  }
+
+  private static long toAtomic(String amount, String what) {
+    if (!StringUtils.hasText(amount)) {
+      throw new IllegalStateException(what + " must not be empty");
+    }
+
+    BigDecimal atomic;
+    try {
+      atomic = new BigDecimal(amount).multiply(ATOMIC_UNITS).setScale(0, DOWN);
+    } catch (NumberFormatException ex) {
+      throw new IllegalStateException(what + " is not a number: " + amount, ex);
+    }
+    if (atomic.signum() <= 0) {
+      throw new IllegalStateException(what + " must be positive: " + amount);
+    }
+    try {
+      return atomic.longValueExact();
+    } catch (ArithmeticException ex) {
+      throw new IllegalStateException(what + " is too large: " + amount, ex);
+    }
+  }
+
+  private static long accessWindowSeconds(X402Payment ann) {
+    if (!StringUtils.hasText(ann.accessWindow())) {
+      return 0;
+    }
+    Duration window;
+    try {
+      window = DurationStyle.detectAndParse(ann.accessWindow());
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalStateException(
+          "@X402Payment.accessWindow is not a duration: " + ann.accessWindow(), ex);
+    }
+    if (window.getSeconds() <= 0) {
+      throw new IllegalStateException(
+          "@X402Payment.accessWindow must be at least one second: " + ann.accessWindow());
+    }
+    return window.getSeconds();
+  }
+
+  private PaymentRequirements buildTemplate(X402Payment ann, long price) {
+    String payTo = StringUtils.hasText(ann.payTo()) ? ann.payTo() : defaultPayTo;
+
+    PaymentRequirements pr = new PaymentRequirements();
+    pr.scheme = "exact";
+    pr.network = network;
+    pr.maxAmountRequired = Long.toString(Math.max(price, prepaidTopUp));
+    pr.asset = asset;
+    pr.description = "";
+    pr.mimeType = "application/json";
+    pr.payTo = payTo;
+    pr.maxTimeoutSeconds = maxTimeoutSeconds;
+    Map<String, Object> domain = assetDomain;
+    pr.extra = prepaidTopUp > 0
+        ? Map.of("name", domain.get("name"), "version", domain.get("version"),
+            PrepaidLedger.PRICE_KEY, Long.toString(price))
+        : domain;
+    pr.outputSchema = Map.of();
+    return pr;
+  }
+
+  private static Map<String, Object> domain(String name, String version) {
+    if (!StringUtils.hasText(name) || !StringUtils.hasText(version)) {
+      throw new IllegalStateException("asset domain name and version must not be empty");
+    }
+    return Map.of("name", name, "version", version);
+  }
+}
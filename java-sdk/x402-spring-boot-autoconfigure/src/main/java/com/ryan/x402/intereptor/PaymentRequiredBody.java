@@ -0,0 +1,131 @@
+package com.ryan.x402.intereptor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.ryan.x402.model.PaymentRequiredResponse;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.util.Json;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.lang.Nullable;
+
+/**
+ * Pre-serialized 402 body of one endpoint. The JSON is rendered once from the requirements
+ * template and split around the resource URL and the error message, so a response only splices
+ * in those two escaped strings.
+ * <p>
+ * Complete bodies are also kept per error message for the last resource seen, so the common case
+ * of a constant error on a fixed URL writes one cached array.
+ */
+final class PaymentRequiredBody {
+
+  private static final String RESOURCE_MARK = "x402:resource:7c1f3a";
+  private static final String ERROR_MARK = "x402:error:7c1f3a";
+
+  /**
+   * Upper bound of distinct error messages with a cached complete body.
+   */
+  private static final int MAX_CACHED_ERRORS = 32;
+
+  private final byte[] head;
+  private final byte[] middle;
+  private final byte[] tail;
+  private final byte[] tailWithoutError;
+
+  private final ConcurrentMap<String, Rendered> rendered = new ConcurrentHashMap<>();
+
+  PaymentRequiredBody(PaymentRequirements template) {
+    byte[] withError = serialize(template, ERROR_MARK);
+    byte[] withoutError = serialize(template, null);
+
+    int resource = indexOf(withError, RESOURCE_MARK, 0);
+    int error = indexOf(withError, ERROR_MARK, resource);
+    int resourceOnly = indexOf(withoutError, RESOURCE_MARK, 0);
+    if (resource < 0 || error < 0 || resourceOnly < 0) {
+      throw new IllegalStateException("Unable to pre-serialize 402 response body");
+    }
+    this.head = Arrays.copyOfRange(withError, 0, resource);
+    this.middle = Arrays.copyOfRange(withError, resource + RESOURCE_MARK.length(), error);
+    this.tail = Arrays.copyOfRange(withError, error + ERROR_MARK.length(), withError.length);
+    this.tailWithoutError = Arrays.copyOfRange(withoutError,
+        resourceOnly + RESOURCE_MARK.length(), withoutError.length);
+  }
+
+  /**
+   * Renders the body for one response. Shared by the servlet interceptor and the reactive filter,
+   * so this class must not depend on either stack.
+   *
+   * @param resource the URL the client is paying for
+   * @param error    the error message, or {@code null} to omit it
+   */
+  byte[] render(String resource, @Nullable String error) {
+    if (error == null) {
+      return concat(escape(resource), null);
+    }
+    Rendered cached = rendered.get(error);
+    if (cached != null && cached.resource.equals(resource)) {
+      return cached.body;
+    }
+    byte[] body = concat(escape(resource), escape(error));
+    if (cached != null || rendered.size() < MAX_CACHED_ERRORS) {
+      rendered.put(error, new Rendered(resource, body));
+    }
+    return body;
+  }
+
+  private byte[] concat(byte[] resource, @Nullable byte[] error) {
+    byte[] end = error != null ? tail : tailWithoutError;
+    int len = head.length + resource.length + end.length
+        + (error != null ? middle.length + error.length : 0);
+    byte[] out = new byte[len];
+    int pos = put(out, 0, head);
+    pos = put(out, pos, resource);
+    if (error != null) {
+      pos = put(out, pos, middle);
+      pos = put(out, pos, error);
+    }
+    put(out, pos, end);
+    return out;
+  }
+
+  private static int put(byte[] dst, int pos, byte[] src) {
+    System.arraycopy(src, 0, dst, pos, src.length);
+    return pos + src.length;
+  }
+
+  private static byte[] escape(String s) {
+    return JsonStringEncoder.getInstance().quoteAsUTF8(s);
+  }
+
+  private static byte[] serialize(PaymentRequirements template, @Nullable String error) {
+    PaymentRequiredResponse prr = new PaymentRequiredResponse();
+    prr.x402Version = 1;
+    prr.accepts.add(template.withResource(RESOURCE_MARK));
+    prr.error = error;
+    try {
+      return Json.MAPPER.writeValueAsBytes(prr);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unable to pre-serialize 402 response body", e);
+    }
+  }
+
+  private static int indexOf(byte[] data, String mark, int from) {
+    byte[] m = mark.getBytes(StandardCharsets.US_ASCII);
+    outer:
+    for (int i = Math.max(from, 0); i <= data.length - m.length; i++) {
+      for (int j = 0; j < m.length; j++) {
+        if (data[i + j] != m[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private record Rendered(String resource, byte[] body) {
+
+  }
+}
@@ -0,0 +1,50 @@
+package com.ryan.x402.intereptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.List;
+import org.springframework.http.server.RequestPath;
+import org.springframework.lang.Nullable;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+/**
+ * Finds the payment endpoint of a request from a servlet filter, i.e. before the
+ * {@code DispatcherServlet} has looked up the handler.
+ */
+final class ServletEndpointResolver {
+
+  private final PaymentEndpointRegistry registry;
+  private final List<HandlerMapping> handlerMappings;
+
+  ServletEndpointResolver(PaymentEndpointRegistry registry,
+      List<? extends HandlerMapping> handlerMappings) {
+    this.registry = registry;
+    this.handlerMappings = List.copyOf(handlerMappings);
+  }
+
+  @Nullable
+  PaymentEndpoint resolve(HttpServletRequest request) {
+    // handler mappings expect the path the DispatcherServlet parses, restore whatever was there
+    Object previous = request.getAttribute(ServletRequestPathUtils.PATH_ATTRIBUTE);
+    ServletRequestPathUtils.parseAndCache(request);
+    try {
+      for (HandlerMapping mapping : handlerMappings) {
+        HandlerExecutionChain chain = mapping.getHandler(request);
+        if (chain != null) {
+          return registry.resolve(chain.getHandler());
+        }
+      }
+      return null;
+    } catch (Exception ex) {
+      // lookup errors (405, 415, ...) are reported again by the dispatcher
+      return null;
+    } finally {
+      if (previous instanceof RequestPath) {
+        request.setAttribute(ServletRequestPathUtils.PATH_ATTRIBUTE, previous);
+      } else {
+        ServletRequestPathUtils.clearParsedRequestPath(request);
+      }
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.ryan.x402.intereptor;
+
+import com.ryan.x402.model.VerificationResponse;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Runs the facilitator {@code /verify} call of paid requests with Servlet async processing.
+ * <p>
+ * For a request to an {@code @X402Payment} handler the filter starts the verification through
+ * {@link X402Interceptor#startVerification}, puts the request into async mode and returns the
+ * container thread. Once the facilitator answers, the request is dispatched again and
+ * {@link X402Interceptor#preHandle} continues with the finished result, so responses are the same
+ * as in blocking mode. Requests that need no facilitator call pass straight through.
+ */
+@Slf4j
+public class X402AsyncVerificationFilter extends OncePerRequestFilter {
+
+  private final X402Interceptor interceptor;
+  private final ServletEndpointResolver endpoints;
+  private final long timeoutMillis;
+
+  /**
+   * Creates a new filter.
+   *
+   * @param interceptor     the interceptor that completes the request after the dispatch
+   * @param registry        the payment endpoints
+   * @param handlerMappings the mappings used to find the handler of a request, usually the
+   *                        annotated-controller {@code RequestMappingHandlerMapping}
+   * @param timeout         how long a verification may take before the request fails with 503
+   */
+  public X402AsyncVerificationFilter(X402Interceptor interceptor,
+      PaymentEndpointRegistry registry, List<? extends HandlerMapping> handlerMappings,
+      Duration timeout) {
+    this.interceptor = Objects.requireNonNull(interceptor);
+    this.endpoints = new ServletEndpointResolver(Objects.requireNonNull(registry),
+        handlerMappings);
+    this.timeoutMillis = timeout.toMillis();
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    // without a payment there is nothing to verify, skip resolving the handler
+    return !StringUtils.hasText(request.getHeader("X-PAYMENT"));
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    PaymentEndpoint endpoint = request.isAsyncSupported() ? endpoints.resolve(request) : null;
+    CompletableFuture<VerificationResponse> verification = endpoint != null
+        ? interceptor.startVerification(request, endpoint) : null;
+    if (verification == null || verification.isDone()) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    AsyncContext async = request.startAsync();
+    async.setTimeout(timeoutMillis);
+    AtomicBoolean finished = new AtomicBoolean();
+    async.addListener(new AsyncListener() {
+      @Override
+      public void onTimeout(AsyncEvent event) throws IOException {
+        if (finished.compareAndSet(false, true)) {
+          log.warn("x402 async verification timed out URL: {}", request.getRequestURL());
+          respondTimeout(response);
+          async.complete();
+        }
+      }
+
+      @Override
+      public void onComplete(AsyncEvent event) {
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        finished.set(true);
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {
+      }
+    });
+    // the result, or the failure, is handled by preHandle on the dispatch
+    verification.whenComplete((vr, ex) -> {
+      if (finished.compareAndSet(false, true)) {
+        async.dispatch();
+      }
+    });
+  }
+
+  /* ======================== helpers ======================== */
+
+  private static void respondTimeout(HttpServletResponse resp) throws IOException {
+    if (resp.isCommitted()) {
+      return;
+    }
+    resp.resetBuffer();
+    resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    resp.setContentType("application/json");
+    resp.getWriter().write("{\"error\":\"payment verification timed out\"}");
+    resp.flushBuffer();
+  }
+}
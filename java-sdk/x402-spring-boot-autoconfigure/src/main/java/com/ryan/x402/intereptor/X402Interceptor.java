@@ -1,33 +1,46 @@
 package com.ryan.x402.intereptor;
 
-import static java.math.BigDecimal.TEN;
-import static java.math.RoundingMode.DOWN;
-
-import com.ryan.x402.annotation.X402Payment;
+import com.ryan.x402.audit.AuditEvent;
+import com.ryan.x402.audit.AuditLog;
+import com.ryan.x402.facilitator.FacilitatorCapabilities;
 import com.ryan.x402.facilitator.FacilitatorClient;
+import com.ryan.x402.facilitator.FacilitatorUnavailableException;
+import com.ryan.x402.facilitator.VerificationCache;
+import com.ryan.x402.metrics.EndpointMetrics;
+import com.ryan.x402.metrics.EndpointMetrics.Outcome;
+import com.ryan.x402.model.Authorization;
 import com.ryan.x402.model.ExactSchemePayload;
 import com.ryan.x402.model.PaymentPayload;
-import com.ryan.x402.model.PaymentRequiredResponse;
 import com.ryan.x402.model.PaymentRequirements;
 import com.ryan.x402.model.SettlementResponse;
 import com.ryan.x402.model.SettlementResponseHeader;
 import com.ryan.x402.model.VerificationResponse;
-import com.ryan.x402.util.Json;
+import com.ryan.x402.prepaid.PrepaidLedger;
+import com.ryan.x402.replay.LocalPaymentDeduplicationStore;
+import com.ryan.x402.replay.NonceReplayGuard;
+import com.ryan.x402.replay.PaymentDeduplicationStore;
+import com.ryan.x402.settlement.AsyncSettlementService;
+import com.ryan.x402.settlement.SettlementJournal;
+import com.ryan.x402.token.AccessTokenSigner;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import com.ryan.x402.verification.PaymentPreVerifier;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
-import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.WebUtils;
 
 @Slf4j
 @Component
@@ -36,96 +49,418 @@ public class X402Interceptor implements HandlerInterceptor {
   private static final String ATTR_REQUIREMENTS = "x402.payment.requirements";
   private static final String ATTR_HEADER = "x402.payment.header";
   private static final String ATTR_PAYLOAD = "x402.payment.payload";
+  private static final String ATTR_VERIFICATION = "x402.payment.verification";
+  private static final String ATTR_SPECULATIVE = "x402.payment.speculative";
+  private static final String ATTR_PREPAID = "x402.payment.prepaid";
+  private static final String ATTR_JOURNAL_ENTRY = "x402.payment.journal-entry";
 
-  private final String defaultPayTo;
-  private final String network;            // e.g. "base-sepolia"
-  private final String asset;              // e.g.  "0x..."
-  private final int maxTimeoutSeconds;  // e.g. 30
+  private final PaymentEndpointRegistry registry;
   private final FacilitatorClient facilitator;
 
+  private int maxPaymentHeaderLength = PaymentPayload.DEFAULT_MAX_HEADER_LENGTH;
+
+  @Nullable
+  private AsyncSettlementService settlementService;
+
+  @Nullable
+  private SettlementJournal journal;
+
+  @Nullable
+  private VerificationCache verificationCache;
+
+  private boolean preCheck = true;
+
+  @Nullable
+  private ExactEvmSignatureVerifier signatureVerifier;
+
+  private double remoteSampleRate = 0.0;
+
+  @Nullable
+  private PaymentDeduplicationStore deduplicationStore;
+
+  private boolean deduplicationFailOpen = true;
+
+  @Nullable
+  private FacilitatorCapabilities capabilities;
+
+  @Nullable
+  private PrepaidLedger prepaidLedger;
+
+  @Nullable
+  private ExactEvmSignatureVerifier prepaidSignatures;
+
+  @Nullable
+  private AccessTokenSigner accessTokens;
+
+  @Nullable
+  private AuditLog auditLog;
+
   public X402Interceptor(String defaultPayTo, String network, String asset, int maxTimeoutSeconds,
       FacilitatorClient facilitator) {
-    this.defaultPayTo = Objects.requireNonNull(defaultPayTo);
-    this.network = Objects.requireNonNull(network);
-    this.asset = Objects.requireNonNull(asset);
-    this.maxTimeoutSeconds = maxTimeoutSeconds;
+    this(new PaymentEndpointRegistry(defaultPayTo, network, asset, maxTimeoutSeconds), facilitator);
+  }
+
+  public X402Interceptor(PaymentEndpointRegistry registry, FacilitatorClient facilitator) {
+    this.registry = Objects.requireNonNull(registry);
     this.facilitator = Objects.requireNonNull(facilitator);
   }
 
+  /**
+   * Maximum accepted {@code X-PAYMENT} header length in characters. Longer headers are rejected
+   * before any decoding.
+   *
+   * @param maxPaymentHeaderLength the limit
+   */
+  public void setMaxPaymentHeaderLength(int maxPaymentHeaderLength) {
+    this.maxPaymentHeaderLength = maxPaymentHeaderLength;
+  }
+
+  /**
+   * Settles payments through the given service instead of on the request thread. In that mode no
+   * {@code X-PAYMENT-RESPONSE} header is sent; results go to
+   * {@link com.ryan.x402.settlement.SettlementListener}s.
+   *
+   * @param settlementService the async settlement service, or {@code null} to settle inline
+   */
+  public void setSettlementService(@Nullable AsyncSettlementService settlementService) {
+    this.settlementService = settlementService;
+  }
+
+  /**
+   * Records every verified payment in the given journal before the handler writes its content,
+   * so a payment whose content was served is still settled if the process dies before the
+   * facilitator answered. Payments whose handler fails are marked abandoned.
+   *
+   * @param journal the settlement journal, or {@code null} to settle without one
+   */
+  public void setJournal(@Nullable SettlementJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Routes verification through the given cache, so identical concurrent or repeated
+   * verifications cost a single facilitator call.
+   *
+   * @param verificationCache the cache, or {@code null} to always call the facilitator
+   */
+  public void setVerificationCache(@Nullable VerificationCache verificationCache) {
+    this.verificationCache = verificationCache;
+  }
+
+  /**
+   * Whether to run {@link PaymentPreVerifier} before calling the facilitator. Enabled by default.
+   *
+   * @param preCheck {@code false} to leave all checks to the facilitator
+   */
+  public void setPreCheck(boolean preCheck) {
+    this.preCheck = preCheck;
+  }
+
+  /**
+   * Verifies signatures in-process and skips the facilitator {@code /verify} call for payments
+   * whose signature checks out. The local pre-check always runs in this mode. Payments that cannot
+   * be checked offline still go to the facilitator.
+   *
+   * @param signatureVerifier the verifier, or {@code null} to always verify remotely
+   */
+  public void setSignatureVerifier(@Nullable ExactEvmSignatureVerifier signatureVerifier) {
+    this.signatureVerifier = signatureVerifier;
+  }
+
+  /**
+   * Fraction of locally verified payments that are verified by the facilitator as well.
+   *
+   * @param remoteSampleRate value between 0.0 (never) and 1.0 (always)
+   */
+  public void setRemoteSampleRate(double remoteSampleRate) {
+    this.remoteSampleRate = remoteSampleRate;
+  }
+
+  /**
+   * Records the nonce of every verified payment and rejects payments whose nonce is already
+   * recorded, so one authorization cannot be served twice before it is settled.
+   *
+   * @param replayGuard the guard, or {@code null} to leave replay protection to the facilitator
+   * @see #setDeduplicationStore(PaymentDeduplicationStore)
+   */
+  public void setReplayGuard(@Nullable NonceReplayGuard replayGuard) {
+    setDeduplicationStore(replayGuard != null
+        ? new LocalPaymentDeduplicationStore(replayGuard) : null);
+  }
+
+  /**
+   * Claims the nonce of every verified payment in the given store and rejects payments whose
+   * nonce is already claimed. A shared store extends the protection to all instances.
+   *
+   * @param deduplicationStore the store, or {@code null} to leave replay protection to the
+   *                           facilitator
+   * @see #setDeduplicationFailOpen(boolean)
+   */
+  public void setDeduplicationStore(@Nullable PaymentDeduplicationStore deduplicationStore) {
+    this.deduplicationStore = deduplicationStore;
+  }
+
+  /**
+   * What happens when a nonce cannot be recorded because the deduplication store is unreachable
+   * or full. Failing open serves the payment anyway, the facilitator still rejects a nonce once
+   * it is settled, but until then it can be replayed. Failing closed answers 503 instead.
+   *
+   * @param deduplicationFailOpen {@code true} (the default) to serve the payment, {@code false}
+   *                              to reject it
+   */
+  public void setDeduplicationFailOpen(boolean deduplicationFailOpen) {
+    this.deduplicationFailOpen = deduplicationFailOpen;
+  }
+
+  /**
+   * Rejects payments whose scheme/network pair the facilitator does not support without calling
+   * it.
+   *
+   * @param capabilities the cached supported kinds, or {@code null} to always ask the facilitator
+   */
+  public void setCapabilities(@Nullable FacilitatorCapabilities capabilities) {
+    this.capabilities = capabilities;
+  }
+
+  /**
+   * Debits requests to {@linkplain PaymentEndpoint#isPrepaid() prepaid} endpoints from the
+   * payer's credit. A payment of at least the top-up amount is verified and settled as usual and,
+   * once settled, credits what is left after the request. A smaller payment is never settled: its
+   * signature, verified in-process, only identifies the payer, and its nonce is claimed so it
+   * cannot be presented twice. If the credit does not cover the price, the 402 asks for a top-up.
+   * <p>
+   * A {@linkplain #setDeduplicationStore(PaymentDeduplicationStore) deduplication store} is
+   * required: if the nonce cannot be claimed the request is answered with 503, regardless of
+   * {@link #setDeduplicationFailOpen(boolean)}, and proofs valid for longer than the store keeps
+   * nonces are rejected.
+   * <p>
+   * With async settlement the ledger must also listen to the settlement service, see
+   * {@link PrepaidLedger#onSettled}. The endpoint registry must have a
+   * {@linkplain PaymentEndpointRegistry#setPrepaidTopUp(String) top-up amount}.
+   *
+   * @param prepaidLedger the ledger, or {@code null} to settle every request
+   */
+  public void setPrepaidLedger(@Nullable PrepaidLedger prepaidLedger) {
+    this.prepaidLedger = prepaidLedger;
+    this.prepaidSignatures = prepaidLedger != null ? new ExactEvmSignatureVerifier() : null;
+  }
+
+  /**
+   * Returns a signed access token in {@code X-PAYMENT-TOKEN} after an inline settlement on
+   * endpoints with an {@linkplain PaymentEndpoint#getAccessWindowSeconds() access window}, and
+   * serves requests carrying a valid token without a payment. Tokens are checked in memory.
+   * No token is issued in async settlement mode, where the response leaves before settlement.
+   *
+   * @param accessTokens the signer, or {@code null} to require a payment on every request
+   */
+  public void setAccessTokenSigner(@Nullable AccessTokenSigner accessTokens) {
+    this.accessTokens = accessTokens;
+  }
+
+  /**
+   * Publishes an {@link AuditEvent} for every payment that is verified, rejected or settled on the
+   * request thread. Async settlements reach the log as a
+   * {@link com.ryan.x402.settlement.SettlementListener}.
+   *
+   * @param auditLog the log, or {@code null} to keep no audit trail
+   */
+  public void setAuditLog(@Nullable AuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
   /* ======================== preHandle: /verify ======================== */
 
   @Override
   public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
       throws Exception {
 
-    X402Payment annotation = resolveAnnotation(handler);
+    PaymentEndpoint endpoint = registry.resolve(handler);
     // Non-payment endpoint, skip
-    if (annotation == null) {
+    if (endpoint == null) {
       return true;
     }
 
     String path = request.getRequestURL().toString();
-    PaymentRequirements requirements = buildRequirements(path, annotation);
+
+    String tokenRejection = null;
+    if (accessTokens != null && endpoint.getAccessWindowSeconds() > 0) {
+      String token = request.getHeader("X-PAYMENT-TOKEN");
+      if (StringUtils.hasText(token)) {
+        tokenRejection = checkAccessToken(token, accessPath(request));
+        if (tokenRejection == null) {
+          return true;
+        }
+      }
+    }
 
     String header = request.getHeader("X-PAYMENT");
     if (!StringUtils.hasText(header)) {
-      log.info("x402 called without payment header URL: {}", request.getRequestURL().toString());
-      respond402(response, requirements, "X-PAYMENT header is required");
+      if (tokenRejection != null) {
+        log.info("x402 access token rejected URL: {} reason: {}", path, tokenRejection);
+        respond402(response, endpoint, path, tokenRejection);
+        return false;
+      }
+      log.info("x402 called without payment header URL: {}", path);
+      respond402(response, endpoint, path, "X-PAYMENT header is required");
       return false;
     }
+    if (header.length() > maxPaymentHeaderLength) {
+      log.info("x402 payment header too large URL: {} length: {}", path, header.length());
+      audit(AuditEvent.Type.REJECTED, path, null, "X-PAYMENT header too large");
+      respond402(response, endpoint, path, "X-PAYMENT header too large");
+      return false;
+    }
+
+    PaymentRequirements requirements = endpoint.requirementsFor(path);
 
     PaymentPayload payload;
     VerificationResponse vr;
 
     try {
-      payload = PaymentPayload.fromHeader(header);
+      payload = PaymentPayload.fromHeader(header, maxPaymentHeaderLength);
+      audit(AuditEvent.Type.VERIFY_REQUESTED, path, payload, null);
 
-      vr = facilitator.verify(payload, requirements);
+      if (capabilities != null && !capabilities.supports(payload.scheme, payload.network)) {
+        log.info("x402 payment for unsupported kind URL: {} kind: {}/{}", path, payload.scheme,
+            payload.network);
+        audit(AuditEvent.Type.REJECTED, path, payload, FacilitatorCapabilities.UNSUPPORTED_SCHEME);
+        respond402(response, endpoint, path, FacilitatorCapabilities.UNSUPPORTED_SCHEME);
+        return false;
+      }
+
+      if (isPrepaidDebit(endpoint, payload, requirements)) {
+        return debitPrepaid(request, response, endpoint, path, payload);
+      }
+
+      if (preCheck || signatureVerifier != null) {
+        String reason = PaymentPreVerifier.check(payload, requirements,
+            System.currentTimeMillis() / 1000);
+        if (reason != null) {
+          log.info("x402 payment rejected by local pre-check URL: {} reason: {}", path, reason);
+          audit(AuditEvent.Type.REJECTED, path, payload, reason);
+          respond402(response, endpoint, path, reason);
+          return false;
+        }
+      }
+
+      vr = verifyLocally(payload, requirements);
+      if (vr == null) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<VerificationResponse> started =
+            (CompletableFuture<VerificationResponse>) request.getAttribute(ATTR_VERIFICATION);
+        if (started == null && endpoint.isSpeculative() && isBuffered(response)) {
+          // the handler runs while the facilitator verifies, afterCompletion waits for the result
+          request.setAttribute(ATTR_SPECULATIVE,
+              verifyAsync(endpoint.getMetrics(), payload, requirements));
+          request.setAttribute(ATTR_REQUIREMENTS, requirements);
+          request.setAttribute(ATTR_HEADER, header);
+          request.setAttribute(ATTR_PAYLOAD, payload);
+          return true;
+        }
+        vr = started != null
+            ? awaitVerification(started)
+            : verifyRemotely(endpoint.getMetrics(), payload, requirements);
+      }
     } catch (IllegalArgumentException ex) {
-      log.error("x402 URL called with invalid payment URL: {} header: {}",
-          request.getRequestURL().toString(), header, ex);
-      respond402(response, requirements, "malformed X-PAYMENT header");
+      endpoint.getMetrics().malformedHeader();
+      log.info("x402 URL called with invalid payment URL: {} reason: {}", path, ex.getMessage());
+      audit(AuditEvent.Type.REJECTED, path, null, "malformed X-PAYMENT header");
+      respond402(response, endpoint, path, "malformed X-PAYMENT header");
+      return false;
+    } catch (FacilitatorUnavailableException ex) {
+      log.warn("x402 facilitator unavailable URL: {} reason: {}", path, ex.getMessage());
+      respond503(response, ex.getRetryAfterSeconds(), "payment facilitator unavailable");
       return false;
     } catch (IOException ex) {
-      log.error("x402 URL communication error with facilitator URL: {} header: {}",
-          request.getRequestURL().toString(), header, ex);
+      log.error("x402 URL communication error with facilitator URL: {}", path, ex);
       // communication error with facilitator
       respond500(response, "Payment verification failed: " + ex.getMessage());
       return false;
     } catch (Exception ex) {
-      log.error("x402 URL internal error URL: {} header: {}", request.getRequestURL().toString(),
-          header, ex);
+      log.error("x402 URL internal error URL: {}", path, ex);
       respond500(response, "Internal server error during payment verification");
       return false;
     }
 
     if (!vr.isValid) {
-      log.info("x402 payment verification failed URL: {} header: {} reason: {}",
-          request.getRequestURL().toString(), header, vr.invalidReason);
-      respond402(response, requirements, vr.invalidReason);
+      log.info("x402 payment verification failed URL: {} reason: {}", path, vr.invalidReason);
+      audit(AuditEvent.Type.REJECTED, path, payload, vr.invalidReason);
+      respond402(response, endpoint, path, vr.invalidReason);
+      return false;
+    }
+
+    if (deduplicationStore != null
+        && !claimNonce(request, response, endpoint, requirements, payload, deduplicationFailOpen)) {
       return false;
     }
+    audit(AuditEvent.Type.VERIFIED, path, payload, null);
 
     // verify passed, store for afterCompletion
     request.setAttribute(ATTR_REQUIREMENTS, requirements);
     request.setAttribute(ATTR_HEADER, header);
     request.setAttribute(ATTR_PAYLOAD, payload);
+    // journaled before the handler runs, the response may be committed by afterCompletion
+    request.setAttribute(ATTR_JOURNAL_ENTRY, appendToJournal(payload, requirements));
 
     return true;
   }
 
+  /**
+   * Starts the facilitator verification of the request's payment without blocking, for
+   * {@link X402AsyncVerificationFilter}. {@link #preHandle} picks up the result once the request
+   * is dispatched again.
+   *
+   * @return the running verification, or {@code null} if {@link #preHandle} decides without the
+   * facilitator (no or malformed header, failed pre-check, local signature verification) or the
+   * endpoint is speculative or has an access window, whose token header must be set before the
+   * response is committed
+   */
+  @Nullable
+  CompletableFuture<VerificationResponse> startVerification(HttpServletRequest request,
+      PaymentEndpoint endpoint) {
+    String header = request.getHeader("X-PAYMENT");
+    if (!StringUtils.hasText(header) || header.length() > maxPaymentHeaderLength
+        || signatureVerifier != null || endpoint.isSpeculative()
+        || endpoint.getAccessWindowSeconds() > 0) {
+      return null;
+    }
+    PaymentPayload payload;
+    try {
+      payload = PaymentPayload.fromHeader(header, maxPaymentHeaderLength);
+    } catch (IllegalArgumentException | IOException ex) {
+      return null;
+    }
+    if (capabilities != null && !capabilities.supports(payload.scheme, payload.network)) {
+      return null;
+    }
+    PaymentRequirements requirements = endpoint.requirementsFor(
+        request.getRequestURL().toString());
+    try {
+      if (isPrepaidDebit(endpoint, payload, requirements)) {
+        return null;
+      }
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+    if (preCheck && PaymentPreVerifier.check(payload, requirements,
+        System.currentTimeMillis() / 1000) != null) {
+      return null;
+    }
+
+    CompletableFuture<VerificationResponse> future =
+        verifyAsync(endpoint.getMetrics(), payload, requirements);
+    request.setAttribute(ATTR_VERIFICATION, future);
+    return future;
+  }
+
   /* ======================== afterCompletion: /settle ======================== */
 
   @Override
   public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
       Object handler, @Nullable Exception ex) throws Exception {
-    X402Payment annotation = resolveAnnotation(handler);
-    // Non-payment endpoint, skip
-    if (annotation == null) {
-      return;
-    }
-
-    if (response.getStatus() >= 400) {
+    PaymentPayload prepaid = (PaymentPayload) request.getAttribute(ATTR_PREPAID);
+    if (prepaid != null) {
+      refundPrepaid(request, response, registry.resolve(handler), prepaid);
       return;
     }
 
@@ -138,115 +473,534 @@ public class X402Interceptor implements HandlerInterceptor {
     if (requirements == null || header == null || payload == null) {
       return;
     }
+    PaymentEndpoint endpoint = registry.resolve(handler);
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<VerificationResponse> speculative =
+        (CompletableFuture<VerificationResponse>) request.getAttribute(ATTR_SPECULATIVE);
+    if (speculative != null
+        && !confirmSpeculative(request, response, endpoint, requirements, payload, speculative)) {
+      return;
+    }
+    Long journaled = (Long) request.getAttribute(ATTR_JOURNAL_ENTRY);
 
     // If response already indicates an error, skip settlement
     if (response.getStatus() >= 400) {
       log.warn("x402 skipping settlement due to error response URL: {} status: {}",
-          request.getRequestURL().toString(), response.getStatus());
+          requirements.resource, response.getStatus());
+      // not settled, so the client may use the same authorization again
+      releaseNonce(payload);
+      if (journaled != null) {
+        markAbandoned(journaled);
+      }
+      return;
+    }
+
+    // settlement consumes the nonce, a cached "valid" result must not outlive it
+    if (verificationCache != null) {
+      verificationCache.invalidate(payload, requirements);
+    }
+
+    // speculative payments are journaled only now, their content is still buffered
+    long journalEntry = journaled != null ? journaled : appendToJournal(payload, requirements);
+    if (settlementService != null) {
+      settlementService.submit(payload, requirements, endpoint.getMetrics(), journalEntry);
       return;
     }
 
+    long settleStart = System.nanoTime();
     try {
       SettlementResponse sr = facilitator.settle(payload, requirements);
-      log.info("x402 settlement response URL: {} header: {} response: {}",
-          request.getRequestURL().toString(), header, Json.MAPPER.writeValueAsString(sr));
+      markSettled(journalEntry);
+      endpoint.getMetrics().recordSettle(System.nanoTime() - settleStart,
+          sr != null && sr.success ? Outcome.SUCCESS : Outcome.FAILURE);
       if (sr == null || !sr.success) {
+        String errorMsg = (sr != null && sr.error != null) ? sr.error : "settlement failed";
+        audit(AuditEvent.Type.SETTLE_FAILED, requirements.resource, payload, errorMsg);
         if (!response.isCommitted()) {
-          String errorMsg = (sr != null && sr.error != null) ? sr.error : "settlement failed";
-          log.error("x402 settlement failed URL: {} header: {} error: {}",
-              request.getRequestURL().toString(), header, errorMsg);
-          respond402(response, requirements, errorMsg);
+          log.error("x402 settlement failed URL: {} error: {}", requirements.resource, errorMsg);
+          respond402(response, endpoint, requirements.resource, errorMsg);
         }
         return;
       }
+      log.debug("x402 settlement response URL: {} tx: {}", requirements.resource, sr.txHash);
+      if (auditLog != null) {
+        auditLog.publish(AuditEvent.Type.SETTLED, requirements.resource, payload, null,
+            sr.txHash);
+      }
+      if (prepaidLedger != null) {
+        prepaidLedger.onSettled(payload, requirements, sr);
+      }
 
       try {
         String payer = extractPayerFromPayload(payload);
         String base64Header = createPaymentResponseHeader(sr, payer);
         response.setHeader("X-PAYMENT-RESPONSE", base64Header);
         response.setHeader("Access-Control-Expose-Headers", "X-PAYMENT-RESPONSE");
+        issueAccessToken(request, response, endpoint, payer);
       } catch (Exception buildEx) {
-        log.error("x402 settlement error creating response header URL: {} header: {}",
-            request.getRequestURL().toString(), header, buildEx);
+        log.error("x402 settlement error creating response header URL: {}",
+            requirements.resource, buildEx);
         if (!response.isCommitted()) {
           respond500(response, "Failed to create settlement response header");
         }
       }
 
     } catch (Exception e) {
-      log.error("x402 settlement error URL: {} header: {}", request.getRequestURL().toString(),
-          header, e);
+      endpoint.getMetrics().recordSettle(System.nanoTime() - settleStart, Outcome.ERROR);
+      log.error("x402 settlement error URL: {}", requirements.resource, e);
+      audit(AuditEvent.Type.SETTLE_FAILED, requirements.resource, payload, e.toString());
+      // with the content withheld there is nothing to collect, otherwise keep the entry
       if (!response.isCommitted()) {
-        respond402(response, requirements, "settlement error: " + e.getMessage());
+        markSettled(journalEntry);
+        respond402(response, endpoint, requirements.resource,
+            "settlement error: " + e.getMessage());
       }
     }
   }
 
-  /* ======================== Resolve Annotation ======================== */
+  /* ======================== prepaid credit ======================== */
+
+  /**
+   * Whether the payment is too small for a top-up and the request is to be debited instead.
+   */
+  private boolean isPrepaidDebit(PaymentEndpoint endpoint, PaymentPayload payload,
+      PaymentRequirements requirements) {
+    if (prepaidLedger == null || !endpoint.isPrepaid()) {
+      return false;
+    }
+    ExactSchemePayload exact = payload.exactPayload();
+    if (exact == null || exact.authorization == null || exact.authorization.value == null) {
+      return false;
+    }
+    try {
+      return Long.parseLong(exact.authorization.value)
+          < Long.parseLong(requirements.maxAmountRequired);
+    } catch (NumberFormatException e) {
+      // not a number, or beyond any top-up
+      return false;
+    }
+  }
+
+  /**
+   * Serves a request from the payer's credit.
+   *
+   * @return whether the handler may run
+   */
+  private boolean debitPrepaid(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, String path, PaymentPayload payload) throws IOException {
+    // the proof of payer has to cover one request, not a top-up
+    PaymentRequirements requirements = endpoint.requirementsFor(path);
+    requirements.maxAmountRequired = Long.toString(endpoint.getPrice());
+    long now = System.currentTimeMillis() / 1000;
+    String reason = PaymentPreVerifier.check(payload, requirements, now);
+    if (reason == null && !withinRetention(payload, now)) {
+      // once the store forgot the nonce the same proof could be debited again
+      reason = PaymentPreVerifier.INVALID_VALID_BEFORE;
+    }
+    if (reason == null && prepaidSignatures.verify(payload, requirements)
+        != ExactEvmSignatureVerifier.Result.VALID) {
+      reason = ExactEvmSignatureVerifier.INVALID_SIGNATURE;
+    }
+    if (reason != null) {
+      log.info("x402 prepaid payment rejected URL: {} reason: {}", path, reason);
+      audit(AuditEvent.Type.REJECTED, path, payload, reason);
+      respond402(response, endpoint, path, reason);
+      return false;
+    }
 
+    String payer = payload.exactPayload().authorization.from;
+    if (prepaidLedger.balance(payer) < endpoint.getPrice()) {
+      log.info("x402 prepaid credit exhausted URL: {} payer: {}", path, payer);
+      audit(AuditEvent.Type.REJECTED, path, payload, PrepaidLedger.INSUFFICIENT_BALANCE);
+      respond402(response, endpoint, path, PrepaidLedger.INSUFFICIENT_BALANCE);
+      return false;
+    }
+    // never served without a recorded nonce, the proof is not settled and the facilitator
+    // would not catch a replay
+    if (!claimNonce(request, response, endpoint, requirements, payload, false)) {
+      return false;
+    }
+    long left = prepaidLedger.debit(payer, endpoint.getPrice());
+    if (left == PrepaidLedger.INSUFFICIENT) {
+      // a concurrent request took the rest
+      releaseNonce(payload);
+      audit(AuditEvent.Type.REJECTED, path, payload, PrepaidLedger.INSUFFICIENT_BALANCE);
+      respond402(response, endpoint, path, PrepaidLedger.INSUFFICIENT_BALANCE);
+      return false;
+    }
+    audit(AuditEvent.Type.VERIFIED, path, payload, null);
+    request.setAttribute(ATTR_PREPAID, payload);
+    response.setHeader("X-PREPAID-BALANCE", Long.toString(left));
+    response.setHeader("Access-Control-Expose-Headers", "X-PREPAID-BALANCE");
+    return true;
+  }
+
+  /**
+   * Whether the proof expires before the deduplication store may forget its nonce.
+   */
+  private boolean withinRetention(PaymentPayload payload, long now) {
+    if (deduplicationStore == null) {
+      return true; // claimNonce rejects the request
+    }
+    try {
+      long validBefore = Long.parseLong(payload.exactPayload().authorization.validBefore);
+      return validBefore - now <= deduplicationStore.getMaxRetentionSeconds();
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Gives the debited price back if the handler failed.
+   */
+  private void refundPrepaid(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, PaymentPayload payload) {
+    if (response.getStatus() < 400) {
+      return;
+    }
+    String payer = payload.exactPayload().authorization.from;
+    log.warn("x402 refunding prepaid request due to error response URL: {} status: {}",
+        request.getRequestURL().toString(), response.getStatus());
+    prepaidLedger.credit(payer, endpoint.getPrice());
+    releaseNonce(payload);
+  }
+
+  /* ======================== access tokens ======================== */
+
+  /**
+   * @return the 402 reason, or {@code null} if the token grants the request
+   */
   @Nullable
-  private X402Payment resolveAnnotation(Object handler) {
-    if (!(handler instanceof HandlerMethod hm)) {
-      return null;
+  private String checkAccessToken(String token, String requestPath) {
+    if (token.length() > maxPaymentHeaderLength) {
+      return AccessTokenSigner.INVALID_TOKEN;
     }
+    AccessTokenSigner.Grant grant = accessTokens.verify(token);
+    return grant != null
+        ? grant.check(requestPath, System.currentTimeMillis() / 1000)
+        : AccessTokenSigner.INVALID_TOKEN;
+  }
 
-    X402Payment methodAnn = hm.getMethodAnnotation(X402Payment.class);
-    if (methodAnn != null) {
-      return methodAnn;
+  private void issueAccessToken(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, @Nullable String payer) {
+    if (accessTokens == null || endpoint.getAccessWindowSeconds() == 0 || payer == null) {
+      return;
+    }
+    String pattern = endpoint.getAccessPattern();
+    if (pattern == null) {
+      pattern = accessPath(request);
+      if (AccessTokenSigner.isPattern(pattern)) {
+        // the paid path would grant every path it matches
+        return;
+      }
     }
+    response.setHeader("X-PAYMENT-TOKEN", accessTokens.issue(payer, pattern,
+        System.currentTimeMillis() / 1000 + endpoint.getAccessWindowSeconds()));
+    response.setHeader("Access-Control-Expose-Headers", "X-PAYMENT-RESPONSE, X-PAYMENT-TOKEN");
+  }
 
-    return hm.getBeanType().getAnnotation(X402Payment.class);
+  /**
+   * Decoded request path including the context path, with path parameters removed, duplicate
+   * slashes collapsed and {@code .} and {@code ..} segments resolved, so
+   * {@code /weather/..;/premium} is checked as {@code /premium}.
+   */
+  static String accessPath(HttpServletRequest request) {
+    return StringUtils.cleanPath(UrlPathHelper.defaultInstance.getRequestUri(request));
   }
 
   /* ======================== helpers ======================== */
 
-  private PaymentRequirements buildRequirements(String path, X402Payment ann) {
-    String priceStr = ann.price();
-    if (!StringUtils.hasText(priceStr)) {
-      throw new IllegalStateException("@X402Payment.price must not be empty");
-    }
-
-    // Validate the number
-    BigDecimal priceDecimal = new BigDecimal(priceStr).multiply(TEN.pow(6)).setScale(0, DOWN);
-
-    String payTo = StringUtils.hasText(ann.payTo()) ? ann.payTo() : defaultPayTo;
-
-    PaymentRequirements pr = new PaymentRequirements();
-    pr.scheme = "exact";
-    pr.network = network;
-    pr.maxAmountRequired = priceDecimal.toPlainString();
-    pr.asset = asset;
-    pr.description = "";
-    pr.resource = path;
-    pr.mimeType = "application/json";
-    pr.payTo = payTo;
-    pr.maxTimeoutSeconds = maxTimeoutSeconds;
-    HashMap<String, Object> extra = new HashMap<>();
-    // TODO only support USDC. Make this configurable?
-    extra.put("name", "USDC");
-    extra.put("version", "2");
-    pr.outputSchema = new HashMap<>();
-    pr.extra = extra;
-    return pr;
-  }
-
-  private void respond402(HttpServletResponse resp, PaymentRequirements requirements, String error)
-      throws IOException {
+  /**
+   * Verifies the signature in-process.
+   *
+   * @return the local result, or {@code null} if the facilitator has to verify
+   */
+  @Nullable
+  private VerificationResponse verifyLocally(PaymentPayload payload,
+      PaymentRequirements requirements) {
+    if (signatureVerifier == null) {
+      return null;
+    }
+    ExactEvmSignatureVerifier.Result result = signatureVerifier.verify(payload, requirements);
+    if (result == ExactEvmSignatureVerifier.Result.UNVERIFIABLE) {
+      return null;
+    }
+    if (result == ExactEvmSignatureVerifier.Result.VALID && remoteSampleRate > 0
+        && ThreadLocalRandom.current().nextDouble() < remoteSampleRate) {
+      return null;
+    }
+    VerificationResponse vr = new VerificationResponse();
+    vr.isValid = result == ExactEvmSignatureVerifier.Result.VALID;
+    vr.invalidReason = vr.isValid ? null : ExactEvmSignatureVerifier.INVALID_SIGNATURE;
+    return vr;
+  }
+
+  /**
+   * Verifies through the cache or the facilitator and records the call duration.
+   */
+  private VerificationResponse verifyRemotely(EndpointMetrics metrics, PaymentPayload payload,
+      PaymentRequirements requirements) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try {
+      VerificationResponse vr = verificationCache != null
+          ? verificationCache.verify(facilitator, payload, requirements)
+          : facilitator.verify(payload, requirements);
+      metrics.recordVerify(System.nanoTime() - start,
+          vr.isValid ? Outcome.SUCCESS : Outcome.FAILURE);
+      return vr;
+    } catch (Exception e) {
+      metrics.recordVerify(System.nanoTime() - start, Outcome.ERROR);
+      throw e;
+    }
+  }
+
+  /**
+   * Verifies through the cache or the facilitator without blocking and records the call duration.
+   */
+  private CompletableFuture<VerificationResponse> verifyAsync(EndpointMetrics metrics,
+      PaymentPayload payload, PaymentRequirements requirements) {
+    long start = System.nanoTime();
+    CompletableFuture<VerificationResponse> future = verificationCache != null
+        ? verificationCache.verifyAsync(facilitator, payload, requirements)
+        : facilitator.verifyAsync(payload, requirements);
+    return future.whenComplete((vr, ex) -> metrics.recordVerify(System.nanoTime() - start,
+        ex != null ? Outcome.ERROR : vr.isValid ? Outcome.SUCCESS : Outcome.FAILURE));
+  }
+
+  /**
+   * Waits for the verification that ran alongside a speculative handler. If it failed, the
+   * buffered handler output is replaced with the error response.
+   *
+   * @return whether the payment is verified and may be settled
+   */
+  private boolean confirmSpeculative(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, PaymentRequirements requirements, PaymentPayload payload,
+      CompletableFuture<VerificationResponse> speculative) throws IOException {
+    String path = request.getRequestURL().toString();
+    VerificationResponse vr;
+    try {
+      vr = awaitVerification(speculative);
+    } catch (FacilitatorUnavailableException ex) {
+      log.warn("x402 facilitator unavailable URL: {} reason: {}", path, ex.getMessage());
+      respond503(response, ex.getRetryAfterSeconds(), "payment facilitator unavailable");
+      return false;
+    } catch (IOException ex) {
+      log.error("x402 URL communication error with facilitator URL: {}", path, ex);
+      respond500(response, "Payment verification failed: " + ex.getMessage());
+      return false;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      respond500(response, "Internal server error during payment verification");
+      return false;
+    } catch (RuntimeException ex) {
+      log.error("x402 URL internal error URL: {}", path, ex);
+      respond500(response, "Internal server error during payment verification");
+      return false;
+    }
+    if (!vr.isValid) {
+      log.info("x402 speculative response discarded, verification failed URL: {} reason: {}",
+          path, vr.invalidReason);
+      audit(AuditEvent.Type.REJECTED, requirements.resource, payload, vr.invalidReason);
+      respond402(response, endpoint, requirements.resource, vr.invalidReason);
+      return false;
+    }
+    if (deduplicationStore != null
+        && !claimNonce(request, response, endpoint, requirements, payload, deduplicationFailOpen)) {
+      return false;
+    }
+    audit(AuditEvent.Type.VERIFIED, requirements.resource, payload, null);
+    return true;
+  }
 
+  private static boolean isBuffered(HttpServletResponse response) {
+    return WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class) != null;
+  }
+
+  /**
+   * Result of a verification started by {@link #verifyAsync}; metrics are recorded there.
+   */
+  private static VerificationResponse awaitVerification(
+      CompletableFuture<VerificationResponse> started) throws IOException, InterruptedException {
+    try {
+      return started.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      while (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException("Verification failed", cause);
+    }
+  }
+
+  /**
+   * Claims the payment's nonce in the deduplication store.
+   *
+   * @return {@code false} if the request was rejected
+   */
+  private boolean claimNonce(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, PaymentRequirements requirements, PaymentPayload payload,
+      boolean failOpen) throws IOException {
+    if (deduplicationStore == null) {
+      return nonceNotRecorded(request, response, endpoint, "no deduplication store", failOpen);
+    }
+    ExactSchemePayload exact = payload.exactPayload();
+    Authorization auth = exact != null ? exact.authorization : null;
+    long validBefore;
+    try {
+      validBefore = auth != null ? Long.parseLong(auth.validBefore) : -1;
+    } catch (NumberFormatException e) {
+      validBefore = -1;
+    }
+    if (validBefore < 0) {
+      audit(AuditEvent.Type.REJECTED, requirements.resource, payload,
+          PaymentPreVerifier.INVALID_PAYLOAD);
+      respond402(response, endpoint, requirements.resource, PaymentPreVerifier.INVALID_PAYLOAD);
+      return false;
+    }
+    NonceReplayGuard.Result result;
+    try {
+      result = deduplicationStore.claim(auth.from, auth.nonce, validBefore).get();
+    } catch (ExecutionException ex) {
+      return nonceNotRecorded(request, response, endpoint,
+          "deduplication store unavailable: " + ex.getCause(), failOpen);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      respond500(response, "Internal server error during payment verification");
+      return false;
+    }
+    switch (result) {
+      case ACCEPTED:
+        return true;
+      case FULL:
+        return nonceNotRecorded(request, response, endpoint, "replay guard is full", failOpen);
+      case REPLAYED:
+        log.info("x402 payment replay rejected URL: {} payer: {}",
+            request.getRequestURL().toString(), auth.from);
+        audit(AuditEvent.Type.REJECTED, requirements.resource, payload,
+            NonceReplayGuard.REPLAYED_REASON);
+        respond402(response, endpoint, requirements.resource,
+            NonceReplayGuard.REPLAYED_REASON);
+        return false;
+      default:
+        audit(AuditEvent.Type.REJECTED, requirements.resource, payload,
+            PaymentPreVerifier.INVALID_PAYLOAD);
+        respond402(response, endpoint, requirements.resource, PaymentPreVerifier.INVALID_PAYLOAD);
+        return false;
+    }
+  }
+
+  /**
+   * Serves or rejects a payment whose nonce could not be claimed.
+   *
+   * @param failOpen whether to serve it, see {@link #setDeduplicationFailOpen(boolean)}
+   * @return {@code false} if the request was rejected
+   */
+  private boolean nonceNotRecorded(HttpServletRequest request, HttpServletResponse response,
+      PaymentEndpoint endpoint, String cause, boolean failOpen) throws IOException {
+    endpoint.getMetrics().nonceNotRecorded(failOpen);
+    if (failOpen) {
+      // the facilitator still rejects a nonce once it is settled
+      log.warn("x402 nonce not recorded, payment served URL: {} reason: {}",
+          request.getRequestURL().toString(), cause);
+      return true;
+    }
+    log.warn("x402 nonce not recorded, payment rejected URL: {} reason: {}",
+        request.getRequestURL().toString(), cause);
+    respond503(response, 0, "payment replay check unavailable");
+    return false;
+  }
+
+  private void releaseNonce(PaymentPayload payload) {
+    if (deduplicationStore == null) {
+      return;
+    }
+    ExactSchemePayload exact = payload.exactPayload();
+    if (exact != null && exact.authorization != null) {
+      // not awaited, a failed release only keeps the nonce until it expires
+      deduplicationStore.release(exact.authorization.from, exact.authorization.nonce)
+          .whenComplete((released, ex) -> {
+            if (ex != null) {
+              log.warn("x402 failed to release nonce payer: {} reason: {}",
+                  exact.authorization.from, ex.toString());
+            }
+          });
+    }
+  }
+
+  private void audit(AuditEvent.Type type, String resource, @Nullable PaymentPayload payload,
+      @Nullable String reason) {
+    if (auditLog != null) {
+      auditLog.publish(type, resource, payload, reason, null);
+    }
+  }
+
+  private long appendToJournal(PaymentPayload payload, PaymentRequirements requirements) {
+    if (journal == null) {
+      return SettlementJournal.NO_ENTRY;
+    }
+    try {
+      return journal.append(payload, requirements);
+    } catch (IOException e) {
+      // settle anyway, only the restart guarantee is lost for this payment
+      log.error("x402 settlement journal append failed URL: {}", requirements.resource, e);
+      return SettlementJournal.NO_ENTRY;
+    }
+  }
+
+  private void markSettled(long journalEntry) {
+    if (journal != null) {
+      journal.markSettled(journalEntry);
+    }
+  }
+
+  private void markAbandoned(long journalEntry) {
+    if (journal != null) {
+      journal.markAbandoned(journalEntry);
+    }
+  }
+
+  private void respond402(HttpServletResponse resp, PaymentEndpoint endpoint, String resource,
+      @Nullable String error) throws IOException {
+    endpoint.getMetrics().paymentRequired(error);
     if (resp.isCommitted()) {
       return;
     }
+    byte[] body = endpoint.paymentRequiredBody().render(resource, error);
 
     resp.resetBuffer();
     resp.setStatus(HttpServletResponse.SC_PAYMENT_REQUIRED);
     resp.setContentType("application/json");
+    resp.setContentLength(body.length);
+    try {
+      resp.getOutputStream().write(body);
+    } catch (IllegalStateException writerInUse) {
+      // the handler already obtained the writer
+      resp.getWriter().write(new String(body, StandardCharsets.UTF_8));
+    }
+    resp.flushBuffer();
+  }
+
+  private void respond503(HttpServletResponse resp, long retryAfterSeconds, String message)
+      throws IOException {
 
-    PaymentRequiredResponse prr = new PaymentRequiredResponse();
-    prr.x402Version = 1;
-    prr.accepts.add(requirements);
-    prr.error = error;
+    if (resp.isCommitted()) {
+      return;
+    }
 
-    resp.getWriter().write(Json.MAPPER.writeValueAsString(prr));
+    resp.resetBuffer();
+    resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    if (retryAfterSeconds > 0) {
+      resp.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+    }
+    resp.setContentType("application/json");
+    resp.getWriter().write("{\"error\":\"" + message + "\"}");
     resp.flushBuffer();
   }
 
@@ -263,28 +1017,17 @@ public class X402Interceptor implements HandlerInterceptor {
     resp.flushBuffer();
   }
 
-  private String createPaymentResponseHeader(SettlementResponse sr, String payer) throws Exception {
-    SettlementResponseHeader settlementHeader = new SettlementResponseHeader(true,
-        sr.txHash != null ? sr.txHash : "", sr.networkId != null ? sr.networkId : "", payer);
-
-    String jsonString = Json.MAPPER.writeValueAsString(settlementHeader);
-    return Base64.getEncoder().encodeToString(jsonString.getBytes(StandardCharsets.UTF_8));
+  private String createPaymentResponseHeader(SettlementResponse sr, String payer) {
+    return new SettlementResponseHeader(true, sr.txHash != null ? sr.txHash : "",
+        sr.networkId != null ? sr.networkId : "", payer).toHeader();
   }
 
   private String extractPayerFromPayload(PaymentPayload payload) {
     try {
-      ExactSchemePayload exactPayload = Json.MAPPER.convertValue(payload.payload,
-          ExactSchemePayload.class);
-      return exactPayload.authorization != null ? exactPayload.authorization.from : null;
-    } catch (Exception ex) {
-      try {
-        Object authorization = payload.payload.get("authorization");
-        if (authorization instanceof Map<?, ?> map) {
-          Object from = map.get("from");
-          return from instanceof String ? (String) from : null;
-        }
-      } catch (Exception ignore) {
-      }
+      ExactSchemePayload exactPayload = payload.exactPayload();
+      return exactPayload != null && exactPayload.authorization != null
+          ? exactPayload.authorization.from : null;
+    } catch (IllegalArgumentException ex) {
       return null;
     }
   }
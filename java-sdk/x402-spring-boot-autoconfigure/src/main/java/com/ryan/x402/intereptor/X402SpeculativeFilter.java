@@ -0,0 +1,61 @@
+package com.ryan.x402.intereptor;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Buffers the response of {@linkplain com.ryan.x402.annotation.X402Payment#speculative()
+ * speculative} endpoints, so {@link X402Interceptor} can run the handler while the payment is
+ * being verified and still replace its output with a 402 if verification fails. Responses of
+ * endpoints with an {@linkplain com.ryan.x402.annotation.X402Payment#accessWindow() access
+ * window} are buffered too, so the access token can still be added after settlement. The
+ * buffered response is released after the interceptor's {@code afterCompletion}.
+ */
+public class X402SpeculativeFilter extends OncePerRequestFilter {
+
+  private final PaymentEndpointRegistry registry;
+  private final ServletEndpointResolver endpoints;
+
+  /**
+   * Creates a new filter.
+   *
+   * @param registry        the payment endpoints
+   * @param handlerMappings the mappings used to find the handler of a request, usually the
+   *                        annotated-controller {@code RequestMappingHandlerMapping}
+   */
+  public X402SpeculativeFilter(PaymentEndpointRegistry registry,
+      List<? extends HandlerMapping> handlerMappings) {
+    this.registry = Objects.requireNonNull(registry);
+    this.endpoints = new ServletEndpointResolver(registry, handlerMappings);
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !registry.hasSpeculativeEndpoints() && !registry.hasAccessWindowEndpoints()
+        || !StringUtils.hasText(request.getHeader("X-PAYMENT"));
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    PaymentEndpoint endpoint = endpoints.resolve(request);
+    if (endpoint == null
+        || !endpoint.isSpeculative() && endpoint.getAccessWindowSeconds() == 0) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    ContentCachingResponseWrapper buffered = new ContentCachingResponseWrapper(response);
+    // on an exception the buffer is dropped, nothing the handler wrote may leak unverified
+    filterChain.doFilter(request, buffered);
+    buffered.copyBodyToResponse();
+  }
+}
@@ -0,0 +1,832 @@
+package com.ryan.x402.intereptor;
+
+import com.ryan.x402.audit.AuditEvent;
+import com.ryan.x402.audit.AuditLog;
+import com.ryan.x402.facilitator.FacilitatorCapabilities;
+import com.ryan.x402.facilitator.FacilitatorUnavailableException;
+import com.ryan.x402.facilitator.ReactiveFacilitatorClient;
+import com.ryan.x402.facilitator.VerificationCache;
+import com.ryan.x402.metrics.EndpointMetrics;
+import com.ryan.x402.metrics.EndpointMetrics.Outcome;
+import com.ryan.x402.model.Authorization;
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.SettlementResponseHeader;
+import com.ryan.x402.model.VerificationResponse;
+import com.ryan.x402.replay.LocalPaymentDeduplicationStore;
+import com.ryan.x402.replay.NonceReplayGuard;
+import com.ryan.x402.replay.PaymentDeduplicationStore;
+import com.ryan.x402.settlement.AsyncSettlementService;
+import com.ryan.x402.settlement.SettlementJournal;
+import com.ryan.x402.token.AccessTokenSigner;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import com.ryan.x402.verification.PaymentPreVerifier;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.result.method.RequestMappingInfo;
+import org.springframework.web.reactive.result.method.RequestMappingInfoHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive counterpart of {@link X402Interceptor} for WebFlux applications.
+ * <p>
+ * The handler is resolved through the given handler mappings, so {@code @X402Payment} is honored
+ * exactly as on the servlet stack. Resolving is skipped for requests whose path matches none of
+ * the paid request mappings, so unpaid routes cost one pattern check per paid mapping. The payment
+ * is verified before the handler runs and settled when the handler starts writing its response,
+ * before the response is committed, so {@code X-PAYMENT-RESPONSE} can still be added and a failed
+ * settlement replaces the body with a 402. Facilitator calls go through a
+ * {@link ReactiveFacilitatorClient}; nothing on the request path blocks.
+ */
+@Slf4j
+public class X402WebFilter implements WebFilter {
+
+  private final PaymentEndpointRegistry registry;
+  private final ReactiveFacilitatorClient facilitator;
+  private final List<HandlerMapping> handlerMappings;
+
+  /**
+   * Path patterns of the paid request mappings, built on first use; {@code null} if a mapping
+   * cannot be indexed and every exchange is resolved.
+   */
+  @Nullable
+  private volatile PaidPaths paidPaths;
+
+  private int maxPaymentHeaderLength = PaymentPayload.DEFAULT_MAX_HEADER_LENGTH;
+
+  @Nullable
+  private AsyncSettlementService settlementService;
+
+  @Nullable
+  private SettlementJournal journal;
+
+  @Nullable
+  private VerificationCache verificationCache;
+
+  private boolean preCheck = true;
+
+  @Nullable
+  private ExactEvmSignatureVerifier signatureVerifier;
+
+  private double remoteSampleRate = 0.0;
+
+  @Nullable
+  private PaymentDeduplicationStore deduplicationStore;
+
+  private boolean deduplicationFailOpen = true;
+
+  @Nullable
+  private FacilitatorCapabilities capabilities;
+
+  @Nullable
+  private AccessTokenSigner accessTokens;
+
+  @Nullable
+  private AuditLog auditLog;
+
+  /**
+   * Creates a new filter.
+   *
+   * @param registry        the payment endpoints
+   * @param facilitator     the non-blocking facilitator client
+   * @param handlerMappings the mappings used to find the handler of a request, usually the
+   *                        annotated-controller {@code RequestMappingHandlerMapping}
+   */
+  public X402WebFilter(PaymentEndpointRegistry registry, ReactiveFacilitatorClient facilitator,
+      List<? extends HandlerMapping> handlerMappings) {
+    this.registry = Objects.requireNonNull(registry);
+    this.facilitator = Objects.requireNonNull(facilitator);
+    this.handlerMappings = List.copyOf(handlerMappings);
+  }
+
+  /**
+   * @see X402Interceptor#setMaxPaymentHeaderLength(int)
+   */
+  public void setMaxPaymentHeaderLength(int maxPaymentHeaderLength) {
+    this.maxPaymentHeaderLength = maxPaymentHeaderLength;
+  }
+
+  /**
+   * Settles payments through the given service instead of inline. The payment is settled inline
+   * when the service's queue is full, since the service would otherwise block the event loop.
+   *
+   * @see X402Interceptor#setSettlementService(AsyncSettlementService)
+   */
+  public void setSettlementService(@Nullable AsyncSettlementService settlementService) {
+    this.settlementService = settlementService;
+  }
+
+  /**
+   * Appending may map a new segment file, so it runs on the bounded elastic scheduler rather
+   * than the event loop; forcing it to disk happens on the journal's own thread.
+   *
+   * @see X402Interceptor#setJournal(SettlementJournal)
+   */
+  public void setJournal(@Nullable SettlementJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * @see X402Interceptor#setVerificationCache(VerificationCache)
+   */
+  public void setVerificationCache(@Nullable VerificationCache verificationCache) {
+    this.verificationCache = verificationCache;
+  }
+
+  /**
+   * @see X402Interceptor#setPreCheck(boolean)
+   */
+  public void setPreCheck(boolean preCheck) {
+    this.preCheck = preCheck;
+  }
+
+  /**
+   * @see X402Interceptor#setSignatureVerifier(ExactEvmSignatureVerifier)
+   */
+  public void setSignatureVerifier(@Nullable ExactEvmSignatureVerifier signatureVerifier) {
+    this.signatureVerifier = signatureVerifier;
+  }
+
+  /**
+   * @see X402Interceptor#setRemoteSampleRate(double)
+   */
+  public void setRemoteSampleRate(double remoteSampleRate) {
+    this.remoteSampleRate = remoteSampleRate;
+  }
+
+  /**
+   * @see X402Interceptor#setReplayGuard(NonceReplayGuard)
+   */
+  public void setReplayGuard(@Nullable NonceReplayGuard replayGuard) {
+    setDeduplicationStore(replayGuard != null
+        ? new LocalPaymentDeduplicationStore(replayGuard) : null);
+  }
+
+  /**
+   * @see X402Interceptor#setDeduplicationStore(PaymentDeduplicationStore)
+   */
+  public void setDeduplicationStore(@Nullable PaymentDeduplicationStore deduplicationStore) {
+    this.deduplicationStore = deduplicationStore;
+  }
+
+  /**
+   * @see X402Interceptor#setDeduplicationFailOpen(boolean)
+   */
+  public void setDeduplicationFailOpen(boolean deduplicationFailOpen) {
+    this.deduplicationFailOpen = deduplicationFailOpen;
+  }
+
+  /**
+   * @see X402Interceptor#setCapabilities(FacilitatorCapabilities)
+   */
+  public void setCapabilities(@Nullable FacilitatorCapabilities capabilities) {
+    this.capabilities = capabilities;
+  }
+
+  /**
+   * @see X402Interceptor#setAccessTokenSigner(AccessTokenSigner)
+   */
+  public void setAccessTokenSigner(@Nullable AccessTokenSigner accessTokens) {
+    this.accessTokens = accessTokens;
+  }
+
+  /**
+   * @see X402Interceptor#setAuditLog(AuditLog)
+   */
+  public void setAuditLog(@Nullable AuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    if (!paidPaths().mayMatch(exchange.getRequest().getPath().pathWithinApplication())) {
+      return chain.filter(exchange);
+    }
+    return resolveEndpoint(exchange)
+        .map(Optional::of)
+        .defaultIfEmpty(Optional.empty())
+        .flatMap(endpoint -> endpoint.isPresent()
+            ? handle(exchange, chain, endpoint.get())
+            : chain.filter(exchange));
+  }
+
+  /* ======================== verify ======================== */
+
+  private Mono<Void> handle(ServerWebExchange exchange, WebFilterChain chain,
+      PaymentEndpoint endpoint) {
+    ServerHttpResponse response = exchange.getResponse();
+    String path = requestUrl(exchange.getRequest().getURI());
+
+    String tokenRejection = null;
+    if (accessTokens != null && endpoint.getAccessWindowSeconds() > 0) {
+      String token = exchange.getRequest().getHeaders().getFirst("X-PAYMENT-TOKEN");
+      if (StringUtils.hasText(token)) {
+        tokenRejection = checkAccessToken(token, accessPath(exchange.getRequest()));
+        if (tokenRejection == null) {
+          return chain.filter(exchange);
+        }
+      }
+    }
+
+    String header = exchange.getRequest().getHeaders().getFirst("X-PAYMENT");
+    if (!StringUtils.hasText(header)) {
+      if (tokenRejection != null) {
+        log.info("x402 access token rejected URL: {} reason: {}", path, tokenRejection);
+        return respond402(response, endpoint, path, tokenRejection);
+      }
+      log.info("x402 called without payment header URL: {}", path);
+      return respond402(response, endpoint, path, "X-PAYMENT header is required");
+    }
+    if (header.length() > maxPaymentHeaderLength) {
+      log.info("x402 payment header too large URL: {} length: {}", path, header.length());
+      audit(AuditEvent.Type.REJECTED, path, null, "X-PAYMENT header too large");
+      return respond402(response, endpoint, path, "X-PAYMENT header too large");
+    }
+
+    PaymentRequirements requirements = endpoint.requirementsFor(path);
+
+    PaymentPayload payload;
+    VerificationResponse local;
+    try {
+      payload = PaymentPayload.fromHeader(header, maxPaymentHeaderLength);
+      audit(AuditEvent.Type.VERIFY_REQUESTED, path, payload, null);
+
+      if (capabilities != null && !capabilities.supports(payload.scheme, payload.network)) {
+        log.info("x402 payment for unsupported kind URL: {} kind: {}/{}", path, payload.scheme,
+            payload.network);
+        audit(AuditEvent.Type.REJECTED, path, payload, FacilitatorCapabilities.UNSUPPORTED_SCHEME);
+        return respond402(response, endpoint, path, FacilitatorCapabilities.UNSUPPORTED_SCHEME);
+      }
+
+      if (preCheck || signatureVerifier != null) {
+        String reason = PaymentPreVerifier.check(payload, requirements,
+            System.currentTimeMillis() / 1000);
+        if (reason != null) {
+          log.info("x402 payment rejected by local pre-check URL: {} reason: {}", path, reason);
+          audit(AuditEvent.Type.REJECTED, path, payload, reason);
+          return respond402(response, endpoint, path, reason);
+        }
+      }
+
+      local = verifyLocally(payload, requirements);
+    } catch (IllegalArgumentException ex) {
+      endpoint.getMetrics().malformedHeader();
+      log.info("x402 URL called with invalid payment URL: {} reason: {}", path, ex.getMessage());
+      audit(AuditEvent.Type.REJECTED, path, null, "malformed X-PAYMENT header");
+      return respond402(response, endpoint, path, "malformed X-PAYMENT header");
+    } catch (IOException ex) {
+      return verificationFailed(response, path, ex);
+    }
+
+    Mono<VerificationResponse> verification = local != null
+        ? Mono.just(local)
+        : verifyRemotely(endpoint.getMetrics(), payload, requirements);
+
+    return verification
+        .onErrorResume(ex -> verificationFailed(response, path, ex).then(Mono.empty()))
+        .flatMap(vr -> proceed(exchange, chain, endpoint, requirements, payload, vr));
+  }
+
+  private Mono<Void> proceed(ServerWebExchange exchange, WebFilterChain chain,
+      PaymentEndpoint endpoint, PaymentRequirements requirements, PaymentPayload payload,
+      VerificationResponse vr) {
+    ServerHttpResponse response = exchange.getResponse();
+    if (!vr.isValid) {
+      log.info("x402 payment verification failed URL: {} reason: {}", requirements.resource,
+          vr.invalidReason);
+      audit(AuditEvent.Type.REJECTED, requirements.resource, payload, vr.invalidReason);
+      return respond402(response, endpoint, requirements.resource, vr.invalidReason);
+    }
+
+    if (deduplicationStore == null) {
+      audit(AuditEvent.Type.VERIFIED, requirements.resource, payload, null);
+      return serve(exchange, chain, endpoint, requirements, payload);
+    }
+    return claimNonce(response, endpoint, requirements, payload)
+        .flatMap(claimed -> {
+          if (!claimed) {
+            return Mono.empty();
+          }
+          audit(AuditEvent.Type.VERIFIED, requirements.resource, payload, null);
+          return serve(exchange, chain, endpoint, requirements, payload);
+        });
+  }
+
+  private Mono<Void> serve(ServerWebExchange exchange, WebFilterChain chain,
+      PaymentEndpoint endpoint, PaymentRequirements requirements, PaymentPayload payload) {
+    ServerHttpResponse response = exchange.getResponse();
+    SettlingResponse settling = new SettlingResponse(response, endpoint, requirements, payload,
+        accessPath(exchange.getRequest()));
+    return chain.filter(exchange.mutate().response(settling).build())
+        // handlers that complete without writing never call writeWith or setComplete on us
+        .then(Mono.defer(() -> response.isCommitted() ? Mono.<Void>empty() : settling.settle()
+            .then()))
+        .doOnError(ex -> settling.abandon())
+        .doOnCancel(settling::abandon);
+  }
+
+  private Mono<Void> verificationFailed(ServerHttpResponse response, String path, Throwable ex) {
+    Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+        ? ex.getCause() : ex;
+    if (cause instanceof FacilitatorUnavailableException unavailable) {
+      log.warn("x402 facilitator unavailable URL: {} reason: {}", path, cause.getMessage());
+      return respond503(response, unavailable.getRetryAfterSeconds(),
+          "payment facilitator unavailable");
+    }
+    if (cause instanceof IOException) {
+      log.error("x402 URL communication error with facilitator URL: {}", path, cause);
+      return respond500(response, "Payment verification failed: " + cause.getMessage());
+    }
+    log.error("x402 URL internal error URL: {}", path, cause);
+    return respond500(response, "Internal server error during payment verification");
+  }
+
+  /* ======================== settle ======================== */
+
+  /**
+   * Settles the payment on the first write, before anything reaches the client. A failed
+   * settlement drops the handler's body and writes a 402 instead.
+   */
+  private final class SettlingResponse extends ServerHttpResponseDecorator {
+
+    private final PaymentEndpoint endpoint;
+    private final PaymentRequirements requirements;
+    private final PaymentPayload payload;
+    private final String requestPath;
+    private final Mono<Boolean> settlement;
+    private volatile boolean started;
+
+    SettlingResponse(ServerHttpResponse delegate, PaymentEndpoint endpoint,
+        PaymentRequirements requirements, PaymentPayload payload, String requestPath) {
+      super(delegate);
+      this.endpoint = endpoint;
+      this.requirements = requirements;
+      this.payload = payload;
+      this.requestPath = requestPath;
+      this.settlement = Mono.defer(this::doSettle).cache();
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+      return settle().flatMap(ok -> ok ? super.writeWith(body) : discard(body));
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+      return settle().flatMap(ok -> ok ? super.writeAndFlushWith(body)
+          : discard(Flux.from(body).flatMap(Flux::from)));
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+      return settle().then(super.setComplete());
+    }
+
+    /**
+     * @return emits whether the handler's response may be written
+     */
+    Mono<Boolean> settle() {
+      return settlement;
+    }
+
+    /**
+     * Releases the nonce if the request ended before settlement started.
+     */
+    void abandon() {
+      if (!started) {
+        releaseNonce(payload);
+      }
+    }
+
+    private Mono<Boolean> doSettle() {
+      started = true;
+      HttpStatusCode status = getStatusCode();
+      if (status != null && status.value() >= 400) {
+        log.warn("x402 skipping settlement due to error response URL: {} status: {}",
+            requirements.resource, status.value());
+        // not settled, so the client may use the same authorization again
+        releaseNonce(payload);
+        return Mono.just(true);
+      }
+
+      // settlement consumes the nonce, a cached "valid" result must not outlive it
+      if (verificationCache != null) {
+        verificationCache.invalidate(payload, requirements);
+      }
+
+      if (journal == null) {
+        return settle(SettlementJournal.NO_ENTRY);
+      }
+      return Mono.fromCallable(() -> appendToJournal(payload, requirements))
+          .subscribeOn(Schedulers.boundedElastic())
+          .publishOn(Schedulers.parallel())
+          .flatMap(this::settle);
+    }
+
+    private Mono<Boolean> settle(long journalEntry) {
+      if (settlementService != null && settlementService.trySubmit(payload, requirements,
+          endpoint.getMetrics(), journalEntry)) {
+        return Mono.just(true);
+      }
+
+      EndpointMetrics metrics = endpoint.getMetrics();
+      long start = System.nanoTime();
+      return facilitator.settle(payload, requirements)
+          .switchIfEmpty(Mono.error(() -> new IOException("empty settlement response")))
+          .flatMap(sr -> {
+            markSettled(journalEntry);
+            metrics.recordSettle(System.nanoTime() - start,
+                sr.success ? Outcome.SUCCESS : Outcome.FAILURE);
+            log.debug("x402 settlement response URL: {} success: {} tx: {}",
+                requirements.resource, sr.success, sr.txHash);
+            if (!sr.success) {
+              String errorMsg = sr.error != null ? sr.error : "settlement failed";
+              audit(AuditEvent.Type.SETTLE_FAILED, requirements.resource, payload, errorMsg);
+              log.error("x402 settlement failed URL: {} error: {}", requirements.resource,
+                  errorMsg);
+              return respond402(getDelegate(), endpoint, requirements.resource, errorMsg)
+                  .thenReturn(false);
+            }
+            if (auditLog != null) {
+              auditLog.publish(AuditEvent.Type.SETTLED, requirements.resource, payload, null,
+                  sr.txHash);
+            }
+            getHeaders().set("X-PAYMENT-RESPONSE", createPaymentResponseHeader(sr, payload));
+            getHeaders().set("Access-Control-Expose-Headers", "X-PAYMENT-RESPONSE");
+            issueAccessToken();
+            return Mono.just(true);
+          })
+          .onErrorResume(ex -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+                ? ex.getCause() : ex;
+            metrics.recordSettle(System.nanoTime() - start, Outcome.ERROR);
+            log.error("x402 settlement error URL: {}", requirements.resource, cause);
+            audit(AuditEvent.Type.SETTLE_FAILED, requirements.resource, payload,
+                cause.toString());
+            // the handler's body is dropped, so there is nothing to collect
+            markSettled(journalEntry);
+            return respond402(getDelegate(), endpoint, requirements.resource,
+                "settlement error: " + cause.getMessage()).thenReturn(false);
+          });
+    }
+
+    /**
+     * @see X402Interceptor
+     */
+    private void issueAccessToken() {
+      ExactSchemePayload exact = payload.exactPayload();
+      if (accessTokens == null || endpoint.getAccessWindowSeconds() == 0 || exact == null
+          || exact.authorization == null || exact.authorization.from == null) {
+        return;
+      }
+      String pattern = endpoint.getAccessPattern();
+      if (pattern == null) {
+        pattern = requestPath;
+        if (AccessTokenSigner.isPattern(pattern)) {
+          // the paid path would grant every path it matches
+          return;
+        }
+      }
+      try {
+        getHeaders().set("X-PAYMENT-TOKEN", accessTokens.issue(exact.authorization.from,
+            pattern, System.currentTimeMillis() / 1000 + endpoint.getAccessWindowSeconds()));
+      } catch (IllegalArgumentException ex) {
+        // the payment is settled, only the token is missing
+        log.warn("x402 access token not issued URL: {} reason: {}", requirements.resource,
+            ex.getMessage());
+        return;
+      }
+      getHeaders().set("Access-Control-Expose-Headers", "X-PAYMENT-RESPONSE, X-PAYMENT-TOKEN");
+    }
+
+    private Mono<Void> discard(Publisher<? extends DataBuffer> body) {
+      return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+    }
+  }
+
+  /* ======================== helpers ======================== */
+
+  private PaidPaths paidPaths() {
+    PaidPaths paths = paidPaths;
+    if (paths == null) {
+      // built after startup, once the scanner has registered every endpoint
+      paths = PaidPaths.of(handlerMappings, registry);
+      paidPaths = paths;
+    }
+    return paths;
+  }
+
+  private Mono<PaymentEndpoint> resolveEndpoint(ServerWebExchange exchange) {
+    return Flux.fromIterable(handlerMappings)
+        .concatMap(mapping -> mapping.getHandler(exchange))
+        .next()
+        // lookup errors (405, 415, ...) are reported again by the dispatcher
+        .onErrorResume(ex -> Mono.empty())
+        .mapNotNull(registry::resolve);
+  }
+
+  /**
+   * @see X402Interceptor
+   */
+  static String accessPath(ServerHttpRequest request) {
+    StringBuilder path = new StringBuilder();
+    for (PathContainer.Element element : request.getPath().elements()) {
+      if (element instanceof PathContainer.PathSegment segment) {
+        path.append(segment.valueToMatch());
+      } else if (path.isEmpty() || path.charAt(path.length() - 1) != '/') {
+        // duplicate slashes collapse, as on the servlet side
+        path.append(element.value());
+      }
+    }
+    return StringUtils.cleanPath(path.toString());
+  }
+
+  /**
+   * @see X402Interceptor
+   */
+  @Nullable
+  private String checkAccessToken(String token, String requestPath) {
+    if (token.length() > maxPaymentHeaderLength) {
+      return AccessTokenSigner.INVALID_TOKEN;
+    }
+    AccessTokenSigner.Grant grant = accessTokens.verify(token);
+    return grant != null
+        ? grant.check(requestPath, System.currentTimeMillis() / 1000)
+        : AccessTokenSigner.INVALID_TOKEN;
+  }
+
+  /**
+   * @see X402Interceptor
+   */
+  @Nullable
+  private VerificationResponse verifyLocally(PaymentPayload payload,
+      PaymentRequirements requirements) {
+    if (signatureVerifier == null) {
+      return null;
+    }
+    ExactEvmSignatureVerifier.Result result = signatureVerifier.verify(payload, requirements);
+    if (result == ExactEvmSignatureVerifier.Result.UNVERIFIABLE) {
+      return null;
+    }
+    if (result == ExactEvmSignatureVerifier.Result.VALID && remoteSampleRate > 0
+        && ThreadLocalRandom.current().nextDouble() < remoteSampleRate) {
+      return null;
+    }
+    VerificationResponse vr = new VerificationResponse();
+    vr.isValid = result == ExactEvmSignatureVerifier.Result.VALID;
+    vr.invalidReason = vr.isValid ? null : ExactEvmSignatureVerifier.INVALID_SIGNATURE;
+    return vr;
+  }
+
+  private Mono<VerificationResponse> verifyRemotely(EndpointMetrics metrics,
+      PaymentPayload payload, PaymentRequirements requirements) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      Mono<VerificationResponse> call = verificationCache != null
+          ? Mono.fromFuture(() -> verificationCache.verifyAsync(payload, requirements,
+              () -> facilitator.verify(payload, requirements).toFuture()))
+          : facilitator.verify(payload, requirements);
+      return call
+          .doOnNext(vr -> metrics.recordVerify(System.nanoTime() - start,
+              vr.isValid ? Outcome.SUCCESS : Outcome.FAILURE))
+          .doOnError(ex -> metrics.recordVerify(System.nanoTime() - start, Outcome.ERROR));
+    });
+  }
+
+  /**
+   * Claims the payment's nonce in the deduplication store.
+   *
+   * @return emits {@code false} once the request was rejected
+   */
+  private Mono<Boolean> claimNonce(ServerHttpResponse response, PaymentEndpoint endpoint,
+      PaymentRequirements requirements, PaymentPayload payload) {
+    ExactSchemePayload exact = payload.exactPayload();
+    Authorization auth = exact != null ? exact.authorization : null;
+    long validBefore;
+    try {
+      validBefore = auth != null ? Long.parseLong(auth.validBefore) : -1;
+    } catch (NumberFormatException e) {
+      validBefore = -1;
+    }
+    if (validBefore < 0) {
+      return reject(response, endpoint, requirements, payload, PaymentPreVerifier.INVALID_PAYLOAD);
+    }
+    CompletableFuture<NonceReplayGuard.Result> claim =
+        deduplicationStore.claim(auth.from, auth.nonce, validBefore);
+    Mono<NonceReplayGuard.Result> result = Mono.fromFuture(claim, true);
+    if (!claim.isDone()) {
+      // a remote store completes on its I/O thread, the handler must not run there
+      result = result.publishOn(Schedulers.parallel());
+    }
+    // the reply is built in map so that only a failed claim, not a failed reply, is caught
+    return result
+        .map(r -> switch (r) {
+          case ACCEPTED -> Mono.just(true);
+          case FULL -> nonceNotRecorded(response, endpoint, requirements, "replay guard is full");
+          case REPLAYED -> {
+            log.info("x402 payment replay rejected URL: {} payer: {}", requirements.resource,
+                auth.from);
+            yield reject(response, endpoint, requirements, payload,
+                NonceReplayGuard.REPLAYED_REASON);
+          }
+          default -> reject(response, endpoint, requirements, payload,
+              PaymentPreVerifier.INVALID_PAYLOAD);
+        })
+        .onErrorResume(ex -> Mono.just(nonceNotRecorded(response, endpoint, requirements,
+            "deduplication store unavailable: " + ex)))
+        .flatMap(Function.identity());
+  }
+
+  /**
+   * @see X402Interceptor
+   */
+  private Mono<Boolean> nonceNotRecorded(ServerHttpResponse response, PaymentEndpoint endpoint,
+      PaymentRequirements requirements, String cause) {
+    endpoint.getMetrics().nonceNotRecorded(deduplicationFailOpen);
+    if (deduplicationFailOpen) {
+      // the facilitator still rejects a nonce once it is settled
+      log.warn("x402 nonce not recorded, payment served URL: {} reason: {}",
+          requirements.resource, cause);
+      return Mono.just(true);
+    }
+    log.warn("x402 nonce not recorded, payment rejected URL: {} reason: {}",
+        requirements.resource, cause);
+    return respond503(response, 0, "payment replay check unavailable").thenReturn(false);
+  }
+
+  private Mono<Boolean> reject(ServerHttpResponse response, PaymentEndpoint endpoint,
+      PaymentRequirements requirements, PaymentPayload payload, String reason) {
+    audit(AuditEvent.Type.REJECTED, requirements.resource, payload, reason);
+    return respond402(response, endpoint, requirements.resource, reason).thenReturn(false);
+  }
+
+  /**
+   * @see X402Interceptor
+   */
+  private void audit(AuditEvent.Type type, String resource, @Nullable PaymentPayload payload,
+      @Nullable String reason) {
+    if (auditLog != null) {
+      auditLog.publish(type, resource, payload, reason, null);
+    }
+  }
+
+  private long appendToJournal(PaymentPayload payload, PaymentRequirements requirements) {
+    if (journal == null) {
+      return SettlementJournal.NO_ENTRY;
+    }
+    try {
+      return journal.append(payload, requirements);
+    } catch (IOException e) {
+      // settle anyway, only the restart guarantee is lost for this payment
+      log.error("x402 settlement journal append failed URL: {}", requirements.resource, e);
+      return SettlementJournal.NO_ENTRY;
+    }
+  }
+
+  private void markSettled(long journalEntry) {
+    if (journal != null) {
+      journal.markSettled(journalEntry);
+    }
+  }
+
+  private void releaseNonce(PaymentPayload payload) {
+    if (deduplicationStore == null) {
+      return;
+    }
+    ExactSchemePayload exact = payload.exactPayload();
+    if (exact != null && exact.authorization != null) {
+      // not awaited, a failed release only keeps the nonce until it expires
+      deduplicationStore.release(exact.authorization.from, exact.authorization.nonce)
+          .whenComplete((released, ex) -> {
+            if (ex != null) {
+              log.warn("x402 failed to release nonce payer: {} reason: {}",
+                  exact.authorization.from, ex.toString());
+            }
+          });
+    }
+  }
+
+  private Mono<Void> respond402(ServerHttpResponse resp, PaymentEndpoint endpoint,
+      String resource, @Nullable String error) {
+    endpoint.getMetrics().paymentRequired(error);
+    return write(resp, HttpStatus.PAYMENT_REQUIRED, null,
+        endpoint.paymentRequiredBody().render(resource, error));
+  }
+
+  private Mono<Void> respond503(ServerHttpResponse resp, long retryAfterSeconds, String message) {
+    return write(resp, HttpStatus.SERVICE_UNAVAILABLE,
+        retryAfterSeconds > 0 ? Long.toString(retryAfterSeconds) : null,
+        ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Mono<Void> respond500(ServerHttpResponse resp, String message) {
+    return write(resp, HttpStatus.INTERNAL_SERVER_ERROR, null,
+        ("{\"error\":\"" + message.replace("\"", "\\\"") + "\"}")
+            .getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Mono<Void> write(ServerHttpResponse resp, HttpStatus status,
+      @Nullable String retryAfter, byte[] body) {
+    if (resp.isCommitted()) {
+      return Mono.empty();
+    }
+    resp.setStatusCode(status);
+    resp.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+    resp.getHeaders().setContentLength(body.length);
+    if (retryAfter != null) {
+      resp.getHeaders().set("Retry-After", retryAfter);
+    }
+    return resp.writeWith(Mono.just(resp.bufferFactory().wrap(body)));
+  }
+
+  private static String createPaymentResponseHeader(SettlementResponse sr,
+      PaymentPayload payload) {
+    ExactSchemePayload exact = payload.exactPayload();
+    String payer = exact != null && exact.authorization != null ? exact.authorization.from : null;
+    return new SettlementResponseHeader(true, sr.txHash != null ? sr.txHash : "",
+        sr.networkId != null ? sr.networkId : "", payer).toHeader();
+  }
+
+  /**
+   * Equivalent of {@code HttpServletRequest#getRequestURL()}: the URL without query string.
+   */
+  private static String requestUrl(URI uri) {
+    return uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath();
+  }
+
+  /**
+   * Path patterns of the request mappings whose handler is a payment endpoint.
+   */
+  private record PaidPaths(@Nullable List<PathPattern> patterns) {
+
+    static final PaidPaths ALL = new PaidPaths(null);
+
+    static PaidPaths of(List<HandlerMapping> handlerMappings, PaymentEndpointRegistry registry) {
+      List<PathPattern> patterns = new ArrayList<>();
+      for (HandlerMapping mapping : handlerMappings) {
+        if (!(mapping instanceof RequestMappingInfoHandlerMapping infoMapping)) {
+          return ALL;
+        }
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry
+            : infoMapping.getHandlerMethods().entrySet()) {
+          if (registry.register(entry.getValue()) == null) {
+            continue;
+          }
+          Set<PathPattern> paths = entry.getKey().getPatternsCondition().getPatterns();
+          if (paths.isEmpty()) {
+            // a mapping without a path matches every request
+            return ALL;
+          }
+          patterns.addAll(paths);
+        }
+      }
+      return new PaidPaths(List.copyOf(patterns));
+    }
+
+    boolean mayMatch(PathContainer path) {
+      if (patterns == null) {
+        return true;
+      }
+      for (PathPattern pattern : patterns) {
+        if (pattern.matches(path)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
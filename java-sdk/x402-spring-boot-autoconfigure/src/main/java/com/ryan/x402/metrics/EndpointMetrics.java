@@ -0,0 +1,77 @@
+package com.ryan.x402.metrics;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Meters of a single payment endpoint, created by {@link X402Metrics#endpoint(String, String)}.
+ * Implementations must not allocate when recording.
+ */
+public interface EndpointMetrics {
+
+  /**
+   * Records nothing.
+   */
+  EndpointMetrics NOOP = new EndpointMetrics() {
+  };
+
+  /**
+   * Result of a facilitator call, used as the {@code outcome} tag.
+   */
+  enum Outcome {
+    /**
+     * The payment is valid or was settled.
+     */
+    SUCCESS,
+    /**
+     * The facilitator answered, but rejected the payment.
+     */
+    FAILURE,
+    /**
+     * The call failed, e.g. with an I/O error or a non-200 response.
+     */
+    ERROR
+  }
+
+  /**
+   * Records the duration of a facilitator verification.
+   *
+   * @param nanos   duration in nanoseconds
+   * @param outcome result of the call
+   */
+  default void recordVerify(long nanos, Outcome outcome) {
+  }
+
+  /**
+   * Records the duration of a settlement attempt. Anything but {@link Outcome#SUCCESS} also counts
+   * as a settlement failure.
+   *
+   * @param nanos   duration in nanoseconds
+   * @param outcome result of the call
+   */
+  default void recordSettle(long nanos, Outcome outcome) {
+  }
+
+  /**
+   * Counts a 402 response. The reason may be free-form text, so implementations tag it with
+   * {@link PaymentRequiredReason#of(String)} rather than the text itself.
+   *
+   * @param reason the error sent to the client, or {@code null} if none was given
+   */
+  default void paymentRequired(@Nullable String reason) {
+  }
+
+  /**
+   * Counts an X-PAYMENT header that could not be decoded.
+   */
+  default void malformedHeader() {
+  }
+
+  /**
+   * Counts a payment whose nonce could not be claimed because the deduplication store was
+   * unreachable or full.
+   *
+   * @param served whether the payment was served anyway (fail open) or rejected
+   */
+  default void nonceNotRecorded(boolean served) {
+  }
+}
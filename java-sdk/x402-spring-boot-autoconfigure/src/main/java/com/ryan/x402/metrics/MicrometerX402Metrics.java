@@ -0,0 +1,198 @@
+package com.ryan.x402.metrics;
+
+import com.ryan.x402.replay.NonceReplayGuard;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@link X402Metrics} backed by Micrometer.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code x402.verify}, {@code x402.settle}: timers of facilitator calls with percentile
+ *   histograms, tagged {@code endpoint}, {@code network} and {@code outcome}</li>
+ *   <li>{@code x402.payment.required}: 402 responses, tagged {@code endpoint}, {@code network}
+ *   and {@code reason}</li>
+ *   <li>{@code x402.payment.malformed}: undecodable X-PAYMENT headers</li>
+ *   <li>{@code x402.settle.failures}: settlement attempts that did not succeed</li>
+ *   <li>{@code x402.facilitator.responses}: facilitator HTTP responses, tagged
+ *   {@code operation} and {@code status}</li>
+ *   <li>{@code x402.replay.nonces}, {@code x402.replay.capacity}: nonces recorded by the replay
+ *   guard and how many it can hold</li>
+ *   <li>{@code x402.replay.rejections}: claims the replay guard rejected, tagged {@code result}
+ *   ({@code replayed} or {@code full})</li>
+ *   <li>{@code x402.replay.expirations}: recorded nonces freed by expiry</li>
+ *   <li>{@code x402.replay.unrecorded}: payments whose nonce the deduplication store could not
+ *   claim, tagged {@code endpoint}, {@code network} and {@code action} ({@code served} or
+ *   {@code rejected})</li>
+ * </ul>
+ * Timers and counters with fixed tags are registered up front. Reason and status counters are
+ * registered on first use and then found without allocating.
+ */
+public class MicrometerX402Metrics implements X402Metrics {
+
+  private static final int MAX_STATUS = 600;
+
+  private final MeterRegistry registry;
+
+  /**
+   * Status counters per {@link Operation}, indexed by status code; index 0 holds codes out of
+   * range.
+   */
+  private final AtomicReferenceArray<Counter>[] statusCounters;
+
+  @SuppressWarnings("unchecked")
+  public MicrometerX402Metrics(MeterRegistry registry) {
+    this.registry = Objects.requireNonNull(registry);
+    this.statusCounters = new AtomicReferenceArray[Operation.values().length];
+    for (int i = 0; i < statusCounters.length; i++) {
+      statusCounters[i] = new AtomicReferenceArray<>(MAX_STATUS);
+    }
+  }
+
+  @Override
+  public EndpointMetrics endpoint(String endpointId, String network) {
+    return new MicrometerEndpointMetrics(registry, endpointId, network);
+  }
+
+  @Override
+  public void facilitatorResponse(Operation operation, int statusCode) {
+    int index = statusCode > 0 && statusCode < MAX_STATUS ? statusCode : 0;
+    AtomicReferenceArray<Counter> counters = statusCounters[operation.ordinal()];
+    Counter counter = counters.get(index);
+    if (counter == null) {
+      counter = Counter.builder("x402.facilitator.responses")
+          .description("Facilitator HTTP responses")
+          .tag("operation", tag(operation))
+          .tag("status", index == 0 ? "unknown" : Integer.toString(index))
+          .register(registry);
+      counters.set(index, counter);
+    }
+    counter.increment();
+  }
+
+  @Override
+  public void replayGuard(NonceReplayGuard guard) {
+    Gauge.builder("x402.replay.nonces", guard, NonceReplayGuard::size)
+        .description("Nonces recorded by the replay guard, including expired ones not swept yet")
+        .register(registry);
+    Gauge.builder("x402.replay.capacity", guard, NonceReplayGuard::capacity)
+        .description("Nonces the replay guard can hold")
+        .register(registry);
+    FunctionCounter.builder("x402.replay.rejections", guard, NonceReplayGuard::getReplays)
+        .description("Claims rejected by the replay guard")
+        .tag("result", "replayed")
+        .register(registry);
+    FunctionCounter.builder("x402.replay.rejections", guard,
+            NonceReplayGuard::getCapacityRejections)
+        .description("Claims rejected by the replay guard")
+        .tag("result", "full")
+        .register(registry);
+    FunctionCounter.builder("x402.replay.expirations", guard, NonceReplayGuard::getExpirations)
+        .description("Recorded nonces freed by expiry")
+        .register(registry);
+  }
+
+  private static String tag(Enum<?> value) {
+    return value.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static final class MicrometerEndpointMetrics implements EndpointMetrics {
+
+    private final MeterRegistry registry;
+    private final String endpointId;
+    private final String network;
+
+    private final Timer[] verifyTimers;
+    private final Timer[] settleTimers;
+    private final Counter settleFailures;
+    private final Counter malformed;
+    private final Counter unrecordedServed;
+    private final Counter unrecordedRejected;
+    private final AtomicReferenceArray<Counter> reasons =
+        new AtomicReferenceArray<>(PaymentRequiredReason.values().length);
+
+    MicrometerEndpointMetrics(MeterRegistry registry, String endpointId, String network) {
+      this.registry = registry;
+      this.endpointId = endpointId;
+      this.network = network;
+      this.verifyTimers = timers("x402.verify", "Facilitator payment verification");
+      this.settleTimers = timers("x402.settle", "Facilitator payment settlement");
+      this.settleFailures = Counter.builder("x402.settle.failures")
+          .description("Settlement attempts that did not succeed")
+          .tags("endpoint", endpointId, "network", network)
+          .register(registry);
+      this.malformed = Counter.builder("x402.payment.malformed")
+          .description("X-PAYMENT headers that could not be decoded")
+          .tags("endpoint", endpointId, "network", network)
+          .register(registry);
+      this.unrecordedServed = unrecordedCounter("served");
+      this.unrecordedRejected = unrecordedCounter("rejected");
+    }
+
+    @Override
+    public void recordVerify(long nanos, Outcome outcome) {
+      verifyTimers[outcome.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordSettle(long nanos, Outcome outcome) {
+      settleTimers[outcome.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+      if (outcome != Outcome.SUCCESS) {
+        settleFailures.increment();
+      }
+    }
+
+    @Override
+    public void paymentRequired(@Nullable String reason) {
+      PaymentRequiredReason code = PaymentRequiredReason.of(reason);
+      Counter counter = reasons.get(code.ordinal());
+      if (counter == null) {
+        counter = Counter.builder("x402.payment.required")
+            .description("402 Payment Required responses")
+            .tags("endpoint", endpointId, "network", network, "reason", code.getTag())
+            .register(registry);
+        reasons.set(code.ordinal(), counter);
+      }
+      counter.increment();
+    }
+
+    @Override
+    public void malformedHeader() {
+      malformed.increment();
+    }
+
+    @Override
+    public void nonceNotRecorded(boolean served) {
+      (served ? unrecordedServed : unrecordedRejected).increment();
+    }
+
+    private Timer[] timers(String name, String description) {
+      Outcome[] outcomes = Outcome.values();
+      Timer[] timers = new Timer[outcomes.length];
+      for (Outcome outcome : outcomes) {
+        timers[outcome.ordinal()] = Timer.builder(name)
+            .description(description)
+            .tags("endpoint", endpointId, "network", network, "outcome", tag(outcome))
+            .publishPercentileHistogram()
+            .register(registry);
+      }
+      return timers;
+    }
+
+    private Counter unrecordedCounter(String action) {
+      return Counter.builder("x402.replay.unrecorded")
+          .description("Payments whose nonce the deduplication store could not claim")
+          .tags("endpoint", endpointId, "network", network, "action", action)
+          .register(registry);
+    }
+  }
+}
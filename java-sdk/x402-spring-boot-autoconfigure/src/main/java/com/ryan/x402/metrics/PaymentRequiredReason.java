@@ -0,0 +1,101 @@
+package com.ryan.x402.metrics;
+
+import com.ryan.x402.facilitator.FacilitatorCapabilities;
+import com.ryan.x402.prepaid.PrepaidLedger;
+import com.ryan.x402.replay.NonceReplayGuard;
+import com.ryan.x402.token.AccessTokenSigner;
+import com.ryan.x402.verification.ExactEvmSignatureVerifier;
+import com.ryan.x402.verification.PaymentPreVerifier;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.lang.Nullable;
+
+/**
+ * Fixed set of reasons for a 402 response, used as the {@code reason} tag so that free-form
+ * errors, e.g. from the facilitator or an exception message, cannot grow the number of meters.
+ * The tag value is the lower-case constant name, which for the x402 error codes is the code
+ * itself.
+ */
+public enum PaymentRequiredReason {
+
+  PAYMENT_HEADER_MISSING("X-PAYMENT header is required"),
+  PAYMENT_HEADER_TOO_LARGE("X-PAYMENT header too large"),
+  MALFORMED_PAYMENT_HEADER("malformed X-PAYMENT header"),
+  UNSUPPORTED_SCHEME(FacilitatorCapabilities.UNSUPPORTED_SCHEME),
+  INVALID_X402_VERSION(PaymentPreVerifier.INVALID_X402_VERSION),
+  INVALID_SCHEME(PaymentPreVerifier.INVALID_SCHEME),
+  INVALID_NETWORK(PaymentPreVerifier.INVALID_NETWORK),
+  INVALID_PAYLOAD(PaymentPreVerifier.INVALID_PAYLOAD),
+  INVALID_PAYMENT_REQUIREMENTS("invalid_payment_requirements"),
+  INVALID_EXACT_EVM_PAYLOAD_RECIPIENT_MISMATCH(PaymentPreVerifier.RECIPIENT_MISMATCH),
+  INVALID_EXACT_EVM_PAYLOAD_AUTHORIZATION_VALUE(PaymentPreVerifier.INVALID_VALUE),
+  INVALID_EXACT_EVM_PAYLOAD_AUTHORIZATION_VALID_AFTER(PaymentPreVerifier.INVALID_VALID_AFTER),
+  INVALID_EXACT_EVM_PAYLOAD_AUTHORIZATION_VALID_BEFORE(PaymentPreVerifier.INVALID_VALID_BEFORE),
+  INVALID_EXACT_EVM_PAYLOAD_SIGNATURE(ExactEvmSignatureVerifier.INVALID_SIGNATURE),
+  INVALID_EXACT_EVM_PAYLOAD_NONCE_REPLAYED(NonceReplayGuard.REPLAYED_REASON),
+  INSUFFICIENT_FUNDS("insufficient_funds"),
+  INVALID_TRANSACTION_STATE("invalid_transaction_state"),
+  UNEXPECTED_VERIFY_ERROR("unexpected_verify_error"),
+  UNEXPECTED_SETTLE_ERROR("unexpected_settle_error"),
+  INSUFFICIENT_PREPAID_BALANCE(PrepaidLedger.INSUFFICIENT_BALANCE),
+  INVALID_ACCESS_TOKEN(AccessTokenSigner.INVALID_TOKEN),
+  ACCESS_TOKEN_EXPIRED(AccessTokenSigner.EXPIRED_TOKEN),
+  ACCESS_TOKEN_RESOURCE_MISMATCH(AccessTokenSigner.RESOURCE_MISMATCH),
+  SETTLEMENT_FAILED("settlement failed"),
+  /**
+   * A settlement call that threw, sent as {@code settlement error: <message>}.
+   */
+  SETTLEMENT_ERROR(null),
+  /**
+   * A reason not in this set.
+   */
+  OTHER(null),
+  /**
+   * No reason was given.
+   */
+  UNKNOWN(null);
+
+  private static final Map<String, PaymentRequiredReason> BY_REASON = new HashMap<>();
+
+  static {
+    for (PaymentRequiredReason value : values()) {
+      if (value.reason != null) {
+        BY_REASON.put(value.reason, value);
+      }
+    }
+  }
+
+  @Nullable
+  private final String reason;
+  private final String tag;
+
+  PaymentRequiredReason(@Nullable String reason) {
+    this.reason = reason;
+    this.tag = name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Value of the {@code reason} tag.
+   */
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * Maps the error sent to the client to its reason. Does not allocate.
+   *
+   * @param reason the error, or {@code null} if none was given
+   * @return the matching reason, {@link #OTHER} if there is none
+   */
+  public static PaymentRequiredReason of(@Nullable String reason) {
+    if (reason == null) {
+      return UNKNOWN;
+    }
+    PaymentRequiredReason value = BY_REASON.get(reason);
+    if (value != null) {
+      return value;
+    }
+    return reason.startsWith("settlement error: ") ? SETTLEMENT_ERROR : OTHER;
+  }
+}
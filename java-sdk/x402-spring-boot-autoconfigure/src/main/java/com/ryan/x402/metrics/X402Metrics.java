@@ -0,0 +1,56 @@
+package com.ryan.x402.metrics;
+
+import com.ryan.x402.replay.NonceReplayGuard;
+
+/**
+ * Sink for x402 metrics. The SDK only talks to this interface, so it runs without Micrometer on
+ * the classpath; {@link MicrometerX402Metrics} is used when a {@code MeterRegistry} is present.
+ * <p>
+ * Per-endpoint meters are created once through {@link #endpoint(String, String)} when the
+ * endpoint is registered, so recording on the request path needs no tag lookups.
+ */
+public interface X402Metrics {
+
+  /**
+   * Discards everything.
+   */
+  X402Metrics NOOP = new X402Metrics() {
+  };
+
+  /**
+   * Facilitator call, used as the {@code operation} tag.
+   */
+  enum Operation {
+    VERIFY, SETTLE, SUPPORTED
+  }
+
+  /**
+   * Creates the meters of one payment endpoint.
+   *
+   * @param endpointId endpoint identifier, e.g.
+   *                   {@code com.example.WeatherController#forecast(String)}
+   * @param network    network of the endpoint, e.g. {@code base-sepolia}
+   * @return the endpoint meters
+   */
+  default EndpointMetrics endpoint(String endpointId, String network) {
+    return EndpointMetrics.NOOP;
+  }
+
+  /**
+   * Records the HTTP status code of a facilitator response.
+   *
+   * @param operation  the facilitator call
+   * @param statusCode the HTTP status code
+   */
+  default void facilitatorResponse(Operation operation, int statusCode) {
+  }
+
+  /**
+   * Publishes the occupancy and rejection counts of an in-process replay guard. Called once when
+   * the guard is created; the values are read from the guard when the meters are sampled.
+   *
+   * @param guard the replay guard
+   */
+  default void replayGuard(NonceReplayGuard guard) {
+  }
+}
@@ -0,0 +1,609 @@
+package com.ryan.x402.prepaid;
+
+import com.ryan.x402.model.ExactSchemePayload;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.settlement.SettlementListener;
+import com.ryan.x402.util.Hex;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-payer balances of prepaid credit, in atomic units of the payment asset.
+ * <p>
+ * A payer buys credit with one payment larger than the price of the request it pays for; once
+ * that payment is settled, {@link #onSettled} credits the rest. Later requests are
+ * {@linkplain #debit debited} in-process without a facilitator call. Balances live in hash maps
+ * split into lock stripes by payer, so requests of payers on different stripes never contend.
+ * <p>
+ * Every change records the payer's new balance in its stripe's buffer under the stripe lock, so
+ * the records of one payer are in order. The buffer is written to a write-ahead log after the
+ * lock is released, by whichever caller of that stripe gets to it first, and a change returns once
+ * its record is written. A background thread forces the log to disk every
+ * {@code flushInterval}; once the log has grown past {@code snapshotThreshold} bytes it writes all
+ * balances to a snapshot and starts a new log generation. Opening the ledger loads the snapshot,
+ * replays the logs written after it and compacts both into a new snapshot.
+ * <p>
+ * Log record: payer address (20 bytes), balance (long), CRC32C of both (int). Snapshot: magic,
+ * version, generation of the first log it does not contain (long), count (int), payer and balance
+ * per entry, then a CRC32C of everything before it.
+ */
+@Slf4j
+public class PrepaidLedger implements SettlementListener, AutoCloseable {
+
+  /**
+   * Key of {@link PaymentRequirements#extra} holding the atomic price of one request on endpoints
+   * sold by prepaid credit.
+   */
+  public static final String PRICE_KEY = "prepaidPrice";
+
+  /**
+   * Invalid reason of a request whose payer has not enough credit left.
+   */
+  public static final String INSUFFICIENT_BALANCE = "insufficient_prepaid_balance";
+
+  /**
+   * Returned by {@link #debit} if the balance does not cover the amount.
+   */
+  public static final long INSUFFICIENT = -1;
+
+  private static final int ADDRESS_LENGTH = 20;
+  private static final int RECORD_LENGTH = ADDRESS_LENGTH + 8 + 4;
+  private static final int SNAPSHOT_MAGIC = 0x78343032; // "x402"
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_HEADER_LENGTH = 20;
+  private static final String SNAPSHOT_FILE = "ledger.snapshot";
+  private static final String LOG_SUFFIX = ".wal";
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  private final Path directory;
+  private final long flushIntervalNanos;
+  private final long snapshotThreshold;
+  private final Stripe[] stripes;
+  private final AtomicLong logSize = new AtomicLong();
+  private final Thread flusher;
+
+  // replaced with all stripe locks held
+  private volatile FileChannel wal;
+  private long generation;
+  private volatile boolean closed;
+
+  /**
+   * Opens the ledger in the given directory, restoring the balances of the previous run, and
+   * starts the flush thread.
+   *
+   * @param directory         where the snapshot and logs are kept; created if missing
+   * @param stripes           number of lock stripes, rounded up to a power of two
+   * @param flushInterval     how often the log is forced to disk
+   * @param snapshotThreshold log size in bytes after which balances are snapshotted
+   * @throws IOException if the snapshot is corrupt or the files cannot be written
+   */
+  public PrepaidLedger(Path directory, int stripes, Duration flushInterval,
+      long snapshotThreshold) throws IOException {
+    if (stripes < 1 || stripes > 1 << 16) {
+      throw new IllegalArgumentException("stripes must be between 1 and 65536");
+    }
+    if (flushInterval.isNegative() || flushInterval.isZero()) {
+      throw new IllegalArgumentException("flushInterval must be positive");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.snapshotThreshold = snapshotThreshold;
+    int count = 1;
+    while (count < stripes) {
+      count <<= 1;
+    }
+    this.stripes = new Stripe[count];
+    for (int i = 0; i < this.stripes.length; i++) {
+      this.stripes[i] = new Stripe();
+    }
+
+    long last = recover();
+    generation = last + 1;
+    wal = openLog(generation);
+    writeSnapshot(generation, copyBalances());
+    deleteLogsBefore(generation);
+    log.info("x402 prepaid ledger {} holds {} balances", directory, size());
+
+    this.flusher = new Thread(this::flushLoop, "x402-ledger-flush");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /* ======================== balances ======================== */
+
+  /**
+   * Current balance of a payer.
+   *
+   * @param payer the payer address
+   * @return the balance, 0 for unknown payers
+   */
+  public long balance(String payer) {
+    String key = key(payer);
+    Stripe stripe = stripe(key);
+    stripe.lock.lock();
+    try {
+      Balance balance = stripe.balances.get(key);
+      return balance != null ? balance.amount : 0;
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Takes an amount from a payer's balance if it covers the amount.
+   *
+   * @param payer  the payer address
+   * @param amount the atomic amount to take
+   * @return the balance left, or {@link #INSUFFICIENT} if nothing was taken
+   * @throws IllegalArgumentException if the payer is not an EVM address
+   */
+  public long debit(String payer, long amount) {
+    if (amount < 0) {
+      throw new IllegalArgumentException("amount must not be negative");
+    }
+    String key = key(payer);
+    byte[] address = address(payer);
+    Stripe stripe = stripe(key);
+    long result;
+    stripe.lock.lock();
+    try {
+      Balance balance = stripe.balances.get(key);
+      if (balance == null || balance.amount < amount) {
+        return INSUFFICIENT;
+      }
+      long left = balance.amount - amount;
+      append(stripe, address, left);
+      if (left == 0) {
+        stripe.balances.remove(key);
+      } else {
+        balance.amount = left;
+      }
+      result = left;
+    } finally {
+      stripe.lock.unlock();
+    }
+    writeLog(stripe);
+    return result;
+  }
+
+  /**
+   * Adds an amount to a payer's balance.
+   *
+   * @param payer  the payer address
+   * @param amount the atomic amount to add
+   * @return the new balance
+   * @throws IllegalArgumentException if the payer is not an EVM address
+   */
+  public long credit(String payer, long amount) {
+    if (amount < 0) {
+      throw new IllegalArgumentException("amount must not be negative");
+    }
+    String key = key(payer);
+    byte[] address = address(payer);
+    Stripe stripe = stripe(key);
+    long total;
+    stripe.lock.lock();
+    try {
+      Balance balance = stripe.balances.get(key);
+      total = Math.addExact(balance != null ? balance.amount : 0, amount);
+      append(stripe, address, total);
+      if (balance == null) {
+        stripe.balances.put(key, new Balance(total));
+      } else {
+        balance.amount = total;
+      }
+    } finally {
+      stripe.lock.unlock();
+    }
+    writeLog(stripe);
+    return total;
+  }
+
+  /**
+   * Credits a settled top-up: the authorized value minus the price of the request it paid for.
+   * Payments for endpoints without a {@link #PRICE_KEY} are ignored, so the ledger can listen to
+   * every settlement.
+   */
+  @Override
+  public void onSettled(PaymentPayload payload, PaymentRequirements requirements,
+      SettlementResponse response) {
+    Object price = requirements.extra != null ? requirements.extra.get(PRICE_KEY) : null;
+    if (price == null) {
+      return;
+    }
+    try {
+      ExactSchemePayload exact = payload.exactPayload();
+      long value = Long.parseLong(exact.authorization.value);
+      long rest = value - Long.parseLong(price.toString());
+      if (rest > 0) {
+        credit(exact.authorization.from, rest);
+      }
+    } catch (RuntimeException e) {
+      log.error("x402 prepaid ledger could not credit settled payment for {}: {}",
+          requirements.resource, e.toString());
+    }
+  }
+
+  /**
+   * Number of payers with a balance.
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.balances.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /* ======================== persistence ======================== */
+
+  /**
+   * Writes all balances to a new snapshot and drops the logs it replaces. Updates wait only while
+   * the balances are copied, not while the snapshot is written.
+   *
+   * @throws IOException if the snapshot or the new log cannot be written; the previous snapshot
+   *                     and logs stay valid
+   */
+  public synchronized void snapshot() throws IOException {
+    FileChannel previous;
+    long next;
+    Map<String, Long> balances;
+    lockAll();
+    try {
+      next = generation + 1;
+      FileChannel channel = openLog(next);
+      previous = wal;
+      wal = channel;
+      generation = next;
+      logSize.set(0);
+      balances = copyBalances();
+    } finally {
+      unlockAll();
+    }
+    // records taken before the switch are written to the previous log while their stripe's
+    // write lock is held
+    for (Stripe stripe : stripes) {
+      stripe.writeLock.lock();
+      stripe.writeLock.unlock();
+    }
+    previous.force(false);
+    previous.close();
+    writeSnapshot(next, balances);
+    deleteLogsBefore(next);
+  }
+
+  /**
+   * Stops the flush thread and snapshots the balances, so the next run starts without replaying
+   * logs.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(flusher);
+    try {
+      flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      snapshot();
+    } catch (IOException e) {
+      log.error("x402 prepaid ledger snapshot on close failed, the log is replayed on start", e);
+    }
+    try {
+      wal.close();
+    } catch (IOException e) {
+      log.warn("x402 prepaid ledger could not close its log: {}", e.toString());
+    }
+  }
+
+  /**
+   * Buffers a balance record, called with the stripe lock held.
+   */
+  private static void append(Stripe stripe, byte[] address, long balance) {
+    if (stripe.pending.remaining() < RECORD_LENGTH) {
+      ByteBuffer larger = ByteBuffer.allocate(stripe.pending.capacity() * 2);
+      stripe.pending = larger.put(stripe.pending.flip());
+    }
+    ByteBuffer pending = stripe.pending;
+    int offset = pending.position();
+    pending.put(address).putLong(balance);
+    stripe.crc.reset();
+    stripe.crc.update(pending.array(), offset, ADDRESS_LENGTH + 8);
+    pending.putInt((int) stripe.crc.getValue());
+  }
+
+  /**
+   * Writes the stripe's buffered records to the log, called without the stripe lock. Returns
+   * once the records buffered before the call are written, by this or a concurrent caller. A
+   * failed write is logged and the balances still change in memory; those changes are then lost
+   * on restart.
+   */
+  private void writeLog(Stripe stripe) {
+    stripe.writeLock.lock();
+    try {
+      ByteBuffer out;
+      FileChannel channel;
+      stripe.lock.lock();
+      try {
+        ByteBuffer pending = stripe.pending.flip();
+        if (!pending.hasRemaining()) {
+          pending.clear();
+          return;
+        }
+        out = stripe.writing;
+        if (out.capacity() < pending.remaining()) {
+          out = stripe.writing = ByteBuffer.allocate(pending.capacity());
+        }
+        out.clear();
+        out.put(pending).flip();
+        pending.clear();
+        // the log is only switched with all stripe locks held
+        channel = wal;
+      } finally {
+        stripe.lock.unlock();
+      }
+      int length = out.remaining();
+      while (out.hasRemaining()) {
+        channel.write(out);
+      }
+      logSize.addAndGet(length);
+    } catch (IOException e) {
+      log.error("x402 prepaid ledger log write failed, balance not persisted: {}", e.toString());
+    } finally {
+      stripe.writeLock.unlock();
+    }
+  }
+
+  private FileChannel openLog(long number) throws IOException {
+    return FileChannel.open(directory.resolve(String.format("%016d%s", number, LOG_SUFFIX)),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private void writeSnapshot(long next, Map<String, Long> balances) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_LENGTH
+        + balances.size() * (ADDRESS_LENGTH + 8) + 4);
+    buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(next)
+        .putInt(balances.size());
+    for (Map.Entry<String, Long> entry : balances.entrySet()) {
+      buffer.put(address(entry.getKey())).putLong(entry.getValue());
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue()).flip();
+
+    Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void deleteLogsBefore(long number) {
+    for (Map.Entry<Long, Path> file : logFiles().headMap(number).entrySet()) {
+      try {
+        Files.deleteIfExists(file.getValue());
+      } catch (IOException e) {
+        log.warn("x402 prepaid ledger could not delete {}: {}", file.getValue(), e.toString());
+      }
+    }
+  }
+
+  /* ======================== flush ======================== */
+
+  private void flushLoop() {
+    while (!closed) {
+      LockSupport.parkNanos(this, flushIntervalNanos);
+      try {
+        synchronized (this) {
+          wal.force(false);
+        }
+        if (logSize.get() >= snapshotThreshold && !closed) {
+          snapshot();
+        }
+      } catch (IOException | RuntimeException e) {
+        log.error("x402 prepaid ledger flush failed", e);
+      }
+    }
+  }
+
+  /* ======================== recovery ======================== */
+
+  /**
+   * Loads the snapshot and replays the logs written after it.
+   *
+   * @return the highest generation found
+   */
+  private long recover() throws IOException {
+    long first = 0;
+    Path snapshot = directory.resolve(SNAPSHOT_FILE);
+    if (Files.exists(snapshot)) {
+      first = readSnapshot(ByteBuffer.wrap(Files.readAllBytes(snapshot)));
+    }
+    long last = first;
+    for (Map.Entry<Long, Path> file : logFiles().tailMap(first).entrySet()) {
+      replay(file.getKey(), ByteBuffer.wrap(Files.readAllBytes(file.getValue())));
+      last = file.getKey();
+    }
+    return last;
+  }
+
+  private long readSnapshot(ByteBuffer buffer) throws IOException {
+    int length = buffer.remaining();
+    if (length < SNAPSHOT_HEADER_LENGTH + 4) {
+      throw new IOException("prepaid ledger snapshot is truncated");
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array(), 0, length - 4);
+    if ((int) crc.getValue() != buffer.getInt(length - 4)) {
+      throw new IOException("prepaid ledger snapshot is corrupt");
+    }
+    if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+      throw new IOException("prepaid ledger snapshot has an unknown format");
+    }
+    long next = buffer.getLong();
+    int count = buffer.getInt();
+    if (length != SNAPSHOT_HEADER_LENGTH + count * (ADDRESS_LENGTH + 8) + 4) {
+      throw new IOException("prepaid ledger snapshot is truncated");
+    }
+    for (int i = 0; i < count; i++) {
+      restore(buffer);
+    }
+    return next;
+  }
+
+  private void replay(long number, ByteBuffer buffer) {
+    CRC32C crc = new CRC32C();
+    while (buffer.remaining() >= RECORD_LENGTH) {
+      int offset = buffer.position();
+      crc.reset();
+      crc.update(buffer.array(), offset, ADDRESS_LENGTH + 8);
+      if ((int) crc.getValue() != buffer.getInt(offset + ADDRESS_LENGTH + 8)) {
+        log.warn("x402 prepaid ledger log {} has a corrupt record at {}", number, offset);
+        return;
+      }
+      restore(buffer);
+      buffer.getInt();
+    }
+    if (buffer.hasRemaining()) {
+      log.warn("x402 prepaid ledger log {} has a torn record at {}", number, buffer.position());
+    }
+  }
+
+  private void restore(ByteBuffer buffer) {
+    String key = hex(buffer);
+    long amount = buffer.getLong();
+    Map<String, Balance> balances = stripe(key).balances;
+    if (amount == 0) {
+      balances.remove(key);
+    } else {
+      balances.put(key, new Balance(amount));
+    }
+  }
+
+  private TreeMap<Long, Path> logFiles() {
+    TreeMap<Long, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        try {
+          files.put(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())), path);
+        } catch (NumberFormatException e) {
+          // not one of ours
+        }
+      }
+    } catch (IOException e) {
+      log.warn("x402 prepaid ledger could not list {}: {}", directory, e.toString());
+    }
+    return files;
+  }
+
+  /* ======================== helpers ======================== */
+
+  private Map<String, Long> copyBalances() {
+    Map<String, Long> copy = new HashMap<>();
+    for (Stripe stripe : stripes) {
+      for (Map.Entry<String, Balance> entry : stripe.balances.entrySet()) {
+        copy.put(entry.getKey(), entry.getValue().amount);
+      }
+    }
+    return copy;
+  }
+
+  private void lockAll() {
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+    }
+  }
+
+  private void unlockAll() {
+    for (int i = stripes.length - 1; i >= 0; i--) {
+      stripes[i].lock.unlock();
+    }
+  }
+
+  private Stripe stripe(String key) {
+    int h = key.hashCode();
+    return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+  }
+
+  private static String key(String payer) {
+    if (payer == null) {
+      throw new IllegalArgumentException("payer must not be null");
+    }
+    return payer.toLowerCase(Locale.ROOT);
+  }
+
+  private static byte[] address(String payer) {
+    byte[] address = new byte[ADDRESS_LENGTH];
+    if (!Hex.decode(payer, address, 0, ADDRESS_LENGTH)) {
+      throw new IllegalArgumentException("payer is not an EVM address: " + payer);
+    }
+    return address;
+  }
+
+  private static String hex(ByteBuffer buffer) {
+    char[] chars = new char[2 + 2 * ADDRESS_LENGTH];
+    chars[0] = '0';
+    chars[1] = 'x';
+    for (int i = 0; i < ADDRESS_LENGTH; i++) {
+      int b = buffer.get() & 0xff;
+      chars[2 + 2 * i] = DIGITS[b >>> 4];
+      chars[3 + 2 * i] = DIGITS[b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  private static final class Stripe {
+
+    final ReentrantLock lock = new ReentrantLock();
+    final HashMap<String, Balance> balances = new HashMap<>();
+    // records not written yet, guarded by lock
+    ByteBuffer pending = ByteBuffer.allocate(16 * RECORD_LENGTH);
+    final CRC32C crc = new CRC32C();
+    // serializes the log writes of this stripe, taken before lock
+    final ReentrantLock writeLock = new ReentrantLock();
+    ByteBuffer writing = ByteBuffer.allocate(16 * RECORD_LENGTH);
+  }
+
+  private static final class Balance {
+
+    long amount;
+
+    Balance(long amount) {
+      this.amount = amount;
+    }
+  }
+}
@@ -0,0 +1,326 @@
+package com.ryan.x402.settlement;
+
+import com.ryan.x402.facilitator.FacilitatorClient;
+import com.ryan.x402.metrics.EndpointMetrics;
+import com.ryan.x402.metrics.EndpointMetrics.Outcome;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Settles payments on a bounded worker pool instead of the servlet thread.
+ * <p>
+ * Settlements are queued up to {@code queueCapacity}. When the queue is full the submitting thread
+ * settles the payment itself, which slows producers down instead of dropping payments. Calls that
+ * fail with an {@link IOException} are retried with exponential backoff, except on the submitting
+ * thread, which makes a single attempt rather than sleep through the backoff; a journaled payment
+ * whose attempt failed is settled again after a restart. A response with {@code success == false}
+ * is final. {@link #close()} stops accepting work and waits for queued
+ * and in-flight settlements to finish.
+ * <p>
+ * Results are published to {@link SettlementListener}s; see there for how this affects the
+ * {@code X-PAYMENT-RESPONSE} header. With a {@link SettlementJournal}, journaled payments are
+ * marked once the facilitator settled or rejected them; payments that ran out of retries stay
+ * unmarked and are settled again after a restart.
+ */
+@Slf4j
+public class AsyncSettlementService implements AutoCloseable {
+
+  private final FacilitatorClient facilitator;
+  private final List<SettlementListener> listeners;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final Duration shutdownTimeout;
+  private final ThreadPoolExecutor executor;
+
+  @Nullable
+  private SettlementJournal journal;
+
+  /**
+   * Creates a new async settlement service.
+   *
+   * @param facilitator     the facilitator used for settlement
+   * @param parallelism     number of concurrent settlements
+   * @param queueCapacity   number of settlements that may wait for a worker
+   * @param maxAttempts     attempts per settlement, including the first one
+   * @param initialBackoff  delay before the first retry, doubled per retry
+   * @param maxBackoff      upper bound for the retry delay
+   * @param shutdownTimeout how long {@link #close()} waits for pending settlements
+   * @param listeners       listeners notified about settlement results
+   */
+  public AsyncSettlementService(FacilitatorClient facilitator, int parallelism, int queueCapacity,
+      int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration shutdownTimeout,
+      List<SettlementListener> listeners) {
+    if (parallelism < 1 || queueCapacity < 1 || maxAttempts < 1) {
+      throw new IllegalArgumentException(
+          "parallelism, queueCapacity and maxAttempts must be positive");
+    }
+    this.facilitator = Objects.requireNonNull(facilitator);
+    this.listeners = List.copyOf(listeners);
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoff.toMillis();
+    this.maxBackoffMillis = maxBackoff.toMillis();
+    this.shutdownTimeout = Objects.requireNonNull(shutdownTimeout);
+    this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new SettlementThreadFactory(),
+        (task, pool) -> {
+          SettlementTask settlement = (SettlementTask) task;
+          if (settlement.nonBlocking) {
+            settlement.rejected = true;
+            return;
+          }
+          // backpressure: queue is full (or we are shutting down), settle on the caller, once,
+          // so an overloaded facilitator cannot park container threads in retry backoff
+          log.debug("x402 settlement queue full, settling on caller thread");
+          settlement.settle(1);
+        });
+  }
+
+  /**
+   * Marks journaled payments in the given journal once they are settled.
+   *
+   * @param journal the journal the ids passed to {@link #submit} and {@link #trySubmit} belong to,
+   *                or {@code null}
+   */
+  public void setJournal(@Nullable SettlementJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Queues a verified payment for settlement.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   */
+  public void submit(PaymentPayload payload, PaymentRequirements requirements) {
+    submit(payload, requirements, EndpointMetrics.NOOP);
+  }
+
+  /**
+   * Queues a verified payment for settlement and records each attempt in the given meters.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   * @param metrics      meters of the endpoint the payment was made for
+   */
+  public void submit(PaymentPayload payload, PaymentRequirements requirements,
+      EndpointMetrics metrics) {
+    submit(payload, requirements, metrics, SettlementJournal.NO_ENTRY);
+  }
+
+  /**
+   * Queues a journaled payment for settlement.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   * @param metrics      meters of the endpoint the payment was made for
+   * @param journalEntry the payment's journal id, or {@link SettlementJournal#NO_ENTRY}
+   */
+  public void submit(PaymentPayload payload, PaymentRequirements requirements,
+      EndpointMetrics metrics, long journalEntry) {
+    executor.execute(new SettlementTask(payload, requirements, metrics, journalEntry, false));
+  }
+
+  /**
+   * Queues a verified payment for settlement unless the queue is full. Unlike {@link #submit}, it
+   * never settles on the calling thread, so it is safe on event-loop threads.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   * @param metrics      meters of the endpoint the payment was made for
+   * @return {@code false} if the payment was not queued and must be settled by the caller
+   */
+  public boolean trySubmit(PaymentPayload payload, PaymentRequirements requirements,
+      EndpointMetrics metrics) {
+    return trySubmit(payload, requirements, metrics, SettlementJournal.NO_ENTRY);
+  }
+
+  /**
+   * Queues a journaled payment for settlement unless the queue is full.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   * @param metrics      meters of the endpoint the payment was made for
+   * @param journalEntry the payment's journal id, or {@link SettlementJournal#NO_ENTRY}
+   * @return {@code false} if the payment was not queued and must be settled by the caller, who
+   *     then also marks the journal entry
+   */
+  public boolean trySubmit(PaymentPayload payload, PaymentRequirements requirements,
+      EndpointMetrics metrics, long journalEntry) {
+    SettlementTask task = new SettlementTask(payload, requirements, metrics, journalEntry, true);
+    executor.execute(task);
+    return !task.rejected;
+  }
+
+  /**
+   * Number of settlements waiting for a worker.
+   */
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Number of settlements currently running.
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Stops accepting new settlements and drains queued and in-flight ones, waiting at most the
+   * configured shutdown timeout.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        List<Runnable> dropped = executor.shutdownNow();
+        log.error("x402 settlement shutdown timed out, {} queued settlements were not sent",
+            dropped.size());
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /* ======================== worker ======================== */
+
+  private void settle(PaymentPayload payload, PaymentRequirements requirements,
+      EndpointMetrics metrics, long journalEntry, int attempts) {
+    long backoff = initialBackoffMillis;
+    for (int attempt = 1; ; attempt++) {
+      long start = System.nanoTime();
+      try {
+        SettlementResponse sr = facilitator.settle(payload, requirements);
+        metrics.recordSettle(System.nanoTime() - start,
+            sr != null && sr.success ? Outcome.SUCCESS : Outcome.FAILURE);
+        if (sr == null || !sr.success) {
+          log.error("x402 async settlement failed URL: {} error: {}", requirements.resource,
+              sr != null && sr.error != null ? sr.error : "settlement failed");
+          markSettled(journalEntry);
+          notifyFailed(payload, requirements, sr, null);
+        } else {
+          log.info("x402 async settlement succeeded URL: {} tx: {}", requirements.resource,
+              sr.txHash);
+          markSettled(journalEntry);
+          notifySettled(payload, requirements, sr);
+        }
+        return;
+      } catch (IOException e) {
+        metrics.recordSettle(System.nanoTime() - start, Outcome.ERROR);
+        if (attempt >= attempts) {
+          log.error("x402 async settlement gave up after {} attempts URL: {}", attempt,
+              requirements.resource, e);
+          notifyFailed(payload, requirements, null, e);
+          return;
+        }
+        log.warn("x402 async settlement attempt {} failed URL: {}, retrying in {} ms: {}",
+            attempt, requirements.resource, backoff, e.toString());
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          notifyFailed(payload, requirements, null, e);
+          return;
+        }
+        backoff = Math.min(backoff * 2, maxBackoffMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        notifyFailed(payload, requirements, null, e);
+        return;
+      } catch (Exception e) {
+        metrics.recordSettle(System.nanoTime() - start, Outcome.ERROR);
+        log.error("x402 async settlement error URL: {}", requirements.resource, e);
+        markSettled(journalEntry);
+        notifyFailed(payload, requirements, null, e);
+        return;
+      }
+    }
+  }
+
+  private void markSettled(long journalEntry) {
+    if (journal != null) {
+      journal.markSettled(journalEntry);
+    }
+  }
+
+  private void notifySettled(PaymentPayload payload, PaymentRequirements requirements,
+      SettlementResponse sr) {
+    for (SettlementListener listener : listeners) {
+      try {
+        listener.onSettled(payload, requirements, sr);
+      } catch (RuntimeException e) {
+        log.error("x402 settlement listener failed", e);
+      }
+    }
+  }
+
+  private void notifyFailed(PaymentPayload payload, PaymentRequirements requirements,
+      @Nullable SettlementResponse sr, @Nullable Exception error) {
+    for (SettlementListener listener : listeners) {
+      try {
+        listener.onFailed(payload, requirements, sr, error);
+      } catch (RuntimeException e) {
+        log.error("x402 settlement listener failed", e);
+      }
+    }
+  }
+
+  /**
+   * One queued settlement. A non-blocking task is dropped instead of run on the caller when the
+   * queue is full.
+   */
+  private final class SettlementTask implements Runnable {
+
+    private final PaymentPayload payload;
+    private final PaymentRequirements requirements;
+    private final EndpointMetrics metrics;
+    private final long journalEntry;
+    private final boolean nonBlocking;
+    private boolean rejected;
+
+    SettlementTask(PaymentPayload payload, PaymentRequirements requirements,
+        EndpointMetrics metrics, long journalEntry, boolean nonBlocking) {
+      this.payload = payload;
+      this.requirements = requirements;
+      this.metrics = metrics;
+      this.journalEntry = journalEntry;
+      this.nonBlocking = nonBlocking;
+    }
+
+    @Override
+    public void run() {
+      settle(maxAttempts);
+    }
+
+    void settle(int attempts) {
+      AsyncSettlementService.this.settle(payload, requirements, metrics, journalEntry, attempts);
+    }
+  }
+
+  private static final class SettlementThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "x402-settle-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -0,0 +1,447 @@
+package com.ryan.x402.settlement;
+
+import com.ryan.x402.facilitator.FacilitatorWireCodec;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.util.Json;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Durable outbox of payments whose content is served but whose settlement has not finished.
+ * <p>
+ * The journal is a directory of fixed-size, memory-mapped segment files that are only ever
+ * appended to. A payment is appended before it is settled and marked once the facilitator gave a
+ * final answer; payments without a mark are returned by {@link #unsettled()} after a restart so
+ * they can be settled again. A segment is deleted once it and all older segments hold no
+ * unmarked payment.
+ * <p>
+ * An append copies the record into the mapped file and returns, so a killed process loses
+ * nothing. A background thread forces written pages to disk every {@code flushInterval}, one
+ * {@code msync} for all appends of that interval; a host crash loses at most that interval.
+ * <p>
+ * Record layout: length including the header (int), CRC32C of the rest (int), type (byte), id
+ * (long), body. The body of a payment is its facilitator {@code /settle} request; a mark, settled
+ * or abandoned, has no body and carries the id of the payment it marks. A segment ends at the
+ * first zero length or at the first record that fails its checksum. Payment ids are the segment
+ * number in the high and the record offset in the low 32 bits.
+ */
+@Slf4j
+public class SettlementJournal implements AutoCloseable {
+
+  /**
+   * Id of a payment that is not journaled; {@link #markSettled(long)} ignores it.
+   */
+  public static final long NO_ENTRY = -1;
+
+  private static final int HEADER_LENGTH = 17;
+  private static final byte TYPE_PAYMENT = 1;
+  private static final byte TYPE_SETTLED = 2;
+  private static final byte TYPE_ABANDONED = 3;
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long flushIntervalNanos;
+  private final FacilitatorWireCodec codec = new FacilitatorWireCodec();
+  private final ConcurrentSkipListMap<Integer, Segment> segments =
+      new ConcurrentSkipListMap<>();
+  private final List<Entry> unsettled;
+  private final Thread flusher;
+
+  // written under the journal lock, read by the flusher
+  private volatile Segment active;
+  private volatile boolean closed;
+
+  /**
+   * Opens the journal in the given directory, reading the payments left unmarked by the previous
+   * run, and starts a new segment.
+   *
+   * @param directory     where segment files are kept; created if missing
+   * @param segmentSize   size of one segment file in bytes
+   * @param flushInterval how often written records are forced to disk
+   */
+  public SettlementJournal(Path directory, int segmentSize, Duration flushInterval)
+      throws IOException {
+    if (segmentSize < 4096) {
+      throw new IllegalArgumentException("segmentSize must be at least 4096 bytes");
+    }
+    if (flushInterval.isNegative() || flushInterval.isZero()) {
+      throw new IllegalArgumentException("flushInterval must be positive");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.unsettled = List.copyOf(recover());
+
+    int next = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    synchronized (this) {
+      this.active = openSegment(next);
+      trimHead();
+    }
+    if (!unsettled.isEmpty()) {
+      log.warn("x402 settlement journal {} holds {} unsettled payments", directory,
+          unsettled.size());
+    }
+
+    this.flusher = new Thread(this::flushLoop, "x402-journal-flush");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Payments appended by a previous run and never marked, in append order. They still have to be
+   * settled and marked.
+   */
+  public List<Entry> unsettled() {
+    return unsettled;
+  }
+
+  /**
+   * Appends a verified payment before its content is served.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   * @return the id to pass to {@link #markSettled(long)}
+   * @throws IOException if the journal is closed or the record does not fit a segment
+   */
+  public long append(PaymentPayload payload, PaymentRequirements requirements)
+      throws IOException {
+    return write(TYPE_PAYMENT, NO_ENTRY, codec.encodeRequest(payload, requirements));
+  }
+
+  /**
+   * Marks a payment as done: settled, or rejected by the facilitator for good. Failures are
+   * logged, the payment is then settled again after a restart.
+   *
+   * @param id the id returned by {@link #append}, or {@link #NO_ENTRY}
+   */
+  public void markSettled(long id) {
+    mark(TYPE_SETTLED, id);
+  }
+
+  /**
+   * Marks a payment whose content was not served, e.g. because the handler failed, so it is not
+   * settled after a restart.
+   *
+   * @param id the id returned by {@link #append}, or {@link #NO_ENTRY}
+   */
+  public void markAbandoned(long id) {
+    mark(TYPE_ABANDONED, id);
+  }
+
+  /**
+   * Number of segment files, including the one being written.
+   */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Stops the flush thread and forces everything written so far to disk. Payments that are not
+   * marked yet stay in the journal for the next run.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    LockSupport.unpark(flusher);
+    try {
+      flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      flush();
+      for (Segment segment : segments.values()) {
+        segment.release();
+      }
+    }
+  }
+
+  /* ======================== write ======================== */
+
+  private synchronized long write(byte type, long id, @Nullable ByteBuffer body)
+      throws IOException {
+    if (closed) {
+      throw new IOException("settlement journal is closed");
+    }
+    int length = HEADER_LENGTH + (body != null ? body.remaining() : 0);
+    if (length > segmentSize) {
+      throw new IOException("journal record of " + length + " bytes exceeds the segment size");
+    }
+    Segment segment = active;
+    if (segment.position + length > segmentSize) {
+      segment = openSegment(segment.number + 1);
+      // the flusher reads the old segment's position only after it sees the switch
+      active = segment;
+    }
+
+    int offset = segment.position;
+    long recordId = type == TYPE_PAYMENT ? (long) segment.number << 32 | offset : id;
+    MappedByteBuffer buffer = segment.buffer;
+    buffer.put(offset + 8, type);
+    buffer.putLong(offset + 9, recordId);
+    if (body != null) {
+      buffer.put(offset + HEADER_LENGTH, body, body.position(), body.remaining());
+    }
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.slice(offset + 8, length - 8));
+    buffer.putInt(offset + 4, (int) crc.getValue());
+    // the length goes last, until then the record reads as the end of the segment
+    buffer.putInt(offset, length);
+
+    if (type == TYPE_PAYMENT) {
+      segment.pending.incrementAndGet();
+    }
+    segment.position = offset + length;
+    return recordId;
+  }
+
+  private void mark(byte type, long id) {
+    if (id == NO_ENTRY) {
+      return;
+    }
+    Segment segment = segments.get((int) (id >>> 32));
+    try {
+      write(type, id, null);
+    } catch (IOException e) {
+      log.warn("x402 settlement journal could not mark payment {}: {}", id, e.toString());
+      return;
+    }
+    if (segment != null && segment.pending.decrementAndGet() == 0) {
+      synchronized (this) {
+        trimHead();
+      }
+    }
+  }
+
+  private Segment openSegment(int number) throws IOException {
+    Path path = directory.resolve(String.format("%010d%s", number, SEGMENT_SUFFIX));
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    Segment segment = new Segment(number, path);
+    try {
+      segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    segment.channel = channel;
+    segments.put(number, segment);
+    return segment;
+  }
+
+  /**
+   * Deletes leading segments without unmarked payments. Marks always follow their payment, so
+   * once every older segment is gone the marks in a segment are no longer needed either.
+   */
+  private void trimHead() {
+    Iterator<Segment> it = segments.values().iterator();
+    while (it.hasNext()) {
+      Segment segment = it.next();
+      if (segment == active || segment.pending.get() > 0 || segment.buffer != null) {
+        return;
+      }
+      it.remove();
+      try {
+        Files.deleteIfExists(segment.path);
+      } catch (IOException e) {
+        log.warn("x402 settlement journal could not delete {}: {}", segment.path, e.toString());
+      }
+    }
+  }
+
+  /* ======================== flush ======================== */
+
+  private void flushLoop() {
+    while (!closed) {
+      LockSupport.parkNanos(this, flushIntervalNanos);
+      try {
+        if (flush()) {
+          synchronized (this) {
+            trimHead();
+          }
+        }
+      } catch (RuntimeException e) {
+        log.error("x402 settlement journal flush failed", e);
+      }
+    }
+  }
+
+  /**
+   * Forces written records to disk and unmaps segments that are no longer written.
+   *
+   * @return whether a segment was unmapped
+   */
+  private boolean flush() {
+    boolean released = false;
+    for (Segment segment : segments.values()) {
+      MappedByteBuffer buffer = segment.buffer;
+      if (buffer == null) {
+        continue;
+      }
+      // decide before reading the position, a retired segment's position is final
+      boolean retired = segment != active;
+      int position = segment.position;
+      if (position > segment.flushed) {
+        buffer.force(segment.flushed, position - segment.flushed);
+        segment.flushed = position;
+      }
+      if (retired) {
+        segment.release();
+        released = true;
+      }
+    }
+    return released;
+  }
+
+  /* ======================== recovery ======================== */
+
+  private List<Entry> recover() throws IOException {
+    Set<Long> pending = new LinkedHashSet<>();
+    Map<Integer, MappedByteBuffer> mapped = new ConcurrentSkipListMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path path : files) {
+        String name = path.getFileName().toString();
+        int number;
+        try {
+          number = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          mapped.put(number, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        segments.put(number, new Segment(number, path));
+      }
+    }
+
+    for (Map.Entry<Integer, MappedByteBuffer> file : mapped.entrySet()) {
+      scan(file.getKey(), file.getValue(), pending);
+    }
+
+    List<Entry> entries = new ArrayList<>(pending.size());
+    for (long id : pending) {
+      MappedByteBuffer buffer = mapped.get((int) (id >>> 32));
+      int offset = (int) id;
+      byte[] body = new byte[buffer.getInt(offset) - HEADER_LENGTH];
+      buffer.get(offset + HEADER_LENGTH, body);
+      try {
+        SettleRequest request = Json.MAPPER.readValue(body, SettleRequest.class);
+        entries.add(new Entry(id, request.paymentPayload, request.paymentRequirements));
+        segments.get((int) (id >>> 32)).pending.incrementAndGet();
+      } catch (IOException e) {
+        log.error("x402 settlement journal dropped unreadable payment {}: {}", id, e.toString());
+      }
+    }
+    return entries;
+  }
+
+  private void scan(int number, MappedByteBuffer buffer, Set<Long> pending) {
+    int offset = 0;
+    while (offset + HEADER_LENGTH <= buffer.limit()) {
+      int length = buffer.getInt(offset);
+      if (length == 0) {
+        return;
+      }
+      if (length < HEADER_LENGTH || offset + length > buffer.limit()) {
+        log.warn("x402 settlement journal segment {} has a torn record at {}", number, offset);
+        return;
+      }
+      CRC32C crc = new CRC32C();
+      crc.update(buffer.slice(offset + 8, length - 8));
+      if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+        log.warn("x402 settlement journal segment {} has a corrupt record at {}", number, offset);
+        return;
+      }
+      byte type = buffer.get(offset + 8);
+      long id = buffer.getLong(offset + 9);
+      if (type == TYPE_PAYMENT) {
+        pending.add(id);
+      } else if (type == TYPE_SETTLED || type == TYPE_ABANDONED) {
+        pending.remove(id);
+      }
+      offset += length;
+    }
+  }
+
+  /* ======================== types ======================== */
+
+  /**
+   * A journaled payment.
+   *
+   * @param id           the id to pass to {@link #markSettled(long)}
+   * @param payload      the verified payment payload
+   * @param requirements the requirements to settle against
+   */
+  public record Entry(long id, PaymentPayload payload, PaymentRequirements requirements) {
+  }
+
+  /**
+   * The body of a journaled payment, as sent to {@code /settle}.
+   */
+  static final class SettleRequest {
+
+    public PaymentPayload paymentPayload;
+    public PaymentRequirements paymentRequirements;
+  }
+
+  private static final class Segment {
+
+    final int number;
+    final Path path;
+    final AtomicInteger pending = new AtomicInteger();
+
+    // written under the journal lock
+    volatile int position;
+    // only touched by the flusher, or under the journal lock once it stopped
+    int flushed;
+
+    @Nullable
+    volatile MappedByteBuffer buffer;
+    @Nullable
+    FileChannel channel;
+
+    Segment(int number, Path path) {
+      this.number = number;
+      this.path = path;
+    }
+
+    void release() {
+      buffer = null;
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          log.warn("x402 settlement journal could not close {}: {}", path, e.toString());
+        }
+        channel = null;
+      }
+    }
+  }
+}
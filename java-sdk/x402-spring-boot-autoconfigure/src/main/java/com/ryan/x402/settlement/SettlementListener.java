@@ -0,0 +1,41 @@
+package com.ryan.x402.settlement;
+
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import org.springframework.lang.Nullable;
+
+/**
+ * Callback for settlements that complete after the HTTP response has been sent.
+ * <p>
+ * In async settlement mode the {@code X-PAYMENT-RESPONSE} header is not added to the response,
+ * because settlement finishes after the handler's response is written. Applications that need the
+ * settlement result (transaction hash, payer) receive it here instead, e.g. to persist it or to
+ * expose it through a status endpoint.
+ */
+public interface SettlementListener {
+
+  /**
+   * Called when the facilitator settled the payment successfully.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements the payment was settled against
+   * @param response     the facilitator response
+   */
+  default void onSettled(PaymentPayload payload, PaymentRequirements requirements,
+      SettlementResponse response) {
+  }
+
+  /**
+   * Called when settlement failed for good, i.e. the facilitator rejected it or all retries were
+   * exhausted.
+   *
+   * @param payload      the verified payment payload
+   * @param requirements the requirements the payment was settled against
+   * @param response     the facilitator response, or {@code null} if no response was received
+   * @param error        the last error, or {@code null} if the facilitator rejected the payment
+   */
+  default void onFailed(PaymentPayload payload, PaymentRequirements requirements,
+      @Nullable SettlementResponse response, @Nullable Exception error) {
+  }
+}
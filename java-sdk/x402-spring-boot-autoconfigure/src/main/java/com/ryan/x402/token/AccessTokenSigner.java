@@ -0,0 +1,205 @@
+package com.ryan.x402.token;
+
+import com.ryan.x402.util.Hex;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.lang.Nullable;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Issues and checks stateless access tokens: proof that a payer paid for a window of access to
+ * the resources matching a path pattern.
+ * <p>
+ * A token is the base64url encoding of version (byte), key id (byte), expiry in unix seconds
+ * (long), payer address (20 bytes) and the UTF-8 path pattern, followed by an HMAC-SHA256 of all
+ * of it. Checking a token recomputes the MAC in memory and compares it in constant time.
+ * <p>
+ * Tokens are signed with the active key and accepted with any configured key, so a key is
+ * rotated by adding the new key, making it active, and removing the old key once the tokens it
+ * signed have expired.
+ */
+public class AccessTokenSigner {
+
+  /**
+   * 402 reason for a token whose MAC does not check out or whose key is unknown.
+   */
+  public static final String INVALID_TOKEN = "invalid_access_token";
+
+  /**
+   * 402 reason for a token past its expiry.
+   */
+  public static final String EXPIRED_TOKEN = "access_token_expired";
+
+  /**
+   * 402 reason for a token whose pattern does not cover the requested path.
+   */
+  public static final String RESOURCE_MISMATCH = "access_token_resource_mismatch";
+
+  private static final byte VERSION = 1;
+  private static final int ADDRESS_LENGTH = 20;
+  private static final int HEADER_LENGTH = 1 + 1 + 8 + ADDRESS_LENGTH;
+  private static final int MAC_LENGTH = 32;
+  private static final int MIN_SECRET_LENGTH = 32;
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+  private static final AntPathMatcher PATHS = new AntPathMatcher();
+
+  private final ThreadLocal<Mac>[] macs;
+  private final int activeKey;
+
+  /**
+   * Creates a signer.
+   *
+   * @param keys      HMAC secrets by key id (0 to 255), each at least 32 bytes
+   * @param activeKey id of the key new tokens are signed with
+   * @throws IllegalArgumentException if a key id or secret is invalid or the active key is missing
+   */
+  @SuppressWarnings("unchecked")
+  public AccessTokenSigner(Map<Integer, byte[]> keys, int activeKey) {
+    this.macs = new ThreadLocal[256];
+    for (Map.Entry<Integer, byte[]> key : keys.entrySet()) {
+      int id = key.getKey();
+      if (id < 0 || id > 255) {
+        throw new IllegalArgumentException("access token key id must be 0-255: " + id);
+      }
+      if (key.getValue().length < MIN_SECRET_LENGTH) {
+        throw new IllegalArgumentException(
+            "access token key " + id + " must be at least " + MIN_SECRET_LENGTH + " bytes");
+      }
+      SecretKeySpec secret = new SecretKeySpec(key.getValue(), ALGORITHM);
+      macs[id] = ThreadLocal.withInitial(() -> {
+        try {
+          Mac mac = Mac.getInstance(ALGORITHM);
+          mac.init(secret);
+          return mac;
+        } catch (GeneralSecurityException e) {
+          throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+      });
+    }
+    if (activeKey < 0 || activeKey > 255 || macs[activeKey] == null) {
+      throw new IllegalArgumentException("active access token key " + activeKey
+          + " is not configured");
+    }
+    this.activeKey = activeKey;
+  }
+
+  /**
+   * Issues a token with the active key.
+   *
+   * @param payer     the payer address
+   * @param pattern   Ant-style pattern of the request paths the token grants, e.g.
+   *                  {@code /weather/**}
+   * @param expiresAt unix seconds after which the token is no longer accepted
+   * @return the token, URL-safe base64 without padding
+   * @throws IllegalArgumentException if the payer is not an EVM address
+   */
+  public String issue(String payer, String pattern, long expiresAt) {
+    byte[] path = pattern.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer token = ByteBuffer.allocate(HEADER_LENGTH + path.length + MAC_LENGTH);
+    token.put(VERSION).put((byte) activeKey).putLong(expiresAt);
+    if (!Hex.decode(payer, token.array(), token.position(), ADDRESS_LENGTH)) {
+      throw new IllegalArgumentException("payer is not an EVM address: " + payer);
+    }
+    token.position(token.position() + ADDRESS_LENGTH).put(path);
+    Mac mac = macs[activeKey].get();
+    mac.update(token.array(), 0, token.position());
+    try {
+      mac.doFinal(token.array(), token.position());
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+  }
+
+  /**
+   * Whether a path holds pattern characters, so it cannot be granted as a literal path.
+   *
+   * @param path a request path
+   * @return {@code true} if the path would match more than itself
+   */
+  public static boolean isPattern(String path) {
+    return PATHS.isPattern(path);
+  }
+
+  /**
+   * Checks a token's MAC. Expiry and path are left to {@link Grant#check}.
+   *
+   * @param token the token as issued
+   * @return the grant, or {@code null} if the token is malformed, signed with an unknown key or
+   * its MAC does not match
+   */
+  @Nullable
+  public Grant verify(String token) {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(token);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (bytes.length < HEADER_LENGTH + MAC_LENGTH || bytes[0] != VERSION) {
+      return null;
+    }
+    ThreadLocal<Mac> key = macs[bytes[1] & 0xff];
+    if (key == null) {
+      return null;
+    }
+    Mac mac = key.get();
+    int signed = bytes.length - MAC_LENGTH;
+    mac.update(bytes, 0, signed);
+    byte[] expected = mac.doFinal();
+    byte[] actual = new byte[MAC_LENGTH];
+    System.arraycopy(bytes, signed, actual, 0, MAC_LENGTH);
+    if (!MessageDigest.isEqual(expected, actual)) {
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, signed - 2);
+    long expiresAt = buffer.getLong();
+    char[] payer = new char[2 + 2 * ADDRESS_LENGTH];
+    payer[0] = '0';
+    payer[1] = 'x';
+    for (int i = 0; i < ADDRESS_LENGTH; i++) {
+      int b = buffer.get() & 0xff;
+      payer[2 + 2 * i] = DIGITS[b >>> 4];
+      payer[3 + 2 * i] = DIGITS[b & 0xf];
+    }
+    String pattern = new String(bytes, HEADER_LENGTH, signed - HEADER_LENGTH,
+        StandardCharsets.UTF_8);
+    return new Grant(new String(payer), pattern, expiresAt);
+  }
+
+  /**
+   * The access a valid token grants.
+   *
+   * @param payer     the payer address, lower case
+   * @param pattern   the request paths the token grants
+   * @param expiresAt unix seconds after which the token is no longer accepted
+   */
+  public record Grant(String payer, String pattern, long expiresAt) {
+
+    /**
+     * Checks the grant against a request.
+     *
+     * @param path       the decoded and normalized request path, including any context path
+     * @param nowSeconds current unix time in seconds
+     * @return the 402 reason, or {@code null} if the request is granted
+     */
+    @Nullable
+    public String check(String path, long nowSeconds) {
+      if (nowSeconds > expiresAt) {
+        return EXPIRED_TOKEN;
+      }
+      if (!pattern.equals(path) && !PATHS.match(pattern, path)) {
+        return RESOURCE_MISMATCH;
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.ryan.x402.facilitator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class BulkheadTest {
+
+  @Test
+  void rejectsCallsBeyondTheLimit() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("verify", 2, Duration.ZERO);
+
+    bulkhead.acquire();
+    bulkhead.tryAcquire();
+
+    assertThat(bulkhead.getAvailable()).isZero();
+    assertThatThrownBy(bulkhead::tryAcquire)
+        .isInstanceOf(FacilitatorUnavailableException.class)
+        .hasMessageContaining("verify bulkhead is full");
+    assertThatThrownBy(bulkhead::acquire).isInstanceOf(FacilitatorUnavailableException.class);
+  }
+
+  @Test
+  void releasedSlotsCanBeTakenAgain() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("settle", 1, Duration.ZERO);
+
+    bulkhead.tryAcquire();
+    bulkhead.release();
+    bulkhead.tryAcquire();
+
+    assertThat(bulkhead.getAvailable()).isZero();
+  }
+
+  @Test
+  void blockingCallersWaitForAFreeSlot() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("settle", 1, Duration.ofSeconds(5));
+    bulkhead.acquire();
+
+    Thread releaser = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      bulkhead.release();
+    });
+    releaser.start();
+
+    bulkhead.acquire();
+    releaser.join();
+    assertThat(bulkhead.getAvailable()).isZero();
+  }
+
+  @Test
+  void waitIsBounded() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("settle", 1, Duration.ofMillis(20));
+    bulkhead.acquire();
+
+    long start = System.nanoTime();
+    assertThatThrownBy(bulkhead::acquire).isInstanceOf(FacilitatorUnavailableException.class);
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(20).toNanos());
+  }
+}
@@ -0,0 +1,133 @@
+package com.ryan.x402.facilitator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ryan.x402.facilitator.CircuitBreaker.State;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private static final long FAST = Duration.ofMillis(10).toNanos();
+  private static final long SLOW = Duration.ofSeconds(2).toNanos();
+  private static final Duration OPEN = Duration.ofMillis(50);
+
+  private final CircuitBreaker breaker =
+      new CircuitBreaker("test", 50, 100, Duration.ofSeconds(1), 10, 4, OPEN, 2);
+
+  @Test
+  void staysClosedBelowMinimumCalls() throws Exception {
+    call(false, FAST);
+    call(false, FAST);
+    call(false, FAST);
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void opensAtFailureRateThreshold() throws Exception {
+    call(true, FAST);
+    call(false, FAST);
+    call(true, FAST);
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+    call(false, FAST);
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThatThrownBy(breaker::acquirePermission)
+        .isInstanceOf(FacilitatorUnavailableException.class)
+        .hasMessageContaining("is open");
+  }
+
+  @Test
+  void opensAtSlowCallRateThreshold() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      call(false, SLOW);
+    }
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void oldOutcomesLeaveTheSlidingWindow() throws Exception {
+    call(false, FAST);
+    call(false, FAST);
+    call(false, FAST);
+    call(true, FAST);
+    call(true, FAST);
+    for (int i = 0; i < 10; i++) {
+      call(false, FAST);
+    }
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+    // both failures have left the window of ten calls, so it takes five new ones to open
+    for (int i = 0; i < 4; i++) {
+      call(true, FAST);
+    }
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    call(true, FAST);
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void halfOpenTrialsCloseTheBreaker() throws Exception {
+    open();
+    Thread.sleep(OPEN.toMillis() + 10);
+
+    breaker.acquirePermission();
+    assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+    breaker.acquirePermission();
+    assertThatThrownBy(breaker::acquirePermission)
+        .isInstanceOf(FacilitatorUnavailableException.class)
+        .hasMessageContaining("half-open");
+
+    breaker.onSuccess(FAST);
+    breaker.onSuccess(FAST);
+
+    assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    assertThatCode(breaker::acquirePermission).doesNotThrowAnyException();
+  }
+
+  @Test
+  void failedHalfOpenTrialsOpenTheBreakerAgain() throws Exception {
+    open();
+    Thread.sleep(OPEN.toMillis() + 10);
+
+    breaker.acquirePermission();
+    breaker.acquirePermission();
+    breaker.onSuccess(FAST);
+    breaker.onError(FAST);
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+    assertThatThrownBy(breaker::acquirePermission)
+        .isInstanceOf(FacilitatorUnavailableException.class);
+  }
+
+  @Test
+  void lateResultsWhileOpenAreIgnored() throws Exception {
+    open();
+
+    breaker.onSuccess(FAST);
+    breaker.onSuccess(FAST);
+
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  private void open() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      call(true, FAST);
+    }
+    assertThat(breaker.getState()).isEqualTo(State.OPEN);
+  }
+
+  private void call(boolean failed, long nanos) throws Exception {
+    breaker.acquirePermission();
+    if (failed) {
+      breaker.onError(nanos);
+    } else {
+      breaker.onSuccess(nanos);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.ryan.x402.facilitator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class FacilitatorCapabilitiesTest {
+
+  private static final Kind EXACT_BASE_SEPOLIA = new Kind("exact", "base-sepolia");
+
+  private final StubFacilitator facilitator = new StubFacilitator();
+
+  @Test
+  void everythingIsSupportedUntilTheFirstRefresh() {
+    FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitator);
+
+    assertThat(capabilities.getKinds()).isNull();
+    assertThat(capabilities.supports("exact", "base")).isTrue();
+  }
+
+  @Test
+  void refreshReplacesTheKinds() throws Exception {
+    FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitator);
+    facilitator.kinds = Set.of(EXACT_BASE_SEPOLIA);
+
+    capabilities.refresh();
+
+    assertThat(capabilities.supports("exact", "base-sepolia")).isTrue();
+    assertThat(capabilities.supports("exact", "base")).isFalse();
+  }
+
+  @Test
+  void failedOrEmptyRefreshKeepsThePreviousKinds() throws Exception {
+    FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitator);
+    facilitator.kinds = Set.of(EXACT_BASE_SEPOLIA);
+    capabilities.refresh();
+
+    facilitator.kinds = Set.of();
+    capabilities.refresh();
+    facilitator.failure = new IOException("facilitator unavailable");
+    assertThatThrownBy(capabilities::refresh).isInstanceOf(IOException.class);
+
+    assertThat(capabilities.getKinds()).containsExactly(EXACT_BASE_SEPOLIA);
+  }
+
+  @Test
+  void startFetchesRightAwayInTheBackground() throws Exception {
+    facilitator.kinds = Set.of(EXACT_BASE_SEPOLIA);
+    try (FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitator)) {
+      capabilities.start(Duration.ofHours(1));
+
+      assertThat(facilitator.called.await(5, TimeUnit.SECONDS)).isTrue();
+      while (capabilities.getKinds() == null) {
+        Thread.sleep(1);
+      }
+      assertThat(capabilities.supports("exact", "base")).isFalse();
+    }
+  }
+
+  @Test
+  void startWaitsAnIntervalAfterASuccessfulRefresh() throws Exception {
+    facilitator.kinds = Set.of(EXACT_BASE_SEPOLIA);
+    try (FacilitatorCapabilities capabilities = new FacilitatorCapabilities(facilitator)) {
+      capabilities.refresh();
+      facilitator.called = new CountDownLatch(1);
+
+      capabilities.start(Duration.ofHours(1));
+
+      assertThat(facilitator.called.await(100, TimeUnit.MILLISECONDS)).isFalse();
+    }
+  }
+
+  private static final class StubFacilitator implements FacilitatorClient {
+
+    volatile Set<Kind> kinds = Set.of();
+    volatile IOException failure;
+    volatile CountDownLatch called = new CountDownLatch(1);
+
+    @Override
+    public Set<Kind> supported() throws IOException {
+      called.countDown();
+      if (failure != null) {
+        throw failure;
+      }
+      return kinds;
+    }
+
+    @Override
+    public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SettlementResponse settle(PaymentPayload paymentHeader, PaymentRequirements req) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
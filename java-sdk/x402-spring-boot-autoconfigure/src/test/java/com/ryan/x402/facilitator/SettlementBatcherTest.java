@@ -0,0 +1,272 @@
+package com.ryan.x402.facilitator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SettlementBatcherTest {
+
+  private final StubFacilitator facilitator = new StubFacilitator();
+  private final PaymentRequirements requirements = requirements();
+  private SettlementBatcher batcher;
+
+  @AfterEach
+  void close() throws Exception {
+    facilitator.gate.countDown();
+    if (batcher != null) {
+      batcher.close();
+    }
+    facilitator.server.shutdownNow();
+  }
+
+  @Test
+  void everyCallerReceivesTheResponseForItsOwnPayment() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 8, Duration.ofMillis(20), 64);
+
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>();
+    for (int n = 0; n < 20; n++) {
+      results.add(batcher.settleAsync(payment(n), requirements));
+    }
+
+    for (int n = 0; n < 20; n++) {
+      assertThat(results.get(n).get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(n));
+    }
+    assertThat(facilitator.batches).allMatch(size -> size <= 8);
+    assertThat(facilitator.batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(20);
+    assertThat(facilitator.singles.get()).isZero();
+  }
+
+  @Test
+  void blockingSettleWaitsForItsBatch() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 8, Duration.ofMillis(5), 64);
+
+    assertThat(batcher.settle(payment(7), requirements).txHash).isEqualTo(nonce(7));
+  }
+
+  @Test
+  void fullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 4, Duration.ofSeconds(30), 64);
+
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>();
+    for (int n = 0; n < 4; n++) {
+      results.add(batcher.settleAsync(payment(n), requirements));
+    }
+
+    CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    assertThat(facilitator.batches).containsExactly(4);
+  }
+
+  @Test
+  void loneSettlementIsSentOnceItsWindowEnds() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 100, Duration.ofMillis(100), 64);
+
+    long start = System.nanoTime();
+    batcher.settleAsync(payment(1), requirements).get(5, TimeUnit.SECONDS);
+
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(
+        TimeUnit.MILLISECONDS.toNanos(90));
+    assertThat(facilitator.batches).containsExactly(1);
+  }
+
+  @Test
+  void settlementsBypassTheBatcherWhenItsQueueIsFull() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 1, Duration.ZERO, 2);
+    facilitator.gate = new CountDownLatch(1);
+
+    // the dispatcher is stuck sending the first, the next two fill the queue
+    CompletableFuture<SettlementResponse> first = batcher.settleAsync(payment(1), requirements);
+    assertThat(facilitator.entered.await(5, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<SettlementResponse> second = batcher.settleAsync(payment(2), requirements);
+    CompletableFuture<SettlementResponse> third = batcher.settleAsync(payment(3), requirements);
+    assertThat(batcher.getQueueSize()).isEqualTo(2);
+
+    CompletableFuture<SettlementResponse> bypassed =
+        batcher.settleAsync(payment(4), requirements);
+    assertThat(bypassed.get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(4));
+    assertThat(facilitator.singles.get()).isEqualTo(1);
+
+    facilitator.gate.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(1));
+    assertThat(second.get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(2));
+    assertThat(third.get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(3));
+    assertThat(facilitator.batches).containsExactly(1, 1, 1);
+  }
+
+  @Test
+  void closeSendsQueuedSettlementsWithoutWaitingForTheWindow() throws Exception {
+    batcher = new SettlementBatcher(facilitator, 100, Duration.ofSeconds(30), 64);
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>();
+    for (int n = 0; n < 3; n++) {
+      results.add(batcher.settleAsync(payment(n), requirements));
+    }
+
+    long start = System.nanoTime();
+    batcher.close();
+
+    assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+    for (int n = 0; n < 3; n++) {
+      assertThat(results.get(n).get(5, TimeUnit.SECONDS).txHash).isEqualTo(nonce(n));
+    }
+    assertThat(facilitator.batches).containsExactly(3);
+    assertThat(facilitator.closed).isTrue();
+    // once closed, settlements go straight to the delegate
+    assertThat(batcher.settleAsync(payment(9), requirements).get(5, TimeUnit.SECONDS).txHash)
+        .isEqualTo(nonce(9));
+    assertThat(facilitator.singles.get()).isEqualTo(1);
+  }
+
+  @Test
+  void batchingCutsRoundTripsToAFacilitatorServingOneRequestAtATime() throws Exception {
+    facilitator.roundTripMillis = 10;
+    int payments = 64;
+
+    long start = System.nanoTime();
+    settleAll(facilitator, payments);
+    long unbatched = System.nanoTime() - start;
+
+    batcher = new SettlementBatcher(facilitator, 16, Duration.ofMillis(5), 256);
+    start = System.nanoTime();
+    settleAll(batcher, payments);
+    long batched = System.nanoTime() - start;
+
+    assertThat(facilitator.singles.get()).isEqualTo(payments);
+    assertThat(facilitator.batches.size()).isLessThanOrEqualTo(payments / 4);
+    assertThat(batched * 4).isLessThan(unbatched);
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private void settleAll(FacilitatorClient client, int payments) throws Exception {
+    List<CompletableFuture<SettlementResponse>> results = new ArrayList<>();
+    for (int n = 0; n < payments; n++) {
+      results.add(client.settleAsync(payment(n), requirements));
+    }
+    for (int n = 0; n < payments; n++) {
+      assertThat(results.get(n).get(10, TimeUnit.SECONDS).txHash).isEqualTo(nonce(n));
+    }
+  }
+
+  private static String nonce(int n) {
+    return "0x" + "00".repeat(28) + String.format("%08x", n);
+  }
+
+  private static PaymentPayload payment(int n) {
+    PaymentPayload payload = new PaymentPayload();
+    payload.x402Version = 1;
+    payload.scheme = "exact";
+    payload.network = "base-sepolia";
+    payload.payload = Map.of(
+        "signature", "0xsignature",
+        "authorization", Map.of(
+            "from", "0x857b06519E91e3A54538791bDbb0E22373e36b66",
+            "to", "0x209693Bc6afc0C5328bA36FaF03C514EF312287C",
+            "value", "10000",
+            "validAfter", "0",
+            "validBefore", "4102444800",
+            "nonce", nonce(n)));
+    return payload;
+  }
+
+  private static PaymentRequirements requirements() {
+    PaymentRequirements pr = new PaymentRequirements();
+    pr.scheme = "exact";
+    pr.network = "base-sepolia";
+    pr.maxAmountRequired = "10000";
+    pr.payTo = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+    pr.asset = "0x036CbD53842c5426634e7929541eC2318f3dCF7e";
+    return pr;
+  }
+
+  /**
+   * Serves one request, single or batch, at a time and answers each payment with its nonce as
+   * the transaction hash.
+   */
+  private static final class StubFacilitator implements FacilitatorClient, AutoCloseable {
+
+    final ExecutorService server = Executors.newSingleThreadExecutor();
+    final List<Integer> batches = new CopyOnWriteArrayList<>();
+    final AtomicInteger singles = new AtomicInteger();
+    final CountDownLatch entered = new CountDownLatch(1);
+    volatile CountDownLatch gate = new CountDownLatch(0);
+    volatile long roundTripMillis;
+    volatile boolean closed;
+
+    @Override
+    public CompletableFuture<SettlementResponse> settleAsync(PaymentPayload paymentPayload,
+        PaymentRequirements req) {
+      singles.incrementAndGet();
+      return roundTrip(List.of(new SettlementRequest(paymentPayload, req))).get(0);
+    }
+
+    @Override
+    public List<CompletableFuture<SettlementResponse>> settleBatchAsync(
+        List<SettlementRequest> batch) {
+      batches.add(batch.size());
+      entered.countDown();
+      try {
+        gate.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return roundTrip(batch);
+    }
+
+    private List<CompletableFuture<SettlementResponse>> roundTrip(
+        List<SettlementRequest> batch) {
+      List<CompletableFuture<SettlementResponse>> results = new ArrayList<>();
+      batch.forEach(request -> results.add(new CompletableFuture<>()));
+      server.execute(() -> {
+        try {
+          Thread.sleep(roundTripMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          SettlementResponse response = new SettlementResponse();
+          response.success = true;
+          response.txHash = batch.get(i).payload().exactPayload().authorization.nonce;
+          results.get(i).complete(response);
+        }
+      });
+      return results;
+    }
+
+    @Override
+    public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SettlementResponse settle(PaymentPayload paymentPayload, PaymentRequirements req) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Kind> supported() {
+      return Set.of();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
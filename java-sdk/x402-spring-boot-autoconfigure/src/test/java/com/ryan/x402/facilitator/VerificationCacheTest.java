@@ -0,0 +1,199 @@
+package com.ryan.x402.facilitator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class VerificationCacheTest {
+
+  // fixed, so payments built in different seconds still share their key
+  private static final String VALID_BEFORE =
+      Long.toString(System.currentTimeMillis() / 1000 + 600);
+
+  private final StubFacilitator facilitator = new StubFacilitator();
+  private final PaymentRequirements requirements = requirements();
+
+  @Test
+  void concurrentVerificationsOfOnePaymentCallTheFacilitatorOnce() throws Exception {
+    VerificationCache cache = new VerificationCache(100, Duration.ofMinutes(1));
+    facilitator.gate = new CountDownLatch(1);
+    int callers = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      List<Future<VerificationResponse>> results = new ArrayList<>();
+      for (int i = 0; i < callers; i++) {
+        results.add(
+            executor.submit(() -> cache.verify(facilitator, payment("0x01"), requirements)));
+      }
+      assertThat(facilitator.entered.await(5, TimeUnit.SECONDS)).isTrue();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (cache.getHits() < callers - 1 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      facilitator.gate.countDown();
+
+      for (Future<VerificationResponse> result : results) {
+        assertThat(result.get(5, TimeUnit.SECONDS).isValid).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(facilitator.calls.get()).isEqualTo(1);
+    assertThat(cache.getMisses()).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(callers - 1);
+  }
+
+  @Test
+  void concurrentAsyncVerificationsShareOneCall() {
+    VerificationCache cache = new VerificationCache(100, Duration.ofMinutes(1));
+    CompletableFuture<VerificationResponse> pending = new CompletableFuture<>();
+    AtomicInteger calls = new AtomicInteger();
+
+    var first = cache.verifyAsync(payment("0x01"), requirements, () -> {
+      calls.incrementAndGet();
+      return pending;
+    });
+    var second = cache.verifyAsync(payment("0x01"), requirements, () -> {
+      calls.incrementAndGet();
+      return pending;
+    });
+    pending.complete(valid());
+
+    assertThat(first.join().isValid).isTrue();
+    assertThat(second).isSameAs(first);
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  void differentNoncesAreVerifiedSeparately() throws Exception {
+    VerificationCache cache = new VerificationCache(100, Duration.ofMinutes(1));
+
+    cache.verify(facilitator, payment("0x01"), requirements);
+    cache.verify(facilitator, payment("0x02"), requirements);
+
+    assertThat(facilitator.calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  void failedCallsAreNotCached() throws Exception {
+    VerificationCache cache = new VerificationCache(100, Duration.ofMinutes(1));
+    facilitator.failures.set(1);
+
+    assertThatThrownBy(() -> cache.verify(facilitator, payment("0x01"), requirements))
+        .isInstanceOf(IOException.class);
+    assertThat(cache.verify(facilitator, payment("0x01"), requirements).isValid).isTrue();
+    assertThat(facilitator.calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  void invalidatedEntriesAreVerifiedAgain() throws Exception {
+    VerificationCache cache = new VerificationCache(100, Duration.ofMinutes(1));
+
+    cache.verify(facilitator, payment("0x01"), requirements);
+    cache.invalidate(payment("0x01"), requirements);
+    cache.verify(facilitator, payment("0x01"), requirements);
+
+    assertThat(facilitator.calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  void fullCacheFallsThroughToTheFacilitator() throws Exception {
+    VerificationCache cache = new VerificationCache(1, Duration.ofMinutes(1));
+
+    cache.verify(facilitator, payment("0x01"), requirements);
+    cache.verify(facilitator, payment("0x02"), requirements);
+    cache.verify(facilitator, payment("0x02"), requirements);
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(facilitator.calls.get()).isEqualTo(3);
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private static PaymentPayload payment(String nonce) {
+    PaymentPayload payload = new PaymentPayload();
+    payload.x402Version = 1;
+    payload.scheme = "exact";
+    payload.network = "base-sepolia";
+    payload.payload = Map.of(
+        "signature", "0xsignature",
+        "authorization", Map.of(
+            "from", "0x857b06519E91e3A54538791bDbb0E22373e36b66",
+            "to", "0x209693Bc6afc0C5328bA36FaF03C514EF312287C",
+            "value", "10000",
+            "validAfter", "0",
+            "validBefore", VALID_BEFORE,
+            "nonce", nonce));
+    return payload;
+  }
+
+  private static PaymentRequirements requirements() {
+    PaymentRequirements pr = new PaymentRequirements();
+    pr.scheme = "exact";
+    pr.network = "base-sepolia";
+    pr.maxAmountRequired = "10000";
+    pr.payTo = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+    pr.asset = "0x036CbD53842c5426634e7929541eC2318f3dCF7e";
+    pr.resource = "http://localhost/weather";
+    pr.maxTimeoutSeconds = 30;
+    return pr;
+  }
+
+  private static VerificationResponse valid() {
+    VerificationResponse vr = new VerificationResponse();
+    vr.isValid = true;
+    return vr;
+  }
+
+  private static final class StubFacilitator implements FacilitatorClient {
+
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final CountDownLatch entered = new CountDownLatch(1);
+    volatile CountDownLatch gate;
+
+    @Override
+    public VerificationResponse verify(PaymentPayload paymentPayload, PaymentRequirements req)
+        throws IOException, InterruptedException {
+      calls.incrementAndGet();
+      entered.countDown();
+      CountDownLatch g = gate;
+      if (g != null) {
+        g.await();
+      }
+      if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+        throw new IOException("facilitator unavailable");
+      }
+      return valid();
+    }
+
+    @Override
+    public SettlementResponse settle(PaymentPayload paymentHeader, PaymentRequirements req) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Kind> supported() {
+      return Set.of();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.ryan.x402.intereptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.ryan.x402.annotation.X402Payment;
+import java.lang.reflect.Method;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.method.HandlerMethod;
+
+class PaymentEndpointRegistryTest {
+
+  private static final String PAY_TO = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+
+  private final PaymentEndpointRegistry registry =
+      new PaymentEndpointRegistry(PAY_TO, "base-sepolia", "0xasset", 30);
+
+  @Test
+  void inheritedMethodTakesClassAnnotationOfEachController() throws Exception {
+    Method forecast = BaseController.class.getMethod("forecast");
+
+    PaymentEndpoint cheap = registry.resolve(new HandlerMethod(new CheapController(), forecast));
+    PaymentEndpoint premium =
+        registry.resolve(new HandlerMethod(new PremiumController(), forecast));
+
+    assertThat(cheap.getMaxAmountRequired()).isEqualTo("10000");
+    assertThat(premium.getMaxAmountRequired()).isEqualTo("2000000");
+    assertThat(cheap.getId()).isEqualTo(CheapController.class.getName() + "#forecast()");
+    assertThat(premium.getId()).isEqualTo(PremiumController.class.getName() + "#forecast()");
+    assertThat(registry.getEndpoints()).containsExactlyInAnyOrder(cheap, premium);
+  }
+
+  @Test
+  void resolvesTheRegisteredEndpoint() throws Exception {
+    Method forecast = BaseController.class.getMethod("forecast");
+    PaymentEndpoint registered =
+        registry.register(new HandlerMethod(new CheapController(), forecast));
+
+    assertThat(registry.resolve(new HandlerMethod(new CheapController(), forecast)))
+        .isSameAs(registered);
+  }
+
+  @Test
+  void handlersWithoutAnnotationAreNotPaid() throws Exception {
+    Method forecast = BaseController.class.getMethod("forecast");
+
+    assertThat(registry.resolve(new HandlerMethod(new FreeController(), forecast))).isNull();
+    assertThat(registry.getEndpoints()).isEmpty();
+  }
+
+  @Test
+  void extraCarriesTheConfiguredAssetDomain() throws Exception {
+    registry.setAssetDomain("EURC", "1");
+    PaymentEndpoint endpoint = registry.resolve(
+        new HandlerMethod(new CheapController(), BaseController.class.getMethod("forecast")));
+
+    assertThat(endpoint.requirementsFor("http://localhost/forecast").extra)
+        .containsEntry("name", "EURC")
+        .containsEntry("version", "1");
+  }
+
+  @Test
+  void assetDomainCannotChangeAfterRegistration() throws Exception {
+    registry.register(
+        new HandlerMethod(new CheapController(), BaseController.class.getMethod("forecast")));
+
+    assertThatThrownBy(() -> registry.setAssetDomain("EURC", "1"))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void invalidPriceFailsRegistration() throws Exception {
+    Method forecast = BaseController.class.getMethod("forecast");
+
+    assertThatThrownBy(
+        () -> registry.register(new HandlerMethod(new InvalidController(), forecast)))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("@X402Payment.price");
+  }
+
+  public static class BaseController {
+
+    public String forecast() {
+      return "sunny";
+    }
+  }
+
+  @X402Payment(price = "0.01")
+  public static class CheapController extends BaseController {
+  }
+
+  @X402Payment(price = "2")
+  public static class PremiumController extends BaseController {
+  }
+
+  public static class FreeController extends BaseController {
+  }
+
+  @X402Payment(price = "-1")
+  public static class InvalidController extends BaseController {
+  }
+}
@@ -0,0 +1,26 @@
+package com.ryan.x402.intereptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class X402InterceptorTest {
+
+  @ParameterizedTest
+  @CsvSource({
+      "'', /weather/premium, /weather/premium",
+      "'', /weather/..;/premium, /premium",
+      "'', /weather/%2e%2e/premium, /premium",
+      "'', /weather/./today;jsessionid=1, /weather/today",
+      "'', /weather//today, /weather/today",
+      "/app, /app/weather/..;/premium, /app/premium",
+  })
+  void accessPathIsDecodedAndNormalized(String contextPath, String requested, String checked) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", requested);
+    request.setContextPath(contextPath);
+
+    assertThat(X402Interceptor.accessPath(request)).isEqualTo(checked);
+  }
+}
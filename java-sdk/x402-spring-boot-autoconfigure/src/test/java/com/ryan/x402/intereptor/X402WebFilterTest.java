@@ -0,0 +1,200 @@
+package com.ryan.x402.intereptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ryan.x402.annotation.X402Payment;
+import com.ryan.x402.facilitator.ReactiveFacilitatorClient;
+import com.ryan.x402.model.Kind;
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import com.ryan.x402.model.SettlementResponse;
+import com.ryan.x402.model.VerificationResponse;
+import com.ryan.x402.token.AccessTokenSigner;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class X402WebFilterTest {
+
+  private static final String PAY_TO = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+
+  private final CountingHandlerMapping mapping = new CountingHandlerMapping();
+  private final AccessTokenSigner signer =
+      new AccessTokenSigner(Map.of(1, "0123456789abcdef0123456789abcdef".getBytes()), 1);
+  private final AtomicBoolean chained = new AtomicBoolean();
+  private X402WebFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    GenericApplicationContext context = new GenericApplicationContext();
+    context.registerBean(WeatherController.class);
+    context.refresh();
+    mapping.setApplicationContext(context);
+    mapping.afterPropertiesSet();
+
+    PaymentEndpointRegistry registry =
+        new PaymentEndpointRegistry(PAY_TO, "base-sepolia", "0xasset", 30);
+    registry.registerAll(mapping.getHandlerMethods().values());
+    filter = new X402WebFilter(registry, new UnusedFacilitator(), List.of(mapping));
+    filter.setAccessTokenSigner(signer);
+  }
+
+  @Test
+  void unpaidPathSkipsTheHandlerLookup() {
+    filter(MockServerHttpRequest.get("/free"));
+
+    assertThat(chained).isTrue();
+    assertThat(mapping.lookups.get()).isZero();
+  }
+
+  @Test
+  void unpaidPathWithPaymentHeaderSkipsTheHandlerLookup() {
+    filter(MockServerHttpRequest.get("/free").header("X-PAYMENT", "anything"));
+
+    assertThat(chained).isTrue();
+    assertThat(mapping.lookups.get()).isZero();
+  }
+
+  @Test
+  void paidPathWithoutPaymentIsRejected() {
+    ServerWebExchange exchange = filter(MockServerHttpRequest.get("/weather/premium"));
+
+    assertThat(chained).isFalse();
+    assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PAYMENT_REQUIRED);
+    assertThat(mapping.lookups.get()).isEqualTo(1);
+  }
+
+  @Test
+  void paidPathWithPathVariableIsRejected() {
+    ServerWebExchange exchange = filter(MockServerHttpRequest.get("/weather/city/Paris"));
+
+    assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PAYMENT_REQUIRED);
+  }
+
+  @Test
+  void accessTokenIsAcceptedWithoutPayment() {
+    String token = signer.issue(PAYER, "/weather/**", System.currentTimeMillis() / 1000 + 60);
+
+    filter(MockServerHttpRequest.get("/weather/premium").header("X-PAYMENT-TOKEN", token));
+
+    assertThat(chained).isTrue();
+  }
+
+  @Test
+  void accessTokenForAnotherPathIsRejected() {
+    String token = signer.issue(PAYER, "/other/**", System.currentTimeMillis() / 1000 + 60);
+
+    ServerWebExchange exchange = filter(
+        MockServerHttpRequest.get("/weather/premium").header("X-PAYMENT-TOKEN", token));
+
+    assertThat(chained).isFalse();
+    assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PAYMENT_REQUIRED);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "/weather/premium, /weather/premium",
+      "/weather/..;/premium, /premium",
+      "/weather/%2e%2e/premium, /premium",
+      "/weather/./today;jsessionid=1, /weather/today",
+      "/weather//today, /weather/today",
+  })
+  void accessPathIsDecodedAndNormalized(String requested, String checked) {
+    assertThat(X402WebFilter.accessPath(rawRequest(requested))).isEqualTo(checked);
+  }
+
+  @Test
+  void accessTokenDoesNotCoverPathsEscapingItsPattern() {
+    AccessTokenSigner.Grant grant = signer.verify(
+        signer.issue(PAYER, "/weather/**", System.currentTimeMillis() / 1000 + 60));
+    String path = X402WebFilter.accessPath(rawRequest("/weather/..;/premium"));
+
+    assertThat(grant.check(path, 0)).isEqualTo(AccessTokenSigner.RESOURCE_MISMATCH);
+  }
+
+  private ServerWebExchange filter(MockServerHttpRequest.BaseBuilder<?> request) {
+    MockServerWebExchange exchange = MockServerWebExchange.from(request);
+    filter.filter(exchange, ex -> {
+      chained.set(true);
+      return Mono.empty();
+    }).block();
+    return exchange;
+  }
+
+  /**
+   * A request for the path as sent, without encoding it again.
+   */
+  private static MockServerHttpRequest rawRequest(String path) {
+    return MockServerHttpRequest.method(HttpMethod.GET, URI.create(path)).build();
+  }
+
+  @RestController
+  static class WeatherController {
+
+    @GetMapping("/free")
+    public String free() {
+      return "free";
+    }
+
+    @X402Payment(price = "0.01", accessWindow = "1h", accessPattern = "/weather/**")
+    @GetMapping("/weather/premium")
+    public String premium() {
+      return "premium";
+    }
+
+    @X402Payment(price = "0.01")
+    @GetMapping("/weather/city/{name}")
+    public String city() {
+      return "city";
+    }
+  }
+
+  private static final class CountingHandlerMapping extends RequestMappingHandlerMapping {
+
+    final AtomicInteger lookups = new AtomicInteger();
+
+    @Override
+    public Mono<Object> getHandler(ServerWebExchange exchange) {
+      lookups.incrementAndGet();
+      return super.getHandler(exchange);
+    }
+  }
+
+  private static final class UnusedFacilitator implements ReactiveFacilitatorClient {
+
+    @Override
+    public Mono<VerificationResponse> verify(PaymentPayload paymentPayload,
+        PaymentRequirements req) {
+      return Mono.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Mono<SettlementResponse> settle(PaymentPayload paymentPayload,
+        PaymentRequirements req) {
+      return Mono.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Mono<Set<Kind>> supported() {
+      return Mono.just(Set.of());
+    }
+  }
+}
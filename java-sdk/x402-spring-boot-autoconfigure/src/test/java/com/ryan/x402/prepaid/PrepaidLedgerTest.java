@@ -0,0 +1,165 @@
+package com.ryan.x402.prepaid;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PrepaidLedgerTest {
+
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+  private static final String OTHER_PAYER = "0x857b06519E91e3A54538791bDbb0E22373e36b66";
+  private static final int RECORD_LENGTH = 32;
+
+  @TempDir
+  Path directory;
+
+  private final List<PrepaidLedger> opened = new ArrayList<>();
+
+  @AfterEach
+  void close() {
+    opened.forEach(PrepaidLedger::close);
+  }
+
+  @Test
+  void balancesOfACrashedRunAreReplayedFromTheLog() throws Exception {
+    PrepaidLedger crashed = open();
+    crashed.credit(PAYER, 100);
+    crashed.credit(OTHER_PAYER, 50);
+    crashed.debit(PAYER, 30);
+
+    PrepaidLedger ledger = open();
+
+    assertThat(ledger.balance(PAYER)).isEqualTo(70);
+    assertThat(ledger.balance(OTHER_PAYER)).isEqualTo(50);
+    assertThat(ledger.size()).isEqualTo(2);
+  }
+
+  @Test
+  void replayAfterASnapshotAppliesTheNewerLogOnTheSnapshot() throws Exception {
+    PrepaidLedger crashed = open();
+    crashed.credit(PAYER, 100);
+    crashed.snapshot();
+    crashed.debit(PAYER, 40);
+    crashed.credit(OTHER_PAYER, 5);
+
+    assertThat(logs()).hasSize(1);
+    PrepaidLedger ledger = open();
+
+    assertThat(ledger.balance(PAYER)).isEqualTo(60);
+    assertThat(ledger.balance(OTHER_PAYER)).isEqualTo(5);
+  }
+
+  @Test
+  void logLeftBehindBySnapshotIsNotReplayedAgain() throws Exception {
+    PrepaidLedger crashed = open();
+    crashed.credit(PAYER, 100);
+    Path replaced = logs().get(0);
+    byte[] replacedRecords = Files.readAllBytes(replaced);
+    crashed.snapshot();
+    crashed.debit(PAYER, 100);
+    // a crash between writing the snapshot and deleting the logs it replaces
+    Files.write(replaced, replacedRecords);
+
+    PrepaidLedger ledger = open();
+
+    assertThat(ledger.balance(PAYER)).isZero();
+    assertThat(ledger.size()).isZero();
+    assertThat(logs()).hasSize(1);
+  }
+
+  @Test
+  void tornLastRecordIsDropped() throws Exception {
+    PrepaidLedger crashed = open();
+    crashed.credit(PAYER, 100);
+    crashed.credit(PAYER, 20);
+    Path log = logs().get(0);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.truncate(2L * RECORD_LENGTH - 5);
+    }
+
+    assertThat(open().balance(PAYER)).isEqualTo(100);
+  }
+
+  @Test
+  void replayStopsAtARecordThatFailsItsChecksum() throws Exception {
+    PrepaidLedger crashed = open();
+    crashed.credit(PAYER, 100);
+    crashed.credit(OTHER_PAYER, 7);
+    crashed.credit(PAYER, 20);
+    try (FileChannel channel = FileChannel.open(logs().get(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xff}), RECORD_LENGTH + 25);
+    }
+
+    PrepaidLedger ledger = open();
+
+    assertThat(ledger.balance(PAYER)).isEqualTo(100);
+    assertThat(ledger.balance(OTHER_PAYER)).isZero();
+  }
+
+  @Test
+  void closeSnapshotsSoTheNextRunReplaysNothing() throws Exception {
+    PrepaidLedger first = open();
+    first.credit(PAYER, 100);
+    first.debit(PAYER, 1);
+    first.close();
+
+    assertThat(Files.size(logs().get(0))).isZero();
+    PrepaidLedger ledger = open();
+
+    assertThat(ledger.balance(PAYER)).isEqualTo(99);
+  }
+
+  @Test
+  void corruptSnapshotFailsTheStart() throws Exception {
+    open().close();
+    Path snapshot = directory.resolve("ledger.snapshot");
+    byte[] bytes = Files.readAllBytes(snapshot);
+    bytes[8] ^= 1;
+    Files.write(snapshot, bytes);
+
+    assertThatThrownBy(this::open)
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("corrupt");
+  }
+
+  @Test
+  void debitBeyondTheBalanceTakesNothing() throws Exception {
+    PrepaidLedger ledger = open();
+    ledger.credit(PAYER, 10);
+
+    assertThat(ledger.debit(PAYER, 11)).isEqualTo(PrepaidLedger.INSUFFICIENT);
+    assertThat(ledger.debit(PAYER.toLowerCase(), 10)).isZero();
+    assertThat(ledger.size()).isZero();
+  }
+
+  /* ======================== fixtures ======================== */
+
+  /**
+   * Opens a ledger whose flush thread neither forces nor snapshots during a test; a ledger that
+   * is not closed stands for a crashed run.
+   */
+  private PrepaidLedger open() throws IOException {
+    PrepaidLedger ledger = new PrepaidLedger(directory, 4, Duration.ofHours(1), Long.MAX_VALUE);
+    opened.add(ledger);
+    return ledger;
+  }
+
+  private List<Path> logs() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(".wal")).sorted().toList();
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.ryan.x402.settlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ryan.x402.model.PaymentPayload;
+import com.ryan.x402.model.PaymentRequirements;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SettlementJournalTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void unmarkedPaymentsAreRecoveredInAppendOrder() throws Exception {
+    long first;
+    long second;
+    try (SettlementJournal journal = open()) {
+      first = journal.append(payment(1), requirements());
+      second = journal.append(payment(2), requirements());
+      journal.markSettled(journal.append(payment(3), requirements()));
+      journal.markAbandoned(journal.append(payment(4), requirements()));
+    }
+
+    try (SettlementJournal journal = open()) {
+      assertThat(journal.unsettled()).extracting(SettlementJournal.Entry::id)
+          .containsExactly(first, second);
+      assertThat(nonceOf(journal.unsettled().get(1))).isEqualTo(nonce(2));
+      assertThat(journal.unsettled().get(1).requirements().payTo)
+          .isEqualTo(requirements().payTo);
+    }
+  }
+
+  @Test
+  void recoveredPaymentsMarkedInTheNextRunAreNotRecoveredAgain() throws Exception {
+    try (SettlementJournal journal = open()) {
+      journal.append(payment(1), requirements());
+      journal.append(payment(2), requirements());
+    }
+    try (SettlementJournal journal = open()) {
+      journal.markSettled(journal.unsettled().get(0).id());
+      journal.markAbandoned(journal.unsettled().get(1).id());
+    }
+
+    try (SettlementJournal journal = open()) {
+      assertThat(journal.unsettled()).isEmpty();
+    }
+  }
+
+  @Test
+  void recoveryStopsAtARecordThatFailsItsChecksum() throws Exception {
+    long first;
+    long torn;
+    try (SettlementJournal journal = open()) {
+      first = journal.append(payment(1), requirements());
+      torn = journal.append(payment(2), requirements());
+      journal.append(payment(3), requirements());
+    }
+    // a byte of the second record's body never reached the disk
+    try (FileChannel channel = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {'#'}), (int) torn + 30);
+    }
+
+    try (SettlementJournal journal = open()) {
+      assertThat(journal.unsettled()).extracting(SettlementJournal.Entry::id)
+          .containsExactly(first);
+      // appends go to a new segment, never after the torn record
+      long next = journal.append(payment(4), requirements());
+      assertThat(next >>> 32).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void segmentsAreDeletedOnceAllTheirPaymentsAreMarked() throws Exception {
+    try (SettlementJournal journal = open()) {
+      List<Long> ids = new ArrayList<>();
+      for (int n = 0; journal.getSegmentCount() < 3; n++) {
+        ids.add(journal.append(payment(n), requirements()));
+      }
+      for (int i = 0; i < ids.size(); i++) {
+        if (i % 2 == 0) {
+          journal.markSettled(ids.get(i));
+        } else {
+          journal.markAbandoned(ids.get(i));
+        }
+      }
+
+      awaitTrue(() -> journal.getSegmentCount() == 1);
+    }
+
+    try (SettlementJournal journal = open()) {
+      assertThat(journal.unsettled()).isEmpty();
+    }
+  }
+
+  @Test
+  void segmentWithAnUnmarkedPaymentIsKept() throws Exception {
+    try (SettlementJournal journal = open()) {
+      List<Long> ids = new ArrayList<>();
+      for (int n = 0; journal.getSegmentCount() < 3; n++) {
+        ids.add(journal.append(payment(n), requirements()));
+      }
+      ids.subList(1, ids.size()).forEach(journal::markAbandoned);
+      Thread.sleep(100);
+
+      assertThat(journal.getSegmentCount()).isEqualTo(3);
+    }
+
+    try (SettlementJournal journal = open()) {
+      assertThat(journal.unsettled()).hasSize(1);
+      assertThat(nonceOf(journal.unsettled().get(0))).isEqualTo(nonce(0));
+    }
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private SettlementJournal open() throws Exception {
+    return new SettlementJournal(directory, 4096, Duration.ofMillis(10));
+  }
+
+  private Path segment(int number) {
+    return directory.resolve(String.format("%010d.journal", number));
+  }
+
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
+  private static String nonceOf(SettlementJournal.Entry entry) {
+    return entry.payload().exactPayload().authorization.nonce;
+  }
+
+  private static String nonce(int n) {
+    return "0x" + "00".repeat(28) + String.format("%08x", n);
+  }
+
+  private static PaymentPayload payment(int n) {
+    PaymentPayload payload = new PaymentPayload();
+    payload.x402Version = 1;
+    payload.scheme = "exact";
+    payload.network = "base-sepolia";
+    payload.payload = Map.of(
+        "signature", "0x" + "ab".repeat(65),
+        "authorization", Map.of(
+            "from", "0x857b06519E91e3A54538791bDbb0E22373e36b66",
+            "to", "0x209693Bc6afc0C5328bA36FaF03C514EF312287C",
+            "value", "10000",
+            "validAfter", "0",
+            "validBefore", "4102444800",
+            "nonce", nonce(n)));
+    return payload;
+  }
+
+  private static PaymentRequirements requirements() {
+    PaymentRequirements pr = new PaymentRequirements();
+    pr.scheme = "exact";
+    pr.network = "base-sepolia";
+    pr.maxAmountRequired = "10000";
+    pr.payTo = "0x209693Bc6afc0C5328bA36FaF03C514EF312287C";
+    pr.asset = "0x036CbD53842c5426634e7929541eC2318f3dCF7e";
+    pr.resource = "http://localhost/weather";
+    pr.maxTimeoutSeconds = 30;
+    return pr;
+  }
+}
@@ -0,0 +1,139 @@
+package com.ryan.x402.token;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class AccessTokenSignerTest {
+
+  private static final String PAYER = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+  private static final byte[] KEY_1 = secret('1');
+  private static final byte[] KEY_2 = secret('2');
+  private static final long EXPIRES_AT = 1_900_000_000L;
+
+  private final AccessTokenSigner signer = new AccessTokenSigner(Map.of(1, KEY_1), 1);
+
+  @Test
+  void issuedTokenVerifiesToItsGrant() {
+    String token = signer.issue(PAYER, "/weather/**", EXPIRES_AT);
+
+    assertThat(token).doesNotContain("=", "+", "/");
+    assertThat(signer.verify(token)).isEqualTo(
+        new AccessTokenSigner.Grant(PAYER.toLowerCase(), "/weather/**", EXPIRES_AT));
+  }
+
+  @Test
+  void tamperedMacIsRejected() {
+    byte[] token = decode(signer.issue(PAYER, "/weather/**", EXPIRES_AT));
+    token[token.length - 1] ^= 1;
+
+    assertThat(signer.verify(encode(token))).isNull();
+  }
+
+  @Test
+  void tamperedContentIsRejected() {
+    byte[] token = decode(signer.issue(PAYER, "/weather/**", EXPIRES_AT));
+    // moves the expiry by years
+    token[6] ^= 0x10;
+
+    assertThat(signer.verify(encode(token))).isNull();
+  }
+
+  @Test
+  void tokenOfAnUnknownKeyIsRejected() {
+    AccessTokenSigner other = new AccessTokenSigner(Map.of(2, KEY_2), 2);
+
+    assertThat(signer.verify(other.issue(PAYER, "/weather/**", EXPIRES_AT))).isNull();
+  }
+
+  @Test
+  void tokenWithAnotherKeysIdIsRejected() {
+    // same secret, but the token claims key 2, which this signer does not have
+    AccessTokenSigner relabeled = new AccessTokenSigner(Map.of(2, KEY_1), 2);
+
+    assertThat(signer.verify(relabeled.issue(PAYER, "/weather/**", EXPIRES_AT))).isNull();
+  }
+
+  @Test
+  void tokensOfTheRetiringKeyAreAcceptedDuringRotation() {
+    AccessTokenSigner rotated = new AccessTokenSigner(Map.of(1, KEY_1, 2, KEY_2), 2);
+    String old = signer.issue(PAYER, "/weather/**", EXPIRES_AT);
+    String current = rotated.issue(PAYER, "/weather/**", EXPIRES_AT);
+
+    assertThat(rotated.verify(old)).isNotNull();
+    assertThat(rotated.verify(current)).isNotNull();
+    assertThat(decode(current)[1]).isEqualTo((byte) 2);
+    assertThat(signer.verify(current)).isNull();
+  }
+
+  @Test
+  void malformedTokensAreRejected() {
+    assertThat(signer.verify("not base64!")).isNull();
+    assertThat(signer.verify("")).isNull();
+    assertThat(signer.verify(encode(new byte[40]))).isNull();
+  }
+
+  @Test
+  void grantExpiresAfterItsExpiry() {
+    AccessTokenSigner.Grant grant = signer.verify(signer.issue(PAYER, "/weather/**", EXPIRES_AT));
+
+    assertThat(grant.check("/weather/today", EXPIRES_AT)).isNull();
+    assertThat(grant.check("/weather/today", EXPIRES_AT + 1))
+        .isEqualTo(AccessTokenSigner.EXPIRED_TOKEN);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "/weather/**, /weather, true",
+      "/weather/**, /weather/today, true",
+      "/weather/**, /weather/city/paris, true",
+      "/weather/**, /premium, false",
+      "/weather/**, /weatherman, false",
+      "/weather/*, /weather/city/paris, false",
+      "/weather/today, /weather/today, true",
+      "/weather/today, /weather/today/, false",
+  })
+  void grantCoversThePathsMatchingItsPattern(String pattern, String path, boolean granted) {
+    AccessTokenSigner.Grant grant = signer.verify(signer.issue(PAYER, pattern, EXPIRES_AT));
+
+    assertThat(grant.check(path, 0))
+        .isEqualTo(granted ? null : AccessTokenSigner.RESOURCE_MISMATCH);
+  }
+
+  @Test
+  void literalPathsAreToldApartFromPatterns() {
+    assertThat(AccessTokenSigner.isPattern("/weather/**")).isTrue();
+    assertThat(AccessTokenSigner.isPattern("/weather/{city}")).isTrue();
+    assertThat(AccessTokenSigner.isPattern("/weather/today")).isFalse();
+  }
+
+  @Test
+  void invalidKeysAreRefused() {
+    assertThatThrownBy(() -> new AccessTokenSigner(Map.of(1, new byte[31]), 1))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new AccessTokenSigner(Map.of(256, KEY_1), 256))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new AccessTokenSigner(Map.of(1, KEY_1), 2))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /* ======================== fixtures ======================== */
+
+  private static byte[] secret(char fill) {
+    return String.valueOf(fill).repeat(32).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] decode(String token) {
+    return Base64.getUrlDecoder().decode(token);
+  }
+
+  private static String encode(byte[] token) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+  }
+}